@@ -32,6 +32,8 @@ import com.realsil.android.dongle.helper.DownloadPatchHelper;
 import com.realsil.android.dongle.util.FileUtil;
 import com.realsil.android.dongle.util.TimeUtil;
 import com.realsil.sdk.core.usb.UsbGatt;
+import com.realsil.sdk.core.usb.UsbGattProfile;
+import com.realsil.sdk.core.usb.UsbGattProfileCache;
 import com.realsil.sdk.core.usb.connector.LocalUsbConnector;
 import com.realsil.sdk.core.usb.connector.RtkBTChipVersionInfo;
 import com.realsil.sdk.core.usb.connector.UsbError;
@@ -83,6 +85,11 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
 
     private int mMsgCount;
 
+    /**
+     * The usb device which has been authorized, null until then.
+     */
+    private UsbDevice mUsbDevice;
+
     @Override
     protected void setContainer() {
         setContentView(R.layout.fragment_usb_download_patch);
@@ -158,22 +165,30 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
         }
     }
 
+    /**
+     * Get the connector bound to the authorized usb device, or the default connector which searches
+     * and authorizes the usb device.
+     */
+    private LocalUsbConnector getUsbConnector() {
+        return LocalUsbConnector.getInstance(mUsbDevice);
+    }
+
     private void connectUsbDevice() {
-        int initRet = LocalUsbConnector.getInstance().initConnector(mContext);
+        int initRet = getUsbConnector().initConnector(mContext);
         if (initRet != UsbError.CODE_NO_ERROR) {
             sendUsbMessage("init usb device failed", initRet);
             return;
         }
 
-        LocalUsbConnector.getInstance().addOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
+        getUsbConnector().addOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
 
-        int searchRet = LocalUsbConnector.getInstance().searchUsbDevice();
+        int searchRet = getUsbConnector().searchUsbDevice();
         if (searchRet != UsbError.CODE_NO_ERROR) {
             sendUsbMessage("can not found usb device", searchRet);
             return;
         }
 
-        int authorizeRet = LocalUsbConnector.getInstance().authorizeDevice();
+        int authorizeRet = getUsbConnector().authorizeDevice();
         if (authorizeRet != UsbError.CODE_NO_ERROR) {
             sendUsbMessage("device is not authorized", authorizeRet);
         }
@@ -184,13 +199,14 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
         public void authorizeCurrentDevice(UsbDevice usbDevice, boolean authorizeResult) {
             super.authorizeCurrentDevice(usbDevice, authorizeResult);
             if (authorizeResult) {
-                int setupRet = LocalUsbConnector.getInstance().setupDevice();
+                mUsbDevice = usbDevice;
+                int setupRet = getUsbConnector().setupDevice();
                 if (setupRet != UsbError.CODE_NO_ERROR) {
                     sendUsbMessage("usb device setup failed", setupRet);
                     return;
                 }
 
-                int connectRet = LocalUsbConnector.getInstance().connect();
+                int connectRet = getUsbConnector().connect();
                 if (connectRet != UsbError.CODE_NO_ERROR) {
                     sendUsbMessage("failed to connect usb device", connectRet);
                     return;
@@ -207,6 +223,7 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
             if (attachStatus) {
                 sendUsbMessage("usb device has attached");
             } else {
+                mUsbDevice = null;
                 sendUsbMessage("usb device has detached", UsbMsg.MSG_TYPE_ERROR);
             }
         }
@@ -228,7 +245,7 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
 
     private void startDownloadPatch() {
         // Check local usb device has connected.
-        if (LocalUsbConnector.getInstance().getUsbConnectState() != LocalUsbConnector.STATE_USB_CONNECTED) {
+        if (getUsbConnector().getUsbConnectState() != LocalUsbConnector.STATE_USB_CONNECTED) {
             sendUsbMessage(getLocalString(R.string.usb_error_connect_usb_device), UsbMsg.MSG_TYPE_ERROR);
             return;
         }
@@ -273,18 +290,34 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
                 sendUsbMessage("Connect to bluetooth gatt failed, connection timeout", UsbMsg.MSG_TYPE_ERROR);
             }
         });
-        LocalUsbConnector.getInstance().sendRequest(queryBTConnectStateRequest);
+        getUsbConnector().sendRequest(queryBTConnectStateRequest);
     }
 
     /**
      * Call this method to get the chip id for the current rom.
      */
     private void readRomVersionCommand() {
+        // The rom version does not change until the firmware is changed, the cached one can be used directly.
+        UsbGattProfile cachedProfile = UsbGattProfileCache.getInstance(mContext).get(getUsbConnector().getUsbDevice());
+        if (cachedProfile != null && cachedProfile.getRomVersion() != UsbGattProfile.VALUE_UNKNOWN) {
+            int romVersion = cachedProfile.getRomVersion();
+            sendUsbMessage("use cached rom version: " + romVersion + " + 1");
+            new ReadBinaryFileContentThread(romVersion).start();
+            return;
+        }
+
         ReadRomVersionCommand readRomVersionCommand = new ReadRomVersionCommand();
         readRomVersionCommand.addReadRomVersionCommandCallback(new ReadRomVersionCommandCallback() {
             @Override
             public void onReadRomVersionSuccess(int romVersion) {
                 super.onReadRomVersionSuccess(romVersion);
+                UsbDevice usbDevice = getUsbConnector().getUsbDevice();
+                UsbGattProfileCache profileCache = UsbGattProfileCache.getInstance(mContext);
+                UsbGattProfile profile = profileCache.getOrCreate(usbDevice);
+                if (profile != null && profile.getRomVersion() != romVersion) {
+                    profile.setRomVersion(romVersion);
+                    profileCache.put(usbDevice, profile);
+                }
                 sendUsbMessage("current rom version is: " + romVersion + " + 1");
                 new ReadBinaryFileContentThread(romVersion).start();
                 // Compare Bluetooth chip versions
@@ -304,31 +337,49 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
                 sendUsbMessage("read rom version timeout");
             }
         });
-        LocalUsbConnector.getInstance().sendRequest(readRomVersionCommand);
+        getUsbConnector().sendRequest(readRomVersionCommand);
     }
 
 
-    private void readLocalVersionInformationRequest(boolean isNeedDownload) {
+    private void readLocalVersionInformationRequest(final boolean isNeedDownload) {
+        final UsbDevice usbDevice = getUsbConnector().getUsbDevice();
+        final UsbGattProfile cachedProfile = UsbGattProfileCache.getInstance(mContext).get(usbDevice);
+        // The version information of the chip does not change until the firmware is changed,
+        // use the cached one to show it at once, and read it again to verify the cache. The patch is only
+        // downloaded once the read one has been checked.
+        final boolean usedCachedVersionInfo = cachedProfile != null && cachedProfile.hasChipVersionInfo();
+        if (usedCachedVersionInfo) {
+            sendUsbMessage("use cached local version info");
+            showLocalVersionInformation(cachedProfile.getHciVersion(), cachedProfile.getHciRevision(),
+                    cachedProfile.getLmpVersion(), cachedProfile.getLmpSubVersion(), cachedProfile.getManufacturerName());
+        }
+
         ReadLocalChipVersionInfoRequest readLocalChipVersionInfoRequest = new ReadLocalChipVersionInfoRequest();
         readLocalChipVersionInfoRequest.addReadLocalChipVersionInfoRequestCallback(new ReadLocalChipVersionInfoRequestCallback() {
             @Override
             public void onReceivedVersionInformation(int hciVersion, int hciRevision, int lmpVersion, int lmpSubVersion, int manufacturerName) {
                 super.onReceivedVersionInformation(hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
-                String versionInfo = String.format(Locale.getDefault(), "hciVersion: %#x, hciRevision: %#x, lmpVersion: %#x, lmpSubVersion: %#x, manufacturerName: %#x",
-                        hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
-                sendUsbMessage("hci read local version info: " + versionInfo);
-
-                boolean needDownload = checkIsNeedDownloadPathByCompareVersion(lmpSubVersion, hciRevision);
-                if (needDownload) {
-                    sendUsbMessage("lmpSubversion match, able to download patch");
-                    if (isNeedDownload) {
-                        new ReadBinaryFileContentThread(0).start();
-                    }
+                UsbGattProfileCache profileCache = UsbGattProfileCache.getInstance(mContext);
+                UsbGattProfile profile = profileCache.getOrCreate(usbDevice);
+                boolean cacheUpToDate = profile != null
+                        && profile.isSameChipVersionInfo(hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
+                if (profile != null && !cacheUpToDate) {
+                    profile.setChipVersionInfo(hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
+                    profileCache.put(usbDevice, profile);
+                }
+                boolean versionMatched;
+                if (usedCachedVersionInfo && cacheUpToDate) {
+                    // The cached version information has been confirmed, it has been shown.
+                    versionMatched = checkIsNeedDownloadPathByCompareVersion(lmpSubVersion, hciRevision);
                 } else {
-                    sendUsbMessage("lmpSubversion not match, No download required");
+                    if (usedCachedVersionInfo) {
+                        sendUsbMessage("cached local version info is out of date, use the read one", UsbMsg.MSG_TYPE_ERROR);
+                    }
+                    versionMatched = showLocalVersionInformation(hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
+                }
+                if (isNeedDownload && versionMatched) {
+                    new ReadBinaryFileContentThread(0).start();
                 }
-                // TODO: 2020/1/13 Start compare bluetooth chip version,
-                // new ReadBinaryFileContentThread().start();
             }
 
             @Override
@@ -344,7 +395,28 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
             }
 
         });
-        LocalUsbConnector.getInstance().sendRequest(readLocalChipVersionInfoRequest);
+        getUsbConnector().sendRequest(readLocalChipVersionInfoRequest);
+    }
+
+    /**
+     * Show the version information of the chip.
+     *
+     * @return true if the patch can be downloaded to the chip.
+     */
+    private boolean showLocalVersionInformation(int hciVersion, int hciRevision, int lmpVersion, int lmpSubVersion, int manufacturerName) {
+        String versionInfo = String.format(Locale.getDefault(), "hciVersion: %#x, hciRevision: %#x, lmpVersion: %#x, lmpSubVersion: %#x, manufacturerName: %#x",
+                hciVersion, hciRevision, lmpVersion, lmpSubVersion, manufacturerName);
+        sendUsbMessage("hci read local version info: " + versionInfo);
+
+        boolean needDownload = checkIsNeedDownloadPathByCompareVersion(lmpSubVersion, hciRevision);
+        if (needDownload) {
+            sendUsbMessage("lmpSubversion match, able to download patch");
+        } else {
+            sendUsbMessage("lmpSubversion not match, No download required");
+        }
+        // TODO: 2020/1/13 Start compare bluetooth chip version,
+        // new ReadBinaryFileContentThread().start();
+        return needDownload;
     }
 
 
@@ -460,7 +532,7 @@ public class UsbDownloadPatchFragment extends BaseFragment implements View.OnCli
 
 
         private void sendPacket2BtController(byte[] patchArray) {
-            DownloadPatchHelper downloadPatchHelper = new DownloadPatchHelper(patchArray);
+            DownloadPatchHelper downloadPatchHelper = new DownloadPatchHelper(getUsbConnector(), patchArray);
             downloadPatchHelper.addOnDownloadStatusChangeListener(new DownloadPatchHelper.OnDownloadStatusChangeListener() {
                 @Override
                 public void onDownloadStarted() {
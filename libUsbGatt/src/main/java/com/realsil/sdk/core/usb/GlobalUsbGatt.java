@@ -5,16 +5,21 @@ import android.content.Context;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbManager;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.realsil.sdk.core.usb.connector.util.ByteUtil;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is use to manager gatt connect, to let all the activity have only a callback.
@@ -36,26 +41,40 @@ public class GlobalUsbGatt {
      * Pepriphal info
      */
     private List<String> mBdAddrs;
-    private HashMap<String, UsbGatt> mUsbGatts;
-    private HashMap<String, List<UsbGattCallback>> mCallbacks;
+    /**
+     * The registries are accessed by the app threads and the usb threads at the same time, the callback
+     * lists are copied on write, so the callbacks can be iterated without locking.
+     */
+    private final ConcurrentHashMap<String, UsbGatt>                               mUsbGatts;
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<UsbGattCallback>> mCallbacks;
 
     public static final int STATE_DISCONNECTED = 0;
     public static final int STATE_CONNECTING = 1;
     public static final int STATE_CONNECTED = 2;
     /**
-     * Connection state
+     * Connection state of each device, one of {@link #STATE_DISCONNECTED}, {@link #STATE_CONNECTING}
+     * and {@link #STATE_CONNECTED}.
+     */
+    private final ConcurrentHashMap<String, AtomicInteger> mConnectionState;
+
+    /**
+     * Gatts being closed by {@link #closeAll(long)}, counted down once their disconnection has been reported.
      */
-    private HashMap<String, Integer> mConnectionState;
+    private final ConcurrentHashMap<String, CountDownLatch> mPendingCloses = new ConcurrentHashMap<>();
 
     /**
-     * for sync gatt callback
+     * Default time to wait for the result of a sync operation.
      */
-    private volatile boolean mGattCallbackCalled;
+    public static final long DEFAULT_SYNC_TIMEOUT = 3000;
+
+    private volatile long mSyncTimeout = DEFAULT_SYNC_TIMEOUT;
+
     /**
-     * used for gatt callback
+     * Default deadline of a disconnection, see {@link UsbGatt#disconnect(long)}.
      */
-    private final Object mGattCallbackLock = new Object();
-    private static final int MAX_CALLBACK_LOCK_WAIT_TIME = 3000;
+    public static final long DEFAULT_DISCONNECT_TIMEOUT = 1000;
+
+    private volatile long mDisconnectTimeout = DEFAULT_DISCONNECT_TIMEOUT;
 
 
     private Context mContext;
@@ -67,9 +86,9 @@ public class GlobalUsbGatt {
      */
     private GlobalUsbGatt(Context context) {
         mContext = context;
-        mUsbGatts = new HashMap<>();
-        mConnectionState = new HashMap<>();
-        mCallbacks = new HashMap<>();
+        mUsbGatts = new ConcurrentHashMap<>();
+        mConnectionState = new ConcurrentHashMap<>();
+        mCallbacks = new ConcurrentHashMap<>();
         mBdAddrs = new CopyOnWriteArrayList<>();
 
         initialize();
@@ -125,11 +144,18 @@ public class GlobalUsbGatt {
      * @return
      */
     public boolean isConnected(String address) {
-        Integer state = mConnectionState.get(address);
-        if (state == null) {
-            return false;
+        AtomicInteger state = mConnectionState.get(address);
+        return state != null && state.get() == STATE_CONNECTED;
+    }
+
+    private void setConnectionState(String address, int state) {
+        AtomicInteger connectionState = mConnectionState.get(address);
+        if (connectionState == null) {
+            AtomicInteger newConnectionState = new AtomicInteger(state);
+            connectionState = mConnectionState.putIfAbsent(address, newConnectionState);
+            if (connectionState == null) return;
         }
-        return (state.equals(STATE_CONNECTED));
+        connectionState.set(state);
     }
 
     /**
@@ -172,7 +198,7 @@ public class GlobalUsbGatt {
 
                     Log.d(TAG, "re-connect previous device: " + device.getDeviceName());
                     if (gatt.connect()) {
-                        mConnectionState.put(device.getDeviceName(), STATE_CONNECTING);
+                        setConnectionState(device.getDeviceName(), STATE_CONNECTING);
                         if (callback != null) {
                             callback.onConnectionStateChange(gatt,
                                     UsbGatt.GATT_SUCCESS, UsbGatt.STATE_CONNECTING);
@@ -194,7 +220,7 @@ public class GlobalUsbGatt {
         Log.d(TAG, "create connection to " + device.getDeviceName());
         // We want to directly connect to the device, so we are setting the autoConnect
         // parameter to false.
-        mConnectionState.put(device.getDeviceName(), STATE_CONNECTING);
+        setConnectionState(device.getDeviceName(), STATE_CONNECTING);
 //        close(address);
 
         //connecting to the GATT server on the device
@@ -218,22 +244,18 @@ public class GlobalUsbGatt {
      *
      * @param addr The device address with want to close gatt
      */
-    public synchronized void closeGatt(final String addr) {
+    public void closeGatt(final String addr) {
         if (addr == null) {
             Log.w(TAG,"Invalid address");
             return;
         }
         Log.d(TAG, "closeGatt， addr:=" + addr);
-        if (mUsbGatts != null && mUsbGatts.get(addr) != null) {
-            mUsbGatts.get(addr).close();
-            mUsbGatts.remove(addr);
-        }
-        if (mCallbacks != null) {
-            mCallbacks.remove(addr);
-        }
-        if (mBdAddrs != null && mBdAddrs.contains(addr)) {
-            mBdAddrs.remove(addr);
+        UsbGatt gatt = mUsbGatts.remove(addr);
+        if (gatt != null) {
+            gatt.close();
         }
+        mCallbacks.remove(addr);
+        mBdAddrs.remove(addr);
     }
 
     /**
@@ -246,36 +268,52 @@ public class GlobalUsbGatt {
      */
     public boolean disconnectGatt(final String addr) {
         UsbGatt bluetoothGatt = mUsbGatts.get(addr);
-        List<UsbGattCallback> callbacks = mCallbacks.get(addr);
-
         if (bluetoothGatt != null) {
-            if (isConnected(addr)) {
-                Log.d(TAG, "disconnect : " + addr);
-                // @2019/11/05 Android 10, when bt off, no gatt callback return
-                // E/bt_stack: [ERROR:bta_gattc_act.cc(293)] No such connection need to be cancelled
-                // E/bt_stack: [ERROR:bta_gattc_utils.cc(433)] bta_gattc_mark_bg_conn unable to find the bg connection mask for bd_addr=00:89:98:34:43:14
-                bluetoothGatt.disconnect();
-                // wait 500ms for disconnect, here also can use sync method
-                try {
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            } else {
-                if (callbacks != null && callbacks.size() > 0) {
-                    for (UsbGattCallback callback : callbacks) {
-                        callback.onConnectionStateChange(bluetoothGatt,
-                                UsbGatt.GATT_SUCCESS, UsbGatt.STATE_DISCONNECTED);
-                    }
-                }
-            }
-
+            disconnectGatt(addr, bluetoothGatt);
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Start the disconnection without waiting for it.
+     *
+     * @return the future of the usb teardown, or null if the device is not connected.
+     */
+    private Future<?> disconnectGatt(final String addr, UsbGatt bluetoothGatt) {
+        if (isConnected(addr)) {
+            Log.d(TAG, "disconnect : " + addr);
+            // @2019/11/05 Android 10, when bt off, no gatt callback return
+            // E/bt_stack: [ERROR:bta_gattc_act.cc(293)] No such connection need to be cancelled
+            // E/bt_stack: [ERROR:bta_gattc_utils.cc(433)] bta_gattc_mark_bg_conn unable to find the bg connection mask for bd_addr=00:89:98:34:43:14
+            // The result is reported by GattCallback#onConnectionStateChange once the usb connection has been closed.
+            return bluetoothGatt.disconnect(mDisconnectTimeout);
+        }
+        List<UsbGattCallback> callbacks = mCallbacks.get(addr);
+        if (callbacks != null && callbacks.size() > 0) {
+            for (UsbGattCallback callback : callbacks) {
+                callback.onConnectionStateChange(bluetoothGatt,
+                        UsbGatt.GATT_SUCCESS, UsbGatt.STATE_DISCONNECTED);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Set the deadline of a disconnection, the disconnection is reported with {@link UsbGatt#GATT_FAILURE}
+     * if the usb connection has not been closed in time.
+     *
+     * @param timeoutMillis timeout in milliseconds.
+     */
+    public void setDisconnectTimeout(long timeoutMillis) {
+        mDisconnectTimeout = timeoutMillis;
+    }
+
+    public long getDisconnectTimeout() {
+        return mDisconnectTimeout;
+    }
+
     /**
      * When the le services manager close, it must disconnect and close the gatt.
      *
@@ -288,13 +326,66 @@ public class GlobalUsbGatt {
 
     /**
      * Close all the connect device.
+     * <p>The devices are disconnected at the same time, it returns once all of them have been closed
+     * or the disconnect timeout elapsed.</p>
      */
     public void closeAll() {
-        if (mBdAddrs != null && mBdAddrs.size() > 0) {
-            for (String addr : mBdAddrs) {
-                close(addr);
+        closeAll(mDisconnectTimeout);
+    }
+
+    /**
+     * Close all the connect device at the same time.
+     * <p>A gatt is closed once its disconnection has been reported to the registered callbacks, or when the
+     * deadline is reached, so the callbacks still receive the disconnection.</p>
+     *
+     * @param timeoutMillis the maximum time to wait for the usb connections to be closed.
+     * @return true if all the usb connections have been closed in time.
+     */
+    public boolean closeAll(long timeoutMillis) {
+        List<String> disconnectingAddrs = new ArrayList<>();
+        List<Future<?>> teardowns = new ArrayList<>();
+        for (String addr : mBdAddrs) {
+            UsbGatt gatt = mUsbGatts.get(addr);
+            Future<?> teardown = null;
+            if (gatt != null) {
+                // Registered before disconnecting, the disconnection may be reported at once.
+                mPendingCloses.put(addr, new CountDownLatch(1));
+                teardown = disconnectGatt(addr, gatt);
+            }
+            if (teardown == null) {
+                mPendingCloses.remove(addr);
+                closeGatt(addr);
+            } else {
+                disconnectingAddrs.add(addr);
+                teardowns.add(teardown);
+            }
+        }
+
+        long deadline = SystemClock.elapsedRealtime() + timeoutMillis;
+        boolean closed = true;
+        boolean interrupted = false;
+        for (int i = 0; i < disconnectingAddrs.size(); i++) {
+            String addr = disconnectingAddrs.get(i);
+            CountDownLatch disconnected = mPendingCloses.remove(addr);
+            if (!interrupted && disconnected != null) {
+                try {
+                    if (!disconnected.await(Math.max(deadline - SystemClock.elapsedRealtime(), 0), TimeUnit.MILLISECONDS)) {
+                        Log.w(TAG, "closeAll, disconnection not reported in time: " + addr);
+                    }
+                } catch (InterruptedException e) {
+                    // Close the rest without waiting.
+                    interrupted = true;
+                }
             }
+            // The disconnection is reported with a failure if the usb connection was not closed in time.
+            closed &= teardowns.get(i).isDone();
+            closeGatt(addr);
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return closed;
     }
 
     /**
@@ -310,12 +401,13 @@ public class GlobalUsbGatt {
      * callback.
      */
     public boolean readCharacteristic(final String addr, UsbGattCharacteristic characteristic) {
-        if (mUsbManager == null || mUsbGatts.get(addr) == null) {
+        UsbGatt gatt = mUsbGatts.get(addr);
+        if (mUsbManager == null || gatt == null) {
             Log.w(TAG,"BluetoothAdapter not initialized or gatt is null");
             return false;
         }
         Log.d(TAG,"raddr: " + addr);
-        return mUsbGatts.get(addr).readCharacteristic(characteristic);
+        return gatt.readCharacteristic(characteristic);
 //        return true;
     }
 
@@ -332,80 +424,191 @@ public class GlobalUsbGatt {
      * callback.
      */
     public boolean writeCharacteristic(final String addr, UsbGattCharacteristic characteristic) {
-        if (mUsbManager == null || mUsbGatts.get(addr) == null) {
+        UsbGatt gatt = mUsbGatts.get(addr);
+        if (mUsbManager == null || gatt == null) {
             Log.w(TAG,"BluetoothAdapter not initialized");
             return false;
         }
         Log.d(TAG, "addr: " + addr);
-        return mUsbGatts.get(addr).writeCharacteristic(characteristic);
+        return gatt.writeCharacteristic(characteristic);
 //        return true;
     }
 
 
+    /**
+     * The result of a sync read or write.
+     */
+    public static final class SyncResult {
+        /**
+         * The callback of the operation has not been invoked in time.
+         */
+        public static final int STATUS_TIMEOUT = -1;
+
+        /**
+         * The waiting thread has been interrupted.
+         */
+        public static final int STATUS_INTERRUPTED = -2;
+
+        private final int    mStatus;
+        private final byte[] mValue;
+
+        SyncResult(int status, byte[] value) {
+            mStatus = status;
+            mValue = value;
+        }
+
+        /**
+         * @return {@link UsbGatt#GATT_SUCCESS} if the operation succeeded, {@link #STATUS_TIMEOUT},
+         * {@link #STATUS_INTERRUPTED}, or the gatt status of the failure.
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        public boolean isSuccess() {
+            return mStatus == UsbGatt.GATT_SUCCESS;
+        }
+
+        /**
+         * @return The value read from the characteristic, or the value written to it, null if the operation failed.
+         */
+        public byte[] getValue() {
+            return mValue;
+        }
+    }
+
+    /**
+     * A sync operation waiting for its own callback, which is passed to the gatt with the operation, so
+     * it is not completed by the callbacks of other operations on the same characteristic.
+     */
+    private static final class SyncOperation implements UsbGatt.OperationCallback {
+        final CountDownLatch mLatch = new CountDownLatch(1);
+
+        volatile int    mStatus = SyncResult.STATUS_TIMEOUT;
+        volatile byte[] mValue;
+
+        /**
+         * @param writtenValue snapshot of the value to be written, null for a read.
+         */
+        SyncOperation(byte[] writtenValue) {
+            mValue = writtenValue;
+        }
+
+        @Override
+        public void onOperationCompleted(int status, byte[] value) {
+            if (status != UsbGatt.GATT_SUCCESS) {
+                mValue = null;
+            } else if (value != null) {
+                mValue = value;
+            }
+            mStatus = status;
+            mLatch.countDown();
+        }
+    }
+
+    /**
+     * Set the default time to wait for the result of a sync operation.
+     *
+     * @param timeoutMillis timeout in milliseconds.
+     */
+    public void setSyncTimeout(long timeoutMillis) {
+        mSyncTimeout = timeoutMillis;
+    }
+
+    public long getSyncTimeout() {
+        return mSyncTimeout;
+    }
+
     /**
      * Request a read on a given {@code BluetoothGattCharacteristic}.
-     * This is a sync method, only the callback is called, it will return.
+     * This is a sync method, it returns once the callback of this read is called, or the default timeout is reached.
      *
      * @param addr           The device address with want to read
      * @param characteristic The characteristic to read from.
-     * @return Return true if the read is initiated successfully. The read result
-     * is reported asynchronously through the
-     * {@code BluetoothGattCallback#onCharacteristicRead(android.bluetooth.BluetoothGatt, android.bluetooth.BluetoothGattCharacteristic, int)}
-     * callback.
+     * @return The status and the value of the read, the read result is also reported through the
+     * {@code UsbGattCallback#onCharacteristicRead} callback.
+     * @see #setSyncTimeout(long)
      */
-    public boolean readCharacteristicSync(final String addr, UsbGattCharacteristic characteristic) {
-        mGattCallbackCalled = false;
+    public SyncResult readCharacteristicSync(final String addr, UsbGattCharacteristic characteristic) {
+        return readCharacteristicSync(addr, characteristic, mSyncTimeout);
+    }
 
-        if (!readCharacteristic(addr, characteristic)) {
-            return false;
+    /**
+     * Request a read on a given {@code BluetoothGattCharacteristic}.
+     * This is a sync method, it returns once the callback of this read is called, or the timeout is reached.
+     * <p>Sync operations can be called from several threads at the same time, each one waits for its own result.</p>
+     *
+     * @param addr           The device address with want to read
+     * @param characteristic The characteristic to read from.
+     * @param timeoutMillis  The maximum time to wait, in milliseconds.
+     * @return The status and the value of the read.
+     */
+    public SyncResult readCharacteristicSync(final String addr, UsbGattCharacteristic characteristic, long timeoutMillis) {
+        UsbGatt gatt = mUsbGatts.get(addr);
+        if (mUsbManager == null || gatt == null || characteristic == null) {
+            return new SyncResult(UsbGatt.GATT_FAILURE, null);
         }
-
-        synchronized (mGattCallbackLock) {
-            try {
-                // here only wait for 3 seconds
-                if (!mGattCallbackCalled) {
-                    Log.d(TAG, "wait for " + MAX_CALLBACK_LOCK_WAIT_TIME + "ms");
-                    mGattCallbackLock.wait(MAX_CALLBACK_LOCK_WAIT_TIME);
-                    Log.d(TAG,"wait time reached");
-                }
-            } catch (final InterruptedException e) {
-                Log.e(TAG, e.toString());
-            }
+        SyncOperation operation = new SyncOperation(null);
+        Log.d(TAG, "raddr: " + addr);
+        if (!gatt.readCharacteristic(characteristic, false, operation)) {
+            return new SyncResult(UsbGatt.GATT_FAILURE, null);
         }
-        return true;
+        return waitSyncOperation(operation, timeoutMillis);
     }
 
     /**
-     * Request a write on a given {@code BluetoothGattCharacteristic}. The write result is reported
-     * This is a sync method, only the callback is called, it will return.
+     * Request a write on a given {@code BluetoothGattCharacteristic}.
+     * This is a sync method, it returns once the callback of this write is called, or the default timeout is reached.
      *
      * @param addr           The device address with want to write
      * @param characteristic The characteristic to write.
-     * @return Return true if the write is initiated successfully. The read result
-     * is reported asynchronously through the
-     * {@code BluetoothGattCallback#onCharacteristicWrite(android.bluetooth.BluetoothGatt, android.bluetooth.BluetoothGattCharacteristic, int)}
-     * callback.
+     * @return The status of the write, the write result is also reported through the
+     * {@code UsbGattCallback#onCharacteristicWrite} callback.
+     * @see #setSyncTimeout(long)
      */
-    public synchronized boolean writeCharacteristicSync(final String addr, UsbGattCharacteristic characteristic) {
-        mGattCallbackCalled = false;
+    public SyncResult writeCharacteristicSync(final String addr, UsbGattCharacteristic characteristic) {
+        return writeCharacteristicSync(addr, characteristic, mSyncTimeout);
+    }
 
-        if (!writeCharacteristic(addr, characteristic)) {
-            return false;
+    /**
+     * Request a write on a given {@code BluetoothGattCharacteristic}.
+     * This is a sync method, it returns once the callback of this write is called, or the timeout is reached.
+     * <p>Sync operations can be called from several threads at the same time, each one waits for its own result.</p>
+     *
+     * @param addr           The device address with want to write
+     * @param characteristic The characteristic to write.
+     * @param timeoutMillis  The maximum time to wait, in milliseconds.
+     * @return The status of the write.
+     */
+    public SyncResult writeCharacteristicSync(final String addr, UsbGattCharacteristic characteristic, long timeoutMillis) {
+        UsbGatt gatt = mUsbGatts.get(addr);
+        if (mUsbManager == null || gatt == null || characteristic == null) {
+            return new SyncResult(UsbGatt.GATT_FAILURE, null);
+        }
+        byte[] value = characteristic.getValue();
+        SyncOperation operation = new SyncOperation(value != null ? Arrays.copyOf(value, value.length) : null);
+        Log.d(TAG, "addr: " + addr);
+        if (!gatt.writeCharacteristic(characteristic, operation)) {
+            return new SyncResult(UsbGatt.GATT_FAILURE, null);
         }
+        return waitSyncOperation(operation, timeoutMillis);
+    }
 
-        synchronized (mGattCallbackLock) {
-            try {
-                // here only wait for 3 seconds
-                if (!mGattCallbackCalled) {
-                    Log.d(TAG,"wait for " + MAX_CALLBACK_LOCK_WAIT_TIME + "ms");
-                    mGattCallbackLock.wait(MAX_CALLBACK_LOCK_WAIT_TIME);
-                    Log.d(TAG,"wait time reached");
-                }
-            } catch (final InterruptedException e) {
-                Log.e(TAG, e.toString());
+    private SyncResult waitSyncOperation(SyncOperation operation, long timeoutMillis) {
+        try {
+            if (!operation.mLatch.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                Log.d(TAG, "wait time reached: " + timeoutMillis + "ms");
             }
+        } catch (final InterruptedException e) {
+            Log.e(TAG, e.toString());
+            Thread.currentThread().interrupt();
+            return new SyncResult(SyncResult.STATUS_INTERRUPTED, null);
         }
-        return true;
+        if (operation.mLatch.getCount() > 0) {
+            // A late callback only completes this abandoned operation.
+            return new SyncResult(SyncResult.STATUS_TIMEOUT, null);
+        }
+        return new SyncResult(operation.mStatus, operation.mValue);
     }
 
     public List<String> getBluetoothDeviceAddresss() {
@@ -477,16 +680,16 @@ public class GlobalUsbGatt {
             if (status == UsbGatt.GATT_SUCCESS) {
                 if (newState == UsbGatt.STATE_CONNECTED) {
                     Log.d(TAG, "Connected to GATT server.");
-                    mConnectionState.put(addr, STATE_CONNECTED);
+                    setConnectionState(addr, STATE_CONNECTED);
                     mUsbGatts.put(addr, gatt);
                 } else {
                     Log.d(TAG, "Disconnected from GATT server.");
-                    mConnectionState.put(addr, STATE_DISCONNECTED);
+                    setConnectionState(addr, STATE_DISCONNECTED);
 //                    closeBluetoothGatt(addr);//prevent 133 error
                 }
             } else {
                 // TODO: 23/05/2018  
-                mConnectionState.put(addr, STATE_DISCONNECTED);
+                setConnectionState(addr, STATE_DISCONNECTED);
 //                closeBluetoothGatt(addr);//prevent 133 error
             }
 
@@ -496,6 +699,12 @@ public class GlobalUsbGatt {
                     callback.onConnectionStateChange(gatt, status, newState);
                 }
             }
+
+            if (newState == UsbGatt.STATE_DISCONNECTED) {
+                // Let closeAll() close the gatt now that the callbacks have been told.
+                CountDownLatch pendingClose = mPendingCloses.get(addr);
+                if (pendingClose != null) pendingClose.countDown();
+            }
         }
 
         @Override
@@ -524,12 +733,6 @@ public class GlobalUsbGatt {
                 }
             }
 
-            // notify waiting thread
-            synchronized (mGattCallbackLock) {
-                mGattCallbackCalled = true;
-                mGattCallbackLock.notifyAll();
-            }
-
             String addr = gatt.getDevice().getDeviceName();
             List<UsbGattCallback> callbacks = mCallbacks.get(addr);
             if (callbacks != null && callbacks.size() > 0) {
@@ -572,11 +775,6 @@ public class GlobalUsbGatt {
                 }
             }
 
-            // notify waiting thread
-            synchronized (mGattCallbackLock) {
-                mGattCallbackCalled = true;
-                mGattCallbackLock.notifyAll();
-            }
             List<UsbGattCallback> callbacks = mCallbacks.get(addr);
             if (callbacks != null && callbacks.size() > 0) {
                 for (UsbGattCallback callback : callbacks) {
@@ -592,7 +790,7 @@ public class GlobalUsbGatt {
     }
 
     public List<UsbGattCallback> getCallback(final String addr) {
-        return mCallbacks != null ? mCallbacks.get(addr) : null;
+        return mCallbacks.get(addr);
     }
 
     public UsbGatt getBluetoothGatt(final String addr) {
@@ -603,16 +801,14 @@ public class GlobalUsbGatt {
      * register a callback
      */
     public void registerCallback(final String addr, UsbGattCallback callback) {
-        List<UsbGattCallback> callbacks = getCallback(addr);
+        CopyOnWriteArrayList<UsbGattCallback> callbacks = mCallbacks.get(addr);
         if (callbacks == null) {
-            callbacks = new CopyOnWriteArrayList<>();
-            callbacks.add(callback);
-            mCallbacks.put(addr, callbacks);
-        } else if (!(callbacks.contains(callback))) {
-            // register a callback
-            callbacks.add(callback);
-            mCallbacks.put(addr, callbacks);
+            CopyOnWriteArrayList<UsbGattCallback> newCallbacks = new CopyOnWriteArrayList<>();
+            callbacks = mCallbacks.putIfAbsent(addr, newCallbacks);
+            if (callbacks == null) callbacks = newCallbacks;
         }
+        // register a callback
+        callbacks.addIfAbsent(callback);
 
         Log.d(TAG, "addr: " + addr + ", size = " + callbacks.size());
     }
@@ -625,20 +821,16 @@ public class GlobalUsbGatt {
         }
 
         // unregister a callback
-        if (callbacks.contains(callback)) {
+        if (callbacks.remove(callback)) {
             Log.d(TAG, "unregister a callback, addr= " + addr);
-            // unregister a callback
-            callbacks.remove(callback);
-            mCallbacks.put(addr, callbacks);
         }
     }
 
     public void unRegisterAllCallback(final String addr) {
-        if (mCallbacks.get(addr) == null) {
+        if (mCallbacks.remove(addr) == null) {
             Log.w(TAG, "mCallbacks.get(addr) == null");
             return;
         }
         Log.d(TAG,"addr: " + addr);
-        mCallbacks.remove(addr);
     }
 }
@@ -4,25 +4,51 @@ import android.content.Context;
 import android.hardware.usb.UsbDevice;
 import android.util.Log;
 
+import com.realsil.sdk.core.usb.connector.BaseRequest;
 import com.realsil.sdk.core.usb.connector.LocalUsbConnector;
+import com.realsil.sdk.core.usb.connector.UsbConfig;
 import com.realsil.sdk.core.usb.connector.UsbError;
+import com.realsil.sdk.core.usb.connector.att.AttPduErrorCodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.callback.ExchangeMtuRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ExecuteWriteRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.OnReceiveServerIndicationCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.PrepareWriteRequestCallback;
 import com.realsil.sdk.core.usb.connector.att.callback.ReadAttributeRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadBlobRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadMultipleRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadMultipleVariableRequestCallback;
 import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeCommandCallback;
 import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.impl.ExchangeMtuRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ExecuteWriteRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.PrepareWriteRequest;
 import com.realsil.sdk.core.usb.connector.att.impl.ReadAttributeRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadBlobRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadMultipleRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadMultipleVariableRequest;
 import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeCommand;
 import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeRequest;
 import com.realsil.sdk.core.usb.connector.callback.OnUsbDeviceStatusChangeCallback;
-import com.realsil.sdk.core.usb.connector.cmd.callback.ExchangeMtuRequestCallback;
 import com.realsil.sdk.core.usb.connector.cmd.callback.QueryBTConnectStateRequestCallback;
 import com.realsil.sdk.core.usb.connector.cmd.callback.ReadDongleConfigRequestCallback;
-import com.realsil.sdk.core.usb.connector.cmd.impl.ExchangeMtuRequest;
 import com.realsil.sdk.core.usb.connector.cmd.impl.QueryBTConnectStateRequest;
 import com.realsil.sdk.core.usb.connector.cmd.impl.ReadDongleConfigRequest;
 
+import java.io.InputStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Public API for the USB GATT Profile.
@@ -115,11 +141,89 @@ public final class UsbGatt {
      */
     public static final int GATT_FAILURE = 0x101;
 
+    /**
+     * A write was replaced by a later write to the same characteristic before it was sent,
+     * see {@link UsbGattCharacteristic#setWriteCoalescingEnabled(boolean)}.
+     */
+    public static final int GATT_WRITE_COALESCED = 0x102;
+
     private Context mContext = null;
 
     private UsbDevice mDevice;
 
-    private List<UsbGattCharacteristic> mCharacteristics;
+    /**
+     * The connector bound to {@link #mDevice}, each gatt client owns its own usb connection.
+     */
+    private final LocalUsbConnector mUsbConnector;
+
+    /**
+     * Indexed snapshot of the characteristics and services, replaced as a whole whenever they change.
+     */
+    private volatile UsbGattAttributeDatabase mDatabase = UsbGattAttributeDatabase.EMPTY;
+    private final    Object                   mDatabaseLock = new Object();
+
+    /**
+     * The default ATT MTU before an MTU exchange.
+     */
+    private static final int ATT_DEFAULT_MTU = 23;
+
+    /**
+     * Initial capacity of the buffer used to collect a long attribute value.
+     */
+    private static final int LONG_READ_INITIAL_CAPACITY = 512;
+
+    /**
+     * The value offset of a Read Blob Request is a 2 octets field.
+     */
+    private static final int MAX_LONG_READ_VALUE_OFFSET = 0xFFFF;
+
+    /**
+     * The effective ATT MTU of current connection, reset to {@link #ATT_DEFAULT_MTU} once disconnected.
+     */
+    private volatile int mMtu = ATT_DEFAULT_MTU;
+
+    private final Object mReliableWriteLock = new Object();
+
+    /**
+     * The attribute database walk started by {@link #discoverServices(List)}.
+     */
+    private volatile UsbGattDiscovery mDiscovery;
+
+    /**
+     * The transaction started by {@link #beginReliableWrite()}, null if there is no reliable write in progress.
+     */
+    private QueuedWriteTransaction mReliableWriteTransaction;
+
+    /**
+     * The server keeps a single prepare queue for the client, so the queued write transactions are executed
+     * one by one, the later ones wait here until the executing one has finished.
+     * Guarded by {@link #mReliableWriteLock}.
+     */
+    private final ArrayDeque<QueuedWriteTransaction> mPendingWriteTransactions = new ArrayDeque<>();
+
+    /**
+     * The queued write transaction whose requests are being sent, guarded by {@link #mReliableWriteLock}.
+     */
+    private QueuedWriteTransaction mExecutingWriteTransaction;
+
+    /**
+     * Set once the server responds a Read Multiple Variable Length Request with "Request Not Supported",
+     * all the following multiple reads will fall back to Read Multiple Requests.
+     * It is written from the connector callback and read by the caller threads.
+     */
+    private volatile boolean mReadMultipleVariableUnsupported;
+
+    /**
+     * Set once the server responds a Read Multiple Request with "Request Not Supported",
+     * all the following multiple reads will fall back to single reads.
+     * It is written from the connector callback and read by the caller threads.
+     */
+    private volatile boolean mReadMultipleUnsupported;
+
+    /**
+     * The latest known values of the characteristics on current connection.
+     */
+    private final UsbGattValueCache mValueCache = new UsbGattValueCache();
 
 
     private final Object mStateLock = new Object();
@@ -132,10 +236,23 @@ public final class UsbGatt {
      */
     private UsbGattCallback mUsbGattCallback;
 
+    /**
+     * Waits for the teardown of {@link #disconnect(long)}, so that several devices can be closed at the same time
+     * without blocking the callers or the event loops.
+     */
+    private static final ExecutorService DISCONNECT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "UsbGattDisconnect");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     public UsbGatt(UsbDevice mDevice) {
         this.mDevice = mDevice;
+        this.mUsbConnector = LocalUsbConnector.getInstance(mDevice);
         mConnState = CONN_STATE_IDLE;
-        mCharacteristics = new ArrayList<UsbGattCharacteristic>();
     }
 
 
@@ -163,20 +280,11 @@ public final class UsbGatt {
      *
      * <p>Requires {@link android.Manifest.permission#BLUETOOTH} permission.
      *
-     * @return List of services on the remote device. Returns an empty list if service discovery has
-     * not yet been performed.
+     * @return Unmodifiable list of characteristics on the remote device. Returns an empty list if service
+     * discovery has not yet been performed.
      */
     public List<UsbGattCharacteristic> getCharacteristics() {
-        List<UsbGattCharacteristic> result =
-                new ArrayList<>();
-
-        for (UsbGattCharacteristic service : mCharacteristics) {
-//            if (service.getDevice().equals(mDevice)) {
-            result.add(service);
-//            }
-        }
-
-        return result;
+        return mDatabase.getCharacteristics();
     }
 
     /**
@@ -196,17 +304,34 @@ public final class UsbGatt {
      * the remote device.
      */
     public UsbGattCharacteristic getCharacteristic(UUID uuid) {
-        if (mCharacteristics == null || mCharacteristics.size() <= 0) {
-            return null;
-        }
-        for (UsbGattCharacteristic service : mCharacteristics) {
-//            if (service.getDevice().equals(mDevice) && service.getUuid().equals(uuid)) {
-            if (service.getUuid().equals(uuid)) {
-                return service;
+        return mDatabase.getCharacteristic(uuid);
+    }
+
+    /**
+     * Returns the {@link UsbGattCharacteristic} of the given attribute handle.
+     *
+     * @param handle handle of the characteristic value
+     * @return the characteristic, or null if the handle is unknown.
+     */
+    public UsbGattCharacteristic getCharacteristic(int handle) {
+        return mDatabase.getCharacteristic(handle);
+    }
+
+    /**
+     * Rebuild the attribute database.
+     *
+     * @param characteristics the new characteristics configured in the usb dongle, null to keep the current ones.
+     */
+    private void updateDatabase(List<UsbGattCharacteristic> characteristics) {
+        synchronized (mDatabaseLock) {
+            if (characteristics == null) {
+                characteristics = mDatabase.getCharacteristics();
             }
+            UsbGattDiscovery discovery = mDiscovery;
+            List<UsbGattService> services = discovery == null
+                    ? Collections.<UsbGattService>emptyList() : discovery.getServices();
+            mDatabase = new UsbGattAttributeDatabase(characteristics, services);
         }
-
-        return null;
     }
 
     /**
@@ -214,160 +339,1249 @@ public final class UsbGatt {
      *
      * <p>This is an asynchronous operation. The result of the read operation
      * is reported by the {@link UsbGattCallback#onCharacteristicRead}
-     * callback.
+     * callback. A value longer than a single response is read part by part
+     * with Read Blob Requests and reported once as a whole.
      *
      * <p>Requires {@link android.Manifest.permission#BLUETOOTH} permission.
      *
+     * <p>If a cache TTL has been set by {@link UsbGattCharacteristic#setCacheTtl(long)}, a value
+     * read, written or notified within the TTL is reported from memory without a round trip.
+     *
      * @param characteristic Characteristic to read from the remote device
      * @return true, if the read operation was initiated successfully
      */
     public boolean readCharacteristic(UsbGattCharacteristic characteristic) {
+        return readCharacteristic(characteristic, false);
+    }
+
+    /**
+     * Reads the requested characteristic from the associated remote device.
+     *
+     * @param characteristic Characteristic to read from the remote device
+     * @param bypassCache    true to always read the value from the remote device, even if the cached value is fresh
+     * @return true, if the read operation was initiated successfully
+     * @see #readCharacteristic(UsbGattCharacteristic)
+     */
+    public boolean readCharacteristic(UsbGattCharacteristic characteristic, boolean bypassCache) {
+        return readCharacteristic(characteristic, bypassCache, null);
+    }
+
+    /**
+     * Reads the requested characteristic, and reports the result of this read to its own callback as well.
+     *
+     * @param operationCallback callback of this read, null if the result is only reported to {@link UsbGattCallback}.
+     * @see #readCharacteristic(UsbGattCharacteristic, boolean)
+     */
+    boolean readCharacteristic(UsbGattCharacteristic characteristic, boolean bypassCache, OperationCallback operationCallback) {
         if (characteristic == null) {
             return false;
         }
         if (VDBG) {
             Log.d(TAG, "readCharacteristic() - uuid: " + characteristic.getUuid());
         }
+        if (!bypassCache && readCachedCharacteristic(characteristic, operationCallback)) {
+            return true;
+        }
         // Add(read detail info of attribute by characteristic)
-        readAttributeRequest(characteristic);
+        readAttributeRequest(characteristic, operationCallback);
         return true;
     }
 
+    /**
+     * Receives the result of a single read or write, after it has been reported to {@link UsbGattCallback}.
+     * <p>The callbacks of {@link UsbGattCallback} can not tell which operation a result belongs to when several
+     * operations on the same characteristic are in flight, this one is bound to the operation which it is passed to.</p>
+     */
+    interface OperationCallback {
+
+        /**
+         * @param status {@link #GATT_SUCCESS} or the gatt status of the failure.
+         * @param value  the value read, null for a write or a failed read.
+         */
+        void onOperationCompleted(int status, byte[] value);
+    }
 
     /**
-     * Call this method to read an attribute from the server.
+     * Report the cached value of the characteristic if it is fresh enough.
+     * <p>The callback is invoked on the event loop as a read from the remote device, so the order of
+     * the callbacks is the same as the order of the reads.</p>
      *
-     * @param characteristic characteristic to be read from the server.
+     * @param characteristic characteristic to be read.
+     * @return true if the value is served from the cache.
      */
-    private void readAttributeRequest(UsbGattCharacteristic characteristic) {
-        short att_handle = (short) characteristic.getInstanceId();
+    private boolean readCachedCharacteristic(UsbGattCharacteristic characteristic, final OperationCallback operationCallback) {
+        final byte[] value = mValueCache.get(characteristic.getInstanceId(), characteristic.getCacheTtl());
+        if (value == null) return false;
+
         final UsbGattCharacteristic read_characteristic = characteristic;
+        mUsbConnector.getEventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                reportCharacteristicRead(read_characteristic, UsbGatt.GATT_SUCCESS, value, operationCallback);
+            }
+        });
+        return true;
+    }
+
+
+    /**
+     * Call this method to read an attribute from the server.
+     *
+     * @param characteristic    characteristic to be read from the server.
+     * @param operationCallback callback of this read, or null.
+     */
+    private void readAttributeRequest(UsbGattCharacteristic characteristic, OperationCallback operationCallback) {
+        // The request is returned to the pool by the connector once the response has been parsed.
+        ReadAttributeRequest readRequest = ReadAttributeRequest.obtain(characteristic.getInstanceId());
+        readRequest.setRecycleOnCompletion(true);
+        readRequest.addReadAttributeRequestCallback(operationCallback == null ? getReadCallback(characteristic)
+                : new CharacteristicReadCallback(characteristic, operationCallback));
+        mUsbConnector.sendRequest(readRequest);
+    }
+
+    /**
+     * Get the read callback of the characteristic, it is created by the first read and reused by the later ones.
+     */
+    private CharacteristicReadCallback getReadCallback(UsbGattCharacteristic characteristic) {
+        ReadAttributeRequestCallback callback = characteristic.mReadRequestCallback;
+        if (callback instanceof CharacteristicReadCallback && ((CharacteristicReadCallback) callback).getGatt() == this) {
+            return (CharacteristicReadCallback) callback;
+        }
+        CharacteristicReadCallback readCallback = new CharacteristicReadCallback(characteristic, null);
+        characteristic.mReadRequestCallback = readCallback;
+        return readCallback;
+    }
+
+    /**
+     * Report the result of the reads of a characteristic to {@link UsbGattCallback#onCharacteristicRead}.
+     * <p>It keeps no state of a single read, so the same instance is shared by all the reads of the characteristic.</p>
+     */
+    private class CharacteristicReadCallback extends ReadAttributeRequestCallback {
+
+        private final UsbGattCharacteristic mCharacteristic;
+
+        /**
+         * Callback of a single read, the instance is not shared if it is not null.
+         */
+        private final OperationCallback mOperationCallback;
+
+        CharacteristicReadCallback(UsbGattCharacteristic characteristic, OperationCallback operationCallback) {
+            mCharacteristic = characteristic;
+            mOperationCallback = operationCallback;
+        }
+
+        UsbGatt getGatt() {
+            return UsbGatt.this;
+        }
+
+        @Override
+        public void onReadSuccess(byte[] attributeValue) {
+            super.onReadSuccess(attributeValue);
+            if (attributeValue.length >= getMaxReadValueLength()) {
+                // The value may be longer than a single response, read the rest of it by offset.
+                new LongReadOperation(mCharacteristic, attributeValue, mOperationCallback).readNextPart();
+                return;
+            }
+            if (mCharacteristic.getCacheTtl() > 0) {
+                mValueCache.put(mCharacteristic.getInstanceId(), attributeValue);
+            }
+            reportCharacteristicRead(mCharacteristic, UsbGatt.GATT_SUCCESS, attributeValue, mOperationCallback);
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            reportCharacteristicRead(mCharacteristic, UsbGatt.GATT_FAILURE, null, mOperationCallback);
+        }
+
+        @Override
+        public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+            super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+            reportCharacteristicRead(mCharacteristic, getGattErrorCode(error_code), null, mOperationCallback);
+        }
+
+        @Override
+        public void onReceiveTimeout() {
+            super.onReceiveTimeout();
+            reportCharacteristicRead(mCharacteristic, UsbGatt.GATT_FAILURE, null, mOperationCallback);
+        }
+    }
+
+    /**
+     * Report the result of a read to {@link UsbGattCallback#onCharacteristicRead} and to the callback of the read.
+     *
+     * @param value the value read, null if the read failed.
+     */
+    private void reportCharacteristicRead(UsbGattCharacteristic characteristic, int status, byte[] value,
+                                          OperationCallback operationCallback) {
+        // The value is kept by the characteristic even if nobody listens the read.
+        if (value != null) characteristic.setValue(value);
+        if (mUsbGattCallback != null) {
+            mUsbGattCallback.onCharacteristicRead(UsbGatt.this, characteristic, status);
+        }
+        if (operationCallback != null) operationCallback.onOperationCompleted(status, value);
+    }
+
+    /**
+     * Returns the effective ATT MTU of current connection.
+     *
+     * @return the MTU negotiated by {@link #requestMtu(int)}, or the default MTU (23) if it has not been negotiated.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * Get the maximum length of an ATT PDU of current connection.
+     *
+     * @return the effective ATT MTU, limited by the length of a single usb report.
+     */
+    private int getMaxAttPduLength() {
+        return Math.min(mMtu, UsbConfig.MAX_ATT_PDU_LENGTH);
+    }
+
+    /**
+     * Get the maximum length of the attribute value which can be carried by a Read Response or Read Blob Response.
+     *
+     * @return ATT_MTU - 1, limited by the length of a single usb report.
+     */
+    private int getMaxReadValueLength() {
+        return getMaxAttPduLength() - AttPduParamLengthDefine.LENGTH_ATT_OPCODE;
+    }
+
+    /**
+     * Read the rest of a long attribute value by consecutive {@link ReadBlobRequest}s, the next part is requested
+     * as soon as the previous part is received, and all the parts are appended to a growable buffer.
+     */
+    private class LongReadOperation extends ReadBlobRequestCallback {
+
+        private final UsbGattCharacteristic mCharacteristic;
+
+        private final OperationCallback mOperationCallback;
+
+        private byte[] mBuffer;
+
+        private int mLength;
+
+        LongReadOperation(UsbGattCharacteristic characteristic, byte[] firstPart, OperationCallback operationCallback) {
+            mCharacteristic = characteristic;
+            mOperationCallback = operationCallback;
+            mBuffer = new byte[Math.max(LONG_READ_INITIAL_CAPACITY, firstPart.length * 2)];
+            append(firstPart, 0, firstPart.length);
+        }
+
+        private void append(byte[] buffer, int offset, int length) {
+            if (mLength + length > mBuffer.length) {
+                byte[] newBuffer = new byte[Math.max(mBuffer.length * 2, mLength + length)];
+                System.arraycopy(mBuffer, 0, newBuffer, 0, mLength);
+                mBuffer = newBuffer;
+            }
+            System.arraycopy(buffer, offset, mBuffer, mLength, length);
+            mLength += length;
+        }
+
+        void readNextPart() {
+            if (mLength > MAX_LONG_READ_VALUE_OFFSET) {
+                // The value offset can not be carried by the request.
+                finish(UsbGatt.GATT_SUCCESS);
+                return;
+            }
+            ReadBlobRequest readBlobRequest = new ReadBlobRequest(mCharacteristic.getInstanceId(), mLength);
+            readBlobRequest.addReadBlobRequestCallback(this);
+            mUsbConnector.sendRequest(readBlobRequest);
+        }
+
+        private void finish(int status) {
+            byte[] value = null;
+            if (status == UsbGatt.GATT_SUCCESS) {
+                value = new byte[mLength];
+                System.arraycopy(mBuffer, 0, value, 0, mLength);
+                if (mCharacteristic.getCacheTtl() > 0) {
+                    mValueCache.put(mCharacteristic.getInstanceId(), value);
+                }
+            }
+            reportCharacteristicRead(mCharacteristic, status, value, mOperationCallback);
+        }
+
+        @Override
+        public void onReadSuccess(byte[] buffer, int offset, int length) {
+            super.onReadSuccess(buffer, offset, length);
+            append(buffer, offset, length);
+            if (length < getMaxReadValueLength()) {
+                finish(UsbGatt.GATT_SUCCESS);
+            } else {
+                readNextPart();
+            }
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            finish(UsbGatt.GATT_FAILURE);
+        }
+
+        @Override
+        public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+            super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+            if (error_code == AttPduErrorCodeDefine.ATTRIBUTE_NOT_LONG || error_code == AttPduErrorCodeDefine.INVALID_OFFSET) {
+                // The length of the value is exactly a multiple of the part length, all of it has been read.
+                finish(UsbGatt.GATT_SUCCESS);
+            } else {
+                finish(getGattErrorCode(error_code));
+            }
+        }
+
+        @Override
+        public void onReceiveTimeout() {
+            super.onReceiveTimeout();
+            finish(UsbGatt.GATT_FAILURE);
+        }
+    }
+
+    /**
+     * Reads a list of characteristics from the associated remote device.
+     *
+     * <p>As many handles as fit in the ATT MTU are packed into one Read Multiple Variable Length Request,
+     * the values in the response are split back out and reported by the {@link UsbGattCallback#onCharacteristicRead}
+     * callback of each characteristic, in the order of the list. A value truncated by the ATT MTU is read again
+     * by a single read request. If the server does not support the Read Multiple Variable Length Request, the
+     * characteristics whose value has been read before are read by a Read Multiple Request, as the length of
+     * their values is known, with one more characteristic as the last variable-length entry. The others, or all
+     * of them if the server does not support the Read Multiple Request either, are read one by one.
+     *
+     * @param characteristics Characteristics to read from the remote device
+     * @return true, if the read operation was initiated successfully
+     */
+    public boolean readCharacteristics(List<UsbGattCharacteristic> characteristics) {
+        if (characteristics == null || characteristics.isEmpty()) {
+            return false;
+        }
+        for (UsbGattCharacteristic characteristic : characteristics) {
+            if (characteristic == null) {
+                return false;
+            }
+        }
+        if (VDBG) {
+            Log.d(TAG, "readCharacteristics() - count: " + characteristics.size());
+        }
+
+        List<UsbGattCharacteristic> uncachedCharacteristics = new ArrayList<>(characteristics.size());
+        for (UsbGattCharacteristic characteristic : characteristics) {
+            if (!readCachedCharacteristic(characteristic, null)) {
+                uncachedCharacteristics.add(characteristic);
+            }
+        }
+        characteristics = uncachedCharacteristics;
+
+        // Opcode(1B) + Set Of Handles(2B * n)
+        int max_pdu_length = getMaxAttPduLength();
+        int max_handle_count = (max_pdu_length - AttPduParamLengthDefine.LENGTH_ATT_OPCODE) / AttPduParamLengthDefine.LENGTH_ATT_HANDLE;
+        int index = 0;
+        while (index < characteristics.size()) {
+            int count = Math.min(max_handle_count, characteristics.size() - index);
+            List<UsbGattCharacteristic> batch = new ArrayList<>(characteristics.subList(index, index + count));
+            if (count < ReadMultipleRequest.MIN_HANDLE_COUNT) {
+                readAttributeRequests(batch);
+            } else if (mReadMultipleVariableUnsupported) {
+                readMultipleRequest(batch);
+            } else {
+                readMultipleVariableRequest(batch);
+            }
+            index += count;
+        }
+        return true;
+    }
+
+    /**
+     * Call this method to read a batch of attributes from the server by a single request.
+     *
+     * @param characteristics characteristics to be read from the server, two or more.
+     */
+    private void readMultipleVariableRequest(List<UsbGattCharacteristic> characteristics) {
+        final List<UsbGattCharacteristic> read_characteristics = characteristics;
+        int[] att_handles = new int[characteristics.size()];
+        for (int i = 0; i < att_handles.length; i++) {
+            att_handles[i] = characteristics.get(i).getInstanceId();
+        }
+
+        ReadMultipleVariableRequest readRequest = new ReadMultipleVariableRequest(att_handles);
+        readRequest.addReadMultipleVariableRequestCallback(new ReadMultipleVariableRequestCallback() {
+            @Override
+            public void onReadSuccess(int[] attributeLengths, byte[][] attributeValues, int count) {
+                super.onReadSuccess(attributeLengths, attributeValues, count);
+                for (int i = 0; i < read_characteristics.size(); i++) {
+                    UsbGattCharacteristic read_characteristic = read_characteristics.get(i);
+                    if (i >= count || attributeValues[i].length < attributeLengths[i]) {
+                        // The value is truncated or missing, read it alone.
+                        readAttributeRequest(read_characteristic, null);
+                    } else {
+                        reportMultipleRead(read_characteristic, attributeValues[i]);
+                    }
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                notifyCharacteristicsReadFailed(read_characteristics, UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.REQUEST_NOT_SUPPORTED) {
+                    // The server is older than Bluetooth 5.2, try the Read Multiple Request.
+                    mReadMultipleVariableUnsupported = true;
+                    readMultipleRequest(read_characteristics);
+                    return;
+                }
+                // Read the characteristics one by one, so the error of each characteristic can be reported.
+                readAttributeRequests(read_characteristics);
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                notifyCharacteristicsReadFailed(read_characteristics, UsbGatt.GATT_FAILURE);
+            }
+        });
+        mUsbConnector.sendRequest(readRequest);
+    }
+
+    /**
+     * Call this method to read a batch of attributes by a Read Multiple Request, whose response carries no length
+     * of the values. The characteristics whose value has been read before are packed with the length of that value,
+     * the first one of the others is packed as the last entry, which may have a variable length, and the rest are
+     * read one by one.
+     *
+     * @param characteristics characteristics to be read from the server, two or more.
+     */
+    private void readMultipleRequest(List<UsbGattCharacteristic> characteristics) {
+        if (mReadMultipleUnsupported) {
+            readAttributeRequests(characteristics);
+            return;
+        }
+
+        int max_value_length = getMaxReadValueLength();
+        final List<UsbGattCharacteristic> read_characteristics = new ArrayList<>(characteristics.size());
+        final List<UsbGattCharacteristic> single_characteristics = new ArrayList<>();
+        UsbGattCharacteristic variable_characteristic = null;
+        int fixed_length = 0;
+        for (UsbGattCharacteristic characteristic : characteristics) {
+            byte[] value = characteristic.getValue();
+            if (value != null && fixed_length + value.length <= max_value_length) {
+                read_characteristics.add(characteristic);
+                fixed_length += value.length;
+            } else if (variable_characteristic == null) {
+                variable_characteristic = characteristic;
+            } else {
+                single_characteristics.add(characteristic);
+            }
+        }
+        if (variable_characteristic != null) {
+            read_characteristics.add(variable_characteristic);
+        }
+        if (read_characteristics.size() < ReadMultipleRequest.MIN_HANDLE_COUNT) {
+            readAttributeRequests(characteristics);
+            return;
+        }
+
+        // The value lengths are taken before the request is sent, the values may be replaced meanwhile.
+        final int[] value_lengths = new int[read_characteristics.size()];
+        int[] att_handles = new int[read_characteristics.size()];
+        for (int i = 0; i < att_handles.length; i++) {
+            UsbGattCharacteristic characteristic = read_characteristics.get(i);
+            att_handles[i] = characteristic.getInstanceId();
+            value_lengths[i] = characteristic == variable_characteristic ? -1 : characteristic.getValue().length;
+        }
+
+        ReadMultipleRequest readRequest = new ReadMultipleRequest(att_handles);
+        readRequest.addReadMultipleRequestCallback(new ReadMultipleRequestCallback() {
+            @Override
+            public void onReadSuccess(byte[] setOfValues) {
+                super.onReadSuccess(setOfValues);
+                byte[][] values = splitSetOfValues(setOfValues, value_lengths);
+                if (values == null) {
+                    // The length of a value has changed, the values can not be split out.
+                    readAttributeRequests(read_characteristics);
+                    return;
+                }
+                for (int i = 0; i < values.length; i++) {
+                    if (value_lengths[i] < 0 && setOfValues.length >= getMaxReadValueLength()) {
+                        // The variable-length value may be truncated, read it alone.
+                        readAttributeRequest(read_characteristics.get(i), null);
+                    } else {
+                        reportMultipleRead(read_characteristics.get(i), values[i]);
+                    }
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                notifyCharacteristicsReadFailed(read_characteristics, UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.REQUEST_NOT_SUPPORTED) {
+                    mReadMultipleUnsupported = true;
+                }
+                // Read the characteristics one by one, so the error of each characteristic can be reported.
+                readAttributeRequests(read_characteristics);
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                notifyCharacteristicsReadFailed(read_characteristics, UsbGatt.GATT_FAILURE);
+            }
+        });
+        mUsbConnector.sendRequest(readRequest);
+        readAttributeRequests(single_characteristics);
+    }
+
+    /**
+     * Split the set of values in a Read Multiple Response.
+     *
+     * @param setOfValues  the concatenated values.
+     * @param valueLengths the lengths of the values, -1 for the last value if its length is variable.
+     * @return the values, or null if the set of values does not match the lengths.
+     */
+    static byte[][] splitSetOfValues(byte[] setOfValues, int[] valueLengths) {
+        byte[][] values = new byte[valueLengths.length][];
+        int offset = 0;
+        for (int i = 0; i < valueLengths.length; i++) {
+            int length = valueLengths[i] < 0 ? setOfValues.length - offset : valueLengths[i];
+            if (length < 0 || offset + length > setOfValues.length) return null;
+            values[i] = Arrays.copyOfRange(setOfValues, offset, offset + length);
+            offset += length;
+        }
+        return offset == setOfValues.length ? values : null;
+    }
+
+    private void readAttributeRequests(List<UsbGattCharacteristic> characteristics) {
+        for (UsbGattCharacteristic characteristic : characteristics) {
+            readAttributeRequest(characteristic, null);
+        }
+    }
+
+    /**
+     * Cache and report a value split out of a multiple read.
+     */
+    private void reportMultipleRead(UsbGattCharacteristic characteristic, byte[] value) {
+        if (characteristic.getCacheTtl() > 0) {
+            mValueCache.put(characteristic.getInstanceId(), value);
+        }
+        reportCharacteristicRead(characteristic, UsbGatt.GATT_SUCCESS, value, null);
+    }
+
+    private void notifyCharacteristicsReadFailed(List<UsbGattCharacteristic> characteristics, int status) {
+        if (mUsbGattCallback == null) return;
+        for (UsbGattCharacteristic characteristic : characteristics) {
+            mUsbGattCallback.onCharacteristicRead(UsbGatt.this, characteristic, status);
+        }
+    }
+
+    /**
+     * Writes a given characteristic and its values to the associated remote device.
+     *
+     * <p>Once the write operation has been completed, the
+     * {@link UsbGattCallback#onCharacteristicWrite} callback is invoked,
+     * reporting the result of the operation.
+     *
+     * <p>Requires {@link android.Manifest.permission#BLUETOOTH} permission.
+     *
+     * @param characteristic Characteristic to write on the remote device
+     * @return true, if the write operation was initiated successfully
+     */
+    public boolean writeCharacteristic(UsbGattCharacteristic characteristic) {
+        return writeCharacteristic(characteristic, null);
+    }
+
+    /**
+     * Writes the characteristic, and reports the result of this write to its own callback as well.
+     *
+     * @param operationCallback callback of this write, null if the result is only reported to {@link UsbGattCallback}.
+     * @see #writeCharacteristic(UsbGattCharacteristic)
+     */
+    boolean writeCharacteristic(UsbGattCharacteristic characteristic, OperationCallback operationCallback) {
+        if (characteristic == null || characteristic.getValue() == null) {
+            return false;
+        }
+
+        if (VDBG) {
+            Log.d(TAG, "writeCharacteristic() - uuid: " + characteristic.getUuid());
+        }
+
+        // The value on the server is unknown until the write has been acknowledged.
+        mValueCache.invalidate(characteristic.getInstanceId());
+
+        // Add(select write method by the write type)
+        int writeType = characteristic.getWriteType();
+        switch (writeType) {
+            case UsbGattCharacteristic.WRITE_TYPE_DEFAULT:
+                synchronized (mReliableWriteLock) {
+                    if (mReliableWriteTransaction != null) {
+                        return mReliableWriteTransaction.add(characteristic, operationCallback);
+                    }
+                }
+                if (characteristic.getValue().length > getMaxWriteValueLength()) {
+                    // The value can not be carried by a single Write Request.
+                    QueuedWriteTransaction transaction = new QueuedWriteTransaction(false);
+                    transaction.add(characteristic, operationCallback);
+                    transaction.execute();
+                } else {
+                    writeAttributeRequest(characteristic, operationCallback);
+                }
+                break;
+            case UsbGattCharacteristic.WRITE_TYPE_NO_RESPONSE:
+                if (characteristic.getValue().length > getMaxWriteValueLength()) {
+                    // A write command can not be split, the server would truncate the value.
+                    Log.w(TAG, "writeCharacteristic() - value is longer than " + getMaxWriteValueLength() + " bytes, mtu: " + mMtu);
+                    return false;
+                }
+                writeAttributeCommand(characteristic, operationCallback);
+                break;
+            case UsbGattCharacteristic.WRITE_TYPE_SIGNED:
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+
+    /**
+     * Call this method to write an attribute to the server.
+     * <p>Once the server response is received, the {@link WriteAttributeRequestCallback#onWriteSuccess()} callback
+     * is invoked, reporting the result of the operation.</p>
+     *
+     * @param characteristic characteristic to be written to the server.
+     */
+    private void writeAttributeRequest(UsbGattCharacteristic characteristic, OperationCallback operationCallback) {
+        byte[] att_value = characteristic.getValue();
+
+        WriteAttributeRequestCallback callback;
+        if (characteristic.getCacheTtl() > 0) {
+            // The value of the characteristic may be changed by the next write before this one is acknowledged.
+            callback = new CharacteristicWriteCallback(characteristic, Arrays.copyOf(att_value, att_value.length), operationCallback);
+        } else if (operationCallback != null) {
+            callback = new CharacteristicWriteCallback(characteristic, null, operationCallback);
+        } else {
+            callback = getWriteCallback(characteristic);
+        }
+
+        // The request is returned to the pool by the connector once the response has been parsed.
+        WriteAttributeRequest writeRequest = WriteAttributeRequest.obtain((short) characteristic.getInstanceId(), att_value);
+        writeRequest.setRecycleOnCompletion(true);
+        writeRequest.setCoalescing(characteristic.isWriteCoalescingEnabled());
+        writeRequest.addWriteAttributeRequestCallback(callback);
+        mUsbConnector.sendRequest(writeRequest);
+    }
+
+    /**
+     * Get the write callback of the characteristic, it is created by the first write and reused by the later ones.
+     */
+    private CharacteristicWriteCallback getWriteCallback(UsbGattCharacteristic characteristic) {
+        WriteAttributeRequestCallback callback = characteristic.mWriteRequestCallback;
+        if (callback instanceof CharacteristicWriteCallback && ((CharacteristicWriteCallback) callback).getGatt() == this) {
+            return (CharacteristicWriteCallback) callback;
+        }
+        CharacteristicWriteCallback writeCallback = new CharacteristicWriteCallback(characteristic, null, null);
+        characteristic.mWriteRequestCallback = writeCallback;
+        return writeCallback;
+    }
+
+    /**
+     * Report the result of the writes of a characteristic to {@link UsbGattCallback#onCharacteristicWrite}.
+     * <p>Without a written value or an operation callback it keeps no state of a single write, and the same
+     * instance is shared by all the writes of the characteristic.</p>
+     */
+    private class CharacteristicWriteCallback extends WriteAttributeRequestCallback {
+
+        private final UsbGattCharacteristic mCharacteristic;
+
+        /**
+         * Snapshot of the written value to be cached once acknowledged, null if the value is not cached.
+         */
+        private final byte[] mWrittenValue;
+
+        private final OperationCallback mOperationCallback;
+
+        CharacteristicWriteCallback(UsbGattCharacteristic characteristic, byte[] writtenValue, OperationCallback operationCallback) {
+            mCharacteristic = characteristic;
+            mWrittenValue = writtenValue;
+            mOperationCallback = operationCallback;
+        }
+
+        UsbGatt getGatt() {
+            return UsbGatt.this;
+        }
+
+        @Override
+        public void onWriteSuccess() {
+            super.onWriteSuccess();
+            // The cache may have been disabled after the write was sent.
+            if (mWrittenValue != null && mCharacteristic.getCacheTtl() > 0) {
+                mValueCache.put(mCharacteristic.getInstanceId(), mWrittenValue);
+            }
+            reportCharacteristicWrite(mCharacteristic, UsbGatt.GATT_SUCCESS, mOperationCallback);
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            reportCharacteristicWrite(mCharacteristic, getWriteFailedStatus(sendResult), mOperationCallback);
+        }
+
+        @Override
+        public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+            super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+            reportCharacteristicWrite(mCharacteristic, getGattErrorCode(error_code), mOperationCallback);
+        }
+
+        @Override
+        public void onReceiveTimeout() {
+            super.onReceiveTimeout();
+            reportCharacteristicWrite(mCharacteristic, UsbGatt.GATT_FAILURE, mOperationCallback);
+        }
+    }
+
+    /**
+     * Report the result of a write to {@link UsbGattCallback#onCharacteristicWrite} and to the callback of the write.
+     */
+    private void reportCharacteristicWrite(UsbGattCharacteristic characteristic, int status, OperationCallback operationCallback) {
+        if (mUsbGattCallback != null) {
+            mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, characteristic, status);
+        }
+        if (operationCallback != null) operationCallback.onOperationCompleted(status, null);
+    }
+
+    /**
+     * Get the maximum length of the attribute value which can be written by a single Write Request or
+     * Write Command, use it to size the packets written to the remote device (such as OTA packets).
+     * <p>A longer value is written part by part with a {@link #writeCharacteristic} in
+     * {@link UsbGattCharacteristic#WRITE_TYPE_DEFAULT}, and rejected in {@link UsbGattCharacteristic#WRITE_TYPE_NO_RESPONSE}.</p>
+     *
+     * @return ATT_MTU - 3, limited by the length of a single usb report.
+     */
+    public int getMaxWriteValueLength() {
+        return getMaxAttPduLength() - AttPduParamLengthDefine.LENGTH_ATT_OPCODE
+                - AttPduParamLengthDefine.LENGTH_ATT_HANDLE;
+    }
+
+    /**
+     * Create a writer which streams a large buffer to the characteristic with write commands,
+     * see {@link UsbGattStreamWriter}.
+     *
+     * @param characteristic characteristic to be written.
+     * @param data           data to be streamed, do not modify it until the stream has been completed.
+     * @param offset         start offset in the data.
+     * @param length         number of bytes to be streamed.
+     * @param callback       callback to receive the progress and the result.
+     * @return a writer which has not been started.
+     */
+    public UsbGattStreamWriter newStreamWriter(UsbGattCharacteristic characteristic, byte[] data, int offset, int length,
+                                               UsbGattStreamCallback callback) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", data length: " + data.length);
+        }
+        return new UsbGattStreamWriter(this, mUsbConnector, characteristic, data, offset, length, callback);
+    }
+
+    /**
+     * Create a writer which streams the data read from an input stream to the characteristic with write commands,
+     * see {@link UsbGattStreamWriter}.
+     *
+     * @param characteristic characteristic to be written.
+     * @param inputStream    stream to be read, it is not closed by the writer.
+     * @param callback       callback to receive the progress and the result.
+     * @return a writer which has not been started.
+     */
+    public UsbGattStreamWriter newStreamWriter(UsbGattCharacteristic characteristic, InputStream inputStream,
+                                               UsbGattStreamCallback callback) {
+        return new UsbGattStreamWriter(this, mUsbConnector, characteristic, inputStream, callback);
+    }
+
+    /**
+     * Execute an ordered list of characteristic reads and writes.
+     *
+     * <p>All the operations are queued at once and sent back-to-back in order, no other request is
+     * interleaved between them. The callbacks of the single operations are not invoked, the batch
+     * is completed once by {@link UsbGattCallback#onBatchCompleted(UsbGatt, UsbGattBatch, int)} with
+     * the result of each operation kept in the batch.
+     *
+     * @param batch operations to be executed, do not modify it until the batch has been completed.
+     * @return true, if the batch was initiated successfully
+     */
+    public boolean executeBatch(UsbGattBatch batch) {
+        if (batch == null || batch.size() == 0) {
+            return false;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            UsbGattBatch.Operation operation = batch.getOperation(i);
+            if (operation.getType() == UsbGattBatch.OPERATION_WRITE
+                    && operation.getValue().length > getMaxWriteValueLength()) {
+                Log.w(TAG, "executeBatch() - value of operation " + i + " is longer than " + getMaxWriteValueLength() + " bytes");
+                return false;
+            }
+        }
+        if (VDBG) {
+            Log.d(TAG, "executeBatch() - count: " + batch.size());
+        }
+        batch.reset();
+        new BatchExecution(batch).execute();
+        return true;
+    }
+
+    /**
+     * Sends the operations of a {@link UsbGattBatch} as one list of requests and collects their results.
+     * <p>The results are received on the event loop of the connector. Every request gets a result, the requests
+     * dropped by the connector after a response timeout are failed, so the batch is always completed.</p>
+     */
+    private final class BatchExecution {
+        private final UsbGattBatch      mBatch;
+        private final List<BaseRequest> mRequests;
+
+        private int     mCompletedCount;
+        private boolean mFinished;
+
+        BatchExecution(UsbGattBatch batch) {
+            mBatch = batch;
+            mRequests = new ArrayList<>(batch.size());
+        }
+
+        void execute() {
+            for (int i = 0; i < mBatch.size(); i++) {
+                UsbGattBatch.Operation operation = mBatch.getOperation(i);
+                short att_handle = (short) operation.getCharacteristic().getInstanceId();
+                // The requests are returned to the pools by the connector once they have completed.
+                if (operation.getType() == UsbGattBatch.OPERATION_READ) {
+                    ReadAttributeRequest readRequest = ReadAttributeRequest.obtain(att_handle);
+                    readRequest.setRecycleOnCompletion(true);
+                    readRequest.addReadAttributeRequestCallback(new BatchReadCallback(i));
+                    mRequests.add(readRequest);
+                } else {
+                    mValueCache.invalidate(operation.getCharacteristic().getInstanceId());
+                    WriteAttributeRequest writeRequest = WriteAttributeRequest.obtain(att_handle, operation.getValue());
+                    writeRequest.setRecycleOnCompletion(true);
+                    writeRequest.addWriteAttributeRequestCallback(new BatchWriteCallback(i));
+                    mRequests.add(writeRequest);
+                }
+            }
+            mUsbConnector.sendRequests(mRequests);
+        }
+
+        void onOperationCompleted(int index, int status, byte[] value) {
+            if (mFinished) return;
+            UsbGattBatch.Operation operation = mBatch.getOperation(index);
+            operation.complete(status, value);
+            if (status == UsbGatt.GATT_SUCCESS) {
+                UsbGattCharacteristic characteristic = operation.getCharacteristic();
+                // The value read from the server, or the value written to it.
+                byte[] serverValue = operation.getType() == UsbGattBatch.OPERATION_READ ? value : operation.getValue();
+                if (characteristic.getCacheTtl() > 0) {
+                    mValueCache.put(characteristic.getInstanceId(), serverValue);
+                }
+                if (operation.getType() == UsbGattBatch.OPERATION_READ) {
+                    characteristic.setValue(value);
+                }
+            } else if (mBatch.isStopOnError()) {
+                // The rest requests have not completed, they are still waiting in the queue or dropped by the
+                // connector. The removed ones are not recycled by the connector.
+                for (int i = index + 1; i < mRequests.size(); i++) {
+                    BaseRequest request = mRequests.get(i);
+                    if (mUsbConnector.removeRequest(request)) request.recycle();
+                }
+                finish();
+                return;
+            }
+            if (++mCompletedCount == mRequests.size()) {
+                finish();
+            }
+        }
+
+        private void finish() {
+            mFinished = true;
+            if (mUsbGattCallback != null) {
+                mUsbGattCallback.onBatchCompleted(UsbGatt.this, mBatch, mBatch.getStatus());
+            }
+        }
+
+        private final class BatchReadCallback extends ReadAttributeRequestCallback {
+            private final int mIndex;
+
+            BatchReadCallback(int index) {
+                mIndex = index;
+            }
 
-        ReadAttributeRequest readRequest = new ReadAttributeRequest(att_handle);
-        readRequest.addReadAttributeRequestCallback(new ReadAttributeRequestCallback() {
             @Override
             public void onReadSuccess(byte[] attributeValue) {
                 super.onReadSuccess(attributeValue);
-                if (mUsbGattCallback != null) {
-                    read_characteristic.setValue(attributeValue);
-                    mUsbGattCallback.onCharacteristicRead(UsbGatt.this, read_characteristic, UsbGatt.GATT_SUCCESS);
-                }
+                onOperationCompleted(mIndex, UsbGatt.GATT_SUCCESS, attributeValue);
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                onOperationCompleted(mIndex, UsbGatt.GATT_FAILURE, null);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                onOperationCompleted(mIndex, getGattErrorCode(error_code), null);
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                onOperationCompleted(mIndex, UsbGatt.GATT_FAILURE, null);
+            }
+        }
+
+        private final class BatchWriteCallback extends WriteAttributeRequestCallback {
+            private final int mIndex;
+
+            BatchWriteCallback(int index) {
+                mIndex = index;
+            }
+
+            @Override
+            public void onWriteSuccess() {
+                super.onWriteSuccess();
+                onOperationCompleted(mIndex, UsbGatt.GATT_SUCCESS, null);
             }
 
             @Override
             public void onSendFailed(int sendResult) {
                 super.onSendFailed(sendResult);
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicRead(UsbGatt.this, read_characteristic, UsbGatt.GATT_FAILURE);
-                }
+                onOperationCompleted(mIndex, UsbGatt.GATT_FAILURE, null);
             }
 
             @Override
             public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
                 super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicRead(UsbGatt.this, read_characteristic, getGattErrorCode(error_code));
-                }
+                onOperationCompleted(mIndex, getGattErrorCode(error_code), null);
             }
 
             @Override
             public void onReceiveTimeout() {
                 super.onReceiveTimeout();
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicRead(UsbGatt.this, read_characteristic, UsbGatt.GATT_FAILURE);
-                }
+                onOperationCompleted(mIndex, UsbGatt.GATT_FAILURE, null);
             }
-        });
-        LocalUsbConnector.getInstance().sendRequest(readRequest);
+        }
     }
 
     /**
-     * Writes a given characteristic and its values to the associated remote device.
+     * Initiates a reliable write transaction for a given remote device.
      *
-     * <p>Once the write operation has been completed, the
-     * {@link UsbGattCallback#onCharacteristicWrite} callback is invoked,
-     * reporting the result of the operation.
+     * <p>Once a reliable write transaction has been initiated, all calls
+     * to {@link #writeCharacteristic} (with {@link UsbGattCharacteristic#WRITE_TYPE_DEFAULT})
+     * are queued up, nothing is sent to the remote device until {@link #executeReliableWrite}
+     * is invoked. The values are sent with Prepare Write Requests, split by offset if they are
+     * longer than a single request, and written at once by an Execute Write Request.
      *
-     * <p>Requires {@link android.Manifest.permission#BLUETOOTH} permission.
+     * <p>Note: The values are sent from the buffers of the characteristics directly,
+     * do not modify them until the transaction has been completed.
      *
-     * @param characteristic Characteristic to write on the remote device
-     * @return true, if the write operation was initiated successfully
+     * @return true, if the reliable write transaction has been initiated
      */
-    public boolean writeCharacteristic(UsbGattCharacteristic characteristic) {
-        if (characteristic == null || characteristic.getValue() == null) {
-            return false;
+    public boolean beginReliableWrite() {
+        if (VDBG) {
+            Log.d(TAG, "beginReliableWrite()");
         }
+        synchronized (mReliableWriteLock) {
+            if (mReliableWriteTransaction != null && mReliableWriteTransaction.isExecuting()) {
+                return false;
+            }
+            mReliableWriteTransaction = new QueuedWriteTransaction(true);
+        }
+        return true;
+    }
 
+    /**
+     * Executes a reliable write transaction for a given remote device.
+     *
+     * <p>This function will commit all queued up characteristic write
+     * operations for a given remote device. Each value echoed by the remote device
+     * is verified, the transaction is cancelled if any of them is different.
+     *
+     * <p>A {@link UsbGattCallback#onCharacteristicWrite} callback is invoked once a
+     * characteristic has been prepared, and a {@link UsbGattCallback#onReliableWriteCompleted}
+     * callback is invoked to indicate whether the transaction has been executed correctly.
+     *
+     * <p>If another queued write is executing, the transaction is started once it has finished.
+     *
+     * @return true, if the request to execute the transaction has been sent
+     */
+    public boolean executeReliableWrite() {
         if (VDBG) {
-            Log.d(TAG, "writeCharacteristic() - uuid: " + characteristic.getUuid());
+            Log.d(TAG, "executeReliableWrite()");
         }
-
-        // Add(select write method by the write type)
-        int writeType = characteristic.getWriteType();
-        switch (writeType) {
-            case UsbGattCharacteristic.WRITE_TYPE_DEFAULT:
-                writeAttributeRequest(characteristic);
-                break;
-            case UsbGattCharacteristic.WRITE_TYPE_NO_RESPONSE:
-                writeAttributeCommand(characteristic);
-                break;
-            case UsbGattCharacteristic.WRITE_TYPE_SIGNED:
-                break;
-            default:
-                break;
+        QueuedWriteTransaction transaction;
+        synchronized (mReliableWriteLock) {
+            transaction = mReliableWriteTransaction;
+            if (transaction == null || transaction.isExecuting() || transaction.isEmpty()) {
+                return false;
+            }
         }
+        transaction.execute();
         return true;
     }
 
-
     /**
-     * Call this method to write an attribute to the server.
-     * <p>Once the server response is received, the {@link WriteAttributeRequestCallback#onWriteSuccess()} callback
-     * is invoked, reporting the result of the operation.</p>
+     * Cancels a reliable write transaction for a given device.
      *
-     * @param characteristic characteristic to be written to the server.
+     * <p>Calling this function will discard all queued characteristic write
+     * operations for a given remote device. If the transaction is executing,
+     * the values prepared on the remote device are cancelled.
      */
-    private void writeAttributeRequest(UsbGattCharacteristic characteristic) {
-        short att_handle = (short) characteristic.getInstanceId();
-        byte[] att_value = characteristic.getValue();
-        final UsbGattCharacteristic write_characteristic = characteristic;
+    public void abortReliableWrite() {
+        if (VDBG) {
+            Log.d(TAG, "abortReliableWrite()");
+        }
+        synchronized (mReliableWriteLock) {
+            if (mReliableWriteTransaction != null) {
+                mReliableWriteTransaction.abort();
+                mReliableWriteTransaction = null;
+            }
+        }
+    }
 
-        WriteAttributeRequest writeRequest = new WriteAttributeRequest(att_handle, att_value);
-        writeRequest.addWriteAttributeRequestCallback(new WriteAttributeRequestCallback() {
+    /**
+     * A queued write transaction, the values of the characteristics are sent part by part with
+     * {@link PrepareWriteRequest}s, the next part is sent once the echoed part has been verified,
+     * then all of them are written by an {@link ExecuteWriteRequest}.
+     * <p>The state is guarded by {@link #mReliableWriteLock}, which is also held by the callers of
+     * {@link #beginReliableWrite()} and {@link #writeCharacteristic(UsbGattCharacteristic)}.</p>
+     */
+    private class QueuedWriteTransaction extends PrepareWriteRequestCallback {
 
-            @Override
-            public void onWriteSuccess() {
-                super.onWriteSuccess();
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, UsbGatt.GATT_SUCCESS);
+        /**
+         * true for a transaction started by {@link #beginReliableWrite()}, false for a single long write.
+         */
+        private final boolean mReliable;
+
+        private final List<UsbGattCharacteristic> mCharacteristics = new ArrayList<>();
+
+        /**
+         * The callbacks of the writes of {@link #mCharacteristics}, an entry is cleared once it has been invoked.
+         */
+        private final List<OperationCallback> mOperationCallbacks = new ArrayList<>();
+
+        private int mIndex;
+
+        private int mValueOffset;
+
+        private boolean mExecuting;
+
+        private boolean mAborted;
+
+        private boolean mFinished;
+
+        QueuedWriteTransaction(boolean reliable) {
+            mReliable = reliable;
+        }
+
+        boolean add(UsbGattCharacteristic characteristic, OperationCallback operationCallback) {
+            synchronized (mReliableWriteLock) {
+                if (mExecuting) return false;
+                mCharacteristics.add(characteristic);
+                mOperationCallbacks.add(operationCallback);
+                return true;
+            }
+        }
+
+        boolean isEmpty() {
+            synchronized (mReliableWriteLock) {
+                return mCharacteristics.isEmpty();
+            }
+        }
+
+        boolean isExecuting() {
+            synchronized (mReliableWriteLock) {
+                return mExecuting;
+            }
+        }
+
+        /**
+         * Start sending the values, or wait until the executing transaction has finished.
+         */
+        void execute() {
+            synchronized (mReliableWriteLock) {
+                mExecuting = true;
+                if (mExecutingWriteTransaction != null) {
+                    mPendingWriteTransactions.offer(this);
+                    return;
                 }
+                mExecutingWriteTransaction = this;
+                sendNextPart();
             }
+        }
 
-            @Override
-            public void onSendFailed(int sendResult) {
-                super.onSendFailed(sendResult);
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, UsbGatt.GATT_FAILURE);
+        void abort() {
+            synchronized (mReliableWriteLock) {
+                mAborted = true;
+                // Nothing has been prepared on the server yet.
+                if (mPendingWriteTransactions.remove(this)) finish(UsbGatt.GATT_FAILURE);
+            }
+        }
+
+        private void sendNextPart() {
+            if (mAborted) {
+                // Drop the values which have been prepared on the server.
+                sendExecuteWrite(ExecuteWriteRequest.FLAG_CANCEL_ALL, UsbGatt.GATT_FAILURE);
+                return;
+            }
+            if (mIndex == mCharacteristics.size()) {
+                sendExecuteWrite(ExecuteWriteRequest.FLAG_WRITE_ALL, UsbGatt.GATT_SUCCESS);
+                return;
+            }
+            UsbGattCharacteristic characteristic = mCharacteristics.get(mIndex);
+            byte[] value = characteristic.getValue();
+            int max_part_length = getMaxWriteValueLength() - AttPduParamLengthDefine.LENGTH_ATT_VALUE_OFFSET;
+            int part_length = Math.min(max_part_length, value.length - mValueOffset);
+            PrepareWriteRequest prepareWriteRequest = new PrepareWriteRequest(characteristic.getInstanceId(),
+                    mValueOffset, value, mValueOffset, part_length);
+            prepareWriteRequest.addPrepareWriteRequestCallback(this);
+            mUsbConnector.sendRequest(prepareWriteRequest);
+            mValueOffset += part_length;
+        }
+
+        /**
+         * Send an Execute Write Request to finish the transaction.
+         *
+         * @param flags  write or cancel the prepared values.
+         * @param status the result reported if the Execute Write Response is received.
+         */
+        private void sendExecuteWrite(byte flags, final int status) {
+            ExecuteWriteRequest executeWriteRequest = new ExecuteWriteRequest(flags);
+            executeWriteRequest.addExecuteWriteRequestCallback(new ExecuteWriteRequestCallback() {
+                @Override
+                public void onExecuteWriteSuccess() {
+                    super.onExecuteWriteSuccess();
+                    finishLocked(status);
+                }
+
+                @Override
+                public void onSendFailed(int sendResult) {
+                    super.onSendFailed(sendResult);
+                    finishLocked(UsbGatt.GATT_FAILURE);
                 }
+
+                @Override
+                public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                    super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                    finishLocked(getGattErrorCode(error_code));
+                }
+
+                @Override
+                public void onReceiveTimeout() {
+                    super.onReceiveTimeout();
+                    finishLocked(UsbGatt.GATT_FAILURE);
+                }
+            });
+            mUsbConnector.sendRequest(executeWriteRequest);
+        }
+
+        private void finishLocked(int status) {
+            synchronized (mReliableWriteLock) {
+                finish(status);
             }
+        }
 
-            @Override
-            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
-                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, getGattErrorCode(error_code));
+        /**
+         * Report the result once, and start the next pending transaction.
+         */
+        private void finish(int status) {
+            if (mFinished) return;
+            mFinished = true;
+            if (mReliableWriteTransaction == this) mReliableWriteTransaction = null;
+            if (mReliable) {
+                if (mUsbGattCallback != null) mUsbGattCallback.onReliableWriteCompleted(UsbGatt.this, status);
+                // The writes which have not been reported, such as the ones of an aborted transaction.
+                for (int i = 0; i < mCharacteristics.size(); i++) {
+                    reportWrite(i, status, false);
                 }
+            } else {
+                reportWrite(0, status, true);
             }
+            if (mExecutingWriteTransaction != this) return;
+            mExecutingWriteTransaction = mPendingWriteTransactions.poll();
+            if (mExecutingWriteTransaction != null) mExecutingWriteTransaction.sendNextPart();
+        }
 
-            @Override
-            public void onReceiveTimeout() {
-                super.onReceiveTimeout();
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, UsbGatt.GATT_FAILURE);
+        /**
+         * Report the result of a characteristic once.
+         *
+         * @param toUsbGattCallback whether {@link UsbGattCallback#onCharacteristicWrite} is invoked as well.
+         */
+        private void reportWrite(int index, int status, boolean toUsbGattCallback) {
+            if (toUsbGattCallback && mUsbGattCallback != null) {
+                mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, mCharacteristics.get(index), status);
+            }
+            OperationCallback operationCallback = mOperationCallbacks.set(index, null);
+            if (operationCallback != null) operationCallback.onOperationCompleted(status, null);
+        }
+
+        /**
+         * Report the failure of the current characteristic and cancel the prepared values.
+         */
+        private void cancel(int status) {
+            if (mReliable) reportWrite(mIndex, status, true);
+            sendExecuteWrite(ExecuteWriteRequest.FLAG_CANCEL_ALL, status);
+        }
+
+        @Override
+        public void onPrepareWriteSuccess() {
+            super.onPrepareWriteSuccess();
+            synchronized (mReliableWriteLock) {
+                UsbGattCharacteristic characteristic = mCharacteristics.get(mIndex);
+                if (mValueOffset >= characteristic.getValue().length) {
+                    if (mReliable) reportWrite(mIndex, UsbGatt.GATT_SUCCESS, true);
+                    mIndex++;
+                    mValueOffset = 0;
                 }
+                sendNextPart();
             }
-        });
-        LocalUsbConnector.getInstance().sendRequest(writeRequest);
+        }
+
+        @Override
+        public void onPrepareWriteEchoMismatch() {
+            super.onPrepareWriteEchoMismatch();
+            synchronized (mReliableWriteLock) {
+                cancel(UsbGatt.GATT_FAILURE);
+            }
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            synchronized (mReliableWriteLock) {
+                cancel(UsbGatt.GATT_FAILURE);
+            }
+        }
+
+        @Override
+        public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+            super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+            synchronized (mReliableWriteLock) {
+                cancel(getGattErrorCode(error_code));
+            }
+        }
+
+        @Override
+        public void onReceiveTimeout() {
+            super.onReceiveTimeout();
+            synchronized (mReliableWriteLock) {
+                // The server may not respond any more, try to drop the prepared values but do not wait for it.
+                cancel(UsbGatt.GATT_FAILURE);
+                finish(UsbGatt.GATT_FAILURE);
+            }
+        }
     }
 
     /**
@@ -376,28 +1590,37 @@ public final class UsbGatt {
      *
      * @param characteristic characteristic to be written to the server.
      */
-    private void writeAttributeCommand(UsbGattCharacteristic characteristic) {
+    private void writeAttributeCommand(UsbGattCharacteristic characteristic, final OperationCallback operationCallback) {
         short att_handle = (short) characteristic.getInstanceId();
         byte[] att_value = characteristic.getValue();
         final UsbGattCharacteristic write_characteristic = characteristic;
 
         WriteAttributeCommand writeCommand = new WriteAttributeCommand(att_handle, att_value);
+        writeCommand.setCoalescing(characteristic.isWriteCoalescingEnabled());
         writeCommand.addWriteAttributeCommandCallback(new WriteAttributeCommandCallback() {
             @Override
             public void onSendSuccess() {
                 super.onSendSuccess();
-                if (mUsbGattCallback != null)
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, GATT_SUCCESS);
+                reportCharacteristicWrite(write_characteristic, GATT_SUCCESS, operationCallback);
             }
 
             @Override
             public void onSendFailed(int sendResult) {
                 super.onSendFailed(sendResult);
-                if (mUsbGattCallback != null)
-                    mUsbGattCallback.onCharacteristicWrite(UsbGatt.this, write_characteristic, GATT_FAILURE);
+                reportCharacteristicWrite(write_characteristic, getWriteFailedStatus(sendResult), operationCallback);
             }
         });
-        LocalUsbConnector.getInstance().writeAttributesCommand(writeCommand);
+        mUsbConnector.writeAttributesCommand(writeCommand);
+    }
+
+    /**
+     * Convert the send result of a failed write to gatt status.
+     *
+     * @param sendResult The error code of the connector, see {@link UsbError}
+     * @return {@link #GATT_WRITE_COALESCED} if the write has been replaced by a later one, otherwise {@link #GATT_FAILURE}.
+     */
+    private static int getWriteFailedStatus(int sendResult) {
+        return sendResult == UsbError.CODE_WRITE_COALESCED ? GATT_WRITE_COALESCED : GATT_FAILURE;
     }
 
 
@@ -407,7 +1630,7 @@ public final class UsbGatt {
      * @param att_error_code The error code of the att to be converted
      * @return The converted error code of gatt.
      */
-    private static int getGattErrorCode(byte att_error_code) {
+    static int getGattErrorCode(byte att_error_code) {
         int gatt_error_code = att_error_code & 0x0FF;
         switch (gatt_error_code) {
             case GATT_READ_NOT_PERMITTED:
@@ -463,13 +1686,13 @@ public final class UsbGatt {
         mContext = context;
         mUsbGattCallback = callback;
 
-        int ret = LocalUsbConnector.getInstance().initConnector(mContext);
+        int ret = mUsbConnector.initConnector(mContext);
         if (ret != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "init usb connector failed, error code: " + ret);
             return false;
         }
 
-        ret = LocalUsbConnector.getInstance().setUsbDevice(mDevice);
+        ret = mUsbConnector.setUsbDevice(mDevice);
         if (ret != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "setup usb connector failed, error code: " + ret);
             return false;
@@ -477,7 +1700,7 @@ public final class UsbGatt {
 
         addOnUsbDeviceStatusChangeCallback();
 
-        ret = LocalUsbConnector.getInstance().connect();
+        ret = mUsbConnector.connect();
         if (ret != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "connect failed, error code: " + ret);
             return false;
@@ -493,6 +1716,11 @@ public final class UsbGatt {
         @Override
         public void onDeviceConnectionStatusHasChanged(boolean connectionStatus) {
             super.onDeviceConnectionStatusHasChanged(connectionStatus);
+            if (!connectionStatus) {
+                // The MTU is negotiated per connection, and the values may be changed while disconnected.
+                mMtu = ATT_DEFAULT_MTU;
+                mValueCache.clear();
+            }
             if (mUsbGattCallback != null) {
                 mUsbGattCallback.onConnectionStateChange(UsbGatt.this, GATT_SUCCESS,
                         connectionStatus ? UsbGatt.STATE_CONNECTED : UsbGatt.STATE_DISCONNECTED);
@@ -500,17 +1728,48 @@ public final class UsbGatt {
         }
 
         @Override
-        public void onReceiveHandleValueNotification(short att_handle, byte[] att_value) {
-            super.onReceiveHandleValueNotification(att_handle, att_value);
-            UsbGattCharacteristic characteristic = new UsbGattCharacteristic(null, att_handle, 0, 0);
-            characteristic.setValue(att_value);
-            if (mUsbGattCallback != null)
-                mUsbGattCallback.onCharacteristicChanged(UsbGatt.this, characteristic);
+        public void onReceiveHandleValueNotification(short att_handle, byte[] buffer, int offset, int length) {
+            // Deliver the value through the known characteristic, only an unknown handle costs a new object.
+            UsbGattCharacteristic characteristic = mDatabase.getCharacteristic(att_handle);
+            if (characteristic == null) {
+                // Nobody can read an unknown handle from the cache.
+                characteristic = new UsbGattCharacteristic(null, att_handle, 0, 0);
+            } else if (characteristic.getCacheTtl() > 0) {
+                mValueCache.put(att_handle & 0x0FFFF, Arrays.copyOfRange(buffer, offset, offset + length));
+            }
+            if (mUsbGattCallback != null) {
+                // The value is only copied if the callback keeps it.
+                mUsbGattCallback.onCharacteristicChanged(UsbGatt.this, characteristic, buffer, offset, length);
+            } else {
+                characteristic.setValue(Arrays.copyOfRange(buffer, offset, offset + length));
+            }
+        }
+    };
+
+    /**
+     * Keep the cached values up to date with the indications from the server.
+     */
+    private final OnReceiveServerIndicationCallback mOnReceiveServerIndicationCallback = new OnReceiveServerIndicationCallback() {
+        @Override
+        public void onReceiveServerIndication(byte[] indicationData) {
+            // ReportID(1B) + Length(1B) + Opcode(1B) + Handle(2B) + Value
+            int header_length = UsbConfig.LENGTH_TRANSPARENT_TRANSPORT_HEADER
+                    + AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE;
+            if (indicationData == null || indicationData.length < header_length) return;
+            int att_handle = (indicationData[3] & 0x0FF) | ((indicationData[4] & 0x0FF) << 8);
+            int att_pdu_length = indicationData[1] & 0x0FF;
+            int att_value_length = Math.min(att_pdu_length + UsbConfig.LENGTH_TRANSPARENT_TRANSPORT_HEADER, indicationData.length) - header_length;
+            if (att_value_length < 0) return;
+            // Only copy the value if it is cached.
+            UsbGattCharacteristic characteristic = mDatabase.getCharacteristic(att_handle);
+            if (characteristic == null || characteristic.getCacheTtl() <= 0) return;
+            mValueCache.put(att_handle, Arrays.copyOfRange(indicationData, header_length, header_length + att_value_length));
         }
     };
 
     private void addOnUsbDeviceStatusChangeCallback() {
-        LocalUsbConnector.getInstance().addOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
+        mUsbConnector.addOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
+        mUsbConnector.addOnServerIndicationCallback(mOnReceiveServerIndicationCallback);
     }
 
 
@@ -544,7 +1803,7 @@ public final class UsbGatt {
                 }
             }
         });
-        LocalUsbConnector.getInstance().sendRequest(queryBTConnectStateRequest);
+        mUsbConnector.sendRequest(queryBTConnectStateRequest);
     }
 
 
@@ -558,19 +1817,19 @@ public final class UsbGatt {
      * @return true, if the connection attempt was initiated successfully
      */
     public boolean connect() {
-        int initRet = LocalUsbConnector.getInstance().initConnector(mContext);
+        int initRet = mUsbConnector.initConnector(mContext);
         if (initRet != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "init usb connector failed, error code: " + initRet);
             return false;
         }
 
-        int setupRet = LocalUsbConnector.getInstance().setUsbDevice(mDevice);
+        int setupRet = mUsbConnector.setUsbDevice(mDevice);
         if (setupRet != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "setup usb connector failed, error code: " + setupRet);
             return false;
         }
 
-        int ret = LocalUsbConnector.getInstance().connect();
+        int ret = mUsbConnector.connect();
         if (ret != UsbError.CODE_NO_ERROR) {
             Log.d(TAG, "connect failed, error code: " + ret);
             return false;
@@ -590,8 +1849,83 @@ public final class UsbGatt {
             Log.d(TAG, "cancelOpen() - device: " + mDevice.getDeviceName());
         }
 
-        LocalUsbConnector.getInstance().disConnect();
-        LocalUsbConnector.getInstance().removeOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
+        tearDown();
+    }
+
+    /**
+     * Disconnects an established connection, or cancels a connection attempt currently in progress,
+     * without blocking the caller.
+     *
+     * <p>The usb connection is torn down on a background thread. Once the connector has stopped its
+     * threads and closed the usb connection, {@link UsbGattCallback#onConnectionStateChange} is invoked
+     * with {@link #GATT_SUCCESS} and {@link #STATE_DISCONNECTED}. If it has not finished before the
+     * deadline, the callback is invoked with {@link #GATT_FAILURE} instead, and the teardown goes on
+     * in the background. The callback is invoked only once.
+     *
+     * @param timeoutMillis deadline of the teardown in milliseconds.
+     * @return a future which is done once the usb connection has been closed.
+     */
+    public Future<?> disconnect(long timeoutMillis) {
+        if (DBG) {
+            Log.d(TAG, "disconnect() - device: " + mDevice.getDeviceName() + ", timeout: " + timeoutMillis);
+        }
+
+        final AtomicBoolean reported = new AtomicBoolean(false);
+        final Future<?> deadline = mUsbConnector.getEventLoop().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (reported.compareAndSet(false, true)) {
+                    Log.w(TAG, "disconnect() - not finished before the deadline, device: " + mDevice.getDeviceName());
+                    notifyDisconnected(GATT_FAILURE);
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        return DISCONNECT_EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tearDown().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "disconnect() - close usb connection failed, device: " + mDevice.getDeviceName(), e.getCause());
+                }
+                deadline.cancel(false);
+                if (reported.compareAndSet(false, true)) {
+                    mUsbConnector.getEventLoop().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            notifyDisconnected(GATT_SUCCESS);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop the discovery, close the usb connection and reset the state of current connection.
+     * <p>The connector stops its receive thread and closes the usb connection in the background.</p>
+     *
+     * @return a future which is done once the usb connection has been closed.
+     */
+    private Future<?> tearDown() {
+        UsbGattDiscovery discovery = mDiscovery;
+        if (discovery != null) {
+            discovery.cancel();
+        }
+        Future<?> closeFuture = mUsbConnector.disConnect();
+        mUsbConnector.removeOnUsbDeviceStatusChangeCallback(mOnUsbDeviceStatusChangeCallback);
+        mUsbConnector.removeOnServerIndicationCallback(mOnReceiveServerIndicationCallback);
+        mMtu = ATT_DEFAULT_MTU;
+        mValueCache.clear();
+        return closeFuture;
+    }
+
+    private void notifyDisconnected(int status) {
+        if (mUsbGattCallback != null) {
+            mUsbGattCallback.onConnectionStateChange(UsbGatt.this, status, UsbGatt.STATE_DISCONNECTED);
+        }
     }
 
 
@@ -622,25 +1956,176 @@ public final class UsbGatt {
             Log.d(TAG, "discoverServices() - device: " + mDevice.getDeviceName());
         }
 
-        if (mCharacteristics != null) {
-            mCharacteristics.clear();
+        updateDatabase(Collections.<UsbGattCharacteristic>emptyList());
+
+        // Serve the cached characteristic table at once, and validate it in the background.
+        final UsbGattProfile profile = getCachedProfile();
+        if (profile != null && profile.hasCharacteristics()) {
+            if (DBG) {
+                Log.d(TAG, "discoverServices() - use cached characteristics");
+            }
+            updateDatabase(profile.createCharacteristics());
+            mUsbConnector.getEventLoop().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mUsbGattCallback != null) {
+                        mUsbGattCallback.onServicesDiscovered(UsbGatt.this, UsbGatt.GATT_SUCCESS);
+                    }
+                }
+            });
+            readDongleConfigRequest(profile);
+            return true;
         }
 
         // TODO: 2019-12-04
-        readDongleConfigRequest();
+        readDongleConfigRequest(null);
+        return true;
+    }
+
+    /**
+     * Discovers the services of the remote device by walking its attribute database, as well as
+     * their characteristics and descriptors.
+     *
+     * <p>Unlike {@link #discoverServices()}, which only reports the characteristics configured in the
+     * usb dongle, this method explores the GATT server with ATT requests.
+     *
+     * <p>If service UUIDs are given, only these services are found (by Find By Type Value Requests)
+     * and resolved before {@link UsbGattCallback#onServicesDiscovered} is triggered. The rest of the
+     * database is walked afterwards in the background with low priority requests, which never delay
+     * the requests of the application. Each resolved service is reported by
+     * {@link UsbGattCallback#onServiceResolved}, and {@link UsbGattCallback#onServiceDiscoveryCompleted}
+     * is triggered once the whole database has been walked.
+     *
+     * @param serviceUuids UUIDs of the services to be resolved first, null to resolve all of them
+     *                     before {@link UsbGattCallback#onServicesDiscovered} is triggered
+     * @return true, if the remote service discovery has been started
+     */
+    public boolean discoverServices(List<UUID> serviceUuids) {
+        if (DBG) {
+            Log.d(TAG, "discoverServices() - device: " + mDevice.getDeviceName() + ", services: " + serviceUuids);
+        }
+
+        UsbGattDiscovery lastDiscovery = mDiscovery;
+        if (lastDiscovery != null) {
+            lastDiscovery.cancel();
+        }
+        final UsbGattDiscovery discovery = new UsbGattDiscovery(mUsbConnector, serviceUuids, new UsbGattDiscovery.Callback() {
+            @Override
+            public void onServiceResolved(UsbGattService service) {
+                updateDatabase(null);
+                if (mUsbGattCallback != null) {
+                    mUsbGattCallback.onServiceResolved(UsbGatt.this, service);
+                }
+            }
+
+            @Override
+            public void onRequestedServicesResolved(int status) {
+                updateDatabase(null);
+                if (mUsbGattCallback != null) {
+                    mUsbGattCallback.onServicesDiscovered(UsbGatt.this, status);
+                }
+            }
+
+            @Override
+            public void onDiscoveryCompleted(int status) {
+                updateDatabase(null);
+                if (mUsbGattCallback != null) {
+                    mUsbGattCallback.onServiceDiscoveryCompleted(UsbGatt.this, status);
+                }
+            }
+        });
+        mDiscovery = discovery;
+        updateDatabase(null);
+        discovery.start();
         return true;
     }
 
+    /**
+     * Returns a list of GATT services found by {@link #discoverServices(List)} so far.
+     *
+     * <p>Services which are still being walked in the background are included,
+     * check {@link UsbGattService#isResolved()} before using their characteristics.
+     *
+     * @return Unmodifiable list of services on the remote device, updated as each service is resolved.
+     * Returns an empty list if service discovery has not yet been performed.
+     */
+    public List<UsbGattService> getServices() {
+        return mDatabase.getServices();
+    }
+
+    /**
+     * Returns the {@link UsbGattService} whose handle range contains the given attribute handle.
+     *
+     * @param handle attribute handle
+     * @return the service, or null if no service found so far contains the handle.
+     */
+    public UsbGattService getServiceByHandle(int handle) {
+        return mDatabase.getServiceByHandle(handle);
+    }
+
+    /**
+     * Returns a {@link UsbGattService}, if the requested UUID is
+     * supported by the remote device.
+     *
+     * <p>If multiple instances of the same service (as identified by UUID)
+     * exist, the first instance of the service is returned.
+     *
+     * @param uuid UUID of the requested service
+     * @return UsbGattService if supported, or null if the requested service is not offered by
+     * the remote device.
+     */
+    public UsbGattService getService(UUID uuid) {
+        return mDatabase.getService(uuid);
+    }
+
+    /**
+     * Get the cached profile of current usb dongle.
+     *
+     * @return cached profile, or null if it does not exist.
+     * @see UsbGattProfileCache
+     */
+    public UsbGattProfile getCachedProfile() {
+        if (mContext == null) return null;
+        return UsbGattProfileCache.getInstance(mContext).get(mDevice);
+    }
+
+    /**
+     * Save the changed profile of current usb dongle.
+     *
+     * @param profile profile to be saved.
+     */
+    private void saveProfile(UsbGattProfile profile) {
+        if (mContext == null || profile == null) return;
+        UsbGattProfileCache.getInstance(mContext).put(mDevice, profile);
+    }
+
+    private UsbGattProfile getOrCreateProfile() {
+        if (mContext == null) return null;
+        return UsbGattProfileCache.getInstance(mContext).getOrCreate(mDevice);
+    }
+
     /**
      * Get all the information of ota Characteristic by this method.
+     *
+     * @param cachedProfile The cached profile whose characteristics have been reported, the characteristics
+     *                      will be reported again only if they are different from the cached ones.
+     *                      null if no characteristics have been reported.
      */
-    private void readDongleConfigRequest() {
+    private void readDongleConfigRequest(final UsbGattProfile cachedProfile) {
         ReadDongleConfigRequest readDongleConfigRequest = new ReadDongleConfigRequest();
         readDongleConfigRequest.addReadDongleConfigRequestCallback(new ReadDongleConfigRequestCallback() {
             @Override
             public void onReadOtaCharacteristicList(List<UsbGattCharacteristic> list) {
                 super.onReadOtaCharacteristicList(list);
-                mCharacteristics = list;
+                if (cachedProfile != null && cachedProfile.isSameCharacteristics(list)) {
+                    return;
+                }
+                updateDatabase(list);
+                UsbGattProfile profile = cachedProfile != null ? cachedProfile : getOrCreateProfile();
+                if (profile != null) {
+                    profile.setCharacteristics(list);
+                    saveProfile(profile);
+                }
                 if (mUsbGattCallback != null) {
                     mUsbGattCallback.onServicesDiscovered(UsbGatt.this, UsbGatt.GATT_SUCCESS);
                 }
@@ -649,28 +2134,33 @@ public final class UsbGatt {
             @Override
             public void onReadFailed() {
                 super.onReadFailed();
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onServicesDiscovered(UsbGatt.this, UsbGatt.GATT_FAILURE);
-                }
+                notifyDiscoverFailed();
             }
 
             @Override
             public void onSendFailed(int sendResult) {
                 super.onSendFailed(sendResult);
-                if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onServicesDiscovered(UsbGatt.this, UsbGatt.GATT_FAILURE);
-                }
+                notifyDiscoverFailed();
             }
 
             @Override
             public void onReceiveTimeout() {
                 super.onReceiveTimeout();
+                notifyDiscoverFailed();
+            }
+
+            private void notifyDiscoverFailed() {
+                // The cached characteristics have been reported, keep using them.
+                if (cachedProfile != null) {
+                    Log.w(TAG, "validate cached characteristics failed");
+                    return;
+                }
                 if (mUsbGattCallback != null) {
                     mUsbGattCallback.onServicesDiscovered(UsbGatt.this, UsbGatt.GATT_FAILURE);
                 }
             }
         });
-        LocalUsbConnector.getInstance().sendRequest(readDongleConfigRequest);
+        mUsbConnector.sendRequest(readDongleConfigRequest);
     }
 
 
@@ -683,19 +2173,22 @@ public final class UsbGatt {
      */
     private void readMtuRequest(int mtu) {
         final int client_mtu_size = mtu;
-        ExchangeMtuRequest exchangeMtuRequest = new ExchangeMtuRequest();
+        ExchangeMtuRequest exchangeMtuRequest = new ExchangeMtuRequest(client_mtu_size);
         exchangeMtuRequest.addExchangeMtuRequestCallback(new ExchangeMtuRequestCallback() {
             @Override
             public void onReceiveServerRxMtu(int serverMtuSize) {
                 super.onReceiveServerRxMtu(serverMtuSize);
+                // Both sides shall use the smaller one of the client and server receive MTU.
+                int effective_mtu = Math.max(ATT_DEFAULT_MTU, Math.min(client_mtu_size, serverMtuSize));
+                mMtu = effective_mtu;
                 if (mUsbGattCallback != null) {
-                    mUsbGattCallback.onMtuChanged(UsbGatt.this, serverMtuSize, UsbGatt.GATT_SUCCESS);
+                    mUsbGattCallback.onMtuChanged(UsbGatt.this, effective_mtu, UsbGatt.GATT_SUCCESS);
                 }
             }
 
             @Override
-            public void onReceiveFailed() {
-                super.onReceiveFailed();
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
                 if (mUsbGattCallback != null) {
                     mUsbGattCallback.onMtuChanged(UsbGatt.this, client_mtu_size, UsbGatt.GATT_FAILURE);
                 }
@@ -717,7 +2210,7 @@ public final class UsbGatt {
                 }
             }
         });
-        LocalUsbConnector.getInstance().sendRequest(exchangeMtuRequest);
+        mUsbConnector.sendRequest(exchangeMtuRequest);
     }
 
     /**
@@ -728,10 +2221,14 @@ public final class UsbGatt {
      * to request a larger MTU size to be able to send more data at once.
      *
      * <p>A {@link UsbGattCallback#onMtuChanged} callback will indicate
-     * whether this operation was successful.
+     * whether this operation was successful. The reported MTU is the effective MTU
+     * (the smaller one of the requested MTU and the server MTU), which is kept for
+     * current connection and used by every read and write to size the packets,
+     * see {@link #getMtu()} and {@link #getMaxWriteValueLength()}.
      *
      * <p>Requires {@link android.Manifest.permission#BLUETOOTH} permission.
      *
+     * @param mtu The client receive MTU size, not less than the default MTU (23)
      * @return true, if the new MTU value has been requested successfully
      */
     public boolean requestMtu(int mtu) {
@@ -739,8 +2236,8 @@ public final class UsbGatt {
             Log.d(TAG, "configureMTU() - device: " + mDevice.getDeviceName()
                     + " mtu: " + mtu);
         }
-        if (mtu < 0) {
-            Log.d(TAG, "request mtu size can not be a negative value.");
+        if (mtu < ATT_DEFAULT_MTU) {
+            Log.d(TAG, "request mtu size can not be less than " + ATT_DEFAULT_MTU);
             return false;
         }
         readMtuRequest(mtu);
@@ -0,0 +1,150 @@
+package com.realsil.sdk.core.usb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of the attributes known on current connection, indexed by handle and by UUID.
+ * <p>A new snapshot is built by {@link UsbGatt} whenever the characteristics or the services change,
+ * so the lookups and the lists never need to be locked or copied.</p>
+ *
+ * @author bingshanguxue
+ */
+final class UsbGattAttributeDatabase {
+
+    static final UsbGattAttributeDatabase EMPTY = new UsbGattAttributeDatabase(
+            Collections.<UsbGattCharacteristic>emptyList(), Collections.<UsbGattService>emptyList());
+
+    /**
+     * The characteristics are kept in a table indexed by handle directly if the largest handle is below
+     * this value, otherwise they are looked up by a binary search in the sorted handles.
+     */
+    private static final int MAX_DIRECT_TABLE_SIZE = 0x400;
+
+    private final List<UsbGattCharacteristic> mCharacteristics;
+    private final List<UsbGattService>        mServices;
+
+    /**
+     * Characteristics indexed by handle, null if the handles are too sparse.
+     */
+    private final UsbGattCharacteristic[] mHandleTable;
+
+    /**
+     * Sorted handles and their characteristics, used when {@link #mHandleTable} is null.
+     */
+    private final int[]                   mSortedHandles;
+    private final UsbGattCharacteristic[] mSortedCharacteristics;
+
+    /**
+     * Starting handles of the services, sorted, each service covers the handles up to its end handle.
+     */
+    private final int[] mServiceStartHandles;
+
+    private final HashMap<UUID, UsbGattCharacteristic> mCharacteristicsByUuid;
+    private final HashMap<UUID, UsbGattService>        mServicesByUuid;
+
+    /**
+     * Build the database.
+     *
+     * @param characteristics characteristics read from the dongle configuration.
+     * @param services        services discovered, sorted by their starting handle, the characteristics of the
+     *                        resolved ones are indexed as well.
+     */
+    UsbGattAttributeDatabase(List<UsbGattCharacteristic> characteristics, List<UsbGattService> services) {
+        mCharacteristics = Collections.unmodifiableList(new ArrayList<>(characteristics));
+        mServices = Collections.unmodifiableList(new ArrayList<>(services));
+
+        List<UsbGattCharacteristic> all = new ArrayList<>(mCharacteristics);
+        mServiceStartHandles = new int[mServices.size()];
+        mServicesByUuid = new HashMap<>();
+        for (int i = 0; i < mServices.size(); i++) {
+            UsbGattService service = mServices.get(i);
+            mServiceStartHandles[i] = service.getInstanceId();
+            if (!mServicesByUuid.containsKey(service.getUuid())) mServicesByUuid.put(service.getUuid(), service);
+            if (service.isResolved()) all.addAll(service.getCharacteristics());
+        }
+
+        // The first characteristic of a handle or a UUID wins, as the linear scan did.
+        mCharacteristicsByUuid = new HashMap<>();
+        HashMap<Integer, UsbGattCharacteristic> byHandle = new HashMap<>();
+        int maxHandle = 0;
+        for (UsbGattCharacteristic characteristic : all) {
+            int handle = characteristic.getInstanceId() & 0x0FFFF;
+            if (!byHandle.containsKey(handle)) byHandle.put(handle, characteristic);
+            UUID uuid = characteristic.getUuid();
+            if (uuid != null && !mCharacteristicsByUuid.containsKey(uuid)) mCharacteristicsByUuid.put(uuid, characteristic);
+            maxHandle = Math.max(maxHandle, handle);
+        }
+
+        if (maxHandle < MAX_DIRECT_TABLE_SIZE) {
+            mHandleTable = new UsbGattCharacteristic[maxHandle + 1];
+            for (UsbGattCharacteristic characteristic : byHandle.values()) {
+                mHandleTable[characteristic.getInstanceId() & 0x0FFFF] = characteristic;
+            }
+            mSortedHandles = null;
+            mSortedCharacteristics = null;
+        } else {
+            mHandleTable = null;
+            mSortedHandles = new int[byHandle.size()];
+            int index = 0;
+            for (Integer handle : byHandle.keySet()) {
+                mSortedHandles[index++] = handle;
+            }
+            Arrays.sort(mSortedHandles);
+            mSortedCharacteristics = new UsbGattCharacteristic[mSortedHandles.length];
+            for (int i = 0; i < mSortedHandles.length; i++) {
+                mSortedCharacteristics[i] = byHandle.get(mSortedHandles[i]);
+            }
+        }
+    }
+
+    /**
+     * @return unmodifiable list of the characteristics read from the dongle configuration.
+     */
+    List<UsbGattCharacteristic> getCharacteristics() {
+        return mCharacteristics;
+    }
+
+    /**
+     * @return unmodifiable list of the services, sorted by their starting handle.
+     */
+    List<UsbGattService> getServices() {
+        return mServices;
+    }
+
+    UsbGattCharacteristic getCharacteristic(int handle) {
+        handle &= 0x0FFFF;
+        if (mHandleTable != null) {
+            return handle < mHandleTable.length ? mHandleTable[handle] : null;
+        }
+        int index = Arrays.binarySearch(mSortedHandles, handle);
+        return index >= 0 ? mSortedCharacteristics[index] : null;
+    }
+
+    UsbGattCharacteristic getCharacteristic(UUID uuid) {
+        return mCharacteristicsByUuid.get(uuid);
+    }
+
+    UsbGattService getService(UUID uuid) {
+        return mServicesByUuid.get(uuid);
+    }
+
+    /**
+     * Find the service which contains the attribute.
+     *
+     * @param handle attribute handle.
+     * @return the service whose handle range covers the handle, or null if there is none.
+     */
+    UsbGattService getServiceByHandle(int handle) {
+        handle &= 0x0FFFF;
+        int index = Arrays.binarySearch(mServiceStartHandles, handle);
+        if (index < 0) index = -index - 2;
+        if (index < 0) return null;
+        UsbGattService service = mServices.get(index);
+        return handle <= service.getEndHandle() ? service : null;
+    }
+}
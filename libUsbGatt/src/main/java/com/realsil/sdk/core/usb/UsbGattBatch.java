@@ -0,0 +1,153 @@
+package com.realsil.sdk.core.usb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An ordered list of characteristic reads and writes executed by {@link UsbGatt#executeBatch(UsbGattBatch)}.
+ *
+ * <p>The operations are queued at once and sent back-to-back, without waiting for the application to
+ * submit the next one from a callback. The batch is completed once by
+ * {@link UsbGattCallback#onBatchCompleted(UsbGatt, UsbGattBatch, int)}, the result of each operation
+ * is kept in the batch.</p>
+ *
+ * <p>Note: A read returns at most ATT_MTU - 1 bytes, and a write carries at most
+ * {@link UsbGatt#getMaxWriteValueLength()} bytes, use {@link UsbGatt#readCharacteristic} and
+ * {@link UsbGatt#writeCharacteristic} for longer values.</p>
+ *
+ * @author bingshanguxue
+ */
+public final class UsbGattBatch {
+
+    /**
+     * Read the value of a characteristic.
+     */
+    public static final int OPERATION_READ = 0;
+
+    /**
+     * Write a value to a characteristic with a Write Request.
+     */
+    public static final int OPERATION_WRITE = 1;
+
+    /**
+     * The status of an operation which has not been executed, because an earlier operation failed
+     * in the stop-on-error mode.
+     */
+    public static final int STATUS_NOT_EXECUTED = -1;
+
+    /**
+     * A single read or write in the batch.
+     */
+    public static final class Operation {
+        private final int                   mType;
+        private final UsbGattCharacteristic mCharacteristic;
+        private       byte[]                mValue;
+        private       int                   mStatus = STATUS_NOT_EXECUTED;
+
+        Operation(int type, UsbGattCharacteristic characteristic, byte[] value) {
+            mType = type;
+            mCharacteristic = characteristic;
+            mValue = value;
+        }
+
+        /**
+         * @return {@link #OPERATION_READ} or {@link #OPERATION_WRITE}
+         */
+        public int getType() {
+            return mType;
+        }
+
+        public UsbGattCharacteristic getCharacteristic() {
+            return mCharacteristic;
+        }
+
+        /**
+         * Get the value read from the characteristic, or the value written to it.
+         *
+         * @return the value, null if the read has not succeeded.
+         */
+        public byte[] getValue() {
+            return mValue;
+        }
+
+        /**
+         * @return {@link UsbGatt#GATT_SUCCESS} if the operation succeeded, {@link #STATUS_NOT_EXECUTED}
+         * if it has not been executed, or the gatt status of the failure.
+         */
+        public int getStatus() {
+            return mStatus;
+        }
+
+        void complete(int status, byte[] value) {
+            mStatus = status;
+            if (value != null) mValue = value;
+        }
+    }
+
+    private final List<Operation> mOperations = new ArrayList<>();
+
+    private boolean mStopOnError = true;
+
+    /**
+     * Add a read of the characteristic.
+     *
+     * @param characteristic characteristic to be read.
+     */
+    public void addRead(UsbGattCharacteristic characteristic) {
+        if (characteristic == null) throw new IllegalArgumentException("characteristic can not be null");
+        mOperations.add(new Operation(OPERATION_READ, characteristic, null));
+    }
+
+    /**
+     * Add a write to the characteristic.
+     *
+     * @param characteristic characteristic to be written.
+     * @param value          value to be written, do not modify it until the batch has been completed.
+     */
+    public void addWrite(UsbGattCharacteristic characteristic, byte[] value) {
+        if (characteristic == null || value == null) throw new IllegalArgumentException("characteristic and value can not be null");
+        mOperations.add(new Operation(OPERATION_WRITE, characteristic, value));
+    }
+
+    /**
+     * Set how the batch goes on after an operation failed.
+     *
+     * @param stopOnError true (by default) to skip the rest operations after the first failure, they are
+     *                    reported with {@link #STATUS_NOT_EXECUTED}; false to execute all the operations.
+     */
+    public void setStopOnError(boolean stopOnError) {
+        mStopOnError = stopOnError;
+    }
+
+    public boolean isStopOnError() {
+        return mStopOnError;
+    }
+
+    public int size() {
+        return mOperations.size();
+    }
+
+    public Operation getOperation(int index) {
+        return mOperations.get(index);
+    }
+
+    /**
+     * Get the status of the batch.
+     *
+     * @return {@link UsbGatt#GATT_SUCCESS} if all the operations succeeded, otherwise the status of the
+     * first failed operation.
+     */
+    public int getStatus() {
+        for (Operation operation : mOperations) {
+            if (operation.mStatus != UsbGatt.GATT_SUCCESS) return operation.mStatus;
+        }
+        return UsbGatt.GATT_SUCCESS;
+    }
+
+    void reset() {
+        for (Operation operation : mOperations) {
+            operation.mStatus = STATUS_NOT_EXECUTED;
+            if (operation.mType == OPERATION_READ) operation.mValue = null;
+        }
+    }
+}
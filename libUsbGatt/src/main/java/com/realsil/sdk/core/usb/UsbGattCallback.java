@@ -1,6 +1,6 @@
 package com.realsil.sdk.core.usb;
 
-
+import java.util.Arrays;
 
 /**
  * This abstract class is used to implement {@link UsbGatt} callbacks.
@@ -33,6 +33,26 @@ public abstract class UsbGattCallback {
     public void onServicesDiscovered(UsbGatt gatt, int status) {
     }
 
+    /**
+     * Callback invoked when the characteristics and descriptors of a service have been discovered
+     * by {@link UsbGatt#discoverServices(java.util.List)}, including the services resolved in the background.
+     *
+     * @param gatt GATT client invoked {@link UsbGatt#discoverServices(java.util.List)}
+     * @param service The resolved service
+     */
+    public void onServiceResolved(UsbGatt gatt, UsbGattService service) {
+    }
+
+    /**
+     * Callback invoked when the whole attribute database of the remote device has been walked
+     * by {@link UsbGatt#discoverServices(java.util.List)}.
+     *
+     * @param gatt GATT client invoked {@link UsbGatt#discoverServices(java.util.List)}
+     * @param status {@link UsbGatt#GATT_SUCCESS} if all the services have been resolved
+     */
+    public void onServiceDiscoveryCompleted(UsbGatt gatt, int status) {
+    }
+
     /**
      * Callback reporting the result of a characteristic read operation.
      *
@@ -74,6 +94,27 @@ public abstract class UsbGattCallback {
                                         UsbGattCharacteristic characteristic) {
     }
 
+    /**
+     * Callback triggered as a result of a remote characteristic notification, the value is a view of the
+     * receive buffer.
+     *
+     * <p>The buffer is reused once this method returns, copy the value if it should be kept. By default the
+     * value is copied into the characteristic and {@link #onCharacteristicChanged(UsbGatt, UsbGattCharacteristic)}
+     * is called, override this method to handle the notifications without allocation, in which case the value
+     * of the characteristic is not updated.
+     *
+     * @param gatt GATT client the characteristic is associated with
+     * @param characteristic Characteristic that has been notified
+     * @param buffer Receive buffer which holds the value
+     * @param offset Offset of the value in the buffer
+     * @param length Length of the value
+     */
+    public void onCharacteristicChanged(UsbGatt gatt, UsbGattCharacteristic characteristic,
+                                        byte[] buffer, int offset, int length) {
+        characteristic.setValue(Arrays.copyOfRange(buffer, offset, offset + length));
+        onCharacteristicChanged(gatt, characteristic);
+    }
+
     /**
      * Callback indicating the MTU for a given device connection has changed.
      *
@@ -87,4 +128,26 @@ public abstract class UsbGattCallback {
      */
     public void onMtuChanged(UsbGatt gatt, int mtu, int status) {
     }
+
+    /**
+     * Callback invoked when a reliable write transaction has been completed.
+     *
+     * @param gatt GATT client invoked {@link UsbGatt#executeReliableWrite}
+     * @param status {@link UsbGatt#GATT_SUCCESS} if the reliable write
+     * transaction was executed successfully
+     */
+    public void onReliableWriteCompleted(UsbGatt gatt, int status) {
+    }
+
+    /**
+     * Callback invoked when all the operations of a batch have been completed, or when the batch
+     * has been stopped by a failed operation.
+     *
+     * @param gatt GATT client invoked {@link UsbGatt#executeBatch(UsbGattBatch)}
+     * @param batch The batch, the result of each operation is kept in it
+     * @param status {@link UsbGatt#GATT_SUCCESS} if all the operations succeeded, otherwise the
+     * status of the first failed operation
+     */
+    public void onBatchCompleted(UsbGatt gatt, UsbGattBatch batch, int status) {
+    }
 }
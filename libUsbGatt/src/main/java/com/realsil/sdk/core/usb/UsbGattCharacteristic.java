@@ -20,6 +20,11 @@ import android.os.Parcel;
 import android.os.ParcelUuid;
 import android.os.Parcelable;
 
+import com.realsil.sdk.core.usb.connector.att.callback.ReadAttributeRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeRequestCallback;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -30,6 +35,46 @@ import java.util.UUID;
  */
 public class UsbGattCharacteristic implements Parcelable {
 
+    /**
+     * Characteristic property: Characteristic is broadcastable.
+     */
+    public static final int PROPERTY_BROADCAST = 0x01;
+
+    /**
+     * Characteristic property: Characteristic is readable.
+     */
+    public static final int PROPERTY_READ = 0x02;
+
+    /**
+     * Characteristic property: Characteristic can be written without response.
+     */
+    public static final int PROPERTY_WRITE_NO_RESPONSE = 0x04;
+
+    /**
+     * Characteristic property: Characteristic can be written.
+     */
+    public static final int PROPERTY_WRITE = 0x08;
+
+    /**
+     * Characteristic property: Characteristic supports notification
+     */
+    public static final int PROPERTY_NOTIFY = 0x10;
+
+    /**
+     * Characteristic property: Characteristic supports indication
+     */
+    public static final int PROPERTY_INDICATE = 0x20;
+
+    /**
+     * Characteristic property: Characteristic supports write with signature
+     */
+    public static final int PROPERTY_SIGNED_WRITE = 0x40;
+
+    /**
+     * Characteristic property: Characteristic has extended properties
+     */
+    public static final int PROPERTY_EXTENDED_PROPS = 0x80;
+
     /**
      * Write characteristic, requesting acknoledgement by the remote device
      */
@@ -58,6 +103,23 @@ public class UsbGattCharacteristic implements Parcelable {
      */
     protected int mInstance;
 
+    /**
+     * Characteristic properties.
+     *
+     */
+    protected int mProperties;
+
+    /**
+     * Service this characteristic belongs to, null if it is not discovered from a service.
+     *
+     */
+    protected UsbGattService mService;
+
+    /**
+     * List of descriptors included in this characteristic.
+     */
+    protected List<UsbGattDescriptor> mDescriptors;
+
 
     /**
      * Write type for this characteristic.
@@ -66,6 +128,22 @@ public class UsbGattCharacteristic implements Parcelable {
      */
     protected int mWriteType;
 
+    /**
+     * Whether the pending writes to this characteristic are coalesced.
+     */
+    protected boolean mWriteCoalescing;
+
+    /**
+     * How long the cached value of this characteristic is fresh, in milliseconds.
+     */
+    protected long mCacheTtl;
+
+    /**
+     * Callbacks of the reads and writes of this characteristic, created once and reused by {@link UsbGatt}.
+     */
+    ReadAttributeRequestCallback  mReadRequestCallback;
+    WriteAttributeRequestCallback mWriteRequestCallback;
+
 
     /**
      * The cached value of this characteristic.
@@ -98,6 +176,7 @@ public class UsbGattCharacteristic implements Parcelable {
     }
 
     protected UsbGattCharacteristic(Parcel in) {
+        mDescriptors = new ArrayList<>();
         mInstance = in.readInt();
         mWriteType = in.readInt();
         mValue = in.createByteArray();
@@ -119,8 +198,10 @@ public class UsbGattCharacteristic implements Parcelable {
                                     int properties, int permissions) {
         mUuid = uuid;
         mInstance = instanceId;
+        mProperties = properties;
         mValue = null;
         mWriteType = WRITE_TYPE_DEFAULT;
+        mDescriptors = new ArrayList<>();
     }
 
     @Override
@@ -157,6 +238,72 @@ public class UsbGattCharacteristic implements Parcelable {
         return mInstance;
     }
 
+    /**
+     * Returns the properties of this characteristic.
+     *
+     * <p>The properties contain a bit mask of property flags indicating
+     * the features of this characteristic.
+     *
+     * @return Properties of this characteristic
+     */
+    public int getProperties() {
+        return mProperties;
+    }
+
+    /**
+     * Returns the service this characteristic belongs to.
+     *
+     * @return The associated service, or null if the characteristic is not discovered from a service
+     */
+    public UsbGattService getService() {
+        return mService;
+    }
+
+    /**
+     * Sets the service associated with this characteristic.
+     *
+     */
+    void setService(UsbGattService service) {
+        mService = service;
+    }
+
+    /**
+     * Adds a descriptor to this characteristic.
+     *
+     * @param descriptor Descriptor to be added to this characteristic.
+     * @return true, if the descriptor was added to the characteristic
+     */
+    public boolean addDescriptor(UsbGattDescriptor descriptor) {
+        mDescriptors.add(descriptor);
+        descriptor.setCharacteristic(this);
+        return true;
+    }
+
+    /**
+     * Returns a list of descriptors for this characteristic.
+     *
+     * @return Descriptors for this characteristic
+     */
+    public List<UsbGattDescriptor> getDescriptors() {
+        return mDescriptors;
+    }
+
+    /**
+     * Returns a descriptor with a given UUID out of the list of
+     * descriptors for this characteristic.
+     *
+     * @return GATT descriptor object or null if no descriptor with the
+     * given UUID was found.
+     */
+    public UsbGattDescriptor getDescriptor(UUID uuid) {
+        for (UsbGattDescriptor descriptor : mDescriptors) {
+            if (descriptor.getUuid().equals(uuid)) {
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
     /**
      * Force the instance ID.
      *
@@ -189,6 +336,43 @@ public class UsbGattCharacteristic implements Parcelable {
         mWriteType = writeType;
     }
 
+    /**
+     * Enable or disable the coalescing of the writes to this characteristic.
+     *
+     * <p>It is useful for control-style characteristics (such as sliders or setpoints) where only the
+     * latest value matters. When a value is written by {@link UsbGatt#writeCharacteristic} while an earlier
+     * write of this characteristic is still waiting to be sent, the waiting write sends the new value instead,
+     * and the earlier write is completed with {@link UsbGatt#GATT_WRITE_COALESCED}.
+     * <p>The long values which are written part by part are never coalesced.
+     *
+     * @param enabled true to coalesce the writes, disabled by default.
+     */
+    public void setWriteCoalescingEnabled(boolean enabled) {
+        mWriteCoalescing = enabled;
+    }
+
+    public boolean isWriteCoalescingEnabled() {
+        return mWriteCoalescing;
+    }
+
+    /**
+     * Set how long the cached value of this characteristic is fresh.
+     *
+     * <p>The last value read, written (with a write response) or notified/indicated on current connection
+     * is cached. Within the TTL, {@link UsbGatt#readCharacteristic(UsbGattCharacteristic)} reports the
+     * cached value without a round trip, use {@link UsbGatt#readCharacteristic(UsbGattCharacteristic, boolean)}
+     * to bypass the cache.
+     *
+     * @param ttlMillis TTL in milliseconds, 0 (by default) to always read from the remote device.
+     */
+    public void setCacheTtl(long ttlMillis) {
+        mCacheTtl = Math.max(ttlMillis, 0);
+    }
+
+    public long getCacheTtl() {
+        return mCacheTtl;
+    }
+
     /**
      * Get the stored value for this characteristic.
      *
@@ -0,0 +1,100 @@
+package com.realsil.sdk.core.usb;
+
+import java.util.UUID;
+
+/**
+ * Represents a Usb GATT Descriptor
+ *
+ * <p>GATT Descriptors contain additional information and attributes of a GATT
+ * characteristic, {@link UsbGattCharacteristic}. They can be used to describe
+ * the characteristic's features or to control certain behaviours of the characteristic.
+ *
+ * @author bingshanguxue
+ */
+public class UsbGattDescriptor {
+
+    /**
+     * The UUID of this descriptor.
+     */
+    protected UUID mUuid;
+
+    /**
+     * Instance ID (attribute handle) for this descriptor.
+     */
+    protected int mInstance;
+
+    /**
+     * Back-reference to the characteristic this descriptor belongs to.
+     */
+    protected UsbGattCharacteristic mCharacteristic;
+
+    /**
+     * The value for this descriptor.
+     */
+    protected byte[] mValue;
+
+    /**
+     * Create a new UsbGattDescriptor.
+     *
+     * @param uuid       The UUID for this descriptor
+     * @param instanceId The attribute handle of this descriptor
+     */
+    public UsbGattDescriptor(UUID uuid, int instanceId) {
+        mUuid = uuid;
+        mInstance = instanceId;
+    }
+
+    /**
+     * Returns the characteristic this descriptor belongs to.
+     *
+     * @return The characteristic.
+     */
+    public UsbGattCharacteristic getCharacteristic() {
+        return mCharacteristic;
+    }
+
+    /**
+     * Set the back-reference to the associated characteristic
+     */
+    void setCharacteristic(UsbGattCharacteristic characteristic) {
+        mCharacteristic = characteristic;
+    }
+
+    /**
+     * Returns the UUID of this descriptor.
+     *
+     * @return UUID of this descriptor
+     */
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    /**
+     * Returns the instance ID (attribute handle) for this descriptor.
+     *
+     * @return Instance ID of this descriptor
+     */
+    public int getInstanceId() {
+        return mInstance;
+    }
+
+    /**
+     * Returns the stored value for this descriptor
+     *
+     * @return Cached value of the descriptor
+     */
+    public byte[] getValue() {
+        return mValue;
+    }
+
+    /**
+     * Updates the locally stored value of this descriptor.
+     *
+     * @param value New value for this descriptor
+     * @return true if the locally stored value has been set
+     */
+    public boolean setValue(byte[] value) {
+        mValue = value;
+        return true;
+    }
+}
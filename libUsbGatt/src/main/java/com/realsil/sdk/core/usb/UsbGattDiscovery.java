@@ -0,0 +1,515 @@
+package com.realsil.sdk.core.usb;
+
+import android.util.Log;
+
+import com.realsil.sdk.core.usb.connector.BaseRequest;
+import com.realsil.sdk.core.usb.connector.LocalUsbConnector;
+import com.realsil.sdk.core.usb.connector.att.AttPduErrorCodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
+import com.realsil.sdk.core.usb.connector.att.AttributeTypeIndexDefine;
+import com.realsil.sdk.core.usb.connector.att.callback.FindByTypeValueRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.FindInformationRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadByGroupTypeRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadByTypeRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.impl.FindByTypeValueRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.FindInformationRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadByGroupTypeRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadByTypeRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Walk the attribute database of the remote device: primary services, then the characteristics of each
+ * service, then the descriptors of each characteristic.
+ *
+ * <p>If the caller only asks for some services, they are found by their UUID with Find By Type Value Requests
+ * and resolved first. The rest of the database is walked afterwards with low priority requests, which are only
+ * sent when the connector has nothing else to send.</p>
+ *
+ * <p>Only one request of a discovery is in flight at a time, each step is started from the callback of
+ * the previous response.</p>
+ *
+ * @author bingshanguxue
+ */
+final class UsbGattDiscovery {
+    private static final String TAG = "UsbGattDiscovery";
+
+    private static final int MIN_ATT_HANDLE = 0x0001;
+    private static final int MAX_ATT_HANDLE = 0xFFFF;
+
+    /**
+     * Properties(1B) + Characteristic Value Handle(2B) + Characteristic UUID(2B or 16B)
+     */
+    private static final int CHARACTERISTIC_DECLARATION_HEADER_LENGTH = 3;
+
+    private static final int UUID_16_BIT_LENGTH  = 2;
+    private static final int UUID_128_BIT_LENGTH = 16;
+
+    private static final long BLUETOOTH_BASE_UUID_MSB = 0x0000000000001000L;
+    private static final long BLUETOOTH_BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+    /**
+     * Callback of the discovery, invoked on the event loop of the connector.
+     */
+    interface Callback {
+        /**
+         * The characteristics and descriptors of a service have been discovered.
+         */
+        void onServiceResolved(UsbGattService service);
+
+        /**
+         * The requested services (all services if none were specified) have been resolved, or the discovery failed.
+         */
+        void onRequestedServicesResolved(int status);
+
+        /**
+         * The whole attribute database has been walked, or the background discovery failed.
+         */
+        void onDiscoveryCompleted(int status);
+    }
+
+    private final LocalUsbConnector mUsbConnector;
+    private final Callback          mCallback;
+
+    /**
+     * Services found so far, sorted by their starting handle.
+     */
+    private final List<UsbGattService> mServices = new ArrayList<>();
+
+    /**
+     * UUIDs of the services to be resolved first, null to resolve all of them.
+     */
+    private final List<UUID> mRequestedServiceUuids;
+
+    /**
+     * Declaration handles of the characteristics of the service being resolved, used to find the descriptor ranges.
+     */
+    private final List<Integer> mDeclarationHandles = new ArrayList<>();
+
+    /**
+     * Scratch buffer for the attribute values read from the responses.
+     */
+    private final byte[] mValueBuffer = new byte[CHARACTERISTIC_DECLARATION_HEADER_LENGTH + UUID_128_BIT_LENGTH];
+
+    private boolean mAllServicesFound;
+    private boolean mBackground;
+    private volatile boolean mCancelled;
+
+    /**
+     * @param usbConnector          connector used to send the requests.
+     * @param requestedServiceUuids UUIDs of the services to be resolved first, null to resolve all services.
+     * @param callback              callback of the discovery.
+     */
+    UsbGattDiscovery(LocalUsbConnector usbConnector, List<UUID> requestedServiceUuids, Callback callback) {
+        mUsbConnector = usbConnector;
+        mRequestedServiceUuids = requestedServiceUuids == null ? null : new ArrayList<>(requestedServiceUuids);
+        mCallback = callback;
+    }
+
+    void start() {
+        if (mRequestedServiceUuids == null) {
+            discoverPrimaryServices(MIN_ATT_HANDLE);
+        } else {
+            findPrimaryServices(0, MIN_ATT_HANDLE);
+        }
+    }
+
+    /**
+     * Stop the discovery, the request in flight is completed but no more requests are sent.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Get a snapshot of the services found so far.
+     *
+     * @return services sorted by their starting handle, some of them may not have been resolved.
+     */
+    synchronized List<UsbGattService> getServices() {
+        return new ArrayList<>(mServices);
+    }
+
+    private void send(BaseRequest request) {
+        if (mBackground) {
+            mUsbConnector.sendLowPriorityRequest(request);
+        } else {
+            mUsbConnector.sendRequest(request);
+        }
+    }
+
+    //<editor-fold desc="Primary services">
+
+    /**
+     * Find the primary services with the requested UUID one by one.
+     *
+     * @param uuidIndex   index of the requested UUID.
+     * @param startHandle first handle to be searched.
+     */
+    private void findPrimaryServices(final int uuidIndex, int startHandle) {
+        if (mCancelled) return;
+        if (uuidIndex >= mRequestedServiceUuids.size()) {
+            resolveNextService();
+            return;
+        }
+
+        final UUID uuid = mRequestedServiceUuids.get(uuidIndex);
+        FindByTypeValueRequest request = new FindByTypeValueRequest(startHandle, MAX_ATT_HANDLE,
+                AttributeTypeIndexDefine.PRIMARY_SERVICE, uuidToBytes(uuid));
+        request.addFindByTypeValueRequestCallback(new FindByTypeValueRequestCallback() {
+            @Override
+            public void onFindSuccess(AttributeDataListView handlesInformationList) {
+                super.onFindSuccess(handlesInformationList);
+                int count = handlesInformationList.count();
+                if (count == 0) {
+                    findPrimaryServices(uuidIndex + 1, MIN_ATT_HANDLE);
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    addService(uuid, handlesInformationList.handleAt(i), handlesInformationList.endGroupHandleAt(i));
+                }
+                int lastEndHandle = handlesInformationList.endGroupHandleAt(count - 1);
+                if (lastEndHandle >= MAX_ATT_HANDLE) {
+                    findPrimaryServices(uuidIndex + 1, MIN_ATT_HANDLE);
+                } else {
+                    findPrimaryServices(uuidIndex, lastEndHandle + 1);
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                fail(UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.ATTRIBUTE_NOT_FOUND) {
+                    findPrimaryServices(uuidIndex + 1, MIN_ATT_HANDLE);
+                } else {
+                    fail(UsbGatt.getGattErrorCode(error_code));
+                }
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                fail(UsbGatt.GATT_FAILURE);
+            }
+        });
+        send(request);
+    }
+
+    /**
+     * Discover all the primary services from the start handle.
+     *
+     * @param startHandle first handle to be searched.
+     */
+    private void discoverPrimaryServices(int startHandle) {
+        if (mCancelled) return;
+
+        ReadByGroupTypeRequest request = new ReadByGroupTypeRequest(startHandle, MAX_ATT_HANDLE, AttributeTypeIndexDefine.PRIMARY_SERVICE);
+        request.addReadByGroupTypeRequestCallback(new ReadByGroupTypeRequestCallback() {
+            @Override
+            public void onReadSuccess(AttributeDataListView attributeDataList) {
+                int count = attributeDataList.count();
+                if (count == 0) {
+                    onAllServicesFound();
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    int valueLength = attributeDataList.valueAt(i, mValueBuffer, 0);
+                    addService(parseUuid(mValueBuffer, 0, valueLength), attributeDataList.handleAt(i),
+                            attributeDataList.endGroupHandleAt(i));
+                }
+                int lastEndHandle = attributeDataList.endGroupHandleAt(count - 1);
+                if (lastEndHandle >= MAX_ATT_HANDLE) {
+                    onAllServicesFound();
+                } else {
+                    discoverPrimaryServices(lastEndHandle + 1);
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                fail(UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.ATTRIBUTE_NOT_FOUND) {
+                    onAllServicesFound();
+                } else {
+                    fail(UsbGatt.getGattErrorCode(error_code));
+                }
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                fail(UsbGatt.GATT_FAILURE);
+            }
+        });
+        send(request);
+    }
+
+    private void onAllServicesFound() {
+        mAllServicesFound = true;
+        resolveNextService();
+    }
+
+    private synchronized void addService(UUID uuid, int startHandle, int endHandle) {
+        if (uuid == null) return;
+        int index = 0;
+        while (index < mServices.size() && mServices.get(index).getInstanceId() < startHandle) {
+            index++;
+        }
+        if (index < mServices.size() && mServices.get(index).getInstanceId() == startHandle) {
+            // Found by the requested UUID already.
+            return;
+        }
+        mServices.add(index, new UsbGattService(uuid, startHandle, endHandle, UsbGattService.SERVICE_TYPE_PRIMARY));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Characteristics and descriptors">
+
+    /**
+     * Resolve the next service, or move on to the next stage if all the services of current stage have been resolved.
+     */
+    private void resolveNextService() {
+        if (mCancelled) return;
+
+        UsbGattService service = nextUnresolvedService();
+        if (service != null) {
+            mDeclarationHandles.clear();
+            discoverCharacteristics(service, service.getInstanceId());
+            return;
+        }
+
+        if (!mBackground) {
+            mCallback.onRequestedServicesResolved(UsbGatt.GATT_SUCCESS);
+            if (mAllServicesFound) {
+                mCallback.onDiscoveryCompleted(UsbGatt.GATT_SUCCESS);
+                return;
+            }
+            // Walk the rest of the database without delaying the requests of the user.
+            mBackground = true;
+            discoverPrimaryServices(MIN_ATT_HANDLE);
+        } else {
+            mCallback.onDiscoveryCompleted(UsbGatt.GATT_SUCCESS);
+        }
+    }
+
+    private synchronized UsbGattService nextUnresolvedService() {
+        boolean requestedOnly = !mBackground && mRequestedServiceUuids != null;
+        for (UsbGattService service : mServices) {
+            if (service.isResolved()) continue;
+            if (requestedOnly && !mRequestedServiceUuids.contains(service.getUuid())) continue;
+            return service;
+        }
+        return null;
+    }
+
+    /**
+     * Discover the characteristics of the service from the start handle.
+     *
+     * @param service     service to be resolved.
+     * @param startHandle first handle to be searched.
+     */
+    private void discoverCharacteristics(final UsbGattService service, int startHandle) {
+        if (mCancelled) return;
+        if (startHandle > service.getEndHandle()) {
+            discoverDescriptors(service, 0, -1);
+            return;
+        }
+
+        ReadByTypeRequest request = new ReadByTypeRequest(startHandle, service.getEndHandle(), AttributeTypeIndexDefine.CHARACTERISTIC);
+        request.addReadByTypeRequestCallback(new ReadByTypeRequestCallback() {
+            @Override
+            public void onReadSuccess(AttributeDataListView attributeDataList) {
+                int count = attributeDataList.count();
+                if (count == 0) {
+                    discoverDescriptors(service, 0, -1);
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    int valueLength = attributeDataList.valueAt(i, mValueBuffer, 0);
+                    if (valueLength <= CHARACTERISTIC_DECLARATION_HEADER_LENGTH) continue;
+                    int properties = mValueBuffer[0] & 0x0FF;
+                    int valueHandle = (mValueBuffer[1] & 0x0FF) | ((mValueBuffer[2] & 0x0FF) << 8);
+                    UUID uuid = parseUuid(mValueBuffer, CHARACTERISTIC_DECLARATION_HEADER_LENGTH,
+                            valueLength - CHARACTERISTIC_DECLARATION_HEADER_LENGTH);
+                    if (uuid == null) continue;
+                    service.addCharacteristic(new UsbGattCharacteristic(uuid, valueHandle, properties, 0));
+                    mDeclarationHandles.add(attributeDataList.handleAt(i));
+                }
+                int lastHandle = attributeDataList.handleAt(count - 1);
+                if (lastHandle >= service.getEndHandle()) {
+                    discoverDescriptors(service, 0, -1);
+                } else {
+                    discoverCharacteristics(service, lastHandle + 1);
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                fail(UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.ATTRIBUTE_NOT_FOUND) {
+                    discoverDescriptors(service, 0, -1);
+                } else {
+                    fail(UsbGatt.getGattErrorCode(error_code));
+                }
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                fail(UsbGatt.GATT_FAILURE);
+            }
+        });
+        send(request);
+    }
+
+    /**
+     * Discover the descriptors of a characteristic, which are placed between its value handle and
+     * the declaration of the next characteristic (or the end of the service).
+     *
+     * @param service             service being resolved.
+     * @param characteristicIndex index of the characteristic in the service.
+     * @param startHandle         first handle to be searched, -1 to start after the characteristic value.
+     */
+    private void discoverDescriptors(final UsbGattService service, final int characteristicIndex, int startHandle) {
+        if (mCancelled) return;
+
+        List<UsbGattCharacteristic> characteristics = service.getCharacteristics();
+        if (characteristicIndex >= characteristics.size()) {
+            service.setResolved(true);
+            Log.d(TAG, "service resolved: " + service.getUuid() + ", characteristics: " + characteristics.size());
+            mCallback.onServiceResolved(service);
+            resolveNextService();
+            return;
+        }
+
+        final UsbGattCharacteristic characteristic = characteristics.get(characteristicIndex);
+        if (startHandle < 0) startHandle = characteristic.getInstanceId() + 1;
+        int endHandle = characteristicIndex + 1 < mDeclarationHandles.size()
+                ? mDeclarationHandles.get(characteristicIndex + 1) - 1 : service.getEndHandle();
+        if (startHandle > endHandle) {
+            discoverDescriptors(service, characteristicIndex + 1, -1);
+            return;
+        }
+
+        final int lastHandleOfRange = endHandle;
+        FindInformationRequest request = new FindInformationRequest(startHandle, endHandle);
+        request.addFindInformationRequestCallback(new FindInformationRequestCallback() {
+            @Override
+            public void onFindSuccess(AttributeDataListView informationData) {
+                super.onFindSuccess(informationData);
+                int count = informationData.count();
+                if (count == 0) {
+                    discoverDescriptors(service, characteristicIndex + 1, -1);
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    int uuidLength = informationData.valueAt(i, mValueBuffer, 0);
+                    UUID uuid = parseUuid(mValueBuffer, 0, uuidLength);
+                    if (uuid == null) continue;
+                    characteristic.addDescriptor(new UsbGattDescriptor(uuid, informationData.handleAt(i)));
+                }
+                int lastHandle = informationData.handleAt(count - 1);
+                if (lastHandle >= lastHandleOfRange) {
+                    discoverDescriptors(service, characteristicIndex + 1, -1);
+                } else {
+                    discoverDescriptors(service, characteristicIndex, lastHandle + 1);
+                }
+            }
+
+            @Override
+            public void onSendFailed(int sendResult) {
+                super.onSendFailed(sendResult);
+                fail(UsbGatt.GATT_FAILURE);
+            }
+
+            @Override
+            public void onReceiveFailed(byte att_opcode, byte request_code, short att_handler, byte error_code) {
+                super.onReceiveFailed(att_opcode, request_code, att_handler, error_code);
+                if (error_code == AttPduErrorCodeDefine.ATTRIBUTE_NOT_FOUND) {
+                    discoverDescriptors(service, characteristicIndex + 1, -1);
+                } else {
+                    fail(UsbGatt.getGattErrorCode(error_code));
+                }
+            }
+
+            @Override
+            public void onReceiveTimeout() {
+                super.onReceiveTimeout();
+                fail(UsbGatt.GATT_FAILURE);
+            }
+        });
+        send(request);
+    }
+    //</editor-fold>
+
+    private void fail(int status) {
+        if (mCancelled) return;
+        mCancelled = true;
+        Log.e(TAG, "discovery failed, status: " + status + ", background: " + mBackground);
+        if (!mBackground) {
+            mCallback.onRequestedServicesResolved(status);
+        }
+        mCallback.onDiscoveryCompleted(status);
+    }
+
+    /**
+     * Parse a little-endian 16-bit or 128-bit UUID.
+     *
+     * @return the UUID, or null if the length is neither 2 nor 16.
+     */
+    static UUID parseUuid(byte[] data, int offset, int length) {
+        if (length == UUID_16_BIT_LENGTH) {
+            long uuid16 = (data[offset] & 0x0FFL) | ((data[offset + 1] & 0x0FFL) << 8);
+            return new UUID(BLUETOOTH_BASE_UUID_MSB | (uuid16 << 32), BLUETOOTH_BASE_UUID_LSB);
+        }
+        if (length == UUID_128_BIT_LENGTH) {
+            long lsb = 0;
+            long msb = 0;
+            for (int i = 7; i >= 0; i--) {
+                lsb = (lsb << 8) | (data[offset + i] & 0x0FFL);
+                msb = (msb << 8) | (data[offset + 8 + i] & 0x0FFL);
+            }
+            return new UUID(msb, lsb);
+        }
+        return null;
+    }
+
+    /**
+     * Convert the UUID to its little-endian form, a UUID based on the Bluetooth Base UUID is converted to 2 octets.
+     */
+    static byte[] uuidToBytes(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        if (lsb == BLUETOOTH_BASE_UUID_LSB && (msb & 0xFFFF0000FFFFFFFFL) == BLUETOOTH_BASE_UUID_MSB) {
+            int uuid16 = (int) ((msb >>> 32) & 0xFFFF);
+            return new byte[]{(byte) uuid16, (byte) (uuid16 >> 8)};
+        }
+        byte[] bytes = new byte[UUID_128_BIT_LENGTH];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (lsb >>> (8 * i));
+            bytes[8 + i] = (byte) (msb >>> (8 * i));
+        }
+        return bytes;
+    }
+
+}
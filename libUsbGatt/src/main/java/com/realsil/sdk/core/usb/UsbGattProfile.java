@@ -0,0 +1,171 @@
+package com.realsil.sdk.core.usb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The information of a usb dongle which does not change until its firmware is changed, such as the
+ * characteristic table (UUID to handle) and the version information of the bluetooth chip.
+ * <p>The MTU is not kept, it is negotiated on every connection by {@link UsbGatt#requestMtu(int)}.</p>
+ * <p>Profiles are persisted by {@link UsbGattProfileCache}, so they can be used directly after reconnecting.</p>
+ *
+ * <p>A profile is updated on the event loop of the connector and read by the application and by the cache writer,
+ * so all the accessors are synchronized on the profile. Hold the lock of the profile to read several fields consistently.</p>
+ *
+ * @author bingshanguxue
+ * @see UsbGattProfileCache
+ */
+public final class UsbGattProfile {
+
+    /**
+     * The value of an unknown field.
+     */
+    public static final int VALUE_UNKNOWN = -1;
+
+    private UUID[] mCharacteristicUuids;
+    private int[]  mCharacteristicHandles;
+
+    private boolean mHasChipVersionInfo;
+    private int     mHciVersion;
+    private int     mHciRevision;
+    private int     mLmpVersion;
+    private int     mLmpSubVersion;
+    private int     mManufacturerName;
+
+    private int mRomVersion = VALUE_UNKNOWN;
+
+    public UsbGattProfile() {
+    }
+
+    /**
+     * Check whether the characteristic table has been saved.
+     *
+     * @return true if the characteristic table is present.
+     */
+    public synchronized boolean hasCharacteristics() {
+        return mCharacteristicUuids != null;
+    }
+
+    /**
+     * Save the characteristic table (UUID and handle) of the characteristics.
+     *
+     * @param characteristics characteristics discovered on the usb dongle.
+     */
+    public synchronized void setCharacteristics(List<UsbGattCharacteristic> characteristics) {
+        int size = characteristics.size();
+        mCharacteristicUuids = new UUID[size];
+        mCharacteristicHandles = new int[size];
+        for (int i = 0; i < size; i++) {
+            UsbGattCharacteristic characteristic = characteristics.get(i);
+            mCharacteristicUuids[i] = characteristic.getUuid();
+            mCharacteristicHandles[i] = characteristic.getInstanceId();
+        }
+    }
+
+    synchronized void setCharacteristicTable(UUID[] uuids, int[] handles) {
+        mCharacteristicUuids = uuids;
+        mCharacteristicHandles = handles;
+    }
+
+    synchronized int getCharacteristicCount() {
+        return mCharacteristicUuids == null ? 0 : mCharacteristicUuids.length;
+    }
+
+    synchronized UUID getCharacteristicUuid(int index) {
+        return mCharacteristicUuids[index];
+    }
+
+    synchronized int getCharacteristicHandle(int index) {
+        return mCharacteristicHandles[index];
+    }
+
+    /**
+     * Create the characteristics from the saved characteristic table.
+     *
+     * @return new created characteristics, or an empty list if the table has not been saved.
+     */
+    public synchronized List<UsbGattCharacteristic> createCharacteristics() {
+        int size = getCharacteristicCount();
+        List<UsbGattCharacteristic> characteristics = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            characteristics.add(new UsbGattCharacteristic(mCharacteristicUuids[i], mCharacteristicHandles[i], 0, 0));
+        }
+        return characteristics;
+    }
+
+    /**
+     * Check whether the characteristic table is the same as the given characteristics.
+     *
+     * @param characteristics characteristics to be compared.
+     * @return true if the UUID and handle of each characteristic are the same.
+     */
+    public synchronized boolean isSameCharacteristics(List<UsbGattCharacteristic> characteristics) {
+        if (characteristics == null || characteristics.size() != getCharacteristicCount()) return false;
+        for (int i = 0; i < characteristics.size(); i++) {
+            UsbGattCharacteristic characteristic = characteristics.get(i);
+            if (!mCharacteristicUuids[i].equals(characteristic.getUuid())
+                    || mCharacteristicHandles[i] != characteristic.getInstanceId()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Save the version information of the bluetooth chip.
+     *
+     * @see com.realsil.sdk.core.usb.connector.cmd.callback.ReadLocalChipVersionInfoRequestCallback#onReceivedVersionInformation(int, int, int, int, int)
+     */
+    public synchronized void setChipVersionInfo(int hciVersion, int hciRevision, int lmpVersion, int lmpSubVersion, int manufacturerName) {
+        mHasChipVersionInfo = true;
+        mHciVersion = hciVersion;
+        mHciRevision = hciRevision;
+        mLmpVersion = lmpVersion;
+        mLmpSubVersion = lmpSubVersion;
+        mManufacturerName = manufacturerName;
+    }
+
+    /**
+     * Check whether the saved version information of the bluetooth chip is the same as the given one.
+     *
+     * @return true if the version information has been saved and all the fields are the same.
+     */
+    public synchronized boolean isSameChipVersionInfo(int hciVersion, int hciRevision, int lmpVersion, int lmpSubVersion, int manufacturerName) {
+        return mHasChipVersionInfo && mHciVersion == hciVersion && mHciRevision == hciRevision
+                && mLmpVersion == lmpVersion && mLmpSubVersion == lmpSubVersion && mManufacturerName == manufacturerName;
+    }
+
+    public synchronized boolean hasChipVersionInfo() {
+        return mHasChipVersionInfo;
+    }
+
+    public synchronized int getHciVersion() {
+        return mHciVersion;
+    }
+
+    public synchronized int getHciRevision() {
+        return mHciRevision;
+    }
+
+    public synchronized int getLmpVersion() {
+        return mLmpVersion;
+    }
+
+    public synchronized int getLmpSubVersion() {
+        return mLmpSubVersion;
+    }
+
+    public synchronized int getManufacturerName() {
+        return mManufacturerName;
+    }
+
+    public synchronized int getRomVersion() {
+        return mRomVersion;
+    }
+
+    public synchronized void setRomVersion(int romVersion) {
+        mRomVersion = romVersion;
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.realsil.sdk.core.usb;
+
+import android.content.Context;
+import android.hardware.usb.UsbDevice;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache of {@link UsbGattProfile}, the profile of a usb dongle is keyed by its serial number
+ * and firmware version, so the profile is dropped automatically once the firmware is changed.
+ *
+ * <p>The profiles are stored in the private file directory of the application with a versioned format,
+ * a file written by an incompatible format version is ignored.</p>
+ *
+ * <p>The profiles are usually saved from the callbacks running on the event loop of a connector, so the files
+ * are written and deleted in order on a background thread, and the callers never wait for the disk.</p>
+ *
+ * @author bingshanguxue
+ */
+public final class UsbGattProfileCache {
+    private static final String TAG = "UsbGattProfileCache";
+
+    private static final String CACHE_DIR_NAME = "usb_gatt_profile";
+
+    /**
+     * Magic number at the beginning of the profile file, "RTKP".
+     */
+    private static final int PROFILE_FILE_MAGIC = 0x52544B50;
+
+    /**
+     * Increase this version when the file format is changed.
+     */
+    private static final int PROFILE_FILE_VERSION = 2;
+
+    private static volatile UsbGattProfileCache instance;
+
+    private final File mCacheDir;
+
+    /**
+     * Profiles which have been loaded or saved, the key is returned by {@link #getProfileKey(UsbDevice)}.
+     */
+    private final HashMap<String, UsbGattProfile> mProfiles = new HashMap<>();
+
+    /**
+     * How long the idle file thread is kept, in second.
+     */
+    private static final int FILE_THREAD_KEEP_ALIVE_TIME = 10;
+
+    /**
+     * Writes and deletes the profile files in order.
+     */
+    private final ThreadPoolExecutor mFileExecutor;
+
+    private UsbGattProfileCache(Context context) {
+        mCacheDir = new File(context.getFilesDir(), CACHE_DIR_NAME);
+        mFileExecutor = new ThreadPoolExecutor(1, 1, FILE_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, TAG);
+            }
+        });
+        mFileExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public static UsbGattProfileCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (UsbGattProfileCache.class) {
+                if (instance == null) instance = new UsbGattProfileCache(context.getApplicationContext());
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Get the key of the profile, which is made up of the serial number and the firmware version.
+     *
+     * @param usbDevice usb dongle.
+     * @return key of the profile, or null if the serial number can not be read.
+     */
+    private static String getProfileKey(UsbDevice usbDevice) {
+        if (usbDevice == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        String serialNumber;
+        String firmwareVersion = null;
+        try {
+            serialNumber = usbDevice.getSerialNumber();
+        } catch (SecurityException e) {
+            // The serial number can not be read before the device is authorized.
+            return null;
+        }
+        if (serialNumber == null || serialNumber.isEmpty()) return null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            firmwareVersion = usbDevice.getVersion();
+        }
+        return usbDevice.getVendorId() + "_" + usbDevice.getProductId() + "_" + serialNumber + "_" + firmwareVersion;
+    }
+
+    /**
+     * Get the cached profile of the usb dongle.
+     *
+     * @param usbDevice usb dongle.
+     * @return cached profile, or null if there is no cached profile for current firmware of the usb dongle.
+     */
+    public synchronized UsbGattProfile get(UsbDevice usbDevice) {
+        String profileKey = getProfileKey(usbDevice);
+        if (profileKey == null) return null;
+
+        UsbGattProfile profile = mProfiles.get(profileKey);
+        if (profile == null) {
+            profile = readProfile(getProfileFile(profileKey));
+            if (profile != null) mProfiles.put(profileKey, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Get the cached profile of the usb dongle, create a new one if it does not exist.
+     *
+     * @param usbDevice usb dongle.
+     * @return the profile, or null if the profile of the usb dongle can not be cached (no serial number).
+     */
+    public synchronized UsbGattProfile getOrCreate(UsbDevice usbDevice) {
+        String profileKey = getProfileKey(usbDevice);
+        if (profileKey == null) return null;
+
+        UsbGattProfile profile = get(usbDevice);
+        if (profile == null) {
+            profile = new UsbGattProfile();
+            mProfiles.put(profileKey, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Save the profile of the usb dongle, the profile file is written on a background thread.
+     *
+     * @param usbDevice usb dongle.
+     * @param profile   profile to be saved.
+     * @return true if the profile will be saved, false if the profile of the usb dongle can not be cached.
+     */
+    public synchronized boolean put(UsbDevice usbDevice, final UsbGattProfile profile) {
+        String profileKey = getProfileKey(usbDevice);
+        if (profileKey == null || profile == null) return false;
+
+        mProfiles.put(profileKey, profile);
+        final File profileFile = getProfileFile(profileKey);
+        mFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeProfile(profileFile, profile);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Remove the cached profile of the usb dongle.
+     *
+     * @param usbDevice usb dongle.
+     */
+    public synchronized void remove(UsbDevice usbDevice) {
+        String profileKey = getProfileKey(usbDevice);
+        if (profileKey == null) return;
+
+        mProfiles.remove(profileKey);
+        final File profileFile = getProfileFile(profileKey);
+        // Deleted after the pending writes, so the file will not be written back.
+        mFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (profileFile.exists() && !profileFile.delete()) {
+                    Log.w(TAG, "delete profile file failed: " + profileFile);
+                }
+            }
+        });
+    }
+
+    private File getProfileFile(String profileKey) {
+        return new File(mCacheDir, profileKey.replaceAll("[^A-Za-z0-9._-]", "_"));
+    }
+
+    private static UsbGattProfile readProfile(File profileFile) {
+        if (!profileFile.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(profileFile)));
+            if (in.readInt() != PROFILE_FILE_MAGIC || in.readInt() != PROFILE_FILE_VERSION) {
+                Log.w(TAG, "ignore profile file with unknown format: " + profileFile);
+                return null;
+            }
+
+            UsbGattProfile profile = new UsbGattProfile();
+            profile.setRomVersion(in.readInt());
+            if (in.readBoolean()) {
+                profile.setChipVersionInfo(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            }
+            int characteristicCount = in.readInt();
+            if (characteristicCount >= 0) {
+                UUID[] uuids = new UUID[characteristicCount];
+                int[] handles = new int[characteristicCount];
+                for (int i = 0; i < characteristicCount; i++) {
+                    long msb = in.readLong();
+                    long lsb = in.readLong();
+                    uuids[i] = new UUID(msb, lsb);
+                    handles[i] = in.readInt();
+                }
+                profile.setCharacteristicTable(uuids, handles);
+            }
+            return profile;
+        } catch (IOException e) {
+            Log.w(TAG, "read profile file failed: " + profileFile, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private boolean writeProfile(File profileFile, UsbGattProfile profile) {
+        if (!mCacheDir.exists() && !mCacheDir.mkdirs()) {
+            Log.w(TAG, "create profile directory failed: " + mCacheDir);
+            return false;
+        }
+
+        // Write to a temporary file first, a broken file will not be left if the writing is interrupted.
+        File tempFile = new File(profileFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            writeProfile(out, profile);
+            out.close();
+            out = null;
+            return tempFile.renameTo(profileFile);
+        } catch (IOException e) {
+            Log.w(TAG, "write profile file failed: " + profileFile, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void writeProfile(DataOutputStream out, UsbGattProfile profile) throws IOException {
+        // The profile may be updated by the event loop at the same time.
+        synchronized (profile) {
+            out.writeInt(PROFILE_FILE_MAGIC);
+            out.writeInt(PROFILE_FILE_VERSION);
+            out.writeInt(profile.getRomVersion());
+            out.writeBoolean(profile.hasChipVersionInfo());
+            if (profile.hasChipVersionInfo()) {
+                out.writeInt(profile.getHciVersion());
+                out.writeInt(profile.getHciRevision());
+                out.writeInt(profile.getLmpVersion());
+                out.writeInt(profile.getLmpSubVersion());
+                out.writeInt(profile.getManufacturerName());
+            }
+            if (profile.hasCharacteristics()) {
+                int characteristicCount = profile.getCharacteristicCount();
+                out.writeInt(characteristicCount);
+                for (int i = 0; i < characteristicCount; i++) {
+                    UUID uuid = profile.getCharacteristicUuid(i);
+                    out.writeLong(uuid.getMostSignificantBits());
+                    out.writeLong(uuid.getLeastSignificantBits());
+                    out.writeInt(profile.getCharacteristicHandle(i));
+                }
+            } else {
+                out.writeInt(-1);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+}
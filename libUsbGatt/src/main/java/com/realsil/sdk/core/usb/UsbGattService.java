@@ -0,0 +1,171 @@
+package com.realsil.sdk.core.usb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Represents a Usb GATT Service
+ *
+ * <p>Gatt Service contains a collection of {@link UsbGattCharacteristic},
+ * as well as referenced services.
+ *
+ * <p>A service discovered by {@link UsbGatt#discoverServices(List)} may not have been resolved yet,
+ * its characteristics and descriptors are available once {@link #isResolved()} returns true.
+ *
+ * @author bingshanguxue
+ */
+public class UsbGattService {
+
+    /**
+     * Primary service
+     */
+    public static final int SERVICE_TYPE_PRIMARY = 0;
+
+    /**
+     * Secondary service (included by primary services)
+     */
+    public static final int SERVICE_TYPE_SECONDARY = 1;
+
+    /**
+     * The UUID of this service.
+     */
+    protected UUID mUuid;
+
+    /**
+     * Instance ID (starting handle) for this service.
+     */
+    protected int mInstanceId;
+
+    /**
+     * The ending handle of this service.
+     */
+    protected int mEndHandle;
+
+    /**
+     * Service type (Primary/Secondary).
+     */
+    protected int mServiceType;
+
+    /**
+     * List of characteristics included in this service.
+     */
+    protected List<UsbGattCharacteristic> mCharacteristics;
+
+    /**
+     * Whether the characteristics and descriptors of this service have been discovered.
+     */
+    private volatile boolean mResolved;
+
+    /**
+     * Create a new UsbGattService.
+     *
+     * @param uuid        The UUID for this service
+     * @param instanceId  The starting handle of this service
+     * @param endHandle   The ending handle of this service
+     * @param serviceType The type of this service,
+     *                    {@link UsbGattService#SERVICE_TYPE_PRIMARY}
+     *                    or {@link UsbGattService#SERVICE_TYPE_SECONDARY}
+     */
+    public UsbGattService(UUID uuid, int instanceId, int endHandle, int serviceType) {
+        mUuid = uuid;
+        mInstanceId = instanceId;
+        mEndHandle = endHandle;
+        mServiceType = serviceType;
+        mCharacteristics = new ArrayList<>();
+    }
+
+    /**
+     * Add a characteristic to this service.
+     *
+     * @param characteristic The characteristics to be added
+     * @return true, if the characteristic was added to the service
+     */
+    public boolean addCharacteristic(UsbGattCharacteristic characteristic) {
+        mCharacteristics.add(characteristic);
+        characteristic.setService(this);
+        return true;
+    }
+
+    /**
+     * Returns the UUID of this service
+     *
+     * @return UUID of this service
+     */
+    public UUID getUuid() {
+        return mUuid;
+    }
+
+    /**
+     * Returns the instance ID for this service
+     *
+     * <p>If a remote device offers multiple services with the same UUID,
+     * the instance ID is used to distuinguish between services.
+     *
+     * @return Instance ID of this service
+     */
+    public int getInstanceId() {
+        return mInstanceId;
+    }
+
+    /**
+     * Returns the ending handle of this service.
+     *
+     * @return Ending handle of this service
+     */
+    public int getEndHandle() {
+        return mEndHandle;
+    }
+
+    /**
+     * Get the type of this service (primary/secondary)
+     */
+    public int getType() {
+        return mServiceType;
+    }
+
+    /**
+     * Returns a list of characteristics included in this service.
+     *
+     * @return Characteristics included in this service
+     */
+    public List<UsbGattCharacteristic> getCharacteristics() {
+        return mCharacteristics;
+    }
+
+    /**
+     * Returns a characteristic with a given UUID out of the list of
+     * characteristics offered by this service.
+     *
+     * <p>This is a convenience function to allow access to a given characteristic
+     * without enumerating over the list returned by {@link #getCharacteristics}
+     * manually.
+     *
+     * <p>If a remote service offers multiple characteristics with the same
+     * UUID, the first instance of a characteristic with the given UUID
+     * is returned.
+     *
+     * @return GATT characteristic object or null if no characteristic with the given UUID was found.
+     */
+    public UsbGattCharacteristic getCharacteristic(UUID uuid) {
+        for (UsbGattCharacteristic characteristic : mCharacteristics) {
+            if (uuid.equals(characteristic.getUuid())) {
+                return characteristic;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check whether the characteristics and descriptors of this service have been discovered.
+     *
+     * @return true if the service has been resolved.
+     */
+    public boolean isResolved() {
+        return mResolved;
+    }
+
+    void setResolved(boolean resolved) {
+        mResolved = resolved;
+    }
+}
@@ -0,0 +1,33 @@
+package com.realsil.sdk.core.usb;
+
+/**
+ * This abstract class is used to listen the progress of a {@link UsbGattStreamWriter}.
+ * <p>The callbacks are invoked on the event loop of the usb connector, please do not perform
+ * time-consuming operations in them.</p>
+ *
+ * @author bingshanguxue
+ */
+public abstract class UsbGattStreamCallback {
+
+    /**
+     * Callback reporting the progress of the stream, invoked each time a write command has been
+     * sent out on the usb endpoint.
+     *
+     * @param writer       The stream writer
+     * @param bytesWritten Number of bytes which have been sent
+     * @param totalBytes   Total number of bytes to be sent, -1 if the length of the stream is unknown
+     */
+    public void onProgress(UsbGattStreamWriter writer, long bytesWritten, long totalBytes) {
+    }
+
+    /**
+     * Callback indicating the stream has been completed, failed or cancelled.
+     *
+     * @param writer       The stream writer
+     * @param status       {@link UsbGatt#GATT_SUCCESS} if all the data has been sent
+     * @param bytesWritten Number of bytes which have been sent
+     * @param throughput   Achieved throughput in bytes per second
+     */
+    public void onCompleted(UsbGattStreamWriter writer, int status, long bytesWritten, long throughput) {
+    }
+}
@@ -0,0 +1,277 @@
+package com.realsil.sdk.core.usb;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.realsil.sdk.core.usb.connector.LocalUsbConnector;
+import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeCommandCallback;
+import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeCommand;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+
+/**
+ * Stream a large buffer or an {@link InputStream} to a characteristic with write commands
+ * (write without response).
+ *
+ * <p>The data is cut into packets of {@link UsbGatt#getMaxWriteValueLength()} bytes. At most
+ * {@link #setWindowSize(int) window size} write commands are handed to the usb connector and not
+ * yet sent out on the endpoint, a credit is given back once a command has been sent, and the next
+ * packet is written with it. So the dongle is kept busy without its buffers being overrun.</p>
+ *
+ * <p>Create a writer by {@link UsbGatt#newStreamWriter(UsbGattCharacteristic, byte[], int, int, UsbGattStreamCallback)}
+ * or {@link UsbGatt#newStreamWriter(UsbGattCharacteristic, InputStream, UsbGattStreamCallback)}, then call {@link #start()}.</p>
+ *
+ * <p>Note: The stream is read on the event loop of the usb connector, use a stream which does not
+ * block for a long time, such as a file or memory stream.</p>
+ *
+ * @author bingshanguxue
+ */
+public final class UsbGattStreamWriter {
+    private static final String TAG = "UsbGattStreamWriter";
+
+    /**
+     * Default number of write commands which can be in flight at the same time.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 8;
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final UsbGatt               mUsbGatt;
+    private final LocalUsbConnector     mUsbConnector;
+    private final UsbGattCharacteristic mCharacteristic;
+    private final UsbGattStreamCallback mCallback;
+
+    private final byte[]      mData;
+    private final int         mDataEnd;
+    private final InputStream mInputStream;
+    private final long        mTotalBytes;
+
+    private int mDataOffset;
+    private int mWindowSize = DEFAULT_WINDOW_SIZE;
+    private int mPacketSize;
+
+    /**
+     * Packets which are not in flight, each one holds a buffer of {@link #mPacketSize} bytes.
+     */
+    private final ArrayDeque<Packet> mIdlePackets = new ArrayDeque<>();
+
+    private int  mInFlightCount;
+    private volatile long mBytesWritten;
+    private long mStartTimeNanos;
+    private long mEndTimeNanos;
+
+    private boolean mStarted;
+    private boolean mEndOfStream;
+    private boolean mFinished;
+
+    UsbGattStreamWriter(UsbGatt usbGatt, LocalUsbConnector usbConnector, UsbGattCharacteristic characteristic,
+                        byte[] data, int offset, int length, UsbGattStreamCallback callback) {
+        mUsbGatt = usbGatt;
+        mUsbConnector = usbConnector;
+        mCharacteristic = characteristic;
+        mCallback = callback;
+        mData = data;
+        mDataOffset = offset;
+        mDataEnd = offset + length;
+        mInputStream = null;
+        mTotalBytes = length;
+    }
+
+    UsbGattStreamWriter(UsbGatt usbGatt, LocalUsbConnector usbConnector, UsbGattCharacteristic characteristic,
+                        InputStream inputStream, UsbGattStreamCallback callback) {
+        mUsbGatt = usbGatt;
+        mUsbConnector = usbConnector;
+        mCharacteristic = characteristic;
+        mCallback = callback;
+        mData = null;
+        mDataEnd = 0;
+        mInputStream = inputStream;
+        mTotalBytes = -1;
+    }
+
+    /**
+     * Set the number of write commands which can be in flight at the same time, must be called before {@link #start()}.
+     *
+     * @param windowSize window size, not less than 1.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be positive");
+        }
+        mWindowSize = windowSize;
+    }
+
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    public UsbGattCharacteristic getCharacteristic() {
+        return mCharacteristic;
+    }
+
+    /**
+     * Start streaming, the packet size is fixed by the MTU of the connection at this moment.
+     */
+    public void start() {
+        mUsbConnector.getEventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mStarted) return;
+                mStarted = true;
+                mPacketSize = mUsbGatt.getMaxWriteValueLength();
+                mStartTimeNanos = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < mWindowSize; i++) {
+                    mIdlePackets.add(new Packet(mPacketSize));
+                }
+                pump();
+            }
+        });
+    }
+
+    /**
+     * Stop streaming, the write commands in flight are still sent out.
+     */
+    public void cancel() {
+        mUsbConnector.getEventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(UsbGatt.GATT_FAILURE);
+            }
+        });
+    }
+
+    /**
+     * @return Number of bytes which have been sent.
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Get the achieved throughput.
+     *
+     * @return bytes per second since the writer was started, 0 if it has not been started.
+     */
+    public long getThroughput() {
+        if (mStartTimeNanos == 0) return 0;
+        long endTimeNanos = mFinished ? mEndTimeNanos : SystemClock.elapsedRealtimeNanos();
+        long elapsedNanos = Math.max(endTimeNanos - mStartTimeNanos, 1);
+        return mBytesWritten * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * Write packets while there are credits left.
+     */
+    private void pump() {
+        while (!mFinished && !mEndOfStream && !mIdlePackets.isEmpty()) {
+            Packet packet = mIdlePackets.peek();
+            int length;
+            try {
+                length = fill(packet.mBuffer);
+            } catch (IOException e) {
+                Log.e(TAG, "read stream failed", e);
+                finish(UsbGatt.GATT_FAILURE);
+                return;
+            }
+            if (length <= 0) {
+                mEndOfStream = true;
+                break;
+            }
+            mIdlePackets.poll();
+            mInFlightCount++;
+            packet.send(length);
+        }
+        if (mEndOfStream && mInFlightCount == 0) {
+            finish(UsbGatt.GATT_SUCCESS);
+        }
+    }
+
+    /**
+     * Fill the buffer with the next packet.
+     *
+     * @return number of bytes filled, 0 at the end of the stream.
+     */
+    private int fill(byte[] buffer) throws IOException {
+        if (mData != null) {
+            int length = Math.min(buffer.length, mDataEnd - mDataOffset);
+            System.arraycopy(mData, mDataOffset, buffer, 0, length);
+            mDataOffset += length;
+            return length;
+        }
+        int length = 0;
+        while (length < buffer.length) {
+            int read = mInputStream.read(buffer, length, buffer.length - length);
+            if (read < 0) break;
+            length += read;
+        }
+        return length;
+    }
+
+    private void finish(int status) {
+        if (mFinished) return;
+        mFinished = true;
+        mEndTimeNanos = SystemClock.elapsedRealtimeNanos();
+        long throughput = getThroughput();
+        Log.d(TAG, "stream finished, status: " + status + ", bytes: " + mBytesWritten + ", throughput: " + throughput + " B/s");
+        if (mCallback != null) {
+            mCallback.onCompleted(this, status, mBytesWritten, throughput);
+        }
+    }
+
+    /**
+     * A reusable packet, which is the callback of its own write command.
+     */
+    private final class Packet extends WriteAttributeCommandCallback {
+
+        final byte[] mBuffer;
+
+        private int                   mLength;
+        private WriteAttributeCommand mCommand;
+
+        Packet(int packetSize) {
+            mBuffer = new byte[packetSize];
+        }
+
+        void send(int length) {
+            mLength = length;
+            byte[] value = mBuffer;
+            if (length < mBuffer.length) {
+                // The last packet, a write command carries the whole array.
+                value = new byte[length];
+                System.arraycopy(mBuffer, 0, value, 0, length);
+            }
+            mCommand = WriteAttributeCommand.obtain(mCharacteristic.getInstanceId(), value);
+            mCommand.addWriteAttributeCommandCallback(this);
+            mUsbConnector.writeAttributesCommand(mCommand);
+        }
+
+        private void release() {
+            mInFlightCount--;
+            mCommand.recycle();
+            mCommand = null;
+            mIdlePackets.add(this);
+        }
+
+        @Override
+        public void onSendSuccess() {
+            super.onSendSuccess();
+            mBytesWritten += mLength;
+            release();
+            if (mFinished) return;
+            if (mCallback != null) {
+                mCallback.onProgress(UsbGattStreamWriter.this, mBytesWritten, mTotalBytes);
+            }
+            pump();
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            release();
+            Log.e(TAG, "send packet failed: " + sendResult);
+            finish(UsbGatt.GATT_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.realsil.sdk.core.usb;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The latest known values of the attributes on current connection, keyed by the attribute handle.
+ * <p>The values are updated by the reads, the acknowledged writes and the notifications/indications
+ * received from the server, and cleared once disconnected.</p>
+ *
+ * @author bingshanguxue
+ */
+final class UsbGattValueCache {
+
+    private static final class Entry {
+        byte[] mValue;
+        long   mUpdateTime;
+    }
+
+    private final HashMap<Integer, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Save the latest value of the attribute.
+     *
+     * @param handle attribute handle.
+     * @param value  value of the attribute, a copy of it is saved.
+     */
+    synchronized void put(int handle, byte[] value) {
+        if (value == null) return;
+        value = Arrays.copyOf(value, value.length);
+        Entry entry = mEntries.get(handle);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(handle, entry);
+        }
+        entry.mValue = value;
+        entry.mUpdateTime = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Get a copy of the value of the attribute if it is fresh enough.
+     *
+     * @param handle    attribute handle.
+     * @param ttlMillis the maximum age of the value in milliseconds.
+     * @return copy of the value, or null if there is no value or it is older than the ttl.
+     */
+    synchronized byte[] get(int handle, long ttlMillis) {
+        if (ttlMillis <= 0) return null;
+        Entry entry = mEntries.get(handle);
+        if (entry == null || SystemClock.elapsedRealtime() - entry.mUpdateTime > ttlMillis) return null;
+        return Arrays.copyOf(entry.mValue, entry.mValue.length);
+    }
+
+    /**
+     * Drop the value of the attribute, used when the value on the server becomes unknown.
+     *
+     * @param handle attribute handle.
+     */
+    synchronized void invalidate(int handle) {
+        mEntries.remove(handle);
+    }
+
+    synchronized void clear() {
+        mEntries.clear();
+    }
+}
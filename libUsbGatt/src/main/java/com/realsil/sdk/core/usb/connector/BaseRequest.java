@@ -1,5 +1,8 @@
 package com.realsil.sdk.core.usb.connector;
 
+import java.nio.ByteBuffer;
+import java.util.List;
+
 public abstract class BaseRequest {
 
 
@@ -82,6 +85,20 @@ public abstract class BaseRequest {
      */
     protected int mSendDataLength;
 
+    /**
+     * Encode the request message into the transport frame, starting at the current position of the frame.
+     * <p>The default implementation creates the message by {@link #createRequest()} and copies it into the frame,
+     * requests which are sent frequently override this method to write the header and payload directly.</p>
+     *
+     * @param frame The transport frame in little endian, its position is advanced by the length of the message.
+     */
+    public void encodeTo(ByteBuffer frame) {
+        setRequestOpcode();
+        setMessageLength();
+        createRequest();
+        frame.put(mSendData, 0, mSendData.length);
+    }
+
     /**
      * Get the data to be sent to the server.
      *
@@ -106,6 +123,91 @@ public abstract class BaseRequest {
     }
 
 
+    /**
+     * The key of a request which can not be shared, see {@link #getRequestKey()}.
+     */
+    public static final long NO_REQUEST_KEY = 0;
+
+    /**
+     * Type bits of the request key of an attribute protocol request.
+     */
+    protected static final long REQUEST_KEY_TYPE_ATT = 1L << 32;
+
+    /**
+     * Type bits of the request key of a usb command request.
+     */
+    protected static final long REQUEST_KEY_TYPE_USB_CMD = 2L << 32;
+
+    private boolean mSingleFlight = true;
+
+    /**
+     * Requests attached to this request by the connector, they share the result of this request.
+     * <p>Only accessed by {@link UsbSingleFlightRequests} with its lock held.</p>
+     */
+    List<BaseRequest> mSingleFlightFollowers;
+
+    /**
+     * Get the key of the request, which is made up of the opcode and the parameters of the request.
+     * <p>Idempotent requests (such as reads) return a key, while an identical request is queued or
+     * waiting for its response, a new one with the same key is not sent, it shares the result of the
+     * queued one instead.</p>
+     *
+     * @return the key of the request, or {@link #NO_REQUEST_KEY} if the request can not be shared.
+     */
+    public long getRequestKey() {
+        return NO_REQUEST_KEY;
+    }
+
+    /**
+     * Allow or forbid the request to share the result of an identical request.
+     *
+     * @param singleFlight false to always send the request, such as a request used to probe the usb endpoints.
+     */
+    public void setSingleFlight(boolean singleFlight) {
+        this.mSingleFlight = singleFlight;
+    }
+
+    /**
+     * Get the key used to share the result of the request.
+     *
+     * @return the request key, or {@link #NO_REQUEST_KEY} if the request should be sent by itself.
+     */
+    final long getSingleFlightKey() {
+        return mSingleFlight ? getRequestKey() : NO_REQUEST_KEY;
+    }
+
+    private boolean mRecycleOnCompletion;
+
+    /**
+     * Let the connector return the request to its pool by {@link #recycle()}, once the response has been
+     * parsed and the callback has been invoked.
+     * <p>Note: Only set it on a request obtained from a pool, and do not touch the request after its callback.</p>
+     *
+     * @param recycleOnCompletion true to recycle the request when it is completed.
+     */
+    public void setRecycleOnCompletion(boolean recycleOnCompletion) {
+        this.mRecycleOnCompletion = recycleOnCompletion;
+    }
+
+    final boolean isRecycleOnCompletion() {
+        return mRecycleOnCompletion;
+    }
+
+    /**
+     * Return the request to its pool, the requests which are not pooled do nothing.
+     */
+    public void recycle() {
+    }
+
+    /**
+     * Reset the state used by the connector, called by the pooled requests when they are recycled.
+     */
+    protected void resetRequestState() {
+        mSingleFlight = true;
+        mSingleFlightFollowers = null;
+        mRecycleOnCompletion = false;
+    }
+
     /**
      * Select the appropriate Report ID based on the size of the packets sent.
      */
@@ -5,7 +5,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.hardware.usb.UsbConstants;
 import android.hardware.usb.UsbDevice;
 import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbEndpoint;
@@ -25,21 +24,31 @@ import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeRequestCall
 import com.realsil.sdk.core.usb.connector.att.impl.ReadAttributeRequest;
 import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeCommand;
 import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeRequest;
+import com.realsil.sdk.core.usb.connector.callback.OnReceiveUsbMessageCallback;
 import com.realsil.sdk.core.usb.connector.callback.OnUsbDeviceStatusChangeCallback;
+import com.realsil.sdk.core.usb.connector.callback.OnUsbEndpointProbeCallback;
 import com.realsil.sdk.core.usb.connector.cmd.UsbCmdVendorEventCodeDefine;
 import com.realsil.sdk.core.usb.connector.cmd.UsbCmdVendorEventSubCodeDefine;
+import com.realsil.sdk.core.usb.connector.cmd.callback.QueryBTConnectStateRequestCallback;
+import com.realsil.sdk.core.usb.connector.cmd.impl.QueryBTConnectStateRequest;
 import com.realsil.sdk.core.usb.connector.util.ByteUtil;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class LocalUsbConnector {
 
@@ -59,8 +68,8 @@ public class LocalUsbConnector {
     private UsbEndpoint mUsbEndpointInterruptIn;
     private UsbEndpoint mUsbEndpointInterruptOut;
 
-    private int mSelectedSendEndpoint    = UsbEndpointTypeDefine.USB_ENDPOINT_NONE;
-    private int mSelectedReceiveEndpoint = UsbEndpointTypeDefine.USB_ENDPOINT_NONE;
+    private volatile int mSelectedSendEndpoint    = UsbEndpointTypeDefine.USB_ENDPOINT_NONE;
+    private volatile int mSelectedReceiveEndpoint = UsbEndpointTypeDefine.USB_ENDPOINT_NONE;
 
     private UsbInterface mUsbInterfaceBulkIn;
     private UsbInterface mUsbInterfaceBulkOut;
@@ -72,10 +81,48 @@ public class LocalUsbConnector {
     /**
      * This class is used for sending and receiving data and control messages to a USB device.
      */
-    private UsbDeviceConnection mUsbDeviceConnection;
+    private volatile UsbDeviceConnection mUsbDeviceConnection;
 
     private Context mContext = null;
 
+    /**
+     * Whether the usb broadcast receiver has been registered.
+     */
+    private boolean mUsbReceiverRegistered;
+
+    /**
+     * Endpoint layouts of the usb devices which have been set up, the key is made up of vid, pid and serial number.
+     *
+     * @see UsbEndpointLayout#getDeviceKey(UsbDevice)
+     */
+    private static final HashMap<String, UsbEndpointLayout> sEndpointLayoutCache = new HashMap<>();
+
+    /**
+     * The key of {@link #mSelectUsbDevice}, which is not changed after the device is reattached.
+     */
+    private String mSelectUsbDeviceKey;
+
+    /**
+     * How long the queued requests are held after the usb device is detached, in millisecond.
+     * <p>0 means the queued requests are discarded as soon as the usb device is detached.</p>
+     */
+    private volatile int mDetachHoldTime = 0;
+
+    /**
+     * Whether the usb device has been detached and the connector is waiting for it to be reattached.
+     */
+    private volatile boolean mConnectionSuspended;
+
+    /**
+     * The key of the usb device detached while {@link #mConnectionSuspended} is true.
+     */
+    private volatile String mSuspendedDeviceKey;
+
+    /**
+     * The pending task to discard the held requests, only accessed on {@link #mEventLoop}.
+     */
+    private ScheduledFuture<?> mDetachHoldFuture;
+
     private static final int BULK_TRANSFER_SEND_MAX_TIMEOUT    = 5000;
     private static final int BULK_TRANSFER_RECEIVE_MAX_TIMEOUT = 10 * 1000;
 
@@ -85,13 +132,10 @@ public class LocalUsbConnector {
     private static final int BUFF_SIZE_ON_USB_ENDPOINT = 255;
     // private static final int BUFF_SIZE_ON_USB_ENDPOINT = 256;
 
-    /* Global lock and condition */
-    private final ReentrantLock mSendNextRequestLock           = new ReentrantLock();
-    private final ReentrantLock mWriteData2BulkOutEndpointLock = new ReentrantLock();
-    private final ReentrantLock mWriteData2ControlEndpointLock = new ReentrantLock();
-
-    private final Condition mSendNextRequestCondition = mSendNextRequestLock.newCondition();
-    /* Global lock and condition */
+    /**
+     * Maximum time to wait for the receive thread to exit, in millisecond.
+     */
+    private static final int RECEIVE_THREAD_QUIT_TIMEOUT = 500;
 
     private CopyOnWriteArrayList<OnReceiveServerNotificationCallback> mServerNotificationCallbacks;
     private CopyOnWriteArrayList<OnReceiveServerIndicationCallback>   mServerIndicationCallbacks;
@@ -112,59 +156,100 @@ public class LocalUsbConnector {
      */
     private BaseRequest mSendingRequest;
 
-    /* Send write attribute command thread pool args */
     /**
-     * Core thread num of send write command thread pool
+     * The event loop which current connector pinned to, request scheduling, write command sending,
+     * response dispatching and response timeout are all handled on this loop.
+     *
+     * @see UsbEventLoopGroup
      */
-    private static final int CORE_THREAD_NUM_SEND_WRITE_COMMAND = 10;
+    private final UsbEventLoop mEventLoop;
+
     /**
-     * Max thread num of send write command thread pool
+     * Runs the blocking transfers on the control endpoint, and the writes which can not be reaped by the
+     * {@link UsbReceiveThread}, so that they never block {@link #mEventLoop}.
      */
-    private static final int MAX_THREAD_NUM_SEND_WRITE_COMMAND  = 10;
+    private final UsbBlockingTransferExecutor mBlockingTransferExecutor = new UsbBlockingTransferExecutor();
+
     /**
-     * Keep alive time of idle thread in send write command thread pool
+     * Idle transfers of the output endpoints, only accessed on {@link #mEventLoop}.
+     *
+     * @see OutTransfer
      */
-    private static final int KEEP_ALIVE_TIME_SEND_WRITE_COMMAND = 1000;
+    private final ArrayDeque<OutTransfer> mOutTransferPool = new ArrayDeque<>();
 
     /**
-     * Thread pool for executing send write command tasks
+     * Maximum number of idle received packets kept for reuse.
      */
-    private ThreadPoolExecutor mSendWriteCommandExecutor;
-    /* Send write attribute command thread pool args */
+    private static final int RECEIVED_PACKET_POOL_SIZE = 16;
 
     /**
-     * A thread handle. The task of this thread is to continuously obtain a Write Request
-     * from the cache queue, and then send it to the usb bulk out endpoint. Sending a new
-     * write request message requires receiving the write response corresponding to the previous write request.
+     * Idle received packets, taken by the receive thread and returned on {@link #mEventLoop}.
      *
-     * @see LocalUsbConnector#startReceivingRequestData()
+     * @see ReceivedPacket
      */
-    private Thread mSendRequestThread;
+    private final ArrayBlockingQueue<ReceivedPacket> mReceivedPacketPool = new ArrayBlockingQueue<>(RECEIVED_PACKET_POOL_SIZE);
 
     /**
-     * A thread handle whose main task is to listen to data from the usb bulk in endpoint.
-     *
-     * @see UsbConstants#USB_ENDPOINT_XFER_BULK
-     * @see UsbConstants#USB_DIR_IN
-     * @see LocalUsbConnector#startListenBulkInData()
+     * The pending response timeout task of {@link #mSendingRequest}, only accessed on {@link #mEventLoop}.
      */
-    private ListenUsbBulkInDataThread mListenUsbBulkInDataThread;
+    private ScheduledFuture<?> mResponseTimeoutFuture;
 
     /**
-     * A thread handle whose main task is to listen to data from the usb interrupt in endpoint.
-     *
-     * @see UsbConstants#USB_ENDPOINT_XFER_INT
-     * @see UsbConstants#USB_DIR_IN
-     * @see LocalUsbConnector#startListenInterruptInData()
+     * Whether the user is allowed to send requests and write commands.
+     */
+    private volatile boolean mReceivingRequestData;
+    private volatile boolean mReceivingWriteCommandData;
+
+    /**
+     * Number of probe requests sent on each endpoint pair.
+     */
+    private static final int ENDPOINT_PROBE_SAMPLE_COUNT = 5;
+
+    /**
+     * Maximum time to wait for the response of a probe request, in millisecond. An endpoint pair which the
+     * dongle does not answer on should not hold the probe for {@link #MAXIMUM_RESPONSE_TIME_WHEN_SEND_REQUEST}.
+     */
+    private static final int ENDPOINT_PROBE_RESPONSE_TIMEOUT = 500;
+
+    /**
+     * Whether to probe the endpoints automatically in {@link #connect()} when no endpoint has been selected.
+     */
+    private volatile boolean mAutoProbeEndpoints;
+
+    /**
+     * The probe in progress, only accessed on {@link #mEventLoop}.
+     */
+    private UsbEndpointProber mEndpointProber;
+
+    /**
+     * Whether an endpoint probe has been requested and has not selected a pair yet. The requests of the user are
+     * held in the queue meanwhile, so that they are not sent on the pairs being probed.
+     */
+    private volatile boolean mProbingEndpoints;
+
+    /**
+     * The measurements of the last endpoint probe.
      */
-    private ListenUsbInterruptInDataThread mListenUsbInterruptInDataThread;
+    private volatile List<UsbEndpointProbeResult> mEndpointProbeResults = Collections.emptyList();
 
     /**
-     * A thread handle whose main task is to listen to data from the usb control endpoint(Zero endpoint).
+     * A thread handle whose main task is to wait for the I/O completion of current usb connection.
      *
-     * @see UsbConstants#USB_ENDPOINT_XFER_CONTROL
+     * @see UsbReceiveThread
+     * @see LocalUsbConnector#startReceiveUsbData()
+     */
+    private volatile UsbReceiveThread mUsbReceiveThread;
+
+    /**
+     * Guards the start and stop of {@link #mUsbReceiveThread}, which may be requested on several threads.
      */
-    private ListenUsbControlEndpointDataThread mListenUsbControlEndpointDataThread;
+    private final Object mReceiveThreadLock = new Object();
+
+    /**
+     * Whether the receive thread is being restarted off the event loop, no request is sent until it is done,
+     * otherwise the response may be lost. Only accessed on {@link #mEventLoop}.
+     */
+    private boolean mRestartingReceiveThread;
 
     /**
      * Usb device has connected
@@ -182,7 +267,20 @@ public class LocalUsbConnector {
 
     private static volatile LocalUsbConnector instance = null;
 
-    private LocalUsbConnector() {}
+    /**
+     * Connectors bound to a specified usb device, the key is the device name of usb device.
+     */
+    private static final HashMap<String, LocalUsbConnector> sUsbDeviceConnectors = new HashMap<>();
+
+    /**
+     * Routes the received messages, only accessed on {@link #mEventLoop}.
+     */
+    private final UsbMessageDispatcher mMessageDispatcher = new UsbMessageDispatcher();
+
+    private LocalUsbConnector() {
+        mEventLoop = UsbEventLoopGroup.getDefault().next();
+        registerDefaultMessageHandlers();
+    }
 
     public static LocalUsbConnector getInstance() {
         if (instance == null) {
@@ -193,6 +291,46 @@ public class LocalUsbConnector {
         return instance;
     }
 
+    /**
+     * Get the connector bound to the specified usb device. Each usb device owns its own connector, and all the
+     * connectors share the threads of {@link UsbEventLoopGroup#getDefault()}, so connecting more usb devices will
+     * not create more scheduling threads.
+     *
+     * @param usbDevice The usb device to be connected.
+     * @return The connector of the usb device, or the default connector if the usb device is null.
+     */
+    public static LocalUsbConnector getInstance(UsbDevice usbDevice) {
+        if (usbDevice == null) {
+            return getInstance();
+        }
+        // The default connector has been bound to this device.
+        LocalUsbConnector defaultConnector = instance;
+        if (defaultConnector != null && defaultConnector.isSelectedUsbDevice(usbDevice)
+                && defaultConnector.mSelectUsbDevice != null) {
+            return defaultConnector;
+        }
+        synchronized (sUsbDeviceConnectors) {
+            LocalUsbConnector connector = sUsbDeviceConnectors.get(usbDevice.getDeviceName());
+            if (connector == null) {
+                connector = new LocalUsbConnector();
+                sUsbDeviceConnectors.put(usbDevice.getDeviceName(), connector);
+            }
+            return connector;
+        }
+    }
+
+    /**
+     * Check whether the usb device is the device currently associated with this connector.
+     *
+     * @param usbDevice usb device to be checked.
+     * @return true if no device has been associated, or the device is the associated one.
+     */
+    private boolean isSelectedUsbDevice(UsbDevice usbDevice) {
+        UsbDevice selectUsbDevice = mSelectUsbDevice;
+        return selectUsbDevice == null || usbDevice == null
+                || Objects.equals(selectUsbDevice.getDeviceName(), usbDevice.getDeviceName());
+    }
+
     /**
      * Call this method to initialize the Usb connector.
      *
@@ -363,51 +501,30 @@ public class LocalUsbConnector {
         mUsbInterfaceInterruptIn = null;
         mUsbInterfaceInterruptOut = null;
 
-        for (int i = 0; i < mSelectUsbDevice.getInterfaceCount(); i++) {
-            UsbInterface usbInterface = mSelectUsbDevice.getInterface(i);
-            /*if ((UsbConstants.USB_CLASS_AUDIO != usbInterface.getInterfaceClass())
-                    && (UsbConstants.USB_CLASS_HID != usbInterface.getInterfaceClass())) {
-                // Filter only specified types of devices
-
-                continue;
-            }*/
-
-            for (int j = 0; j < usbInterface.getEndpointCount(); j++) {
-                UsbEndpoint usbEndpoint = usbInterface.getEndpoint(j);
-                // Find Bulk Endpoint
-                if (usbEndpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK) {
-                    if (usbEndpoint.getDirection() == UsbConstants.USB_DIR_IN) {
-                        mUsbEndpointBulkIn = usbEndpoint;
-                        mUsbInterfaceBulkIn = usbInterface;
-                    } else {
-                        mUsbEndpointBulkOut = usbEndpoint;
-                        mUsbInterfaceBulkOut = usbInterface;
-                    }
-                }
-
-                // Control transmission
-                /*if (usbEndpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_CONTROL) {
-                    if (usbEndpoint.getDirection() == UsbConstants.USB_DIR_IN) {
-                        mUsbEndpointControlIn = usbEndpoint;
-                        mUsbInterfaceControlIn = usbInterface;
-                    } else {
-                        mUsbEndpointControlOut = usbEndpoint;
-                        mUsbInterfaceControlOut = usbInterface;
-                    }
-                }*/
-
-                // Find Interrupt endpoint
-                if (usbEndpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_INT) {
-                    if (usbEndpoint.getDirection() == UsbConstants.USB_DIR_IN) {
-                        mUsbEndpointInterruptIn = usbEndpoint;
-                        mUsbInterfaceInterruptIn = usbInterface;
-                    } else {
-                        mUsbEndpointInterruptOut = usbEndpoint;
-                        mUsbInterfaceInterruptOut = usbInterface;
-                    }
-                }
+        // Reuse the layout of a reattached device, enumerate the interfaces and endpoints only when it is unknown.
+        String deviceKey = UsbEndpointLayout.getDeviceKey(mSelectUsbDevice);
+        UsbEndpointLayout endpointLayout;
+        synchronized (sEndpointLayoutCache) {
+            endpointLayout = sEndpointLayoutCache.get(deviceKey);
+        }
+        if (endpointLayout == null || !endpointLayout.matches(mSelectUsbDevice)) {
+            endpointLayout = UsbEndpointLayout.enumerate(mSelectUsbDevice);
+            synchronized (sEndpointLayoutCache) {
+                sEndpointLayoutCache.put(deviceKey, endpointLayout);
             }
+        } else {
+            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_INIT_USB_CONNECTOR, "use cached endpoint layout of " + deviceKey));
         }
+        mSelectUsbDeviceKey = deviceKey;
+
+        mUsbEndpointBulkIn = endpointLayout.getEndpoint(mSelectUsbDevice, UsbEndpointLayout.ROLE_BULK_IN);
+        mUsbInterfaceBulkIn = endpointLayout.getInterface(mSelectUsbDevice, UsbEndpointLayout.ROLE_BULK_IN);
+        mUsbEndpointBulkOut = endpointLayout.getEndpoint(mSelectUsbDevice, UsbEndpointLayout.ROLE_BULK_OUT);
+        mUsbInterfaceBulkOut = endpointLayout.getInterface(mSelectUsbDevice, UsbEndpointLayout.ROLE_BULK_OUT);
+        mUsbEndpointInterruptIn = endpointLayout.getEndpoint(mSelectUsbDevice, UsbEndpointLayout.ROLE_INTERRUPT_IN);
+        mUsbInterfaceInterruptIn = endpointLayout.getInterface(mSelectUsbDevice, UsbEndpointLayout.ROLE_INTERRUPT_IN);
+        mUsbEndpointInterruptOut = endpointLayout.getEndpoint(mSelectUsbDevice, UsbEndpointLayout.ROLE_INTERRUPT_OUT);
+        mUsbInterfaceInterruptOut = endpointLayout.getInterface(mSelectUsbDevice, UsbEndpointLayout.ROLE_INTERRUPT_OUT);
 
         /* check bulk in interface & endpoint */
         // interface
@@ -548,15 +665,19 @@ public class LocalUsbConnector {
     }
 
     private void initUsbReceiver() {
+        if (mUsbReceiverRegistered) return;
         IntentFilter filter = new IntentFilter();
         filter.addAction(UsbAction.ACTION_REQUEST_USB_PERMISSION);
         filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
         filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
         mContext.registerReceiver(mBroadcastReceiver, filter);
+        mUsbReceiverRegistered = true;
     }
 
     private void destroyUsbReceiver() {
+        if (!mUsbReceiverRegistered) return;
         mContext.unregisterReceiver(mBroadcastReceiver);
+        mUsbReceiverRegistered = false;
     }
 
     private BroadcastReceiver mBroadcastReceiver = new BroadcastReceiver() {
@@ -566,6 +687,15 @@ public class LocalUsbConnector {
             if (Objects.equals(intent.getAction(), UsbAction.ACTION_REQUEST_USB_PERMISSION)) {
                 UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
                 boolean granted = intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
+                // The authorization result belongs to the device of another connector.
+                if (!isSelectedUsbDevice(device)) return;
+                if (mConnectionSuspended) {
+                    // Authorization of the reattached device
+                    if (device != null && granted && isSuspendedUsbDevice(device)) {
+                        resumeConnection(device);
+                    }
+                    return;
+                }
                 if (device != null && granted) {
                     mSelectUsbDevice = device;
                     printAuthorizedDeviceInfo();
@@ -581,21 +711,185 @@ public class LocalUsbConnector {
             // When the device is attached
             if (Objects.equals(intent.getAction(), UsbManager.ACTION_USB_DEVICE_ATTACHED)) {
                 Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "device has attached"));
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                if (device != null && mConnectionSuspended && isSuspendedUsbDevice(device)) {
+                    resumeConnection(device);
+                }
                 notifyDeviceAttachStatusChange(true);
                 return;
             }
 
             // When the device is detached
             if (Objects.equals(intent.getAction(), UsbManager.ACTION_USB_DEVICE_DETACHED)) {
+                UsbDevice device = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
+                // Another usb device has been detached, the connection of this connector is still alive.
+                if (mConnectionSuspended || !isSelectedUsbDevice(device)) return;
                 Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "device has detached, need to re-establish connection"));
                 mUsbConnectState = STATE_USB_DISCONNECTED; // update usb connection status to disconnected
                 notifyDeviceAttachStatusChange(false);
-                disConnect();
+                if (mDetachHoldTime > 0 && mReceivingRequestData) {
+                    suspendConnection();
+                } else {
+                    disConnect();
+                }
             }
         }
     };
 
 
+    /**
+     * Set how long the queued requests are held after the usb device is detached. If the same usb device
+     * (same vid, pid and serial number) is attached again within this time, the connection will be
+     * re-established and the held requests will be sent in order, otherwise they will fail with
+     * {@link UsbError#CODE_USB_DEVICE_DETACHED}.
+     * <p>The request waiting for the server response when the device is detached always fails,
+     * because its response can never be received.</p>
+     *
+     * @param holdTime hold time in millisecond, 0 (the default value) means not to hold the queued requests.
+     */
+    public void setDetachHoldTime(int holdTime) {
+        mDetachHoldTime = Math.max(0, holdTime);
+    }
+
+    public int getDetachHoldTime() {
+        return mDetachHoldTime;
+    }
+
+    /**
+     * Check whether the attached usb device is the one detached during the hold time.
+     * <p>If the serial number of either device is unknown, e.g. it can not be read before the device is
+     * authorized, only the vid and pid can be compared. Such a match is only accepted when the attached
+     * device is the only one with this vid and pid, otherwise another dongle of the same model may take
+     * over the held requests.</p>
+     *
+     * @param usbDevice the attached usb device.
+     * @return true if the attached usb device is the detached one.
+     */
+    private boolean isSuspendedUsbDevice(UsbDevice usbDevice) {
+        String suspendedDeviceKey = mSuspendedDeviceKey;
+        if (suspendedDeviceKey == null) return false;
+        String deviceKey = UsbEndpointLayout.getDeviceKey(usbDevice);
+        if (UsbEndpointLayout.hasSerialNumber(deviceKey) && UsbEndpointLayout.hasSerialNumber(suspendedDeviceKey)) {
+            return deviceKey.equals(suspendedDeviceKey);
+        }
+
+        String productKey = UsbEndpointLayout.getProductKey(usbDevice);
+        if (!suspendedDeviceKey.startsWith(productKey)) return false;
+        int sameProductCount = 0;
+        if (mUsbManager != null) {
+            for (UsbDevice attachedDevice : mUsbManager.getDeviceList().values()) {
+                if (attachedDevice.getVendorId() == usbDevice.getVendorId()
+                        && attachedDevice.getProductId() == usbDevice.getProductId()) {
+                    sameProductCount++;
+                }
+            }
+        }
+        if (sameProductCount != 1) {
+            Log.w(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "serial number unknown and " + sameProductCount
+                    + " devices (" + productKey + ") are attached, can not tell which one has been detached"));
+            return false;
+        }
+        Log.w(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "serial number unknown, match the only attached device (" + productKey + ") by vid and pid"));
+        return true;
+    }
+
+    /**
+     * Release the detached usb device, but keep the queued requests for {@link #mDetachHoldTime}.
+     */
+    private void suspendConnection() {
+        Log.w(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "hold queued requests for " + mDetachHoldTime + "ms"));
+        mConnectionSuspended = true;
+        mSuspendedDeviceKey = mSelectUsbDeviceKey;
+        stopReceivingWriteCommandData();
+        mSelectUsbDevice = null;
+        releaseConnection();
+
+        final int holdTime = mDetachHoldTime;
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                // The response of the request being sent will never be received.
+                if (mSendingRequest != null) {
+                    BaseRequest interruptedRequest = mSendingRequest;
+                    if (mResponseTimeoutFuture != null) {
+                        mResponseTimeoutFuture.cancel(false);
+                        mResponseTimeoutFuture = null;
+                    }
+                    mSendingRequest = null;
+                    if (interruptedRequest.getRequestCallback() != null)
+                        interruptedRequest.getRequestCallback().onSendFailed(UsbError.CODE_USB_DEVICE_DETACHED);
+                    failSingleFlightFollowers(interruptedRequest, UsbError.CODE_USB_DEVICE_DETACHED);
+                }
+                if (mDetachHoldFuture != null) mDetachHoldFuture.cancel(false);
+                mDetachHoldFuture = mEventLoop.schedule(mDetachHoldTimeoutTask, holdTime, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    /**
+     * Re-establish the connection on the reattached usb device, and send the held requests.
+     *
+     * @param usbDevice the reattached usb device.
+     */
+    private void resumeConnection(UsbDevice usbDevice) {
+        mSelectUsbDevice = usbDevice;
+        if (!mUsbManager.hasPermission(usbDevice)) {
+            // Resume the connection after the device is authorized.
+            PendingIntent requestUsbIntent = PendingIntent.getBroadcast(mContext, 0, new Intent(UsbAction.ACTION_REQUEST_USB_PERMISSION), 0);
+            mUsbManager.requestPermission(usbDevice, requestUsbIntent);
+            return;
+        }
+
+        int ret = setupDevice();
+        if (ret == UsbError.CODE_NO_ERROR) {
+            ret = connect();
+        }
+        if (ret != UsbError.CODE_NO_ERROR) {
+            // The held requests will be discarded when the hold time expires.
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "resume connection failed, error code: " + ret));
+            return;
+        }
+
+        Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "device has reattached, send held requests"));
+        mConnectionSuspended = false;
+        mSuspendedDeviceKey = null;
+        mUsbConnectState = STATE_USB_CONNECTED;
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mDetachHoldFuture != null) {
+                    mDetachHoldFuture.cancel(false);
+                    mDetachHoldFuture = null;
+                }
+                scheduleNextRequest();
+            }
+        });
+    }
+
+    /**
+     * The detached usb device has not been attached again within the hold time, discard the held requests.
+     */
+    private final Runnable mDetachHoldTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            mDetachHoldFuture = null;
+            if (!mConnectionSuspended) return;
+
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "device has not reattached in time, discard held requests"));
+            mConnectionSuspended = false;
+            mSuspendedDeviceKey = null;
+            mReceivingRequestData = false;
+            mSelectUsbDevice = null;
+            BaseRequest heldRequest;
+            while ((heldRequest = pollNextRequest()) != null) {
+                releaseCoalescingWriteRequest(heldRequest);
+                if (heldRequest.getRequestCallback() != null)
+                    heldRequest.getRequestCallback().onSendFailed(UsbError.CODE_USB_DEVICE_DETACHED);
+                failSingleFlightFollowers(heldRequest, UsbError.CODE_USB_DEVICE_DETACHED);
+            }
+        }
+    };
+
     /**
      * Call this method to add a callback for listening notification messages from server.
      *
@@ -696,323 +990,696 @@ public class LocalUsbConnector {
 
 
     /**
-     * Start new Thread to listen for data coming from the bulk in endpoint.
+     * Start a new thread to receive data from the input endpoints of current usb connection.
      *
-     * @see UsbConstants#USB_ENDPOINT_XFER_BULK
-     * @see UsbConstants#USB_DIR_IN
+     * @see UsbReceiveThread
      */
-    private void startListenBulkInData() {
-        if (mListenUsbBulkInDataThread == null) {
-            mListenUsbBulkInDataThread = new ListenUsbBulkInDataThread();
-            mListenUsbBulkInDataThread.start();
+    private void startReceiveUsbData() {
+        synchronized (mReceiveThreadLock) {
+            if (mUsbReceiveThread == null && mUsbDeviceConnection != null) {
+                mUsbReceiveThread = new UsbReceiveThread(mUsbDeviceConnection, mSelectedReceiveEndpoint);
+                mUsbReceiveThread.start();
+            }
         }
     }
 
     /**
-     * Stop to listen for data coming from the bulk in endpoint.
+     * Stop to receive data from the input endpoints, this method will wait for the receive thread to exit.
      */
-    private void stopListenBulkInData() {
-        if (mListenUsbBulkInDataThread != null) {
-            mListenUsbBulkInDataThread.interrupt();
-            mListenUsbBulkInDataThread = null;
+    private void stopReceiveUsbData() {
+        synchronized (mReceiveThreadLock) {
+            if (mUsbReceiveThread != null) {
+                mUsbReceiveThread.quit();
+                mUsbReceiveThread = null;
+            }
         }
     }
 
     /**
-     * Start new Thread to listen for data coming from the interrupt in endpoint.
+     * Detach the receive thread and the usb connection from this connector, and tear them down without blocking
+     * the caller, which is usually the main thread receiving the usb broadcasts.
+     * <p>The teardown is posted to the event loop, so the writes already handed to it are submitted or failed
+     * first, and then run by {@link #mBlockingTransferExecutor} after the blocking transfers in progress: the
+     * receive thread is stopped and waited for, and the connection is closed only after that.</p>
      *
-     * @see UsbConstants#USB_ENDPOINT_XFER_INT
-     * @see UsbConstants#USB_DIR_IN
+     * @return a future which is done once the usb connection has been closed.
      */
-    private void startListenInterruptInData() {
-        if (mListenUsbInterruptInDataThread == null) {
-            mListenUsbInterruptInDataThread = new ListenUsbInterruptInDataThread();
-            mListenUsbInterruptInDataThread.start();
+    private Future<?> releaseConnection() {
+        final UsbReceiveThread receiveThread;
+        final UsbDeviceConnection connection;
+        synchronized (mReceiveThreadLock) {
+            receiveThread = mUsbReceiveThread;
+            mUsbReceiveThread = null;
+            connection = mUsbDeviceConnection;
+            mUsbDeviceConnection = null;
         }
+        final FutureTask<Void> teardownTask = new FutureTask<>(new Runnable() {
+            @Override
+            public void run() {
+                if (receiveThread != null) receiveThread.quit();
+                if (connection != null) connection.close();
+            }
+        }, null);
+        if (receiveThread == null && connection == null) {
+            teardownTask.run();
+            return teardownTask;
+        }
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                mBlockingTransferExecutor.execute(teardownTask);
+            }
+        });
+        return teardownTask;
     }
 
     /**
-     * Stop to listen for data coming from the interrupt in endpoint.
+     * Restart the receive thread to listen the selected receive endpoint, nothing will be done if it is not running.
+     * <p>Stopping the thread waits for it to exit, so when called on the event loop, the thread is restarted on
+     * {@link #mBlockingTransferExecutor} and no request is sent until it is done.</p>
+     *
+     * @param onRestarted Run on the event loop once the thread has been restarted, may be null.
      */
-    private void stopListenInterruptInData() {
-        if (mListenUsbInterruptInDataThread != null) {
-            mListenUsbInterruptInDataThread.interrupt();
-            mListenUsbInterruptInDataThread = null;
+    private void restartReceiveUsbData(final Runnable onRestarted) {
+        if (!mEventLoop.inEventLoop()) {
+            synchronized (mReceiveThreadLock) {
+                if (mUsbReceiveThread != null) {
+                    stopReceiveUsbData();
+                    startReceiveUsbData();
+                }
+            }
+            if (onRestarted != null) mEventLoop.execute(onRestarted);
+            return;
         }
+
+        mRestartingReceiveThread = true;
+        mBlockingTransferExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mReceiveThreadLock) {
+                    if (mUsbReceiveThread != null) {
+                        stopReceiveUsbData();
+                        startReceiveUsbData();
+                    }
+                }
+                mEventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        mRestartingReceiveThread = false;
+                        if (onRestarted != null) onRestarted.run();
+                        scheduleNextRequest();
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Start a new thread to listen for data coming from the control endpoint
+     * Check whether the completion of a transfer queued on the bulk out or interrupt out endpoint will be reaped, which
+     * is only true when the receive thread waits for the queued requests rather than polling the control endpoint.
      *
-     * @see UsbConstants#USB_ENDPOINT_XFER_CONTROL
+     * @return false if the writes on the bulk out and interrupt out endpoints should be blocking transfers.
      */
-    private void startListenControlEndpointData() {
-        if (mListenUsbControlEndpointDataThread == null) {
-            mListenUsbControlEndpointDataThread = new ListenUsbControlEndpointDataThread();
-            mListenUsbControlEndpointDataThread.start();
-        }
+    private boolean canReapOutTransfers() {
+        UsbReceiveThread receiveThread = mUsbReceiveThread;
+        return receiveThread != null && !receiveThread.mListenControlEndpoint;
     }
 
     /**
-     * Stop to listen for data coming from the control endpoint.
+     * The only thread owned by a usb connection, which is used to wait for the usb I/O completion.
+     * <p>The bulk in endpoint and interrupt in endpoint are both read by queued {@link UsbRequest}s, so
+     * that the completion of the two input endpoints and the data written to the bulk out and interrupt out
+     * endpoints can be reaped by one {@link UsbDeviceConnection#requestWait()} call. The received data will be
+     * dispatched on the {@link UsbEventLoop} which current connector pinned to.</p>
+     *
+     * <p>If {@link UsbEndpointTypeDefine#USB_ENDPOINT_CONTROL_IN} is selected as the receive endpoint, this thread
+     * polls the control endpoint(Zero endpoint) instead, and the data written to the output endpoints is sent
+     * by blocking transfers, since no {@link UsbDeviceConnection#requestWait()} call would reap it.</p>
      */
-    private void stopListenControlEndpointData() {
-        if (mListenUsbControlEndpointDataThread != null) {
-            mListenUsbControlEndpointDataThread.interrupt();
-            mListenUsbControlEndpointDataThread = null;
+    private class UsbReceiveThread extends Thread {
+
+        private final UsbDeviceConnection mConnection;
+
+        private final boolean mListenControlEndpoint;
+
+        private final UsbRequest mBulkInRequest;
+
+        private final UsbRequest mInterruptInRequest;
+
+        private volatile boolean mQuit;
+
+        UsbReceiveThread(UsbDeviceConnection connection, int receiveEndpoint) {
+            super("UsbReceiveThread");
+            mConnection = connection;
+            mListenControlEndpoint = receiveEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_CONTROL_IN;
+            if (!mListenControlEndpoint && receiveEndpoint != UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_IN) {
+                mBulkInRequest = openReadRequest(mUsbEndpointBulkIn);
+            } else {
+                mBulkInRequest = null;
+            }
+            if (!mListenControlEndpoint && receiveEndpoint != UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN) {
+                mInterruptInRequest = openReadRequest(mUsbEndpointInterruptIn);
+            } else {
+                mInterruptInRequest = null;
+            }
         }
-    }
 
-    /**
-     * Listen for data from the usb bulk in endpoint
-     */
-    private class ListenUsbBulkInDataThread extends Thread {
-        @Override
-        public void run() {
-            super.run();
-            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start listening for bulk in endpoint data..."));
-            notifyDeviceStatusChange(0, "start listen bulk in endpoint.");
+        private UsbRequest openReadRequest(UsbEndpoint usbEndpoint) {
+            if (usbEndpoint == null) return null;
+            UsbRequest readDataRequest = new UsbRequest();
+            if (!readDataRequest.initialize(mConnection, usbEndpoint)) {
+                Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "initialize read request failed"));
+                readDataRequest.close();
+                return null;
+            }
+            readDataRequest.setClientData(ByteBuffer.allocate(BUFF_SIZE_ON_USB_ENDPOINT));
+            return readDataRequest;
+        }
 
-            while (!isInterrupted()) {
-                byte[] receiveBuf = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-                int receiveLen = mUsbDeviceConnection.bulkTransfer(mUsbEndpointBulkIn, receiveBuf, receiveBuf.length, BULK_TRANSFER_SEND_MAX_TIMEOUT);
+        private boolean queueReadRequest(UsbRequest readDataRequest) {
+            ByteBuffer receiveBuff = (ByteBuffer) readDataRequest.getClientData();
+            receiveBuff.clear();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // Invalidate the report id, so that the data of a failed transfer will not be parsed again.
+                receiveBuff.array()[0] = 0;
+                return readDataRequest.queue(receiveBuff);
+            } else {
+                // The received length is not reported, clear the stale data of the reused buffer, so that only
+                // the data of this transfer can be parsed.
+                Arrays.fill(receiveBuff.array(), (byte) 0);
+                return readDataRequest.queue(receiveBuff, BUFF_SIZE_ON_USB_ENDPOINT);
+            }
+        }
 
-                // If the received data length is less than or equal to 0, the data is illegal.
-                if (receiveLen <= 0) {
-                    Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "receive data failed, " + receiveLen));
-                    continue;
-                }
+        /**
+         * Get the length of the data received by a completed read request.
+         *
+         * @param receiveBuff the buffer of the read request.
+         * @return the position set by {@link UsbDeviceConnection#requestWait()} since Android O, or the capacity of
+         * the buffer before it, whose stale data has been cleared by {@link #queueReadRequest(UsbRequest)}.
+         */
+        private int getReceivedLength(ByteBuffer receiveBuff) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                return receiveBuff.position();
+            } else {
+                return receiveBuff.capacity();
+            }
+        }
 
-                // If the received data length is bigger than 0, then define a new array to hold incoming data.
-                byte[] receiveData = new byte[receiveLen];
-                System.arraycopy(receiveBuf, 0, receiveData, 0, receiveLen);
-                byte reportIdByte = receiveData[0];
-
-                boolean checkRet = UsbConfig.checkReportID(reportIdByte);
-                if (checkRet) {
-                    int real_message_length = receiveData[1] & 0x0FF;
-                    byte[] realData = new byte[real_message_length + BaseRequest.LENGTH_WRITE_REQUEST_HEAD];
-                    System.arraycopy(receiveData, 0, realData, 0, realData.length);
-                    Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                            "receive data (bulk in, Verified, len = " + realData.length + "): " + ByteUtil.convertHexString(realData)));
-                    parseResponseData(realData);
-                } else {
-                    Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                            "receive data (bulk in, Unverified, len = " + receiveData.length + "): " + ByteUtil.convertHexString(receiveData)));
+        /**
+         * Stop this thread and wait for it to exit.
+         */
+        void quit() {
+            mQuit = true;
+            interrupt();
+            // Cancel the pending read requests, so that the blocked requestWait() can return.
+            if (mBulkInRequest != null) mBulkInRequest.cancel();
+            if (mInterruptInRequest != null) mInterruptInRequest.cancel();
+            if (Thread.currentThread() != this) {
+                try {
+                    join(RECEIVE_THREAD_QUIT_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             }
-
-            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt bulk in listening thread"));
-            notifyDeviceStatusChange(-1, "stop listen bulk in endpoint.");
         }
-    }
 
-    /**
-     * Listen for data from the usb control endpoint
-     */
-    private class ListenUsbControlEndpointDataThread extends Thread {
         @Override
         public void run() {
             super.run();
+            if (mListenControlEndpoint) {
+                receiveOnControlEndpoint();
+            } else {
+                receiveOnQueuedEndpoints();
+            }
+        }
+
+        private void receiveOnControlEndpoint() {
             Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start listening for control endpoint data..."));
             notifyDeviceStatusChange(0, "start listen control in endpoint.");
 
-            while (!isInterrupted()) {
-                byte[] receiveBuf = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-
-                int receiveLen = mUsbDeviceConnection.controlTransfer(UsbHidDefine.CONTROL_REQUEST_TYPE,
+            while (!mQuit) {
+                ReceivedPacket packet = obtainReceivedPacket();
+                byte[] receiveBuf = packet.mBuffer.array();
+                int receiveLen = mConnection.controlTransfer(UsbHidDefine.CONTROL_REQUEST_TYPE,
                         UsbHidDefine.CONTROL_REQUEST_ID, UsbHidDefine.CONTROL_REQUEST_VALUE,
                         UsbHidDefine.CONTROL_REQUEST_INDEX, receiveBuf, receiveBuf.length, UsbHidDefine.CONTROL_REQUEST_TIMEOUT);
 
                 // If the received data length is less than or equal to 0, the data is illegal.
                 if (receiveLen <= 0) {
                     Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "receive data on control endpoint failed, " + receiveLen));
+                    recycleReceivedPacket(packet);
                     continue;
                 }
-
-                // If the received data length is bigger than 0, then define a new array to hold incoming data.
-                byte[] receiveData = new byte[receiveLen];
-                System.arraycopy(receiveBuf, 0, receiveData, 0, receiveLen);
-                byte reportIdByte = receiveData[0];
-
-                boolean checkRet = UsbConfig.checkReportID(reportIdByte);
-                if (checkRet) {
-                    int real_message_length = receiveData[1] & 0x0FF;
-                    byte[] realData = new byte[real_message_length + BaseRequest.LENGTH_WRITE_REQUEST_HEAD];
-                    System.arraycopy(receiveData, 0, realData, 0, realData.length);
-                    Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                            "receive data (control endpoint, Verified, len = " + realData.length + "): " + ByteUtil.convertHexString(realData)));
-                    parseResponseData(realData);
-                } else {
-                    Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                            "receive data (control endpoint, Unverified, len = " + receiveData.length + "): " + ByteUtil.convertHexString(receiveData)));
-                }
+                onReceiveUsbData(packet, receiveLen, "control endpoint");
             }
 
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt control endpoint listening thread"));
             notifyDeviceStatusChange(-1, "stop listen control in endpoint");
         }
-    }
-
-    /**
-     * Listen for data from the usb interrupt in endpoint
-     */
-    private class ListenUsbInterruptInDataThread extends Thread {
-        @Override
-        public void run() {
-            super.run();
-            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start listening for interrupt in endpoint data..."));
-            notifyDeviceStatusChange(0, "start listen interrupt in endpoint.");
-
-            while (!isInterrupted()) {
 
-                // Define a new read usb request to receive data
-                UsbRequest readDataRequest = new UsbRequest();
-                readDataRequest.initialize(mUsbDeviceConnection, mUsbEndpointInterruptIn);
-                ByteBuffer receiveBuff = ByteBuffer.allocate(BUFF_SIZE_ON_USB_ENDPOINT);
-                readDataRequest.setClientData(receiveBuff);
-
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    readDataRequest.queue(receiveBuff);
-                } else {
-                    readDataRequest.queue(receiveBuff, BUFF_SIZE_ON_USB_ENDPOINT);
-                }
+        private void receiveOnQueuedEndpoints() {
+            if (mBulkInRequest != null && queueReadRequest(mBulkInRequest)) {
+                Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start listening for bulk in endpoint data..."));
+                notifyDeviceStatusChange(0, "start listen bulk in endpoint.");
+            }
+            if (mInterruptInRequest != null && queueReadRequest(mInterruptInRequest)) {
+                Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start listening for interrupt in endpoint data..."));
+                notifyDeviceStatusChange(0, "start listen interrupt in endpoint.");
+            }
 
-                UsbRequest usbRequest = mUsbDeviceConnection.requestWait();
+            while (!mQuit) {
+                UsbRequest usbRequest = mConnection.requestWait();
+                if (mQuit) break;
                 if (usbRequest == null) {
                     Log.d(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "receive a null result"));
                     continue;
                 }
 
-                Object clientData = usbRequest.getClientData();
-
-                if (usbRequest.getEndpoint() == mUsbEndpointInterruptOut) {
-                    // Send Request
-                    if (clientData instanceof BaseRequest) { // Has sent a request data
-                        // Save the send request currently sent.
-                        mSendingRequest = (BaseRequest) clientData;
-                        Log.i(TAG, UsbLogInfo.msg(mSendingRequest.getClass().getSimpleName(), "send request success "));
-                        if (mSendingRequest.getRequestCallback() != null)
-                            mSendingRequest.getRequestCallback().onSendSuccess();
-                        continue;
-                    }
-                    // Send Command
-                    if (clientData instanceof WriteAttributeCommand) {
-                        WriteAttributeCommand writeAttributeCommand = (WriteAttributeCommand) clientData;
-                        Log.i(TAG, UsbLogInfo.msg(writeAttributeCommand.getClass().getSimpleName(), "send command success"));
-                        if (writeAttributeCommand.getWriteAttributeCommandCallback() != null)
-                            writeAttributeCommand.getWriteAttributeCommandCallback().onSendSuccess();
-                        continue;
-                    }
-                }
-
-                if (usbRequest.getEndpoint() == mUsbEndpointInterruptIn) {
-                    if (clientData != null) {
-                        byte[] receiveData = ((ByteBuffer) clientData).array();
-                        byte reportIdByte = receiveData[0];
-
-                        boolean checkRet = UsbConfig.checkReportID(reportIdByte);
-                        if (checkRet) {
-                            int real_message_length = receiveData[1] & 0x0FF;
-                            byte[] realData = new byte[real_message_length + BaseRequest.LENGTH_WRITE_REQUEST_HEAD];
-                            System.arraycopy(receiveData, 0, realData, 0, realData.length);
-                            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                                    "receive data (interrupt in, Verified, len = " + realData.length + "): " + ByteUtil.convertHexString(realData)));
-                            parseResponseData(realData);
-                        } else {
-                            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
-                                    "receive data (interrupt in, Unverified, len = " + receiveData.length + "): " + ByteUtil.convertHexString(receiveData)));
-                        }
-                    }
+                if (usbRequest == mBulkInRequest || usbRequest == mInterruptInRequest) {
+                    // Hand the filled buffer over to a packet, and queue the request again with the idle buffer of the packet.
+                    ReceivedPacket packet = obtainReceivedPacket();
+                    ByteBuffer receiveBuff = (ByteBuffer) usbRequest.getClientData();
+                    usbRequest.setClientData(packet.mBuffer);
+                    packet.mBuffer = receiveBuff;
+                    int receiveLen = getReceivedLength(receiveBuff);
+                    queueReadRequest(usbRequest);
+                    onReceiveUsbData(packet, receiveLen, usbRequest == mBulkInRequest ? "bulk in" : "interrupt in");
+                    continue;
                 }
 
+                // Data written to the bulk out or interrupt out endpoint has been sent.
+                onOutTransferCompleted(usbRequest);
             }
 
-            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt interrupt in listening thread"));
-            notifyDeviceStatusChange(-1, "stop listen interrupt in endpoint");
+            if (mBulkInRequest != null) {
+                mBulkInRequest.close();
+                Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt bulk in listening thread"));
+                notifyDeviceStatusChange(-1, "stop listen bulk in endpoint.");
+            }
+            if (mInterruptInRequest != null) {
+                mInterruptInRequest.close();
+                Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt interrupt in listening thread"));
+                notifyDeviceStatusChange(-1, "stop listen interrupt in endpoint");
+            }
         }
     }
 
     /**
-     * According to the opcode returned by the usb, call the corresponding parsing
-     * method to parse the data returned by the usb.
+     * Verify the data received on a input endpoint, and dispatch it on the event loop.
+     * <p>Called on the receive thread, the packet is returned to the pool once it has been dispatched.</p>
      *
-     * @param receiveData Data returned by the server.
+     * @param packet       The packet holds the received data.
+     * @param receiveLen   The length of received data.
+     * @param endpointName The name of input endpoint, for log only.
      */
-    private void parseResponseData(byte[] receiveData) {
-        byte reportID = receiveData[0];
-        switch (reportID) {
-            case UsbConfig.REPORT_ID_16:
-            case UsbConfig.REPORT_ID_17:
-            case UsbConfig.REPORT_ID_18:
-            case UsbConfig.REPORT_ID_19:
-                parseAttPduResponseData(receiveData);
-                break;
-            case UsbConfig.REPORT_ID_4: // Usb Management
-            case UsbConfig.REPORT_ID_5: // Download patch in normal mode
-                parseUsbCmdResponseData(receiveData);
-                break;
-            default:
-                break;
+    private void onReceiveUsbData(ReceivedPacket packet, int receiveLen, String endpointName) {
+        byte[] receiveData = packet.mBuffer.array();
+        byte reportIdByte = receiveData[0];
+        boolean checkRet = UsbConfig.checkReportID(reportIdByte);
+        int real_data_length = (receiveData[1] & 0x0FF) + BaseRequest.LENGTH_WRITE_REQUEST_HEAD;
+        if (checkRet && real_data_length <= receiveLen) {
+            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
+                    "receive data (" + endpointName + ", Verified, len = " + real_data_length + "): " + ByteUtil.convertHexString(receiveData, 0, real_data_length)));
+            packet.mLength = real_data_length;
+            mEventLoop.execute(packet);
+        } else {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS,
+                    "receive data (" + endpointName + ", Unverified, len = " + receiveLen + "): " + ByteUtil.convertHexString(receiveData, 0, receiveLen)));
+            recycleReceivedPacket(packet);
         }
     }
 
     /**
-     * Call this method to parse the received response from server after send a request.
-     *
-     * @param responseData received response data from server.
+     * Take an idle packet from the pool, may be called on any thread.
      */
-    private void parseAttPduResponseData(byte[] responseData) {
-        byte responseOpcode = responseData[2];
-        switch (responseOpcode) {
-            case AttPduOpcodeDefine.WRITE_RESPONSE:
-            case AttPduOpcodeDefine.READ_RESPONSE:
-            case AttPduOpcodeDefine.EXCHANGE_MTU_RESPONSE:
-                parseAttResponseMessageFromServer(responseData);
-                break;
-            case AttPduOpcodeDefine.HANDLE_VALUE_INDICATION:
-                parseAttIndicationMessageFromServer(responseData);
-                break;
-            case AttPduOpcodeDefine.HANDLE_VALUE_NOTIFICATION:
-                parseAttNotificationMessageFromServer(responseData);
-                break;
-            case AttPduOpcodeDefine.ERROR_RESPONSE:
-                parseAttErrorHandlingMessageFromServer(responseData);
-                break;
-            default:
-                break;
-        }
+    private ReceivedPacket obtainReceivedPacket() {
+        ReceivedPacket packet = mReceivedPacketPool.poll();
+        return packet != null ? packet : new ReceivedPacket();
     }
 
     /**
-     * Call this method to parse the data returned by the server with reportID = 4;
-     *
-     * @param responseData The data returned by the server.
+     * Return the packet to the pool, the packet is dropped if the pool is full.
      */
-    private void parseUsbCmdResponseData(byte[] responseData) {
-        byte vendorEventCode = responseData[2]; // byte[2] = Vendor Event Code
-        switch (vendorEventCode) {
-            case UsbCmdVendorEventCodeDefine.VENDOR_EVENT:
-                parseUsbVendorEventMessageFromServer(responseData);
-                break;
-            case UsbCmdVendorEventCodeDefine.COMMAND_COMPLETE_EVENT:
-                parseUsbCommandCompleteEventMessageFromServer(responseData);
-                break;
-            default:
-                break;
-        }
+    private void recycleReceivedPacket(ReceivedPacket packet) {
+        packet.mLength = 0;
+        mReceivedPacketPool.offer(packet);
     }
 
+    /**
+     * A reusable packet received on an input endpoint. The receive thread fills its buffer and runs it on the event loop,
+     * so that the received data is dispatched without being copied into a new array or wrapped into a new task.
+     */
+    private final class ReceivedPacket implements Runnable {
 
-    //<editor-fold desc="Parse Att PDU Sub">
-    private void parseAttResponseMessageFromServer(byte[] responseData) {
-        if (mSendingRequest != null) {
-            String logInfoType = mSendingRequest.getClass().getSimpleName();
-            Log.i(TAG, UsbLogInfo.msg(logInfoType, "has received server response"));
-            mSendingRequest.parseResponse(responseData);
-            notifySendNextRequest();
-        } else {
-            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "parse received att pdu failed, Internal status exception"));
+        ByteBuffer mBuffer = ByteBuffer.allocate(BUFF_SIZE_ON_USB_ENDPOINT);
+        int        mLength;
+
+        @Override
+        public void run() {
+            mMessageDispatcher.dispatch(mBuffer.array(), mLength);
+            recycleReceivedPacket(this);
+        }
+    }
+
+    /**
+     * Called on the receive thread when a request or command queued on an output endpoint has been sent.
+     *
+     * @param usbRequest The completed {@link UsbRequest}.
+     */
+    private void onOutTransferCompleted(UsbRequest usbRequest) {
+        Object clientData = usbRequest.getClientData();
+        if (clientData instanceof OutTransfer) {
+            mEventLoop.execute((OutTransfer) clientData);
+        } else {
+            usbRequest.close();
+        }
+    }
+
+    /**
+     * Encode the request into the transport frame, and clear the rest of the frame.
+     *
+     * @param frame       The transport frame in little endian.
+     * @param sendRequest The request to be sent.
+     */
+    private static void encodeFrame(ByteBuffer frame, BaseRequest sendRequest) {
+        frame.clear();
+        sendRequest.encodeTo(frame);
+        Arrays.fill(frame.array(), frame.position(), frame.capacity(), (byte) 0);
+        frame.clear();
+    }
+
+    /**
+     * Encode the command into the transport frame, and clear the rest of the frame.
+     *
+     * @param frame   The transport frame in little endian.
+     * @param command The command to be sent.
+     */
+    private static void encodeFrame(ByteBuffer frame, WriteAttributeCommand command) {
+        frame.clear();
+        command.encodeTo(frame);
+        Arrays.fill(frame.array(), frame.position(), frame.capacity(), (byte) 0);
+        frame.clear();
+    }
+
+    /**
+     * Take an idle transfer from the pool and encode the request into its frame, must be called on the event loop.
+     */
+    private OutTransfer obtainOutTransfer(BaseRequest sendRequest) {
+        OutTransfer transfer = mOutTransferPool.poll();
+        if (transfer == null) transfer = new OutTransfer();
+        encodeFrame(transfer.mFrame, sendRequest);
+        transfer.mLogName = sendRequest.getClass().getSimpleName();
+        transfer.mRequest = sendRequest;
+        transfer.mRequestCallback = sendRequest.getRequestCallback();
+        return transfer;
+    }
+
+    /**
+     * Take an idle transfer from the pool and encode the command into its frame, must be called on the event loop.
+     */
+    private OutTransfer obtainOutTransfer(WriteAttributeCommand command) {
+        OutTransfer transfer = mOutTransferPool.poll();
+        if (transfer == null) transfer = new OutTransfer();
+        encodeFrame(transfer.mFrame, command);
+        transfer.mLogName = command.getClass().getSimpleName();
+        transfer.mCommandCallback = command.getWriteAttributeCommandCallback();
+        return transfer;
+    }
+
+    /**
+     * Return the transfer to the pool, must be called on the event loop.
+     */
+    private void recycleOutTransfer(OutTransfer transfer) {
+        transfer.mLogName = null;
+        transfer.mRequest = null;
+        transfer.mRequestCallback = null;
+        transfer.mCommandCallback = null;
+        transfer.mTransferResult = 0;
+        mOutTransferPool.offer(transfer);
+    }
+
+    /**
+     * Close the {@link UsbRequest}s held by the idle transfers, must be called on the event loop.
+     */
+    private void releaseOutTransfers() {
+        for (OutTransfer transfer : mOutTransferPool) {
+            transfer.close();
+        }
+        mOutTransferPool.clear();
+    }
+
+    /**
+     * A reusable write on an output endpoint, which holds the transport frame until the transfer is completed,
+     * so that the steady state writes do not allocate frames or usb requests.
+     * <p>A write on the bulk out or interrupt out endpoint is queued as a {@link UsbRequest} and reaped by the
+     * {@link UsbReceiveThread}, a write on the control endpoint is a blocking transfer run by {@link #mBlockingTransferExecutor}.
+     * Either way it is run on the event loop when the transfer is completed.</p>
+     */
+    private final class OutTransfer implements Runnable {
+
+        final ByteBuffer mFrame = ByteBuffer.allocate(BUFF_SIZE_ON_USB_ENDPOINT).order(ByteOrder.LITTLE_ENDIAN);
+
+        String                        mLogName;
+        BaseRequest                   mRequest;
+        BaseRequestCallback           mRequestCallback;
+        WriteAttributeCommandCallback mCommandCallback;
+
+        /**
+         * Result of the blocking transfer, negative value for failure.
+         */
+        int mTransferResult;
+
+        private UsbRequest          mUsbRequest;
+        private UsbDeviceConnection mConnection;
+        private UsbEndpoint         mEndpoint;
+
+        private UsbDeviceConnection mBlockingConnection;
+        /**
+         * The endpoint of the blocking transfer, null for the control endpoint.
+         */
+        private UsbEndpoint         mBlockingEndpoint;
+
+        private final Runnable mBlockingTransferTask = new Runnable() {
+            @Override
+            public void run() {
+                byte[] frame = mFrame.array();
+                if (mBlockingEndpoint == null) {
+                    mTransferResult = mBlockingConnection.controlTransfer(UsbHidDefine.CONTROL_REQUEST_TYPE,
+                            UsbHidDefine.CONTROL_REQUEST_ID, UsbHidDefine.CONTROL_REQUEST_VALUE,
+                            UsbHidDefine.CONTROL_REQUEST_INDEX, frame, frame.length, UsbHidDefine.CONTROL_REQUEST_TIMEOUT);
+                } else {
+                    mTransferResult = mBlockingConnection.bulkTransfer(mBlockingEndpoint, frame, frame.length, BULK_TRANSFER_SEND_MAX_TIMEOUT);
+                }
+                mBlockingConnection = null;
+                mBlockingEndpoint = null;
+                mEventLoop.execute(OutTransfer.this);
+            }
+        };
+
+        /**
+         * Queue the whole frame on the output endpoint of the connection.
+         *
+         * @param connection The usb connection.
+         * @param endpoint   The bulk out or interrupt out endpoint.
+         * @return true if the queueing operation succeeded.
+         */
+        boolean queue(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+            if (mUsbRequest == null || mConnection != connection || mEndpoint != endpoint) {
+                close();
+                UsbRequest usbRequest = new UsbRequest();
+                if (!usbRequest.initialize(connection, endpoint)) {
+                    usbRequest.close();
+                    return false;
+                }
+                usbRequest.setClientData(this);
+                mUsbRequest = usbRequest;
+                mConnection = connection;
+                mEndpoint = endpoint;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                return mUsbRequest.queue(mFrame);
+            } else {
+                return mUsbRequest.queue(mFrame, mFrame.capacity());
+            }
+        }
+
+        /**
+         * Write the whole frame with a blocking transfer off the event loop.
+         *
+         * @param connection The usb connection.
+         * @param endpoint   The bulk out or interrupt out endpoint, null for the control endpoint.
+         */
+        void transfer(UsbDeviceConnection connection, UsbEndpoint endpoint) {
+            mBlockingConnection = connection;
+            mBlockingEndpoint = endpoint;
+            mBlockingTransferExecutor.execute(mBlockingTransferTask);
+        }
+
+        void close() {
+            if (mUsbRequest != null) {
+                mUsbRequest.close();
+                mUsbRequest = null;
+                mConnection = null;
+                mEndpoint = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean failed = mTransferResult < 0;
+            // Send Request
+            if (mRequestCallback != null) {
+                if (failed) {
+                    Log.e(TAG, UsbLogInfo.msg(mLogName, "write request data failed"));
+                    mRequestCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
+                } else {
+                    Log.i(TAG, UsbLogInfo.msg(mLogName, "send request success "));
+                    mRequestCallback.onSendSuccess();
+                }
+            }
+            // Send Command
+            if (mCommandCallback != null) {
+                if (failed) {
+                    Log.e(TAG, UsbLogInfo.msg(mLogName, "write command data failed"));
+                    mCommandCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
+                } else {
+                    Log.i(TAG, UsbLogInfo.msg(mLogName, "send command success"));
+                    mCommandCallback.onSendSuccess();
+                }
+            }
+            BaseRequest request = mRequest;
+            recycleOutTransfer(this);
+            if (failed && request != null) onRequestTransferFailed(request);
+        }
+    }
+
+    /**
+     * Register the built-in handlers of the messages received from server.
+     */
+    private void registerDefaultMessageHandlers() {
+        OnReceiveUsbMessageCallback attResponseHandler = new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                parseAttResponseMessageFromServer(messageData);
+            }
+        };
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.WRITE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.PREPARE_WRITE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.EXECUTE_WRITE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_BLOB_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.EXCHANGE_MTU_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.FIND_INFORMATION_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.FIND_BY_TYPE_VALUE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_BY_TYPE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_BY_GROUP_TYPE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_MULTIPLE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.READ_MULTIPLE_VARIABLE_RESPONSE, attResponseHandler);
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.HANDLE_VALUE_INDICATION, new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                parseAttIndicationMessageFromServer(messageData);
+            }
+        });
+        mMessageDispatcher.setAttOpcodePacketHandler(AttPduOpcodeDefine.HANDLE_VALUE_NOTIFICATION, new UsbMessageDispatcher.PacketHandler() {
+            @Override
+            public void onReceivePacket(byte[] buffer, int length) {
+                parseAttNotificationMessageFromServer(buffer, length);
+            }
+        });
+        mMessageDispatcher.setAttOpcodeHandler(AttPduOpcodeDefine.ERROR_RESPONSE, new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                parseAttErrorHandlingMessageFromServer(messageData);
+            }
+        });
+
+        mMessageDispatcher.setEventCodeHandler(UsbCmdVendorEventCodeDefine.COMMAND_COMPLETE_EVENT, new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                parseUsbCommandCompleteEventMessageFromServer(messageData);
+            }
+        });
+        mMessageDispatcher.setVendorEventHandler(UsbCmdVendorEventSubCodeDefine.BLUETOOTH_CONNECTED_CODE, new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                notifyBluetoothConnectionStatusChanged(true);
+            }
+        });
+        mMessageDispatcher.setVendorEventHandler(UsbCmdVendorEventSubCodeDefine.BLUETOOTH_DISCONNECTED_CODE, new OnReceiveUsbMessageCallback() {
+            @Override
+            public void onReceiveUsbMessage(byte[] messageData) {
+                notifyBluetoothConnectionStatusChanged(false);
+            }
+        });
+    }
+
+    /**
+     * Register a handler for the ATT PDUs with the given opcode, such as an ATT opcode which is not supported
+     * by the connector. Registering a handler for a supported opcode replaces the built-in handling.
+     *
+     * @param attOpcode ATT opcode defined in {@link AttPduOpcodeDefine}.
+     * @param handler   The handler, null to remove the registered handler.
+     */
+    public void registerAttOpcodeHandler(final byte attOpcode, final OnReceiveUsbMessageCallback handler) {
+        mEventLoop.runOnLoop(new Runnable() {
+            @Override
+            public void run() {
+                mMessageDispatcher.setAttOpcodeHandler(attOpcode, handler);
+            }
+        });
+    }
+
+    /**
+     * Register a handler for the usb command messages with the given event code.
+     * <p>Note: The handler of {@link UsbCmdVendorEventCodeDefine#VENDOR_EVENT} routes the vendor events by their sub code,
+     * please use {@link #registerVendorEventHandler(byte, OnReceiveUsbMessageCallback)} for vendor events.</p>
+     *
+     * @param eventCode Event code defined in {@link UsbCmdVendorEventCodeDefine}.
+     * @param handler   The handler, null to remove the registered handler.
+     */
+    public void registerEventCodeHandler(final byte eventCode, final OnReceiveUsbMessageCallback handler) {
+        mEventLoop.runOnLoop(new Runnable() {
+            @Override
+            public void run() {
+                mMessageDispatcher.setEventCodeHandler(eventCode, handler);
+            }
+        });
+    }
+
+    /**
+     * Register a handler for the vendor events with the given sub code.
+     *
+     * @param subCode Vendor event sub code, such as those defined in {@link UsbCmdVendorEventSubCodeDefine}.
+     * @param handler The handler, null to remove the registered handler.
+     */
+    public void registerVendorEventHandler(final byte subCode, final OnReceiveUsbMessageCallback handler) {
+        mEventLoop.runOnLoop(new Runnable() {
+            @Override
+            public void run() {
+                mMessageDispatcher.setVendorEventHandler(subCode, handler);
+            }
+        });
+    }
+
+    //<editor-fold desc="Parse Att PDU Sub">
+    private void parseAttResponseMessageFromServer(byte[] responseData) {
+        if (mSendingRequest != null) {
+            String logInfoType = mSendingRequest.getClass().getSimpleName();
+            Log.i(TAG, UsbLogInfo.msg(logInfoType, "has received server response"));
+            BaseRequest request = mSendingRequest;
+            List<BaseRequest> followers = takeSingleFlightFollowers(request);
+            request.parseResponse(responseData);
+            if (followers != null) {
+                for (BaseRequest follower : followers) {
+                    follower.parseResponse(responseData);
+                }
+            }
+            notifySendNextRequest();
+            recycleCompletedRequests(request, followers);
+        } else {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "parse received att pdu failed, Internal status exception"));
         }
     }
 
@@ -1024,14 +1691,41 @@ public class LocalUsbConnector {
             byte error_request_opcode = buffer.get(3);
             short error_att_handle = buffer.getShort(4);
             byte error_code = buffer.get(6);
-            if (mSendingRequest.getRequestCallback() != null)
-                mSendingRequest.getRequestCallback().onReceiveFailed(responseOpcode, error_request_opcode, error_att_handle, error_code);
+            BaseRequest request = mSendingRequest;
+            List<BaseRequest> followers = takeSingleFlightFollowers(request);
+            if (request.getRequestCallback() != null)
+                request.getRequestCallback().onReceiveFailed(responseOpcode, error_request_opcode, error_att_handle, error_code);
+            if (followers != null) {
+                for (BaseRequest follower : followers) {
+                    if (follower.getRequestCallback() != null)
+                        follower.getRequestCallback().onReceiveFailed(responseOpcode, error_request_opcode, error_att_handle, error_code);
+                }
+            }
             notifySendNextRequest();
+            recycleCompletedRequests(request, followers);
         } else {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "parse error att pdu failed, Internal status exception"));
         }
     }
 
+    /**
+     * Return the completed requests to their pools if they ask for it, see {@link BaseRequest#setRecycleOnCompletion(boolean)}.
+     * <p>Must be called after {@link #notifySendNextRequest()}, when the connector holds no reference to them.</p>
+     *
+     * <p>A request is completed by its response, its error response, the response timeout, or the failure of
+     * sending it.</p>
+     *
+     * @param request   the request which has completed.
+     * @param followers the requests which have shared the result, may be null.
+     */
+    private void recycleCompletedRequests(BaseRequest request, List<BaseRequest> followers) {
+        if (request.isRecycleOnCompletion()) request.recycle();
+        if (followers == null) return;
+        for (BaseRequest follower : followers) {
+            if (follower.isRecycleOnCompletion()) follower.recycle();
+        }
+    }
+
     private void parseAttIndicationMessageFromServer(byte[] indicationData) {
         if (mServerIndicationCallbacks == null) return;
         for (OnReceiveServerIndicationCallback callback : mServerIndicationCallbacks) {
@@ -1039,36 +1733,35 @@ public class LocalUsbConnector {
         }
     }
 
-    private void parseAttNotificationMessageFromServer(byte[] notificationData) {
+    /**
+     * Parse a Handle Value Notification in the receive buffer, which is reused by the next packet.
+     * <p>The value is passed as a view of the buffer, it is only copied by the callbacks which keep it, see
+     * {@link OnUsbDeviceStatusChangeCallback#onReceiveHandleValueNotification(short, byte[], int, int)}.</p>
+     *
+     * @param notificationData receive buffer: ReportID(1B) + Length(1B) + Opcode(1B) + Handle(2B) + Value.
+     * @param length           number of bytes received in the buffer.
+     */
+    private void parseAttNotificationMessageFromServer(byte[] notificationData, int length) {
         if (mOnUsbDeviceStatusChangeCallbacks == null) return;
-        ByteBuffer buffer = ByteBuffer.wrap(notificationData);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        short att_handle = buffer.getShort(3);
-        int messageLength = buffer.get(1) & 0x0FF;
-        int att_value_length = messageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE - AttPduParamLengthDefine.LENGTH_ATT_HANDLE;
-        byte[] att_value = new byte[att_value_length];
-        System.arraycopy(notificationData, 5, att_value, 0, att_value_length);
+        int header_length = UsbConfig.LENGTH_TRANSPARENT_TRANSPORT_HEADER
+                + AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE;
+        if (length < header_length) return;
+        short att_handle = (short) ((notificationData[3] & 0x0FF) | ((notificationData[4] & 0x0FF) << 8));
+        int messageLength = notificationData[1] & 0x0FF;
+        int att_value_length = Math.min(messageLength + UsbConfig.LENGTH_TRANSPARENT_TRANSPORT_HEADER, length) - header_length;
+        if (att_value_length < 0) return;
 
         for (OnUsbDeviceStatusChangeCallback callback : mOnUsbDeviceStatusChangeCallbacks) {
-            callback.onReceiveHandleValueNotification(att_handle, att_value);
+            callback.onReceiveHandleValueNotification(att_handle, notificationData, header_length, att_value_length);
         }
     }
     //</editor-fold>
 
     //<editor-fold desc="Parse Usb Command data">
-    private void parseUsbVendorEventMessageFromServer(byte[] responseData) {
-        byte vendorEventSubCode = responseData[4]; // Vendor Event Sub code
-        if (vendorEventSubCode == UsbCmdVendorEventSubCodeDefine.BLUETOOTH_CONNECTED_CODE) {
-            if (mOnUsbDeviceStatusChangeCallbacks != null) {
-                for (OnUsbDeviceStatusChangeCallback callback : mOnUsbDeviceStatusChangeCallbacks) {
-                    callback.onDeviceConnectionStatusHasChanged(true);
-                }
-            }
-        } else if (vendorEventSubCode == UsbCmdVendorEventSubCodeDefine.BLUETOOTH_DISCONNECTED_CODE) {
-            if (mOnUsbDeviceStatusChangeCallbacks != null) {
-                for (OnUsbDeviceStatusChangeCallback callback : mOnUsbDeviceStatusChangeCallbacks) {
-                    callback.onDeviceConnectionStatusHasChanged(false);
-                }
+    private void notifyBluetoothConnectionStatusChanged(boolean connectionStatus) {
+        if (mOnUsbDeviceStatusChangeCallbacks != null) {
+            for (OnUsbDeviceStatusChangeCallback callback : mOnUsbDeviceStatusChangeCallbacks) {
+                callback.onDeviceConnectionStatusHasChanged(connectionStatus);
             }
         }
     }
@@ -1077,8 +1770,16 @@ public class LocalUsbConnector {
         if (mSendingRequest != null) {
             String logInfoType = mSendingRequest.getClass().getSimpleName();
             Log.i(TAG, UsbLogInfo.msg(logInfoType, "has received server response"));
-            mSendingRequest.parseResponse(responseData);
+            BaseRequest request = mSendingRequest;
+            List<BaseRequest> followers = takeSingleFlightFollowers(request);
+            request.parseResponse(responseData);
+            if (followers != null) {
+                for (BaseRequest follower : followers) {
+                    follower.parseResponse(responseData);
+                }
+            }
             notifySendNextRequest();
+            recycleCompletedRequests(request, followers);
             // int parseResult = mSendingRequest.getParseResult();
         } else {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "parse usb cmd failed, Internal status exception"));
@@ -1087,66 +1788,169 @@ public class LocalUsbConnector {
     //</editor-fold>
 
     /**
-     * Call this method to notify the {@link SendRequestThread} to send the next request in the send queue.
+     * Call this method to send the next request in the send queue after the request being sent is completed.
+     * <p>Must be called on the event loop.</p>
      */
     private void notifySendNextRequest() {
-        mSendNextRequestLock.lock();
-        mSendNextRequestCondition.signal();
-        mSendNextRequestLock.unlock();
+        if (mResponseTimeoutFuture != null) {
+            mResponseTimeoutFuture.cancel(false);
+            mResponseTimeoutFuture = null;
+        }
+        mSendingRequest = null;
+        scheduleNextRequest();
     }
 
     /**
-     * Calling this method will create a cache queue to store the request that the user
-     * will send, and start a thread to send the request in cache queue.
-     * <p>request may be one of read request or write request</p>
+     * Take the next request from the cache queue and send it, if there is no request waiting for the server response.
+     * <p>Note: An attribute protocol request and response or indication-confirmation pair is
+     * considered a single transaction. A transaction shall always be performed on
+     * one ATT Bearer, and shall not be split over multiple ATT Bearers</p>
+     * <p>Must be called on the event loop.</p>
      */
-    private void startReceivingRequestData() {
-        if (mSendRequestCacheQueue == null) {
-            // Create a new cache queue for storing request.
-            mSendRequestCacheQueue = new LinkedBlockingQueue<>();
+    private void scheduleNextRequest() {
+        while (mSendingRequest == null && mReceivingRequestData && !mConnectionSuspended && !mRestartingReceiveThread) {
+            BaseRequest sendRequest = mProbingEndpoints ? pollProbeRequest() : pollNextRequest();
+            if (sendRequest == null) return;
+            releaseCoalescingWriteRequest(sendRequest);
+
+            // Save the send request currently sent.
+            mSendingRequest = sendRequest;
+            int writeRet = writeRequestData(sendRequest);
+            if (writeRet < 0) {
+                // The request has not been sent out, so no response will be received.
+                mSendingRequest = null;
+                failSingleFlightFollowers(sendRequest,
+                        writeRet <= UsbError.CODE_PARAMS_IS_NULL ? writeRet : UsbError.CODE_USB_SEND_DATA_FAILED);
+                // The callback of the request has been invoked by the write.
+                recycleCompletedRequests(sendRequest, null);
+                continue;
+            }
+
+            // Check if the response times out
+            mResponseTimeoutFuture = mEventLoop.schedule(mResponseTimeoutTask, MAXIMUM_RESPONSE_TIME_WHEN_SEND_REQUEST, TimeUnit.SECONDS);
         }
+    }
 
-        if (mSendRequestThread == null) {
-            mSendRequestThread = new SendRequestThread();
-            mSendRequestThread.start();
+    /**
+     * Send request message on the selected endpoint, bulk out or interrupt out endpoint will be used by default.
+     *
+     * @param sendRequest request object instance send to usb.
+     * @return Written result, negative value for failure.
+     */
+    private int writeRequestData(BaseRequest sendRequest) {
+        if (mSelectedSendEndpoint != UsbEndpointTypeDefine.USB_ENDPOINT_NONE) {
+            if (mSelectedSendEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT) {
+                return writeData2BulkOutEndpoint(sendRequest);
+            } else if (mSelectedSendEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_OUT) {
+                return writeData2InterruptOutEndpoint(sendRequest);
+            } else {
+                return writeData2ControlEndpoint(sendRequest);
+            }
+        } else {
+            if (mUsbEndpointBulkOut != null) {
+                return writeData2BulkOutEndpoint(sendRequest);
+            } else if (mUsbEndpointInterruptOut != null) {
+                return writeData2InterruptOutEndpoint(sendRequest);
+            } else {
+                return writeData2ControlEndpoint(sendRequest);
+            }
         }
     }
 
-    private void stopReceivingRequestData() {
-        if (mSendRequestThread != null) {
-            mSendRequestThread.interrupt();
-            mSendRequestThread = null;
+    /**
+     * Give up waiting for the response of the request being sent, and send the next request.
+     * <p>Must be called on the event loop.</p>
+     *
+     * @param request The request to be abandoned, nothing will be done if it is not being sent.
+     */
+    private void abandonSendingRequest(BaseRequest request) {
+        if (mSendingRequest != request) {
+            // The request is still in the queue.
+            if (!mSendRequestCacheQueue.remove(request)) mLowPrioritySendRequestQueue.remove(request);
+            releaseCoalescingWriteRequest(request);
+            timeoutSingleFlightFollowers(request);
+            return;
+        }
+        timeoutSingleFlightFollowers(request);
+        notifySendNextRequest();
+    }
+
+    /**
+     * No server response received within {@link #MAXIMUM_RESPONSE_TIME_WHEN_SEND_REQUEST}, write request timeout.
+     */
+    private final Runnable mResponseTimeoutTask = new Runnable() {
+        @Override
+        public void run() {
+            mResponseTimeoutFuture = null;
+            BaseRequest timeoutRequest = mSendingRequest;
+            if (timeoutRequest == null) return;
+
+            Log.e(TAG, UsbLogInfo.msg(timeoutRequest.getClass().getSimpleName(), "receive server response timeout"));
+            mSendingRequest = null;
+            // Take the pending requests out before invoking the callbacks, so the requests queued by the
+            // callbacks, such as cancelling a transaction, are still sent.
+            List<BaseRequest> droppedRequests = drainRequestCacheQueue();
+            if (timeoutRequest.getRequestCallback() != null) timeoutRequest.getRequestCallback().onReceiveTimeout();
+            timeoutSingleFlightFollowers(timeoutRequest);
+            recycleCompletedRequests(timeoutRequest, null);
+            for (BaseRequest droppedRequest : droppedRequests) {
+                if (droppedRequest.getRequestCallback() != null)
+                    droppedRequest.getRequestCallback().onSendFailed(UsbError.CODE_REQUEST_REMOVED);
+                failSingleFlightFollowers(droppedRequest, UsbError.CODE_REQUEST_REMOVED);
+                recycleCompletedRequests(droppedRequest, null);
+            }
+            scheduleNextRequest();
         }
+    };
 
-        if (mSendRequestCacheQueue != null) {
-            mSendRequestCacheQueue.clear();
-            mSendRequestCacheQueue = null;
+    private final Runnable mScheduleNextRequestTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduleNextRequest();
         }
+    };
+
+    /**
+     * Calling this method will allow the user to send requests, the requests will be sent in turn on the event loop.
+     * <p>request may be one of read request or write request</p>
+     */
+    private void startReceivingRequestData() {
+        mReceivingRequestData = true;
+    }
+
+    private void stopReceivingRequestData() {
+        mReceivingRequestData = false;
+        mSendRequestCacheQueue.clear();
+        mLowPrioritySendRequestQueue.clear();
+        clearCoalescingWriteRequests();
+        clearSingleFlightRequests();
+        mEventLoop.runOnLoop(new Runnable() {
+            @Override
+            public void run() {
+                if (mResponseTimeoutFuture != null) {
+                    mResponseTimeoutFuture.cancel(false);
+                    mResponseTimeoutFuture = null;
+                }
+                if (mDetachHoldFuture != null) {
+                    mDetachHoldFuture.cancel(false);
+                    mDetachHoldFuture = null;
+                }
+                mSendingRequest = null;
+                releaseOutTransfers();
+            }
+        });
     }
 
 
     /**
-     * Calling this method will create a cache queue for sending write command messages.
+     * Calling this method will allow the user to send write commands.
      */
     private void startReceivingWriteCommandData() {
-        if (mSendWriteCommandExecutor == null) {
-            LinkedBlockingQueue<Runnable> writeAttributeCommandCacheQueue = new LinkedBlockingQueue<Runnable>();
-            mSendWriteCommandExecutor = new ThreadPoolExecutor(
-                    CORE_THREAD_NUM_SEND_WRITE_COMMAND,
-                    MAX_THREAD_NUM_SEND_WRITE_COMMAND,
-                    KEEP_ALIVE_TIME_SEND_WRITE_COMMAND,
-                    TimeUnit.MILLISECONDS,
-                    writeAttributeCommandCacheQueue,
-                    new ThreadPoolExecutor.AbortPolicy()
-            );
-        }
+        mReceivingWriteCommandData = true;
     }
 
     private void stopReceivingWriteCommandData() {
-        if (mSendWriteCommandExecutor != null) {
-            mSendWriteCommandExecutor.shutdown();
-            mSendWriteCommandExecutor = null;
-        }
+        mReceivingWriteCommandData = false;
     }
 
     /**
@@ -1156,6 +1960,9 @@ public class LocalUsbConnector {
      * <p> For example, You can add a callback method {@link WriteAttributeRequest#addWriteAttributeRequestCallback(WriteAttributeRequestCallback)} on
      * the {@link WriteAttributeRequest} object to monitor the data write status</p>
      *
+     * <p>Note: The callbacks of the request are invoked on the {@link UsbEventLoop} shared with other connectors,
+     * please do not perform time-consuming operations in them.</p>
+     *
      * @see WriteAttributeRequest#addWriteAttributeRequestCallback(WriteAttributeRequestCallback)
      * @see ReadAttributeRequest#addReadAttributeRequestCallback(ReadAttributeRequestCallback)
      */
@@ -1165,8 +1972,187 @@ public class LocalUsbConnector {
             return;
         }
 
-        if (mSendRequestCacheQueue != null) {
-            mSendRequestCacheQueue.offer(requestInstance);
+        if (mReceivingRequestData) {
+            if (joinSingleFlight(requestInstance)) return;
+            if (requestInstance instanceof WriteAttributeRequest && ((WriteAttributeRequest) requestInstance).isCoalescing()) {
+                if (coalesceWriteRequest((WriteAttributeRequest) requestInstance)) return;
+            } else {
+                synchronized (mSendRequestQueueLock) {
+                    mSendRequestCacheQueue.offer(requestInstance);
+                }
+            }
+            mEventLoop.execute(mScheduleNextRequestTask);
+        } else {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "send request failed, connection has not been established"));
+        }
+    }
+
+    /**
+     * Attach the request to an identical request which is queued or waiting for its response, the
+     * request is not sent and shares the result of that one.
+     * <p>A write stops the reads of its attribute queued before it from being shared by the later reads.</p>
+     *
+     * @param request request to be sent.
+     * @return true if the request has been attached, false if it should be queued, in which case it is
+     * registered so that the later identical requests can attach to it.
+     * @see BaseRequest#getRequestKey()
+     */
+    private boolean joinSingleFlight(BaseRequest request) {
+        mSingleFlightRequests.detachReadsWrittenBy(request);
+        if (!mSingleFlightRequests.join(request)) return false;
+        // The opcode is checked when the shared response is parsed.
+        request.setRequestOpcode();
+        Log.i(TAG, UsbLogInfo.msg(request.getClass().getSimpleName(), "attach to an identical request in flight"));
+        return true;
+    }
+
+    /**
+     * Stop sharing the request, must be called once the result of the request is known.
+     *
+     * @param request the request which has completed.
+     * @return the requests which are attached to it, or null if there is none.
+     */
+    private List<BaseRequest> takeSingleFlightFollowers(BaseRequest request) {
+        return mSingleFlightRequests.take(request);
+    }
+
+    private void failSingleFlightFollowers(BaseRequest request, int sendResult) {
+        List<BaseRequest> followers = takeSingleFlightFollowers(request);
+        if (followers == null) return;
+        for (BaseRequest follower : followers) {
+            if (follower.getRequestCallback() != null) follower.getRequestCallback().onSendFailed(sendResult);
+            if (follower.isRecycleOnCompletion()) follower.recycle();
+        }
+    }
+
+    private void timeoutSingleFlightFollowers(BaseRequest request) {
+        List<BaseRequest> followers = takeSingleFlightFollowers(request);
+        if (followers == null) return;
+        for (BaseRequest follower : followers) {
+            if (follower.getRequestCallback() != null) follower.getRequestCallback().onReceiveTimeout();
+            if (follower.isRecycleOnCompletion()) follower.recycle();
+        }
+    }
+
+    private void clearSingleFlightRequests() {
+        mSingleFlightRequests.clear();
+    }
+
+    /**
+     * Queue a coalescing write request, or merge it into the coalescing write request to the same attribute
+     * which is still waiting in the queue.
+     *
+     * @param writeRequest coalescing write request.
+     * @return true if the request has been merged into a queued one.
+     */
+    private boolean coalesceWriteRequest(WriteAttributeRequest writeRequest) {
+        final WriteAttributeRequestCallback superseded;
+        synchronized (mCoalescingWriteLock) {
+            WriteAttributeRequest queuedRequest = mCoalescingWriteRequests.get(writeRequest.getAttHandle());
+            if (queuedRequest == null) {
+                mCoalescingWriteRequests.put(writeRequest.getAttHandle(), writeRequest);
+                synchronized (mSendRequestQueueLock) {
+                    mSendRequestCacheQueue.offer(writeRequest);
+                }
+                return false;
+            }
+            superseded = queuedRequest.coalesce(writeRequest);
+        }
+        // The value and the callback have been taken over, the merged request will not be sent.
+        BaseRequest mergedRequest = writeRequest;
+        if (mergedRequest.isRecycleOnCompletion()) mergedRequest.recycle();
+        if (superseded != null) {
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    superseded.onSendFailed(UsbError.CODE_WRITE_COALESCED);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Stop coalescing the later writes into the request, must be called before the request is sent or dropped.
+     *
+     * @param request request taken out of the queue.
+     */
+    private void releaseCoalescingWriteRequest(BaseRequest request) {
+        if (!(request instanceof WriteAttributeRequest) || !((WriteAttributeRequest) request).isCoalescing()) return;
+        WriteAttributeRequest writeRequest = (WriteAttributeRequest) request;
+        synchronized (mCoalescingWriteLock) {
+            if (mCoalescingWriteRequests.get(writeRequest.getAttHandle()) == writeRequest) {
+                mCoalescingWriteRequests.remove(writeRequest.getAttHandle());
+            }
+        }
+    }
+
+    /**
+     * Call this method to send a list of requests to usb.
+     * <p>The requests are queued at once, so they are sent back-to-back in the order of the list,
+     * no request sent by other callers is interleaved between them.</p>
+     * <p>Note: The requests are always sent by themselves, they do not share the result of identical
+     * requests in flight.</p>
+     *
+     * @param requests requests to be sent in order.
+     * @see #sendRequest(BaseRequest)
+     * @see #removeRequest(BaseRequest)
+     */
+    public void sendRequests(List<? extends BaseRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "send requests failed, requests can not be empty"));
+            return;
+        }
+
+        if (mReceivingRequestData) {
+            synchronized (mSendRequestQueueLock) {
+                for (BaseRequest request : requests) {
+                    request.setSingleFlight(false);
+                    mSingleFlightRequests.detachReadsWrittenBy(request);
+                    mSendRequestCacheQueue.offer(request);
+                }
+            }
+            mEventLoop.execute(mScheduleNextRequestTask);
+        } else {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "send requests failed, connection has not been established"));
+        }
+    }
+
+    /**
+     * Remove a request which has not been sent yet, its callback will not be invoked any more.
+     * <p>A removed request is not recycled by the connector, the caller owns it again.</p>
+     *
+     * @param request request sent by {@link #sendRequest(BaseRequest)} or {@link #sendRequests(List)}.
+     * @return true if the request has been removed, false if it has been sent or is not in the queue.
+     */
+    public boolean removeRequest(BaseRequest request) {
+        if (request == null) return false;
+        boolean removed = mSendRequestCacheQueue.remove(request) || mLowPrioritySendRequestQueue.remove(request);
+        if (removed) {
+            releaseCoalescingWriteRequest(request);
+            failSingleFlightFollowers(request, UsbError.CODE_REQUEST_REMOVED);
+        }
+        return removed;
+    }
+
+    /**
+     * Call this method to send a background request instance to usb.
+     * <p>The request is only sent when there is no request sent by {@link #sendRequest(BaseRequest)} waiting,
+     * so it does not delay the requests of the user.</p>
+     *
+     * @param requestInstance request object instance send to usb.
+     * @see #sendRequest(BaseRequest)
+     */
+    public void sendLowPriorityRequest(BaseRequest requestInstance) {
+        if (requestInstance == null) {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "send request failed, request can not be null"));
+            return;
+        }
+
+        if (mReceivingRequestData) {
+            if (joinSingleFlight(requestInstance)) return;
+            mLowPrioritySendRequestQueue.offer(requestInstance);
+            mEventLoop.execute(mScheduleNextRequestTask);
         } else {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "send request failed, connection has not been established"));
         }
@@ -1187,258 +2173,248 @@ public class LocalUsbConnector {
             return;
         }
 
-        if (mSendWriteCommandExecutor != null) {
+        if (mReceivingWriteCommandData) {
+            if (writeAttributesCommand.isCoalescing() && coalesceWriteCommand(writeAttributesCommand)) return;
             WriteAttributesCommandRunnable runnable = new WriteAttributesCommandRunnable(writeAttributesCommand);
-            mSendWriteCommandExecutor.execute(runnable);
+            mEventLoop.execute(runnable);
         } else {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_SEND_WRITE_COMMAND, "send command failed, connection has not been established"));
+            if (writeAttributesCommand.getWriteAttributeCommandCallback() != null)
+                writeAttributesCommand.getWriteAttributeCommandCallback().onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
         }
     }
 
 
     /**
-     * A blocked buffer queue for storing request messages.
+     * Merge the coalescing write command into the one to the same attribute which has not been sent yet.
+     *
+     * @param writeCommand coalescing write command.
+     * @return true if the command has been merged, false if it should be sent by itself.
+     */
+    private boolean coalesceWriteCommand(WriteAttributeCommand writeCommand) {
+        final WriteAttributeCommandCallback superseded;
+        synchronized (mCoalescingWriteLock) {
+            WriteAttributeCommand pendingCommand = mCoalescingWriteCommands.get(writeCommand.getAttHandle());
+            if (pendingCommand == null) {
+                mCoalescingWriteCommands.put(writeCommand.getAttHandle(), writeCommand);
+                return false;
+            }
+            superseded = pendingCommand.coalesce(writeCommand);
+        }
+        if (superseded != null) {
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    superseded.onSendFailed(UsbError.CODE_WRITE_COALESCED);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * Held while requests are put into {@link #mSendRequestCacheQueue}, so a list of requests can be queued at once.
+     */
+    private final Object mSendRequestQueueLock = new Object();
+
+    /**
+     * Requests which are queued or waiting for the response and can be shared by identical requests.
+     */
+    private final UsbSingleFlightRequests mSingleFlightRequests = new UsbSingleFlightRequests();
+
+    /**
+     * Lock of {@link #mCoalescingWriteRequests} and {@link #mCoalescingWriteCommands}, also guards the values of
+     * the writes in them, which may be replaced until they are taken out.
+     */
+    private final Object mCoalescingWriteLock = new Object();
+
+    /**
+     * Coalescing write requests waiting in {@link #mSendRequestCacheQueue}, keyed by the attribute handle.
+     */
+    private final HashMap<Short, WriteAttributeRequest> mCoalescingWriteRequests = new HashMap<>();
+
+    /**
+     * Coalescing write commands which have not been sent, keyed by the attribute handle.
+     */
+    private final HashMap<Short, WriteAttributeCommand> mCoalescingWriteCommands = new HashMap<>();
+
+    /**
+     * A buffer queue for storing request messages.
      * <p>When the usb connection is disconnected, this queue needs to be cleared.</p>
      */
-    private LinkedBlockingQueue<BaseRequest> mSendRequestCacheQueue;
+    private final LinkedBlockingQueue<BaseRequest> mSendRequestCacheQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * A buffer queue for storing background request messages, which are only sent when {@link #mSendRequestCacheQueue} is empty.
+     */
+    private final LinkedBlockingQueue<BaseRequest> mLowPrioritySendRequestQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * Take the next request to be sent, the requests in the low priority queue are taken only if there is no other request.
+     *
+     * @return the next request, or null if both queues are empty.
+     */
+    private BaseRequest pollNextRequest() {
+        BaseRequest request = mSendRequestCacheQueue.poll();
+        return request != null ? request : mLowPrioritySendRequestQueue.poll();
+    }
+
+    /**
+     * Take the probe request to be sent, the other requests are held until the probe has selected a pair.
+     *
+     * @return the probe request, or null if the probe has nothing to send.
+     */
+    private BaseRequest pollProbeRequest() {
+        return mEndpointProber != null ? mEndpointProber.pollProbeRequest() : null;
+    }
 
     /**
      * Call this method to write data to the bulk out endpoint of the USB.
+     * <p>The completion of the transfer is reaped by the {@link UsbReceiveThread}, the request callback is invoked on the
+     * event loop when the transfer is completed.</p>
      *
      * @param sendRequest request object instance send to usb.
-     * @return Written result. length of data transferred (or zero) for success, or negative value for failure
+     * @return {@link UsbError#CODE_NO_ERROR} if the transfer has been submitted, or negative value for failure.
      * @see UsbError#CODE_USB_CONNECTION_NOT_ESTABLISHED
-     * @see UsbError#CODE_USB_SEND_DATA_FAILED
+     * @see UsbError#CODE_WRITE_REQUEST_TO_QUEUE_FAILED
      */
     private int writeData2BulkOutEndpoint(BaseRequest sendRequest) {
-        if (mUsbDeviceConnection == null) {
+        BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
+        UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+        if (usbDeviceConnection == null) {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write bulk out failed, connection has not been established"));
+            if (requestCallback != null) requestCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
             return UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED;
         }
         notifyDeviceStatusChange(0, "write data on bulk out endpoint");
 
-        mWriteData2BulkOutEndpointLock.lock();
-        int writeRet = -1;
-        try {
-            byte[] sendData = sendRequest.getSendData();
-            BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
-            /* Send Buff Length is fixed at 255 bytes */
-            byte[] completeData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-            System.arraycopy(sendData, 0, completeData, 0, sendData.length);
-
-            // Print sent hex data
-            String writeDataHexStr = ByteUtil.convertHexString(completeData);
+        /* Send Buff Length is fixed at 255 bytes */
+        OutTransfer transfer = obtainOutTransfer(sendRequest);
+        byte[] completeData = transfer.mFrame.array();
+
+        if (!canReapOutTransfers()) {
+            // Nobody waits for the queued requests while the control endpoint is polled.
             Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(),
-                    "send request data (bulk out, len = " + completeData.length + ") hex string: " + writeDataHexStr));
+                    "send request data (bulk out, blocking, len = " + completeData.length + ") hex string: " + ByteUtil.convertHexString(completeData)));
+            transfer.transfer(usbDeviceConnection, mUsbEndpointBulkOut);
+            return UsbError.CODE_NO_ERROR;
+        }
 
-            writeRet = mUsbDeviceConnection.bulkTransfer(mUsbEndpointBulkOut, completeData, completeData.length, BULK_TRANSFER_SEND_MAX_TIMEOUT);
-            if (writeRet < 0) {
-                if (requestCallback != null) {
-                    requestCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
-                }
-                // Print the send message information.
-                Log.e(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "write request data failed"));
-            } else {
-                if (requestCallback != null) {
-                    requestCallback.onSendSuccess();
-                }
-                // Save the send request currently sent.
-                mSendingRequest = sendRequest;
-                // Print the send message information.
-                Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "send request success "));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            mWriteData2BulkOutEndpointLock.unlock();
+        if (!transfer.queue(usbDeviceConnection, mUsbEndpointBulkOut)) {
+            Log.e(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "write request data to queue failed"));
+            recycleOutTransfer(transfer);
+            if (requestCallback != null)
+                requestCallback.onSendFailed(UsbError.CODE_WRITE_REQUEST_TO_QUEUE_FAILED);
+            return UsbError.CODE_WRITE_REQUEST_TO_QUEUE_FAILED;
         }
-        return writeRet;
+
+        // Print sent hex data
+        String writeDataHexStr = ByteUtil.convertHexString(completeData);
+        Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(),
+                "send request data (bulk out, len = " + completeData.length + ") hex string: " + writeDataHexStr));
+        return UsbError.CODE_NO_ERROR;
     }
 
 
     /**
      * Call this method to write data to the interrupt out endpoint of the USB.
+     * <p>The completion of the transfer is reaped by the {@link UsbReceiveThread}.</p>
      *
      * @param sendRequest request object to send to usb.
+     * @return {@link UsbError#CODE_NO_ERROR} if the data has been queued, or negative value for failure.
      * @see UsbError#CODE_USB_CONNECTION_NOT_ESTABLISHED
-     * @see UsbError#CODE_USB_SEND_DATA_FAILED
+     * @see UsbError#CODE_WRITE_REQUEST_TO_QUEUE_FAILED
      */
-    private void writeData2InterruptOutEndpoint(BaseRequest sendRequest) {
-        if (mUsbDeviceConnection == null) {
+    private int writeData2InterruptOutEndpoint(BaseRequest sendRequest) {
+        BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
+        UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+        if (usbDeviceConnection == null) {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write interrupt out failed, connection has not been established"));
-            return;
+            if (requestCallback != null) requestCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
+            return UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED;
         }
 
         notifyDeviceStatusChange(0, "write data on interrupt out endpoint");
 
-        byte[] sendData = sendRequest.getSendData();
-        BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
-
-        /* Send Buff Length Origin byte Length */
-       /* ByteBuffer sendBuffer = ByteBuffer.wrap(sendData);
-        sendBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        UsbRequest writeDataRequest = new UsbRequest();
-        writeDataRequest.setClientData(sendRequest);
-        writeDataRequest.initialize(mUsbDeviceConnection, mUsbEndpointInterruptOut);
-
-        boolean writeData2QueueRet;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            writeData2QueueRet = writeDataRequest.queue(sendBuffer);
-        } else {
-            writeData2QueueRet = writeDataRequest.queue(sendBuffer, sendData.length);
-        }
-
-        // true if the queueing operation succeeded, false if the queueing operation failed.
-        if (!writeData2QueueRet) {
-            Log.e(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "write request data to queue failed"));
-            if (requestCallback != null) requestCallback.onSendFailed(UsbError.CODE_WRITE_REQUEST_TO_QUEUE_FAILED);
-        }
-
-        String writeDataHexStr = ByteUtil.convertHexString(sendRequest.getSendData());
-        Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "send request hex string: " + writeDataHexStr));*/
-
         /* Send Buff Length is 255 byte */
-        byte[] completeData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-        System.arraycopy(sendData, 0, completeData, 0, sendData.length);
-
-        ByteBuffer sendBuffer = ByteBuffer.wrap(completeData);
-        sendBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        UsbRequest writeDataRequest = new UsbRequest();
-        writeDataRequest.setClientData(sendRequest);
-        writeDataRequest.initialize(mUsbDeviceConnection, mUsbEndpointInterruptOut);
-
-        boolean writeData2QueueRet;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            writeData2QueueRet = writeDataRequest.queue(sendBuffer);
-        } else {
-            writeData2QueueRet = writeDataRequest.queue(sendBuffer, completeData.length);
+        OutTransfer transfer = obtainOutTransfer(sendRequest);
+        byte[] completeData = transfer.mFrame.array();
+
+        if (!canReapOutTransfers()) {
+            // Nobody waits for the queued requests while the control endpoint is polled.
+            Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(),
+                    "send request data (interrupt out, blocking, len = " + completeData.length + ") hex string: " + ByteUtil.convertHexString(completeData)));
+            transfer.transfer(usbDeviceConnection, mUsbEndpointInterruptOut);
+            return UsbError.CODE_NO_ERROR;
         }
 
         // true if the queueing operation succeeded, false if the queueing operation failed.
-        if (!writeData2QueueRet) {
+        if (!transfer.queue(usbDeviceConnection, mUsbEndpointInterruptOut)) {
             Log.e(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "write request data to queue failed"));
+            recycleOutTransfer(transfer);
             if (requestCallback != null)
                 requestCallback.onSendFailed(UsbError.CODE_WRITE_REQUEST_TO_QUEUE_FAILED);
+            return UsbError.CODE_WRITE_REQUEST_TO_QUEUE_FAILED;
         }
 
         String writeDataHexStr = ByteUtil.convertHexString(completeData);
         Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(),
                 "send request data (interrupt out, len = " + completeData.length + ") hex string: " + writeDataHexStr));
+        return UsbError.CODE_NO_ERROR;
     }
 
     /**
      * Call this method to write data to the control endpoint(Zero endpoint) of the USB.
+     * <p>The blocking transfer is run by {@link #mBlockingTransferExecutor}, the request callback is invoked on the
+     * event loop when the transfer is completed.</p>
      *
      * @param sendRequest request object instance send to usb.
+     * @return {@link UsbError#CODE_NO_ERROR} if the transfer has been submitted, or negative value for failure.
      */
-    private void writeData2ControlEndpoint(BaseRequest sendRequest) {
-        if (mUsbDeviceConnection == null) {
+    private int writeData2ControlEndpoint(BaseRequest sendRequest) {
+        BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
+        UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+        if (usbDeviceConnection == null) {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write control endpoint failed, connection has not been established"));
-            return;
+            if (requestCallback != null) requestCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
+            return UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED;
         }
 
         notifyDeviceStatusChange(0, "write data on control out endpoint");
 
-        byte[] sendData = sendRequest.getSendData();
-        BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
         /* Send Buff Length is fixed at 255 bytes */
-        byte[] completeData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-        System.arraycopy(sendData, 0, completeData, 0, sendData.length);
+        OutTransfer transfer = obtainOutTransfer(sendRequest);
+        byte[] completeData = transfer.mFrame.array();
 
         // Print sent hex data
         String writeDataHexStr = ByteUtil.convertHexString(completeData);
         Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(),
                 "send request data (control endpoint, len = " + completeData.length + ") hex string: " + writeDataHexStr));
 
-        mWriteData2ControlEndpointLock.lock();
-        try {
-            int transferRet = mUsbDeviceConnection.controlTransfer(UsbHidDefine.CONTROL_REQUEST_TYPE,
-                    UsbHidDefine.CONTROL_REQUEST_ID, UsbHidDefine.CONTROL_REQUEST_VALUE,
-                    UsbHidDefine.CONTROL_REQUEST_INDEX, completeData, completeData.length, UsbHidDefine.CONTROL_REQUEST_TIMEOUT);
-
-            if (transferRet < 0) {
-                if (requestCallback != null) {
-                    requestCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
-                }
-                // Print the send message information.
-                Log.e(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "write request data on control endpoint failed"));
-            } else {
-                if (requestCallback != null) {
-                    requestCallback.onSendSuccess();
-                }
-                // Save the send request currently sent.
-                mSendingRequest = sendRequest;
-                // Print the send message information.
-                Log.i(TAG, UsbLogInfo.msg(sendRequest.getClass().getSimpleName(), "send request data on control endpoint success "));
-            }
-
-        } catch (Exception e) {
-            e.printStackTrace();
-        } finally {
-            mWriteData2ControlEndpointLock.unlock();
-        }
+        transfer.transfer(usbDeviceConnection, null);
+        return UsbError.CODE_NO_ERROR;
     }
 
-
     /**
-     * This thread is used to send request message.
-     * <p>Note: An attribute protocol request and response or indication-confirmation pair is
-     * considered a single transaction. A transaction shall always be performed on
-     * one ATT Bearer, and shall not be split over multiple ATT Bearers</p>
+     * Called on the event loop when the transfer of a request has failed. No response will be received for the
+     * request, so the next request is sent without waiting for the response timeout.
+     *
+     * @param request The request which has not been sent out.
      */
-    private class SendRequestThread extends Thread {
-        @Override
-        public void run() {
-            super.run();
-            while (!isInterrupted()) {
-                mSendNextRequestLock.lock();
-                try {
-                    // construct request message.
-                    BaseRequest sendRequest = mSendRequestCacheQueue.take();
-                    sendRequest.setRequestOpcode();
-                    sendRequest.setMessageLength();
-                    sendRequest.createRequest();
-                    String logInfoType = sendRequest.getClass().getSimpleName();
-                    BaseRequestCallback requestCallback = sendRequest.getRequestCallback();
-
-                    // send request message on bulk out or interrupt out.
-                    if (mSelectedSendEndpoint != UsbEndpointTypeDefine.USB_ENDPOINT_NONE) {
-                        if (mSelectedSendEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT) {
-                            writeData2BulkOutEndpoint(sendRequest);
-                        } else if (mSelectedSendEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_OUT) {
-                            writeData2InterruptOutEndpoint(sendRequest);
-                        } else {
-                            writeData2ControlEndpoint(sendRequest);
-                        }
-
-                    } else {
-                        if (mUsbEndpointBulkOut != null) {
-                            writeData2BulkOutEndpoint(sendRequest);
-                        } else if (mUsbEndpointInterruptOut != null) {
-                            writeData2InterruptOutEndpoint(sendRequest);
-                        } else {
-                            writeData2ControlEndpoint(sendRequest);
-                        }
-                    }
-
-                    // Check if the response times out
-                    boolean noTimeout = mSendNextRequestCondition.await(MAXIMUM_RESPONSE_TIME_WHEN_SEND_REQUEST, TimeUnit.SECONDS);
-                    if (!noTimeout) { // No server response received, write request timeout.
-                        Log.e(TAG, UsbLogInfo.msg(logInfoType, "receive server response timeout"));
-                        if (requestCallback != null) requestCallback.onReceiveTimeout();
-                        clearRequestCacheQueue();
-                    }
-                } catch (InterruptedException e) {
-                    Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "interrupt send request thread."));
-                    break;
-                } finally {
-                    mSendNextRequestLock.unlock();
-                }
-            }
-        }
+    private void onRequestTransferFailed(BaseRequest request) {
+        // The request may have been abandoned by its callback.
+        if (mSendingRequest != request) return;
+        if (mResponseTimeoutFuture != null) {
+            mResponseTimeoutFuture.cancel(false);
+            mResponseTimeoutFuture = null;
+        }
+        mSendingRequest = null;
+        failSingleFlightFollowers(request, UsbError.CODE_USB_SEND_DATA_FAILED);
+        // The callback of the request has been invoked by the transfer.
+        recycleCompletedRequests(request, null);
+        scheduleNextRequest();
     }
 
-
     /**
      * Get the log info type sent according to the attribute opcode passed in.
      *
@@ -1462,8 +2438,9 @@ public class LocalUsbConnector {
     }
 
 
+
     /**
-     * Use this thread to send write attribute command.
+     * Use this task to send write attribute command on the event loop.
      */
     private class WriteAttributesCommandRunnable implements Runnable {
 
@@ -1475,7 +2452,14 @@ public class LocalUsbConnector {
 
         @Override
         public void run() {
-            mWriteAttributesCommand.createCommand();
+            if (mWriteAttributesCommand.isCoalescing()) {
+                // No later write can be merged into the command from now on.
+                synchronized (mCoalescingWriteLock) {
+                    if (mCoalescingWriteCommands.get(mWriteAttributesCommand.getAttHandle()) == mWriteAttributesCommand) {
+                        mCoalescingWriteCommands.remove(mWriteAttributesCommand.getAttHandle());
+                    }
+                }
+            }
 
             // send request message on bulk out or interrupt out.
             if (mSelectedSendEndpoint != UsbEndpointTypeDefine.USB_ENDPOINT_NONE) {
@@ -1500,62 +2484,33 @@ public class LocalUsbConnector {
         }
 
         private void writeCommand2InterruptOutEndpoint(WriteAttributeCommand command) {
-            if (mUsbDeviceConnection == null) {
+            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
+            UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+            if (usbDeviceConnection == null) {
                 Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write command to interrupt out failed, connection has not been established"));
+                if (writeCommandCallback != null)
+                    writeCommandCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
                 return;
             }
 
-            byte[] writeData = command.getSendData();
-            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
-
-            /*  */
-            /*ByteBuffer writeBuffer = ByteBuffer.wrap(writeData);
-            writeBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            UsbRequest writeDataRequest = new UsbRequest();
-            writeDataRequest.initialize(mUsbDeviceConnection, mUsbEndpointInterruptOut);
 
-            boolean writeData2QueueRet;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                writeData2QueueRet = writeDataRequest.queue(writeBuffer);
-            } else {
-                writeData2QueueRet = writeDataRequest.queue(writeBuffer, writeData.length);
-            }
+            /* Limit the sent buff length to 255 */
+            OutTransfer transfer = obtainOutTransfer(command);
+            byte[] writeCompleteData = transfer.mFrame.array();
 
             // true if the queueing operation succeeded, false if the queueing operation failed.
             String logType = WriteAttributeCommand.class.getSimpleName();
 
-            if (!writeData2QueueRet) {
-                Log.e(TAG, UsbLogInfo.msg(logType, "write command data to queue failed"));
-                if (writeCommandCallback != null) writeCommandCallback.onSendFailed(UsbError.CODE_WRITE_COMMAND_TO_QUEUE_FAILED);
+            if (!canReapOutTransfers()) {
+                // Nobody waits for the queued requests while the control endpoint is polled.
+                Log.i(TAG, UsbLogInfo.msg(logType, "send command (blocking) hex string: " + ByteUtil.convertHexString(writeCompleteData)));
+                transfer.transfer(usbDeviceConnection, mUsbEndpointInterruptOut);
                 return;
             }
 
-
-            String writeDataHexStr = ByteUtil.convertHexString(writeData);
-            Log.i(TAG, UsbLogInfo.msg(logType, "send command hex string: " + writeDataHexStr));*/
-
-            /* Limit the sent buff length to 255 */
-            byte[] writeCompleteData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-            System.arraycopy(writeData, 0, writeCompleteData, 0, writeData.length);
-
-            ByteBuffer writeBuffer = ByteBuffer.wrap(writeCompleteData);
-            writeBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            UsbRequest writeDataRequest = new UsbRequest();
-            writeDataRequest.setClientData(command);
-            writeDataRequest.initialize(mUsbDeviceConnection, mUsbEndpointInterruptOut);
-
-            boolean writeData2QueueRet;
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                writeData2QueueRet = writeDataRequest.queue(writeBuffer);
-            } else {
-                writeData2QueueRet = writeDataRequest.queue(writeBuffer, writeCompleteData.length);
-            }
-
-            // true if the queueing operation succeeded, false if the queueing operation failed.
-            String logType = WriteAttributeCommand.class.getSimpleName();
-
-            if (!writeData2QueueRet) {
+            if (!transfer.queue(usbDeviceConnection, mUsbEndpointInterruptOut)) {
                 Log.e(TAG, UsbLogInfo.msg(logType, "write command data to queue failed"));
+                recycleOutTransfer(transfer);
                 if (writeCommandCallback != null)
                     writeCommandCallback.onSendFailed(UsbError.CODE_WRITE_COMMAND_TO_QUEUE_FAILED);
                 return;
@@ -1566,94 +2521,83 @@ public class LocalUsbConnector {
         }
 
         private void writeCommand2BulkOutEndpoint(WriteAttributeCommand command) {
-            if (mUsbDeviceConnection == null) {
+            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
+            UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+            if (usbDeviceConnection == null) {
                 Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write command to bulk out failed, connection has not been established"));
+                if (writeCommandCallback != null)
+                    writeCommandCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
                 return;
             }
 
-            byte[] writeData = command.getSendData();
-            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
             /* Limit the sent buff length to 255 */
-            byte[] writeCompleteData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-            System.arraycopy(writeData, 0, writeCompleteData, 0, writeData.length);
-
-            mWriteData2BulkOutEndpointLock.lock();
-            try {
-                int writeRet = mUsbDeviceConnection.bulkTransfer(mUsbEndpointBulkOut, writeCompleteData, writeCompleteData.length, BULK_TRANSFER_SEND_MAX_TIMEOUT);
-                if (writeRet < 0) {
-                    if (writeCommandCallback != null) {
-                        writeCommandCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
-                    }
-                    // Print the send message information.
-                    Log.e(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "write command data failed"));
-                } else {
-                    // Print the send message information.
-                    String writeDataHexStr = ByteUtil.convertHexString(writeCompleteData);
-                    Log.i(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "send command hex string: " + writeDataHexStr));
-                    Log.i(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "send command success "));
+            OutTransfer transfer = obtainOutTransfer(command);
+            String logType = command.getClass().getSimpleName();
 
-                    if (writeCommandCallback != null) {
-                        writeCommandCallback.onSendSuccess();
-                    }
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                mWriteData2BulkOutEndpointLock.unlock();
+            if (!canReapOutTransfers()) {
+                // Nobody waits for the queued requests while the control endpoint is polled.
+                Log.i(TAG, UsbLogInfo.msg(logType, "send command (blocking) hex string: " + ByteUtil.convertHexString(transfer.mFrame.array())));
+                transfer.transfer(usbDeviceConnection, mUsbEndpointBulkOut);
+                return;
             }
+
+            if (!transfer.queue(usbDeviceConnection, mUsbEndpointBulkOut)) {
+                Log.e(TAG, UsbLogInfo.msg(logType, "write command data to queue failed"));
+                recycleOutTransfer(transfer);
+                if (writeCommandCallback != null)
+                    writeCommandCallback.onSendFailed(UsbError.CODE_WRITE_COMMAND_TO_QUEUE_FAILED);
+                return;
+            }
+
+            String writeDataHexStr = ByteUtil.convertHexString(transfer.mFrame.array());
+            Log.i(TAG, UsbLogInfo.msg(logType, "send command hex string: " + writeDataHexStr));
         }
 
         private void writeCommand2ControlEndpoint(WriteAttributeCommand command) {
-            if (mUsbDeviceConnection == null) {
+            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
+            UsbDeviceConnection usbDeviceConnection = mUsbDeviceConnection;
+            if (usbDeviceConnection == null) {
                 Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "write command to control endpoint failed, connection has not been established"));
+                if (writeCommandCallback != null)
+                    writeCommandCallback.onSendFailed(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
                 return;
             }
 
-            byte[] writeData = command.getSendData();
-            WriteAttributeCommandCallback writeCommandCallback = command.getWriteAttributeCommandCallback();
             /* Limit the sent buff length to 255 */
-            byte[] writeCompleteData = new byte[BUFF_SIZE_ON_USB_ENDPOINT];
-            System.arraycopy(writeData, 0, writeCompleteData, 0, writeData.length);
-
-            mWriteData2ControlEndpointLock.lock();
-            try {
-
-                int transferRet = mUsbDeviceConnection.controlTransfer(UsbHidDefine.CONTROL_REQUEST_TYPE,
-                        UsbHidDefine.CONTROL_REQUEST_ID, UsbHidDefine.CONTROL_REQUEST_VALUE,
-                        UsbHidDefine.CONTROL_REQUEST_INDEX, writeCompleteData, writeCompleteData.length, UsbHidDefine.CONTROL_REQUEST_TIMEOUT);
-
-                if (transferRet < 0) {
-                    if (writeCommandCallback != null) {
-                        writeCommandCallback.onSendFailed(UsbError.CODE_USB_SEND_DATA_FAILED);
-                    }
-                    // Print the send message information.
-                    Log.e(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "write command data on control endpoint failed"));
-                } else {
-                    if (writeCommandCallback != null) {
-                        writeCommandCallback.onSendSuccess();
-                    }
-                    // Print the send message information.
-                    String writeDataHexStr = ByteUtil.convertHexString(writeCompleteData);
-                    Log.i(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "send command hex string: " + writeDataHexStr));
-                    Log.i(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "send command data on control endpoint success "));
-                }
-
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                mWriteData2ControlEndpointLock.unlock();
-            }
+            OutTransfer transfer = obtainOutTransfer(command);
+            String writeDataHexStr = ByteUtil.convertHexString(transfer.mFrame.array());
+            Log.i(TAG, UsbLogInfo.msg(command.getClass().getSimpleName(), "send command hex string: " + writeDataHexStr));
+            transfer.transfer(usbDeviceConnection, null);
         }
 
     }
 
 
     /**
-     * Clear local requests that have not been sent.
+     * Take out local requests that have not been sent.
      * <p> This method will be called when a request is sent and the corresponding response is not received within 30s </p>
+     * <p>The requests attached to the returned ones are kept, they should be failed with the returned requests.</p>
+     *
+     * @return the requests taken out, in the order they would have been sent.
+     */
+    private List<BaseRequest> drainRequestCacheQueue() {
+        List<BaseRequest> requests = new ArrayList<>();
+        mSendRequestCacheQueue.drainTo(requests);
+        mLowPrioritySendRequestQueue.drainTo(requests);
+        clearCoalescingWriteRequests();
+        clearSingleFlightRequests();
+        return requests;
+    }
+
+    /**
+     * Stop merging later writes into the pending coalescing write requests and commands.
+     * <p>The pending commands are still sent by their tasks, later commands to the same attribute are sent by themselves.</p>
      */
-    private void clearRequestCacheQueue() {
-        if (mSendRequestCacheQueue != null) mSendRequestCacheQueue.clear();
+    private void clearCoalescingWriteRequests() {
+        synchronized (mCoalescingWriteLock) {
+            mCoalescingWriteRequests.clear();
+            mCoalescingWriteCommands.clear();
+        }
     }
 
     /**
@@ -1671,6 +2615,24 @@ public class LocalUsbConnector {
         return mUsbConnectState;
     }
 
+    /**
+     * Get the usb device which is selected by current connector.
+     *
+     * @return selected usb device, or null if no usb device is selected.
+     */
+    public UsbDevice getUsbDevice() {
+        return mSelectUsbDevice;
+    }
+
+    /**
+     * Get the event loop which current connector pinned to.
+     *
+     * @return The {@link UsbEventLoop} of current connector.
+     */
+    public UsbEventLoop getEventLoop() {
+        return mEventLoop;
+    }
+
     /**
      * Call this method to start listening for data from the USB endpoint.
      * <p>Note: This operation needs to wait for the USB connection to be established.</p>
@@ -1688,35 +2650,23 @@ public class LocalUsbConnector {
 
         // TODO: 2020/1/2  Comment the bulk out check, because the bulk out endpoint driver of the
         //  hardware is not ready yet. This inspection is necessary if the final product is ready.
-        // check bulk out endpoint 
+        // check bulk out endpoint
         /*if (mUsbEndpointBulkOut == null) {
             Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_CALL_CONNECT, "connect failed, can not found usb bulk out endpoint"));
             return UsbError.CODE_CAN_NOT_FOUND_USB_ENDPOINT;
         }*/
 
-        // check bulk in endpoint
-        /*if (mUsbEndpointBulkIn == null) {
-            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_CALL_CONNECT, "connect failed, can not found usb bulk in endpoint"));
-            return UsbError.CODE_CAN_NOT_FOUND_USB_ENDPOINT;
-        }*/
-
-        // check bulk in endpoint, This endpoint may not exist sometimes
-        if (mUsbEndpointBulkIn != null) {
-            startListenBulkInData();
-        }
-
-        // check interrupt in endpoint, This endpoint may not exist sometimes
-        if (mUsbEndpointInterruptIn != null) {
-            startListenInterruptInData();
-        }
-
-        // Allow listening for control endpoint data
-        startListenControlEndpointData();
+        // Listen the bulk in and interrupt in endpoint if they exist, or the selected receive endpoint.
+        startReceiveUsbData();
 
-        // start the thread to receive data from the user
+        // allow the user to send requests and commands
         if (mUsbEndpointBulkOut != null || mUsbEndpointInterruptOut != null) {
             startReceivingRequestData();
             startReceivingWriteCommandData();
+            if (mAutoProbeEndpoints && mSelectedSendEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_NONE
+                    && mSelectedReceiveEndpoint == UsbEndpointTypeDefine.USB_ENDPOINT_NONE) {
+                probeEndpoints(null);
+            }
         } else {
             Log.e(TAG, UsbLogInfo.TYPE_RUNNING_TIPS + "connect failed, can not found usb output endpoint");
             return UsbError.CODE_CAN_NOT_FOUND_USB_ENDPOINT;
@@ -1740,29 +2690,297 @@ public class LocalUsbConnector {
 
     public boolean setReceiveUsbEndpointType(int endpointType) {
         if (endpointType == UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN) {
-
             if (mUsbEndpointBulkIn == null) return false;
             mSelectedReceiveEndpoint = UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN;
-            stopListenInterruptInData();
-            stopListenControlEndpointData();
-            startListenBulkInData();
-
         } else if (endpointType == UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_IN) {
             if (mUsbEndpointInterruptIn == null) return false;
             mSelectedReceiveEndpoint = UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_IN;
-            stopListenBulkInData();
-            stopListenControlEndpointData();
-            startListenInterruptInData();
-
         } else if (endpointType == UsbEndpointTypeDefine.USB_ENDPOINT_CONTROL_IN) {
             mSelectedReceiveEndpoint = UsbEndpointTypeDefine.USB_ENDPOINT_CONTROL_IN;
-            stopListenBulkInData();
-            stopListenInterruptInData();
-            startListenControlEndpointData();
+        } else {
+            return true;
         }
+        // Restart the receive thread to listen the selected endpoint.
+        restartReceiveUsbData(null);
         return true;
     }
 
+    /**
+     * Set whether to probe the endpoints automatically when {@link #connect()} is called and no endpoint
+     * has been selected by {@link #setSendUsbEndpointType(int)} or {@link #setReceiveUsbEndpointType(int)}.
+     * <p>The requests sent after {@link #connect()} are held until the probe has selected a pair.</p>
+     *
+     * @param autoProbeEndpoints true to probe the endpoints automatically, the default value is false.
+     * @see #probeEndpoints(OnUsbEndpointProbeCallback)
+     */
+    public void setAutoProbeEndpoints(boolean autoProbeEndpoints) {
+        mAutoProbeEndpoints = autoProbeEndpoints;
+    }
+
+    /**
+     * Send some {@link QueryBTConnectStateRequest}s on each available pair of output and input endpoints, measure
+     * the round trip time and jitter of them, and then select the best endpoint pair to send and receive data.
+     * <p>The requests sent by the user during the probe are held in the queue, and sent on the selected pair once
+     * the probe has completed.</p>
+     *
+     * @param callback A callback to receive the measurements, may be null.
+     * @return {@link UsbError#CODE_NO_ERROR} if the probe has been started, or the error code.
+     * @see #getEndpointProbeResults()
+     */
+    public int probeEndpoints(final OnUsbEndpointProbeCallback callback) {
+        if (!mReceivingRequestData) {
+            Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "probe endpoints failed, connection has not been established"));
+            return UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED;
+        }
+        // Hold the requests of the user from now on, the probe may not have been started when they are scheduled.
+        mProbingEndpoints = true;
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mEndpointProber != null) {
+                    Log.w(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "endpoint probe is in progress"));
+                    return;
+                }
+                // A probe completed before this task may have cleared it.
+                mProbingEndpoints = true;
+                mEndpointProber = new UsbEndpointProber(callback);
+                mEndpointProber.start();
+            }
+        });
+        return UsbError.CODE_NO_ERROR;
+    }
+
+    /**
+     * Get the measurements of the last endpoint probe.
+     *
+     * @return measurements of all the probed endpoint pairs, or an empty list if no probe has completed.
+     */
+    public List<UsbEndpointProbeResult> getEndpointProbeResults() {
+        return mEndpointProbeResults;
+    }
+
+    /**
+     * Probe all the pairs of output and input endpoints one by one, and select the best one.
+     * <p>Only accessed on the event loop.</p>
+     */
+    private class UsbEndpointProber {
+
+        private final OnUsbEndpointProbeCallback mCallback;
+
+        private final List<UsbEndpointProbeResult> mResults = new ArrayList<>();
+
+        private final int mOriginalSendEndpoint;
+        private final int mOriginalReceiveEndpoint;
+
+        private int mProbingIndex = -1;
+
+        private QueryBTConnectStateRequest mProbeRequest;
+
+        /**
+         * The probe request waiting to be sent by {@link #scheduleNextRequest()}.
+         */
+        private QueryBTConnectStateRequest mQueuedProbeRequest;
+
+        /**
+         * The probe request which has timed out, but still holds the request slot, since the late response of it
+         * must not be taken as the response of the next request. The slot is released once the response arrives or
+         * the receive endpoint of the pair has been torn down.
+         */
+        private QueryBTConnectStateRequest mAbandonedProbeRequest;
+
+        private long mProbeRequestTime;
+
+        private ScheduledFuture<?> mProbeTimeoutFuture;
+
+        UsbEndpointProber(OnUsbEndpointProbeCallback callback) {
+            mCallback = callback;
+            mOriginalSendEndpoint = mSelectedSendEndpoint;
+            mOriginalReceiveEndpoint = mSelectedReceiveEndpoint;
+
+            List<Integer> sendEndpoints = new ArrayList<>();
+            if (mUsbEndpointBulkOut != null) sendEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT);
+            if (mUsbEndpointInterruptOut != null) sendEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_OUT);
+            sendEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_CONTROL_OUT);
+
+            List<Integer> receiveEndpoints = new ArrayList<>();
+            if (mUsbEndpointBulkIn != null) receiveEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN);
+            if (mUsbEndpointInterruptIn != null) receiveEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_IN);
+            receiveEndpoints.add(UsbEndpointTypeDefine.USB_ENDPOINT_CONTROL_IN);
+
+            for (int sendEndpoint : sendEndpoints) {
+                for (int receiveEndpoint : receiveEndpoints) {
+                    mResults.add(new UsbEndpointProbeResult(sendEndpoint, receiveEndpoint, ENDPOINT_PROBE_SAMPLE_COUNT));
+                }
+            }
+        }
+
+        void start() {
+            Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "start probing " + mResults.size() + " endpoint pairs"));
+            probeNextPair();
+        }
+
+        private void probeNextPair() {
+            mProbingIndex++;
+            if (mProbingIndex >= mResults.size() || !mReceivingRequestData) {
+                finish();
+                return;
+            }
+            UsbEndpointProbeResult result = mResults.get(mProbingIndex);
+            setSendUsbEndpointType(result.getSendEndpointType());
+            if (mSelectedReceiveEndpoint == result.getReceiveEndpointType() && mAbandonedProbeRequest == null) {
+                sendProbeRequest();
+                return;
+            }
+            mSelectedReceiveEndpoint = result.getReceiveEndpointType();
+            // The probe request is sent once the receive thread listens the endpoint being probed, and the
+            // abandoned probe request of the previous pair can no longer be answered.
+            restartReceiveUsbData(mSendProbeRequestTask);
+        }
+
+        /**
+         * Release the request slot held by the abandoned probe request, must be called after its receive endpoint
+         * has been torn down.
+         */
+        private void releaseAbandonedProbeRequest() {
+            QueryBTConnectStateRequest abandonedRequest = mAbandonedProbeRequest;
+            if (abandonedRequest == null) return;
+            mAbandonedProbeRequest = null;
+            abandonSendingRequest(abandonedRequest);
+        }
+
+        private final Runnable mReleaseAbandonedProbeRequestTask = new Runnable() {
+            @Override
+            public void run() {
+                releaseAbandonedProbeRequest();
+            }
+        };
+
+        private final Runnable mSendProbeRequestTask = new Runnable() {
+            @Override
+            public void run() {
+                releaseAbandonedProbeRequest();
+                if (mEndpointProber != UsbEndpointProber.this) return;
+                if (!mReceivingRequestData) {
+                    finish();
+                    return;
+                }
+                sendProbeRequest();
+            }
+        };
+
+        private void sendProbeRequest() {
+            final QueryBTConnectStateRequest probeRequest = new QueryBTConnectStateRequest();
+            // The probe must be answered on the endpoints being probed.
+            probeRequest.setSingleFlight(false);
+            probeRequest.addQueryBTConnectStateRequestCallback(new QueryBTConnectStateRequestCallback() {
+                @Override
+                public void onReceiveConnectState(int statusCode, int connectState) {
+                    super.onReceiveConnectState(statusCode, connectState);
+                    onProbeResponse(probeRequest, true);
+                }
+
+                @Override
+                public void onSendFailed(int sendResult) {
+                    super.onSendFailed(sendResult);
+                    onProbeResponse(probeRequest, false);
+                }
+
+                @Override
+                public void onReceiveTimeout() {
+                    super.onReceiveTimeout();
+                    onProbeResponse(probeRequest, false);
+                }
+            });
+            mProbeRequest = probeRequest;
+            mProbeRequestTime = System.nanoTime();
+            mProbeTimeoutFuture = mEventLoop.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (mProbeRequest != probeRequest) return;
+                    // The dongle does not answer on this endpoint pair, but it may still answer later. Keep the
+                    // request slot until the pair is torn down, so the late response is dropped with the request.
+                    if (mQueuedProbeRequest == probeRequest) {
+                        mQueuedProbeRequest = null;
+                    } else {
+                        mAbandonedProbeRequest = probeRequest;
+                    }
+                    onProbeResponse(probeRequest, false);
+                }
+            }, ENDPOINT_PROBE_RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS);
+            mQueuedProbeRequest = probeRequest;
+            scheduleNextRequest();
+        }
+
+        /**
+         * Take the probe request to be sent, called by {@link #scheduleNextRequest()}.
+         */
+        BaseRequest pollProbeRequest() {
+            QueryBTConnectStateRequest probeRequest = mQueuedProbeRequest;
+            mQueuedProbeRequest = null;
+            return probeRequest;
+        }
+
+        private void onProbeResponse(QueryBTConnectStateRequest probeRequest, boolean success) {
+            // The late response of a probe request which has timed out has released its request slot.
+            if (mAbandonedProbeRequest == probeRequest) mAbandonedProbeRequest = null;
+            // Ignore the late response of a probe request which has timed out.
+            if (mProbeRequest != probeRequest) return;
+            mProbeRequest = null;
+            if (mProbeTimeoutFuture != null) {
+                mProbeTimeoutFuture.cancel(false);
+                mProbeTimeoutFuture = null;
+            }
+
+            UsbEndpointProbeResult result = mResults.get(mProbingIndex);
+            if (!success) {
+                Log.w(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "endpoint pair is not available: " + result));
+                probeNextPair();
+                return;
+            }
+            result.addSample((System.nanoTime() - mProbeRequestTime) / 1000);
+            if (result.isAvailable()) {
+                Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "endpoint pair probed: " + result));
+                probeNextPair();
+            } else {
+                sendProbeRequest();
+            }
+        }
+
+        private void finish() {
+            UsbEndpointProbeResult bestResult = null;
+            for (UsbEndpointProbeResult result : mResults) {
+                if (!result.isAvailable()) continue;
+                if (bestResult == null || result.getScore() < bestResult.getScore()) {
+                    bestResult = result;
+                }
+            }
+
+            if (bestResult != null) {
+                Log.i(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "select endpoint pair: " + bestResult));
+                selectEndpoints(bestResult.getSendEndpointType(), bestResult.getReceiveEndpointType());
+            } else {
+                Log.e(TAG, UsbLogInfo.msg(UsbLogInfo.TYPE_RUNNING_TIPS, "no endpoint pair is available, restore the selection"));
+                selectEndpoints(mOriginalSendEndpoint, mOriginalReceiveEndpoint);
+            }
+
+            mEndpointProbeResults = Collections.unmodifiableList(mResults);
+            mEndpointProber = null;
+            // Send the held requests on the selected pair.
+            mProbingEndpoints = false;
+            if (mCallback != null) mCallback.onProbeCompleted(bestResult, mEndpointProbeResults);
+            scheduleNextRequest();
+        }
+
+        private void selectEndpoints(int sendEndpoint, int receiveEndpoint) {
+            mSelectedSendEndpoint = sendEndpoint;
+            if (mSelectedReceiveEndpoint != receiveEndpoint || mAbandonedProbeRequest != null) {
+                // USB_ENDPOINT_NONE listens all the input endpoints again.
+                mSelectedReceiveEndpoint = receiveEndpoint;
+                restartReceiveUsbData(mReleaseAbandonedProbeRequestTask);
+            }
+        }
+    }
+
     public int getSendUsbEndpointType() {
         return mSelectedSendEndpoint;
     }
@@ -1779,27 +2997,27 @@ public class LocalUsbConnector {
      * <li>send Request: {@link LocalUsbConnector#sendRequest(BaseRequest)}</li>
      * <li>Write Command: {@link LocalUsbConnector#writeAttributesCommand(WriteAttributeCommand)}</li>
      * </ul>
-     * <p>In addition, write requests and write commands that have not been sent in the cache queue will be discarded</p>
+     * <p>In addition, write requests and write commands that have not been sent in the cache queue will be discarded,
+     * including the requests held by {@link #setDetachHoldTime(int)}</p>
+     * <p>The receive thread is stopped and the usb connection is closed in the background, this method does not
+     * wait for the transfers in progress.</p>
      *
+     * @return a future which is done once the usb connection has been closed.
      * @see LocalUsbConnector#connect()
      * @see LocalUsbConnector#sendRequest(BaseRequest)
      * @see LocalUsbConnector#writeAttributesCommand(WriteAttributeCommand)
      */
-    public void disConnect() {
+    public Future<?> disConnect() {
+        // 0. stop waiting for the detached device.
+        mConnectionSuspended = false;
+        mSuspendedDeviceKey = null;
         // 1. stop receiving data incoming.
         stopReceivingRequestData();
         stopReceivingWriteCommandData();
-        // 2. stop listening thread
-        stopListenBulkInData();
-        stopListenInterruptInData();
-        stopListenControlEndpointData();
-        // 3. clear resource (selectDevice, interface, endpoint, usb connection, etc).
+        // 2. clear resource (selectDevice, interface, endpoint, usb connection, etc).
         mSelectUsbDevice = null;
-        // 4. destroy usb connection (Test)
-        if (mUsbDeviceConnection != null) {
-            mUsbDeviceConnection.close();
-            mUsbDeviceConnection = null;
-        }
+        // 3. stop listening thread and destroy usb connection off the calling thread.
+        return releaseConnection();
     }
 
 }
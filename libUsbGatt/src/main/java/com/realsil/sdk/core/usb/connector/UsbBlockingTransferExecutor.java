@@ -0,0 +1,96 @@
+package com.realsil.sdk.core.usb.connector;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the blocking usb transfers of one {@link LocalUsbConnector} in order, off the {@link UsbEventLoop}.
+ * <p>A control transfer, or a bulk transfer which can not be reaped by the receive thread, may block for
+ * seconds when the dongle is busy, so it must not be executed on the event loop shared with other connectors.
+ * The tasks of all the connectors are run by a shared pool of at most {@link #MAX_POOL_SIZE} threads, however
+ * many dongles are connected, but the tasks submitted to the same executor are never run concurrently, so the
+ * frames of one connector are still written in the order they were submitted. A thread is only occupied
+ * while a connector has transfers pending, and it is released after staying idle for a while.</p>
+ *
+ * @author xp.chen
+ */
+final class UsbBlockingTransferExecutor {
+
+    private static final String TAG = "UsbBlockingTransfer";
+
+    /**
+     * How long an idle thread of the shared pool is kept, in second.
+     */
+    private static final int KEEP_ALIVE_TIME = 30;
+
+    /**
+     * Maximum number of threads of the shared pool, the connectors with transfers pending beyond it wait in turn.
+     */
+    private static final int MAX_POOL_SIZE = 2;
+
+    private static final AtomicInteger sThreadNumber = new AtomicInteger();
+
+    private static final ThreadPoolExecutor sSharedPool = new ThreadPoolExecutor(MAX_POOL_SIZE, MAX_POOL_SIZE,
+            KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "UsbBlockingTransfer-" + sThreadNumber.getAndIncrement());
+        }
+    });
+
+    static {
+        sSharedPool.allowCoreThreadTimeOut(true);
+    }
+
+    private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+
+    /**
+     * Whether {@link #mDrainTask} has been submitted to the shared pool, guarded by {@link #mTasks}.
+     */
+    private boolean mDraining;
+
+    /**
+     * Run the queued tasks one by one until the queue is empty, so that no wrapper is allocated per task.
+     */
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                synchronized (mTasks) {
+                    task = mTasks.poll();
+                    if (task == null) {
+                        mDraining = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "uncaught exception in blocking usb transfer", e);
+                }
+            }
+        }
+    };
+
+    /**
+     * Run the task after all the tasks submitted before it have been completed.
+     *
+     * @param task The blocking task.
+     */
+    void execute(Runnable task) {
+        synchronized (mTasks) {
+            mTasks.offer(task);
+            if (mDraining) return;
+            mDraining = true;
+        }
+        sSharedPool.execute(mDrainTask);
+    }
+
+}
@@ -58,6 +58,22 @@ public final class UsbConfig {
      */
     private static final int MAX_PACKET_SIZE_255 = 255;
 
+    /**
+     * The maximum length of a packet sent to the dongle, including the Report ID and the Message Length.
+     */
+    public static final int MAX_TRANSPORT_PACKET_SIZE = MAX_PACKET_SIZE_255;
+
+    /**
+     * Length of the header of a transparent transport packet: Report ID(1B) + Message Length(1B).
+     */
+    public static final int LENGTH_TRANSPARENT_TRANSPORT_HEADER = 2;
+
+    /**
+     * The maximum length of the ATT PDU which can be carried by a single transparent transport packet,
+     * any payload size derived from the ATT MTU must be capped by this value.
+     */
+    public static final int MAX_ATT_PDU_LENGTH = MAX_PACKET_SIZE_255 - LENGTH_TRANSPARENT_TRANSPORT_HEADER;
+
     /**
      * Select the suitable transparent transport Report ID based on the size of the packets sent.
      */
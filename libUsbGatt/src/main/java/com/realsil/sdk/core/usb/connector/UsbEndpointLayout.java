@@ -0,0 +1,155 @@
+package com.realsil.sdk.core.usb.connector;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * Record the position (interface index and endpoint index) of the endpoints used by {@link LocalUsbConnector}.
+ * <p>The layout is cached per vendor id, product id and serial number, so the interfaces and endpoints
+ * of a reattached usb device can be picked up directly without enumerating all of them again.</p>
+ *
+ * @author xp.chen
+ */
+final class UsbEndpointLayout {
+
+    static final int ROLE_BULK_IN       = 0;
+    static final int ROLE_BULK_OUT      = 1;
+    static final int ROLE_INTERRUPT_IN  = 2;
+    static final int ROLE_INTERRUPT_OUT = 3;
+
+    private static final int ROLE_NUM = 4;
+
+    private static final int INDEX_NONE = -1;
+
+    private final int   mInterfaceCount;
+    private final int[] mInterfaceIndexes = new int[ROLE_NUM];
+    private final int[] mEndpointIndexes  = new int[ROLE_NUM];
+
+    private UsbEndpointLayout(int interfaceCount) {
+        mInterfaceCount = interfaceCount;
+        Arrays.fill(mInterfaceIndexes, INDEX_NONE);
+        Arrays.fill(mEndpointIndexes, INDEX_NONE);
+    }
+
+    /**
+     * Enumerate all the interfaces and endpoints of the usb device to build the layout.
+     *
+     * @param usbDevice usb device to be enumerated.
+     * @return layout of the usb device.
+     */
+    static UsbEndpointLayout enumerate(UsbDevice usbDevice) {
+        UsbEndpointLayout layout = new UsbEndpointLayout(usbDevice.getInterfaceCount());
+        for (int i = 0; i < usbDevice.getInterfaceCount(); i++) {
+            UsbInterface usbInterface = usbDevice.getInterface(i);
+            for (int j = 0; j < usbInterface.getEndpointCount(); j++) {
+                int role = getEndpointRole(usbInterface.getEndpoint(j));
+                if (role != INDEX_NONE) {
+                    layout.mInterfaceIndexes[role] = i;
+                    layout.mEndpointIndexes[role] = j;
+                }
+            }
+        }
+        return layout;
+    }
+
+    private static int getEndpointRole(UsbEndpoint usbEndpoint) {
+        boolean isInput = usbEndpoint.getDirection() == UsbConstants.USB_DIR_IN;
+        // Find Bulk Endpoint
+        if (usbEndpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_BULK) {
+            return isInput ? ROLE_BULK_IN : ROLE_BULK_OUT;
+        }
+        // Find Interrupt endpoint
+        if (usbEndpoint.getType() == UsbConstants.USB_ENDPOINT_XFER_INT) {
+            return isInput ? ROLE_INTERRUPT_IN : ROLE_INTERRUPT_OUT;
+        }
+        return INDEX_NONE;
+    }
+
+    /**
+     * Check whether the cached layout still describes the usb device, a usb device with the
+     * same vid/pid/serial number may have a different configuration after its firmware is changed.
+     *
+     * @param usbDevice usb device to be checked.
+     * @return true if all the recorded endpoints can be found at the same position.
+     */
+    boolean matches(UsbDevice usbDevice) {
+        if (usbDevice.getInterfaceCount() != mInterfaceCount) return false;
+        for (int role = 0; role < ROLE_NUM; role++) {
+            int interfaceIndex = mInterfaceIndexes[role];
+            if (interfaceIndex == INDEX_NONE) continue;
+            UsbInterface usbInterface = usbDevice.getInterface(interfaceIndex);
+            if (mEndpointIndexes[role] >= usbInterface.getEndpointCount()) return false;
+            if (getEndpointRole(usbInterface.getEndpoint(mEndpointIndexes[role])) != role) return false;
+        }
+        return true;
+    }
+
+    UsbInterface getInterface(UsbDevice usbDevice, int role) {
+        int interfaceIndex = mInterfaceIndexes[role];
+        return interfaceIndex == INDEX_NONE ? null : usbDevice.getInterface(interfaceIndex);
+    }
+
+    UsbEndpoint getEndpoint(UsbDevice usbDevice, int role) {
+        UsbInterface usbInterface = getInterface(usbDevice, role);
+        return usbInterface == null ? null : usbInterface.getEndpoint(mEndpointIndexes[role]);
+    }
+
+    /**
+     * Get the key used to identify a physical usb device, the device name will be changed after reattach,
+     * so vendor id, product id and serial number are used.
+     * <p>The key of a device whose serial number can not be read ends with the product key, see
+     * {@link #hasSerialNumber(String)}.</p>
+     *
+     * @param usbDevice usb device.
+     * @return key of the usb device.
+     */
+    static String getDeviceKey(UsbDevice usbDevice) {
+        String serialNumber = getSerialNumber(usbDevice);
+        String productKey = getProductKey(usbDevice);
+        return serialNumber == null ? productKey : productKey + serialNumber;
+    }
+
+    /**
+     * Get the key shared by all the usb devices with the same vendor id and product id,
+     * which is also the prefix of their device keys.
+     *
+     * @param usbDevice usb device.
+     * @return vendor id and product id of the usb device.
+     */
+    static String getProductKey(UsbDevice usbDevice) {
+        return usbDevice.getVendorId() + ":" + usbDevice.getProductId() + ":";
+    }
+
+    /**
+     * Check whether the device key contains the serial number of the device.
+     *
+     * @param deviceKey key returned by {@link #getDeviceKey(UsbDevice)}.
+     * @return false if the serial number was unknown when the key was created.
+     */
+    static boolean hasSerialNumber(String deviceKey) {
+        return !deviceKey.endsWith(":");
+    }
+
+    /**
+     * Read the serial number of the usb device.
+     *
+     * @param usbDevice usb device.
+     * @return the serial number, or null if it is unknown, e.g. the device has not been authorized.
+     */
+    private static String getSerialNumber(UsbDevice usbDevice) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        try {
+            String serialNumber = usbDevice.getSerialNumber();
+            return serialNumber == null || serialNumber.isEmpty() ? null : serialNumber;
+        } catch (SecurityException e) {
+            // The serial number can not be read before the device is authorized.
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.realsil.sdk.core.usb.connector;
+
+import java.util.Locale;
+
+/**
+ * The measurements of a pair of output and input endpoints, which are collected by
+ * {@link LocalUsbConnector#probeEndpoints(com.realsil.sdk.core.usb.connector.callback.OnUsbEndpointProbeCallback)}.
+ *
+ * @author xp.chen
+ * @see UsbEndpointTypeDefine
+ */
+public final class UsbEndpointProbeResult {
+
+    private final int mSendEndpointType;
+    private final int mReceiveEndpointType;
+
+    private final long[] mRoundTripTimes;
+    private int          mSampleCount;
+
+    UsbEndpointProbeResult(int sendEndpointType, int receiveEndpointType, int maxSampleCount) {
+        mSendEndpointType = sendEndpointType;
+        mReceiveEndpointType = receiveEndpointType;
+        mRoundTripTimes = new long[maxSampleCount];
+    }
+
+    void addSample(long roundTripTimeUs) {
+        mRoundTripTimes[mSampleCount++] = roundTripTimeUs;
+    }
+
+    /**
+     * @return The output endpoint type, such as {@link UsbEndpointTypeDefine#USB_ENDPOINT_BULK_OUT}.
+     */
+    public int getSendEndpointType() {
+        return mSendEndpointType;
+    }
+
+    /**
+     * @return The input endpoint type, such as {@link UsbEndpointTypeDefine#USB_ENDPOINT_BULK_IN}.
+     */
+    public int getReceiveEndpointType() {
+        return mReceiveEndpointType;
+    }
+
+    /**
+     * Whether all the probe requests sent on this endpoint pair have received their responses.
+     *
+     * @return true if the endpoint pair can be used to send requests and receive responses.
+     */
+    public boolean isAvailable() {
+        return mSampleCount == mRoundTripTimes.length;
+    }
+
+    /**
+     * @return The number of probe requests which have received their responses.
+     */
+    public int getSampleCount() {
+        return mSampleCount;
+    }
+
+    /**
+     * Get the average round trip time of the probe requests.
+     *
+     * @return average round trip time in microseconds, or -1 if no response has been received.
+     */
+    public long getAverageRoundTripTime() {
+        if (mSampleCount == 0) return -1;
+        long totalTime = 0;
+        for (int i = 0; i < mSampleCount; i++) {
+            totalTime += mRoundTripTimes[i];
+        }
+        return totalTime / mSampleCount;
+    }
+
+    /**
+     * Get the jitter of the round trip time, which is the mean difference between consecutive samples.
+     *
+     * @return jitter in microseconds, or -1 if less than two responses have been received.
+     */
+    public long getJitter() {
+        if (mSampleCount < 2) return -1;
+        long totalDiff = 0;
+        for (int i = 1; i < mSampleCount; i++) {
+            totalDiff += Math.abs(mRoundTripTimes[i] - mRoundTripTimes[i - 1]);
+        }
+        return totalDiff / (mSampleCount - 1);
+    }
+
+    /**
+     * The score used to compare endpoint pairs, lower is better.
+     */
+    long getScore() {
+        return getAverageRoundTripTime() + Math.max(getJitter(), 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "UsbEndpointProbeResult{send=%d, receive=%d, samples=%d/%d, rtt=%dus, jitter=%dus}",
+                mSendEndpointType, mReceiveEndpointType, mSampleCount, mRoundTripTimes.length,
+                getAverageRoundTripTime(), getJitter());
+    }
+
+}
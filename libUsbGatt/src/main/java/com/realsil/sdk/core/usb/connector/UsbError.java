@@ -21,5 +21,12 @@ public interface UsbError {
     int CODE_WRITE_REQUEST_WAIT_FAILED          = -114;
     int CODE_WRITE_COMMAND_TO_QUEUE_FAILED      = -115;
     int CODE_WRITE_COMMAND_WAIT_FAILED          = -116;
+    int CODE_USB_DEVICE_DETACHED                = -117;
+    int CODE_WRITE_COALESCED                    = -118;
+    int CODE_REQUEST_REMOVED                    = -119;
+    int CODE_PATCH_TRANSFER_FAILED              = -120;
+    int CODE_PATCH_RECEIVE_TIMEOUT              = -121;
+    int CODE_PATCH_INDEX_MISMATCH               = -122;
+    int CODE_PATCH_DOWNLOAD_CANCELED            = -123;
 
 }
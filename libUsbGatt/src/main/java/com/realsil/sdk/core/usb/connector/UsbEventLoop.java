@@ -0,0 +1,86 @@
+package com.realsil.sdk.core.usb.connector;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A single thread event loop. All the request scheduling, write command sending, response
+ * dispatching and timeout handling of the {@link LocalUsbConnector} instances pinned to this loop
+ * are executed on this thread, so they are executed in order and do not need extra locks.
+ *
+ * @author xp.chen
+ * @see UsbEventLoopGroup
+ */
+public final class UsbEventLoop extends ScheduledThreadPoolExecutor {
+
+    private static final String TAG = "UsbEventLoop";
+
+    /**
+     * The thread which currently runs the tasks of this loop.
+     */
+    private volatile Thread mLoopThread;
+
+    UsbEventLoop(final String loopName) {
+        super(1);
+        setThreadFactory(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread loopThread = new Thread(r, loopName);
+                mLoopThread = loopThread;
+                return loopThread;
+            }
+        });
+        // Cancelled response timeout tasks should not stay in the work queue until their delay elapses.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * Check whether the caller is running on the thread of this loop.
+     *
+     * @return true if the current thread is the loop thread.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == mLoopThread;
+    }
+
+    /**
+     * Run the task on this loop, the task will be executed immediately if the caller is already on the loop thread.
+     *
+     * @param task task to be executed.
+     */
+    public void runOnLoop(Runnable task) {
+        if (inEventLoop()) {
+            task.run();
+        } else {
+            execute(task);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        // Tasks are wrapped into futures by the executor, so the exception thrown by a task has to be fetched from it.
+        if (t == null && r instanceof Future<?> && ((Future<?>) r).isDone()) {
+            try {
+                ((Future<?>) r).get();
+            } catch (CancellationException e) {
+                // The task has been cancelled, e.g. a response timeout task.
+            } catch (ExecutionException e) {
+                t = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (t != null) {
+            Log.e(TAG, "uncaught exception on usb event loop", t);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.realsil.sdk.core.usb.connector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small fixed group of {@link UsbEventLoop}s shared by all the {@link LocalUsbConnector} instances.
+ * <p>Each connector is pinned to one loop of this group when it is created, so the number of threads
+ * used for request scheduling, write command sending and timeout handling stays constant no matter
+ * how many usb dongles are connected.</p>
+ *
+ * @author xp.chen
+ */
+public final class UsbEventLoopGroup {
+
+    /**
+     * The default loop number, never more than the processor count and never more than 2.
+     */
+    private static final int DEFAULT_EVENT_LOOP_NUM = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors()));
+
+    private static volatile UsbEventLoopGroup sDefaultGroup;
+
+    private final UsbEventLoop[] mEventLoops;
+
+    private final AtomicInteger mNextLoopIndex = new AtomicInteger();
+
+    /**
+     * Create a new event loop group.
+     *
+     * @param loopNum The number of loop threads in this group, must be greater than 0.
+     */
+    public UsbEventLoopGroup(int loopNum) {
+        if (loopNum <= 0) {
+            throw new IllegalArgumentException("loopNum must be greater than 0, current is: " + loopNum);
+        }
+        mEventLoops = new UsbEventLoop[loopNum];
+        for (int i = 0; i < loopNum; i++) {
+            mEventLoops[i] = new UsbEventLoop("UsbEventLoop-" + i);
+        }
+    }
+
+    /**
+     * Get the group shared by all the {@link LocalUsbConnector} instances.
+     *
+     * @return The default event loop group.
+     */
+    public static UsbEventLoopGroup getDefault() {
+        if (sDefaultGroup == null) {
+            synchronized (UsbEventLoopGroup.class) {
+                if (sDefaultGroup == null) {
+                    sDefaultGroup = new UsbEventLoopGroup(DEFAULT_EVENT_LOOP_NUM);
+                }
+            }
+        }
+        return sDefaultGroup;
+    }
+
+    /**
+     * Select the loop for a new connection, the loops are selected in turn.
+     *
+     * @return The loop which the connection will be pinned to.
+     */
+    public UsbEventLoop next() {
+        int index = (mNextLoopIndex.getAndIncrement() & Integer.MAX_VALUE) % mEventLoops.length;
+        return mEventLoops[index];
+    }
+
+    /**
+     * Get the number of loop threads in this group.
+     *
+     * @return loop number.
+     */
+    public int getEventLoopCount() {
+        return mEventLoops.length;
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.realsil.sdk.core.usb.connector;
+
+import com.realsil.sdk.core.usb.connector.callback.OnReceiveUsbMessageCallback;
+import com.realsil.sdk.core.usb.connector.cmd.UsbCmdVendorEventCodeDefine;
+
+import java.util.Arrays;
+
+/**
+ * Route the received messages to their handlers by table lookups.
+ * <p>A message is first routed by its report id, then the ATT messages are routed by the ATT opcode,
+ * the usb command messages are routed by the event code, and the vendor events are routed by their sub code.
+ * All the tables are indexed by the unsigned value of the code, so each step is a single array load.</p>
+ *
+ * <p>The handlers registered by {@link #setAttOpcodeHandler(byte, OnReceiveUsbMessageCallback)} own the message they
+ * receive, so a message is copied out of the receive buffer before it is passed to them. The built-in handlers of
+ * the frequent messages are registered by {@link #setAttOpcodePacketHandler(byte, PacketHandler)} instead, and parse
+ * the receive buffer in place.</p>
+ *
+ * <p>Only accessed on the event loop of the connector.</p>
+ *
+ * @author xp.chen
+ */
+final class UsbMessageDispatcher {
+
+    private static final int TABLE_SIZE = 256;
+
+    /**
+     * Offset of the ATT opcode in an ATT message.
+     */
+    private static final int INDEX_ATT_OPCODE            = 2;
+    /**
+     * Offset of the event code in a usb command message.
+     */
+    private static final int INDEX_EVENT_CODE            = 2;
+    /**
+     * Offset of the sub code in a vendor event.
+     */
+    private static final int INDEX_VENDOR_EVENT_SUB_CODE = 4;
+
+    private final OnReceiveUsbMessageCallback[] mReportIdHandlers           = new OnReceiveUsbMessageCallback[TABLE_SIZE];
+    private final OnReceiveUsbMessageCallback[] mAttOpcodeHandlers          = new OnReceiveUsbMessageCallback[TABLE_SIZE];
+    private final OnReceiveUsbMessageCallback[] mEventCodeHandlers          = new OnReceiveUsbMessageCallback[TABLE_SIZE];
+    private final OnReceiveUsbMessageCallback[] mVendorEventSubCodeHandlers = new OnReceiveUsbMessageCallback[TABLE_SIZE];
+    private final PacketHandler[]               mAttOpcodePacketHandlers    = new PacketHandler[TABLE_SIZE];
+
+    /**
+     * Handle a message in the receive buffer, the buffer is reused once the handler returns.
+     */
+    interface PacketHandler {
+
+        /**
+         * @param buffer The receive buffer, starting with the report id.
+         * @param length The length of the message in the buffer.
+         */
+        void onReceivePacket(byte[] buffer, int length);
+    }
+
+    private final OnReceiveUsbMessageCallback mAttMessageRouter = new OnReceiveUsbMessageCallback() {
+        @Override
+        public void onReceiveUsbMessage(byte[] messageData) {
+            dispatch(mAttOpcodeHandlers, messageData, INDEX_ATT_OPCODE);
+        }
+    };
+
+    private final OnReceiveUsbMessageCallback mUsbCmdMessageRouter = new OnReceiveUsbMessageCallback() {
+        @Override
+        public void onReceiveUsbMessage(byte[] messageData) {
+            dispatch(mEventCodeHandlers, messageData, INDEX_EVENT_CODE);
+        }
+    };
+
+    private final OnReceiveUsbMessageCallback mVendorEventRouter = new OnReceiveUsbMessageCallback() {
+        @Override
+        public void onReceiveUsbMessage(byte[] messageData) {
+            dispatch(mVendorEventSubCodeHandlers, messageData, INDEX_VENDOR_EVENT_SUB_CODE);
+        }
+    };
+
+    UsbMessageDispatcher() {
+        // ATT PDU
+        setReportIdHandler(UsbConfig.REPORT_ID_16, mAttMessageRouter);
+        setReportIdHandler(UsbConfig.REPORT_ID_17, mAttMessageRouter);
+        setReportIdHandler(UsbConfig.REPORT_ID_18, mAttMessageRouter);
+        setReportIdHandler(UsbConfig.REPORT_ID_19, mAttMessageRouter);
+        // Usb Management
+        setReportIdHandler(UsbConfig.REPORT_ID_4, mUsbCmdMessageRouter);
+        // Download patch in normal mode
+        setReportIdHandler(UsbConfig.REPORT_ID_5, mUsbCmdMessageRouter);
+        setEventCodeHandler(UsbCmdVendorEventCodeDefine.VENDOR_EVENT, mVendorEventRouter);
+    }
+
+    void setReportIdHandler(byte reportId, OnReceiveUsbMessageCallback handler) {
+        mReportIdHandlers[reportId & 0x0FF] = handler;
+    }
+
+    OnReceiveUsbMessageCallback setAttOpcodeHandler(byte attOpcode, OnReceiveUsbMessageCallback handler) {
+        // The registered handler replaces the built-in handling of the opcode.
+        mAttOpcodePacketHandlers[attOpcode & 0x0FF] = null;
+        return swap(mAttOpcodeHandlers, attOpcode, handler);
+    }
+
+    void setAttOpcodePacketHandler(byte attOpcode, PacketHandler handler) {
+        mAttOpcodeHandlers[attOpcode & 0x0FF] = null;
+        mAttOpcodePacketHandlers[attOpcode & 0x0FF] = handler;
+    }
+
+    OnReceiveUsbMessageCallback setEventCodeHandler(byte eventCode, OnReceiveUsbMessageCallback handler) {
+        return swap(mEventCodeHandlers, eventCode, handler);
+    }
+
+    OnReceiveUsbMessageCallback setVendorEventHandler(byte subCode, OnReceiveUsbMessageCallback handler) {
+        return swap(mVendorEventSubCodeHandlers, subCode, handler);
+    }
+
+    /**
+     * Route the verified message to its handler, messages without a handler are dropped.
+     *
+     * @param messageData The received message, starting with the report id.
+     */
+    void dispatch(byte[] messageData) {
+        dispatch(mReportIdHandlers, messageData, 0);
+    }
+
+    /**
+     * Route the verified message held by a receive buffer, the message is only copied if its handler keeps it.
+     *
+     * @param buffer The receive buffer, starting with the report id.
+     * @param length The length of the message in the buffer.
+     */
+    void dispatch(byte[] buffer, int length) {
+        if (length > INDEX_ATT_OPCODE && mReportIdHandlers[buffer[0] & 0x0FF] == mAttMessageRouter) {
+            PacketHandler packetHandler = mAttOpcodePacketHandlers[buffer[INDEX_ATT_OPCODE] & 0x0FF];
+            if (packetHandler != null) {
+                packetHandler.onReceivePacket(buffer, length);
+                return;
+            }
+        }
+        dispatch(Arrays.copyOf(buffer, length));
+    }
+
+    private static void dispatch(OnReceiveUsbMessageCallback[] handlers, byte[] messageData, int codeIndex) {
+        if (codeIndex >= messageData.length) return;
+        OnReceiveUsbMessageCallback handler = handlers[messageData[codeIndex] & 0x0FF];
+        if (handler != null) handler.onReceiveUsbMessage(messageData);
+    }
+
+    private static OnReceiveUsbMessageCallback swap(OnReceiveUsbMessageCallback[] handlers, byte code,
+                                                    OnReceiveUsbMessageCallback handler) {
+        OnReceiveUsbMessageCallback previous = handlers[code & 0x0FF];
+        handlers[code & 0x0FF] = handler;
+        return previous;
+    }
+
+}
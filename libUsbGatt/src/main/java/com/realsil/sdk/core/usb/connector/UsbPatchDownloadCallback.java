@@ -0,0 +1,42 @@
+package com.realsil.sdk.core.usb.connector;
+
+/**
+ * This abstract class is used to listen the progress of a {@link UsbPatchDownloader}.
+ * <p>The callbacks are invoked on the event loop of the usb connector, please do not perform
+ * time-consuming operations in them.</p>
+ *
+ * @author xp.chen
+ */
+public abstract class UsbPatchDownloadCallback {
+
+    /**
+     * Callback reporting the progress of the download, invoked each time a packet has been
+     * acknowledged by the bt controller.
+     *
+     * @param downloader    The patch downloader
+     * @param bytesAcked    Number of bytes which have been acknowledged
+     * @param totalBytes    Length of the patch
+     */
+    public void onProgress(UsbPatchDownloader downloader, int bytesAcked, int totalBytes) {
+    }
+
+    /**
+     * Callback indicating the packet size has been changed by the adaptive packet size.
+     *
+     * @param downloader The patch downloader
+     * @param packetSize Length of the data block of the following packets
+     * @see UsbPatchDownloader#setAdaptivePacketSize(boolean)
+     */
+    public void onPacketSizeChanged(UsbPatchDownloader downloader, int packetSize) {
+    }
+
+    /**
+     * Callback indicating the download has been completed, failed or canceled.
+     *
+     * @param downloader The patch downloader
+     * @param status     {@link UsbError#CODE_NO_ERROR} if the last packet has been acknowledged, otherwise
+     *                   the error code, such as {@link UsbError#CODE_PATCH_TRANSFER_FAILED}
+     */
+    public void onCompleted(UsbPatchDownloader downloader, int status) {
+    }
+}
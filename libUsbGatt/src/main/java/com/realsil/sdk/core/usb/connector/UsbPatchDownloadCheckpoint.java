@@ -0,0 +1,135 @@
+package com.realsil.sdk.core.usb.connector;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * The position of a patch download which has been acknowledged by the bt controller, saved in a small
+ * file so that an interrupted download can be resumed by {@link UsbPatchDownloader#resume()}.
+ *
+ * <p>The checkpoint is bound to the patch by its length and CRC32, a checkpoint of another patch or
+ * written by an incompatible format version is ignored.</p>
+ *
+ * @author xp.chen
+ */
+final class UsbPatchDownloadCheckpoint {
+    private static final String TAG = "UsbPatchDownloadCheckpoint";
+
+    /**
+     * Magic number at the beginning of the checkpoint file, "RTKD".
+     */
+    private static final int CHECKPOINT_FILE_MAGIC = 0x52544B44;
+
+    /**
+     * Increase this version when the file format is changed.
+     */
+    private static final int CHECKPOINT_FILE_VERSION = 1;
+
+    /**
+     * Number of the next packet to be acknowledged, the packet index is the lower 7 bits of it.
+     */
+    final int mPacketNumber;
+
+    /**
+     * Offset of the next packet in the patch, all the bytes before it have been acknowledged.
+     */
+    final int mOffset;
+
+    UsbPatchDownloadCheckpoint(int packetNumber, int offset) {
+        mPacketNumber = packetNumber;
+        mOffset = offset;
+    }
+
+    static long checksum(byte[] patch) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(patch, 0, patch.length);
+        return crc32.getValue();
+    }
+
+    /**
+     * Read the checkpoint of the patch.
+     *
+     * @return the checkpoint, or null if there is no valid checkpoint of the patch.
+     */
+    static UsbPatchDownloadCheckpoint read(File file, int patchLength, long patchChecksum) {
+        if (file == null || !file.exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != CHECKPOINT_FILE_MAGIC || in.readInt() != CHECKPOINT_FILE_VERSION) {
+                Log.w(TAG, "ignore checkpoint file with unknown format: " + file);
+                return null;
+            }
+            if (in.readInt() != patchLength || in.readLong() != patchChecksum) {
+                Log.w(TAG, "ignore checkpoint of another patch: " + file);
+                return null;
+            }
+            int packetNumber = in.readInt();
+            int offset = in.readInt();
+            if (packetNumber < 0 || offset < 0 || offset > patchLength) {
+                return null;
+            }
+            return new UsbPatchDownloadCheckpoint(packetNumber, offset);
+        } catch (IOException e) {
+            Log.w(TAG, "read checkpoint file failed: " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    boolean write(File file, int patchLength, long patchChecksum) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "create checkpoint directory failed: " + dir);
+            return false;
+        }
+
+        // Write to a temporary file first, a broken file will not be left if the writing is interrupted.
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(CHECKPOINT_FILE_MAGIC);
+            out.writeInt(CHECKPOINT_FILE_VERSION);
+            out.writeInt(patchLength);
+            out.writeLong(patchChecksum);
+            out.writeInt(mPacketNumber);
+            out.writeInt(mOffset);
+            out.close();
+            out = null;
+            return tempFile.renameTo(file);
+        } catch (IOException e) {
+            Log.w(TAG, "write checkpoint file failed: " + file, e);
+            return false;
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    static void delete(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "delete checkpoint file failed: " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+}
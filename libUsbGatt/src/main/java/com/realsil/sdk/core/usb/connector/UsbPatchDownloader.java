@@ -0,0 +1,671 @@
+package com.realsil.sdk.core.usb.connector;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.realsil.sdk.core.usb.connector.cmd.callback.VendorDownloadCommandCallback;
+import com.realsil.sdk.core.usb.connector.cmd.impl.VendorDownloadCommand;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Download a patch to the bt controller with {@link VendorDownloadCommand}s.
+ *
+ * <p>The patch is cut into packets of {@link #setPacketSize(int) packet size} bytes, which are sent
+ * straight from the patch array without copying. The packet size is the largest data block a packet
+ * can carry by default, and it is reduced step by step when the bt controller fails to receive the
+ * packets if the {@link #setAdaptivePacketSize(boolean) adaptive packet size} is enabled. At most {@link #setWindowSize(int) window size}
+ * packets are handed to the connector at the same time, so the next packet is already queued when
+ * the previous one is acknowledged and is sent at once by the connector, instead of waiting for
+ * the application to submit it.</p>
+ *
+ * <p>Each acknowledgement is checked against the index of the oldest packet in flight. If the bt
+ * controller echoes the index of an earlier packet, the download is re-synced and continues from
+ * the packet after the echoed one, or from the first byte if that packet was sent before current
+ * run started. A packet which fails or times out is sent again, together with
+ * the packets after it, up to {@link #setMaxRetries(int) max retries} times. The download completes
+ * once the last packet has been acknowledged.</p>
+ *
+ * <p>If a {@link #setCheckpointFile(File) checkpoint file} is set, the position acknowledged by the
+ * bt controller is saved in it, and a failed download can be continued by {@link #resume()} instead
+ * of being restarted from the first byte.</p>
+ *
+ * <p>The packets are sent and acknowledged on the event loop of the connector. The checksum of the
+ * patch is calculated on the thread calling {@link #start()} or {@link #resume()}, and the checkpoint
+ * file is read and written on a file thread, so the event loop is never blocked by them.</p>
+ *
+ * @author xp.chen
+ */
+public final class UsbPatchDownloader {
+    private static final String TAG = "UsbPatchDownloader";
+
+    /**
+     * Default length of the data block of a packet.
+     */
+    public static final int DEFAULT_PACKET_SIZE = VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH;
+
+    /**
+     * The adaptive packet size is not reduced below this value.
+     */
+    public static final int MIN_ADAPTIVE_PACKET_SIZE = 32;
+
+    /**
+     * Default number of packets handed to the connector at the same time.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 4;
+
+    /**
+     * Default number of times a packet is sent again after it failed.
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * The packet index is 7 bits, it wraps to 0 after 127.
+     */
+    private static final int PACKET_INDEX_MASK = 0x7F;
+
+    /**
+     * The checkpoint is saved each time this number of packets have been acknowledged, as well as
+     * when the download is finished.
+     */
+    private static final int CHECKPOINT_INTERVAL = 16;
+
+    /**
+     * How long the idle checkpoint file thread is kept, in second.
+     */
+    private static final int FILE_THREAD_KEEP_ALIVE_TIME = 10;
+
+    /**
+     * Reads, writes and deletes the checkpoint files in order, off the event loop. It is shared by all the
+     * downloaders, so creating a downloader for each download does not create a thread.
+     */
+    private static final ThreadPoolExecutor sFileExecutor = new ThreadPoolExecutor(1, 1,
+            FILE_THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, TAG);
+        }
+    });
+
+    static {
+        sFileExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final LocalUsbConnector        mUsbConnector;
+    private final PacketTransport          mTransport;
+    private final byte[]                   mPatch;
+    private final UsbPatchDownloadCallback mCallback;
+
+    private volatile int mPacketSize = DEFAULT_PACKET_SIZE;
+    private int          mWindowSize = DEFAULT_WINDOW_SIZE;
+    private int          mMaxRetries = DEFAULT_MAX_RETRIES;
+    private boolean      mAdaptivePacketSize;
+    private volatile File mCheckpointFile;
+    private long         mPatchChecksum;
+
+    /**
+     * Packets which are not in flight.
+     */
+    private final ArrayDeque<Packet> mIdlePackets     = new ArrayDeque<>();
+    /**
+     * Packets handed to the connector, in the order they are sent and acknowledged.
+     */
+    private final ArrayDeque<Packet> mInFlightPackets = new ArrayDeque<>();
+
+    private int          mNextOffset;
+    private int          mNextPacketNumber;
+    private int          mAckedPacketNumber;
+    private volatile int mBytesAcked;
+
+    /**
+     * Position and time at which current run was started, used to calculate the throughput.
+     */
+    private volatile int  mStartOffset;
+    private volatile long mStartTime;
+    private volatile long mFinishTime;
+
+    /**
+     * Offsets of the recent packets, indexed by the packet index, used to go back to an earlier packet.
+     */
+    private final int[] mPacketOffsets = new int[PACKET_INDEX_MASK + 1];
+
+    /**
+     * The first packet sent in current run, the offsets of the packets before it are unknown.
+     */
+    private int mFirstPacketNumber;
+
+    /**
+     * The packet being retried, and the number of times it has been retried.
+     */
+    private int mRetryPacketNumber;
+    private int mRetryCount;
+
+    private boolean mStarted;
+    private boolean mFinished;
+    private boolean mRecovering;
+
+    /**
+     * Create a downloader, call {@link #start()} to start downloading.
+     *
+     * @param usbConnector connector of the usb dongle, it must have been connected.
+     * @param patch        the patch to be downloaded, do not modify it until the download has been completed.
+     * @param callback     callback to receive the progress and the result.
+     */
+    public UsbPatchDownloader(LocalUsbConnector usbConnector, byte[] patch, UsbPatchDownloadCallback callback) {
+        this(usbConnector, new ConnectorPacketTransport(usbConnector), patch, callback);
+    }
+
+    /**
+     * Create a downloader which sends the packets by the transport, the event loop of the connector is still used.
+     */
+    UsbPatchDownloader(LocalUsbConnector usbConnector, PacketTransport transport, byte[] patch,
+                       UsbPatchDownloadCallback callback) {
+        if (usbConnector == null || patch == null) {
+            throw new IllegalArgumentException("connector and patch can not be null");
+        }
+        mUsbConnector = usbConnector;
+        mTransport = transport;
+        mPatch = patch;
+        mCallback = callback;
+    }
+
+    /**
+     * Sends the packets of a downloader, the local unit tests replace the connector by it.
+     */
+    interface PacketTransport {
+
+        boolean isConnected();
+
+        void send(VendorDownloadCommand command);
+
+        void remove(VendorDownloadCommand command);
+    }
+
+    private static final class ConnectorPacketTransport implements PacketTransport {
+
+        private final LocalUsbConnector mUsbConnector;
+
+        ConnectorPacketTransport(LocalUsbConnector usbConnector) {
+            mUsbConnector = usbConnector;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mUsbConnector.getUsbConnectState() == LocalUsbConnector.STATE_USB_CONNECTED;
+        }
+
+        @Override
+        public void send(VendorDownloadCommand command) {
+            mUsbConnector.sendRequest(command);
+        }
+
+        @Override
+        public void remove(VendorDownloadCommand command) {
+            mUsbConnector.removeRequest(command);
+        }
+    }
+
+    /**
+     * Set the length of the data block of each packet, must be called before {@link #start()}.
+     *
+     * @param packetSize packet size, a positive multiple of 4 bytes, not larger than
+     *                   {@link VendorDownloadCommand#MAX_DATA_BLOCK_LENGTH}.
+     */
+    public void setPacketSize(int packetSize) {
+        if (packetSize <= 0 || packetSize % VendorDownloadCommand.DATA_BLOCK_ALIGNMENT != 0
+                || packetSize > VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH) {
+            throw new IllegalArgumentException("packet size must be a positive multiple of 4 not larger than "
+                    + VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH + ": " + packetSize);
+        }
+        mPacketSize = packetSize;
+    }
+
+    /**
+     * @return Length of the data block of the packets being sent, it may have been reduced by the
+     * adaptive packet size.
+     */
+    public int getPacketSize() {
+        return mPacketSize;
+    }
+
+    /**
+     * Reduce the packet size when the bt controller fails to receive a packet or does not respond in
+     * time, must be called before {@link #start()}.
+     * <p>The packet is sent again with the smaller size under a new packet index, such a retry is not counted in the
+     * {@link #setMaxRetries(int) max retries} until the packet size has reached
+     * {@link #MIN_ADAPTIVE_PACKET_SIZE}.</p>
+     *
+     * @param adaptivePacketSize true to enable the adaptive packet size.
+     */
+    public void setAdaptivePacketSize(boolean adaptivePacketSize) {
+        mAdaptivePacketSize = adaptivePacketSize;
+    }
+
+    public boolean isAdaptivePacketSize() {
+        return mAdaptivePacketSize;
+    }
+
+    /**
+     * Set the number of packets handed to the connector at the same time, must be called before {@link #start()}.
+     * <p>The connector still waits for the acknowledgement of a packet before it sends the next one,
+     * 1 submits a packet only after the previous one has been acknowledged.</p>
+     *
+     * @param windowSize window size, not less than 1.
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("window size must be positive");
+        }
+        mWindowSize = windowSize;
+    }
+
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Set the number of times a packet is sent again after it failed or timed out, or after the bt
+     * controller asked for it, must be called before {@link #start()}.
+     *
+     * @param maxRetries max retries of each packet, 0 to fail at the first error.
+     */
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("max retries can not be negative");
+        }
+        mMaxRetries = maxRetries;
+    }
+
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * Set the file to save the acknowledged position in, must be called before {@link #start()}.
+     * <p>The file is deleted once the download has succeeded.</p>
+     *
+     * @param checkpointFile checkpoint file, null to disable the checkpoint.
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        mCheckpointFile = checkpointFile;
+    }
+
+    public File getCheckpointFile() {
+        return mCheckpointFile;
+    }
+
+    /**
+     * @return Number of bytes which have been acknowledged by the bt controller.
+     */
+    public int getBytesAcked() {
+        return mBytesAcked;
+    }
+
+    public int getTotalBytes() {
+        return mPatch.length;
+    }
+
+    /**
+     * @return The throughput of current run in bytes per second, counted by the bytes acknowledged.
+     */
+    public int getBytesPerSecond() {
+        long startTime = mStartTime;
+        if (startTime == 0) return 0;
+        long finishTime = mFinishTime != 0 ? mFinishTime : SystemClock.elapsedRealtime();
+        long elapsed = Math.max(finishTime - startTime, 1);
+        return (int) ((mBytesAcked - mStartOffset) * 1000L / elapsed);
+    }
+
+    /**
+     * Start downloading from the first byte of the patch.
+     * <p>A downloader which has finished can be started again.</p>
+     */
+    public void start() {
+        final long patchChecksum = mCheckpointFile != null ? UsbPatchDownloadCheckpoint.checksum(mPatch) : 0;
+        mUsbConnector.getEventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                begin(patchChecksum, 0, 0);
+            }
+        });
+    }
+
+    /**
+     * Continue downloading from the position saved in the {@link #setCheckpointFile(File) checkpoint file}.
+     * <p>The download starts from the first byte if there is no checkpoint of the patch. If the bt
+     * controller echoes the index of an earlier packet, the download goes back to the packet after it,
+     * or to the first byte if that packet was sent before the checkpoint.</p>
+     */
+    public void resume() {
+        final File checkpointFile = mCheckpointFile;
+        if (checkpointFile == null) {
+            start();
+            return;
+        }
+        final long patchChecksum = UsbPatchDownloadCheckpoint.checksum(mPatch);
+        // Read on the file thread, after the checkpoints of the previous run have been written.
+        sFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                UsbPatchDownloadCheckpoint checkpoint =
+                        UsbPatchDownloadCheckpoint.read(checkpointFile, mPatch.length, patchChecksum);
+                final int packetNumber = checkpoint != null ? checkpoint.mPacketNumber : 0;
+                final int offset = checkpoint != null ? checkpoint.mOffset : 0;
+                if (checkpoint != null) {
+                    Log.d(TAG, "resume from packet: " + packetNumber + ", offset: " + offset);
+                }
+                mUsbConnector.getEventLoop().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        begin(patchChecksum, packetNumber, offset);
+                    }
+                });
+            }
+        });
+    }
+
+    private void begin(long patchChecksum, int packetNumber, int offset) {
+        if (mStarted && !mFinished) return;
+        mStarted = true;
+        mFinished = false;
+        mRecovering = false;
+        mIdlePackets.clear();
+        mInFlightPackets.clear();
+        mRetryPacketNumber = -1;
+        mRetryCount = 0;
+
+        mPatchChecksum = patchChecksum;
+        mFirstPacketNumber = mNextPacketNumber = mAckedPacketNumber = packetNumber;
+        mNextOffset = mBytesAcked = mStartOffset = offset;
+        mFinishTime = 0;
+        mStartTime = SystemClock.elapsedRealtime();
+
+        if (!mTransport.isConnected()) {
+            finish(UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED);
+            return;
+        }
+        if (offset == mPatch.length) {
+            finish(UsbError.CODE_NO_ERROR);
+            return;
+        }
+        for (int i = 0; i < mWindowSize; i++) {
+            mIdlePackets.add(new Packet());
+        }
+        pump();
+    }
+
+    /**
+     * Stop downloading, the packets which have not been sent are dropped.
+     */
+    public void cancel() {
+        mUsbConnector.getEventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(UsbError.CODE_PATCH_DOWNLOAD_CANCELED);
+            }
+        });
+    }
+
+    /**
+     * Hand the next packets to the connector while the window is not full.
+     */
+    private void pump() {
+        while (!mFinished && !mRecovering && mNextOffset < mPatch.length && !mIdlePackets.isEmpty()) {
+            Packet packet = mIdlePackets.poll();
+            int length = Math.min(mPacketSize, mPatch.length - mNextOffset);
+            mPacketOffsets[mNextPacketNumber & PACKET_INDEX_MASK] = mNextOffset;
+            mInFlightPackets.add(packet);
+            packet.send(mNextPacketNumber, mNextOffset, length, mNextOffset + length == mPatch.length);
+            mNextOffset += length;
+            mNextPacketNumber++;
+        }
+    }
+
+    private void onPacketAcked(Packet packet, byte packetIndex) {
+        if (mFinished || mRecovering) return;
+        if (mInFlightPackets.peek() != packet) {
+            Log.e(TAG, "unexpected acknowledgement, packet: " + packet.mPacketNumber);
+            finish(UsbError.CODE_PATCH_INDEX_MISMATCH);
+            return;
+        }
+        int behind = (packet.mIndex - packetIndex) & PACKET_INDEX_MASK;
+        if (behind != 0) {
+            // The bt controller echoes the last packet it has received, continue from the packet after it.
+            int expectedPacketNumber = packet.mPacketNumber - behind + 1;
+            Log.w(TAG, "packet index out of sync: " + (packetIndex & PACKET_INDEX_MASK) + ", sent: " + packet.mIndex);
+            if (expectedPacketNumber < mFirstPacketNumber) {
+                // The offset of the packet is unknown, e.g. it was sent before the checkpoint was resumed.
+                Log.w(TAG, "expected packet " + expectedPacketNumber + " was sent before current run, restart from 0");
+                mFirstPacketNumber = 0;
+                onPacketsRejected(0, 0);
+                recover(0, 0, UsbError.CODE_PATCH_INDEX_MISMATCH);
+                return;
+            }
+            int expectedOffset = mPacketOffsets[expectedPacketNumber & PACKET_INDEX_MASK];
+            onPacketsRejected(expectedPacketNumber, expectedOffset);
+            recover(expectedPacketNumber, expectedOffset, UsbError.CODE_PATCH_INDEX_MISMATCH);
+            return;
+        }
+        mInFlightPackets.poll();
+        mIdlePackets.add(packet);
+        mAckedPacketNumber = packet.mPacketNumber + 1;
+        mBytesAcked = packet.mOffset + packet.mLength;
+        if (packet.mPacketNumber == mRetryPacketNumber) {
+            mRetryPacketNumber = -1;
+            mRetryCount = 0;
+        }
+        if (mAckedPacketNumber % CHECKPOINT_INTERVAL == 0) {
+            saveCheckpoint();
+        }
+        if (mCallback != null) {
+            mCallback.onProgress(this, mBytesAcked, mPatch.length);
+        }
+        if (packet.mLastPacket) {
+            finish(UsbError.CODE_NO_ERROR);
+        } else {
+            pump();
+        }
+    }
+
+    /**
+     * Called when the oldest packet in flight failed.
+     */
+    private void onPacketFailed(Packet packet, int status) {
+        if (mFinished || mRecovering) return;
+        if (status == UsbError.CODE_USB_DEVICE_DETACHED || status == UsbError.CODE_USB_CONNECTION_NOT_ESTABLISHED) {
+            // Nothing can be sent any more.
+            finish(status);
+            return;
+        }
+        if ((status == UsbError.CODE_PATCH_TRANSFER_FAILED || status == UsbError.CODE_PATCH_RECEIVE_TIMEOUT)
+                && reducePacketSize(packet.mLength)) {
+            // A retry with a smaller packet is not counted.
+            mRetryPacketNumber = -1;
+            mRetryCount = 0;
+        }
+        // The failed packet is the oldest in flight, it is sent again under its own index, so the indices
+        // sent to the bt controller stay contiguous.
+        recover(packet.mPacketNumber, packet.mOffset, status);
+    }
+
+    /**
+     * Reduce the packet size by a quarter, if the adaptive packet size is enabled.
+     *
+     * @param failedLength length of the data block of the failed packet.
+     * @return true if the packet size has been reduced.
+     */
+    private boolean reducePacketSize(int failedLength) {
+        // The last packet may be shorter than the packet size, only a failure at current size counts.
+        if (!mAdaptivePacketSize || failedLength < mPacketSize || mPacketSize <= MIN_ADAPTIVE_PACKET_SIZE) {
+            return false;
+        }
+        mPacketSize = nextAdaptivePacketSize(mPacketSize);
+        Log.w(TAG, "reduce packet size to: " + mPacketSize);
+        if (mCallback != null) {
+            mCallback.onPacketSizeChanged(this, mPacketSize);
+        }
+        return true;
+    }
+
+    /**
+     * Get the packet size after a step down: three quarters of current size, aligned down to
+     * {@link VendorDownloadCommand#DATA_BLOCK_ALIGNMENT}, and not smaller than {@link #MIN_ADAPTIVE_PACKET_SIZE}.
+     */
+    static int nextAdaptivePacketSize(int packetSize) {
+        int nextPacketSize = packetSize * 3 / 4 / VendorDownloadCommand.DATA_BLOCK_ALIGNMENT
+                * VendorDownloadCommand.DATA_BLOCK_ALIGNMENT;
+        return Math.max(nextPacketSize, MIN_ADAPTIVE_PACKET_SIZE);
+    }
+
+    /**
+     * Go back to the packet and send it again with the packets after it, if its retry budget is not used up.
+     *
+     * @param packetNumber the packet to be sent again.
+     * @param offset       offset of the packet in the patch.
+     * @param status       the status to finish the download with if the packet can not be retried.
+     */
+    private void recover(int packetNumber, int offset, int status) {
+        if (packetNumber == mRetryPacketNumber) {
+            mRetryCount++;
+        } else {
+            mRetryPacketNumber = packetNumber;
+            mRetryCount = 1;
+        }
+        if (mRetryCount > mMaxRetries) {
+            Log.e(TAG, "packet " + packetNumber + " failed after " + mMaxRetries + " retries, status: " + status);
+            finish(status);
+            return;
+        }
+        Log.w(TAG, "retry from packet: " + packetNumber + " (" + mRetryCount + "/" + mMaxRetries + "), status: " + status);
+
+        // Drop the packets queued after the failed one before the connector sends them.
+        for (Packet packet : mInFlightPackets) {
+            mTransport.remove(packet.mCommand);
+        }
+        mIdlePackets.addAll(mInFlightPackets);
+        mInFlightPackets.clear();
+        mNextPacketNumber = packetNumber;
+        mNextOffset = offset;
+        // Send again after the connector has finished with the failed request, it clears its queue on a timeout.
+        mRecovering = true;
+        mUsbConnector.getEventLoop().execute(mResendTask);
+    }
+
+    /**
+     * The bt controller has echoed that it only received the packets before the expected one, which is
+     * acknowledged as the position of the download.
+     */
+    private void onPacketsRejected(int expectedPacketNumber, int expectedOffset) {
+        mAckedPacketNumber = expectedPacketNumber;
+        mBytesAcked = expectedOffset;
+    }
+
+    private final Runnable mResendTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!mRecovering) return;
+            mRecovering = false;
+            pump();
+        }
+    };
+
+    private void saveCheckpoint() {
+        final File checkpointFile = mCheckpointFile;
+        if (checkpointFile == null) return;
+        final UsbPatchDownloadCheckpoint checkpoint = new UsbPatchDownloadCheckpoint(mAckedPacketNumber, mBytesAcked);
+        final long patchChecksum = mPatchChecksum;
+        sFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                checkpoint.write(checkpointFile, mPatch.length, patchChecksum);
+            }
+        });
+    }
+
+    private void deleteCheckpoint() {
+        final File checkpointFile = mCheckpointFile;
+        if (checkpointFile == null) return;
+        sFileExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                UsbPatchDownloadCheckpoint.delete(checkpointFile);
+            }
+        });
+    }
+
+    private void finish(int status) {
+        if (mFinished) return;
+        mFinished = true;
+        mRecovering = false;
+        // Drop the packets which are still waiting in the queue of the connector.
+        for (Packet packet : mInFlightPackets) {
+            mTransport.remove(packet.mCommand);
+        }
+        mInFlightPackets.clear();
+        if (status == UsbError.CODE_NO_ERROR) {
+            deleteCheckpoint();
+        } else {
+            saveCheckpoint();
+        }
+        mFinishTime = SystemClock.elapsedRealtime();
+        Log.d(TAG, "download finished, status: " + status + ", bytes: " + mBytesAcked + "/" + mPatch.length
+                + ", packet size: " + mPacketSize + ", " + getBytesPerSecond() + " bytes/s");
+        if (mCallback != null) {
+            mCallback.onCompleted(this, status);
+        }
+    }
+
+    /**
+     * A reusable packet, which owns its command and is the callback of it.
+     */
+    private final class Packet extends VendorDownloadCommandCallback {
+
+        final VendorDownloadCommand mCommand = new VendorDownloadCommand();
+
+        private int     mPacketNumber;
+        private byte    mIndex;
+        private int     mOffset;
+        private int     mLength;
+        private boolean mLastPacket;
+
+        void send(int packetNumber, int offset, int length, boolean lastPacket) {
+            mPacketNumber = packetNumber;
+            mIndex = (byte) (packetNumber & PACKET_INDEX_MASK);
+            mOffset = offset;
+            mLength = length;
+            mLastPacket = lastPacket;
+            mCommand.setDataBlock(lastPacket, mIndex, mPatch, offset, length);
+            mCommand.addVendorDownloadCommandCallback(this);
+            mTransport.send(mCommand);
+        }
+
+        @Override
+        public void onTransferSuccess(byte packetIndex) {
+            super.onTransferSuccess(packetIndex);
+            onPacketAcked(this, packetIndex);
+        }
+
+        @Override
+        public void onTransferFail() {
+            super.onTransferFail();
+            onPacketFailed(this, UsbError.CODE_PATCH_TRANSFER_FAILED);
+        }
+
+        @Override
+        public void onSendFailed(int sendResult) {
+            super.onSendFailed(sendResult);
+            onPacketFailed(this, sendResult);
+        }
+
+        @Override
+        public void onReceiveTimeout() {
+            super.onReceiveTimeout();
+            onPacketFailed(this, UsbError.CODE_PATCH_RECEIVE_TIMEOUT);
+        }
+    }
+}
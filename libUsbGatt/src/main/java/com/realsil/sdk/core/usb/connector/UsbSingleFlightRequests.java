@@ -0,0 +1,85 @@
+package com.realsil.sdk.core.usb.connector;
+
+import com.realsil.sdk.core.usb.connector.att.impl.ExecuteWriteRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.PrepareWriteRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadAttributeRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The requests of a {@link LocalUsbConnector} which are queued or waiting for their responses, and can be
+ * shared by the identical requests sent later, keyed by {@link BaseRequest#getRequestKey()}.
+ *
+ * @author xp.chen
+ */
+final class UsbSingleFlightRequests {
+
+    private final HashMap<Long, BaseRequest> mRequests = new HashMap<>();
+
+    /**
+     * Attach the request to an identical request which is queued or waiting for its response.
+     *
+     * @param request request to be sent.
+     * @return true if the request has been attached, false if it should be queued, in which case it is
+     * registered so that the later identical requests can attach to it.
+     */
+    synchronized boolean join(BaseRequest request) {
+        long requestKey = request.getSingleFlightKey();
+        if (requestKey == BaseRequest.NO_REQUEST_KEY) return false;
+        BaseRequest leader = mRequests.get(requestKey);
+        if (leader == null) {
+            mRequests.put(requestKey, request);
+            return false;
+        }
+        if (leader.mSingleFlightFollowers == null) leader.mSingleFlightFollowers = new ArrayList<>();
+        leader.mSingleFlightFollowers.add(request);
+        return true;
+    }
+
+    /**
+     * Take the requests attached to the request, and stop attaching the later ones to it.
+     *
+     * @param request the request which has completed or been dropped.
+     * @return the requests which are attached to it, or null if there is none.
+     */
+    synchronized List<BaseRequest> take(BaseRequest request) {
+        long requestKey = request.getSingleFlightKey();
+        if (requestKey == BaseRequest.NO_REQUEST_KEY) return null;
+        if (mRequests.get(requestKey) == request) mRequests.remove(requestKey);
+        List<BaseRequest> followers = request.mSingleFlightFollowers;
+        request.mSingleFlightFollowers = null;
+        return followers;
+    }
+
+    /**
+     * Stop attaching reads to the reads queued before a write, they may return the value before the write.
+     * <p>Must be called before the write is queued, so a read sent after the write is queued after it as well.</p>
+     *
+     * @param request request to be sent.
+     */
+    synchronized void detachReadsWrittenBy(BaseRequest request) {
+        if (request instanceof WriteAttributeRequest) {
+            mRequests.remove(ReadAttributeRequest.getReadRequestKey(((WriteAttributeRequest) request).getAttHandle()));
+        } else if (request instanceof PrepareWriteRequest) {
+            mRequests.remove(ReadAttributeRequest.getReadRequestKey(((PrepareWriteRequest) request).getAttHandle()));
+        } else if (request instanceof ExecuteWriteRequest) {
+            // Any attribute may be written by the prepared values.
+            long readKeyType = ReadAttributeRequest.getReadRequestKey(0);
+            Iterator<Long> iterator = mRequests.keySet().iterator();
+            while (iterator.hasNext()) {
+                if ((iterator.next() & ~0x0FFFFL) == readKeyType) iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forget all the requests, the requests attached to them are kept until they are taken.
+     */
+    synchronized void clear() {
+        mRequests.clear();
+    }
+}
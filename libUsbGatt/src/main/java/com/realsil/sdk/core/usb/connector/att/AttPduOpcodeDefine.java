@@ -116,6 +116,14 @@ public interface AttPduOpcodeDefine {
      * 0x1E = Handle Value Confirmation
      */
     byte HANDLE_VALUE_CONFIRMATION   = 0x1E;
+    /**
+     * 0x20 = Read Multiple Variable Length Request
+     */
+    byte READ_MULTIPLE_VARIABLE_REQUEST  = 0x20;
+    /**
+     * 0x21 = Read Multiple Variable Length Response
+     */
+    byte READ_MULTIPLE_VARIABLE_RESPONSE = 0x21;
     /**
      * 0xD2 = Signed Write Command
      */
@@ -34,6 +34,18 @@ public interface AttPduParamLengthDefine {
      * The length of Attribute group type.
      */
     int LENGTH_ATT_ATTRIBUTE_GROUP_TYPE = 2;
+    /**
+     * The length of the offset of the first octet to be read or written (2 Octets).
+     */
+    int LENGTH_ATT_VALUE_OFFSET         = 2;
+    /**
+     * The length of the flags of the Execute Write Request (1 Octets).
+     */
+    int LENGTH_ATT_EXECUTE_WRITE_FLAGS  = 1;
+    /**
+     * The length of the Format field of the Find Information Response (1 Octets).
+     */
+    int LENGTH_ATT_INFORMATION_FORMAT   = 1;
 
 
 }
@@ -0,0 +1,156 @@
+package com.realsil.sdk.core.usb.connector.att;
+
+/**
+ * A flyweight view of the Attribute Data List in a Read By Type Response or a Read By Group Type Response,
+ * which reads the entries directly from the received response bytes without copying them.
+ * <p>The Information Data of a Find Information Response and the Handles Information List of a
+ * Find By Type Value Response have the same layout, so they are read by this view too.</p>
+ *
+ * <p>Each entry of the list starts with the attribute handle, followed by the End Group Handle if it is
+ * a Read By Group Type Response, and the attribute value fills the rest of the entry.</p>
+ *
+ * <p>Note: The view is only valid during the callback which it is passed to, copy the values
+ * you need by {@link #valueAt(int, byte[], int)} before the callback returns.</p>
+ *
+ * @author xp.chen
+ */
+public final class AttributeDataListView {
+
+    /**
+     * Length of the attribute handle field in an entry of Read By Type Response.
+     */
+    public static final int HANDLE_FIELDS_LENGTH_READ_BY_TYPE       = 2;
+    /**
+     * Length of the attribute handle and End Group Handle fields in an entry of Read By Group Type Response.
+     */
+    public static final int HANDLE_FIELDS_LENGTH_READ_BY_GROUP_TYPE = 4;
+    /**
+     * Length of the attribute handle field in an entry of Find Information Response, the UUID fills the rest of the entry.
+     */
+    public static final int HANDLE_FIELDS_LENGTH_FIND_INFORMATION   = 2;
+    /**
+     * Length of the Found Attribute Handle and Group End Handle fields in an entry of Find By Type Value Response.
+     */
+    public static final int HANDLE_FIELDS_LENGTH_FIND_BY_TYPE_VALUE = 4;
+
+    private byte[] mData;
+    private int    mOffset;
+    private int    mCount;
+    private int    mEntryLength;
+    private int    mHandleFieldsLength;
+
+    public AttributeDataListView() {
+    }
+
+    /**
+     * Position the view over an Attribute Data List, the view can be reused for the next response.
+     *
+     * @param data               The received response.
+     * @param offset             Offset of the Attribute Data List in the response.
+     * @param length             Length of the Attribute Data List.
+     * @param entryLength        The size of each entry (the Length field in the response).
+     * @param handleFieldsLength One of the HANDLE_FIELDS_LENGTH_* constants.
+     * @return this view.
+     */
+    public AttributeDataListView reset(byte[] data, int offset, int length, int entryLength, int handleFieldsLength) {
+        mData = data;
+        mOffset = offset;
+        mEntryLength = entryLength;
+        mHandleFieldsLength = handleFieldsLength;
+        mCount = entryLength > 0 && length > 0 ? length / entryLength : 0;
+        return this;
+    }
+
+    /**
+     * @return Number of entries in the Attribute Data List.
+     */
+    public int count() {
+        return mCount;
+    }
+
+    /**
+     * @return The size of each entry.
+     */
+    public int entryLength() {
+        return mEntryLength;
+    }
+
+    /**
+     * Get the attribute handle of the entry.
+     *
+     * @param index index of the entry.
+     * @return attribute handle (unsigned).
+     */
+    public int handleAt(int index) {
+        return readUInt16(entryOffset(index));
+    }
+
+    /**
+     * Get the End Group Handle of the entry, only available in a Read By Group Type Response or a Find By Type Value Response.
+     *
+     * @param index index of the entry.
+     * @return End Group Handle (unsigned).
+     */
+    public int endGroupHandleAt(int index) {
+        if (mHandleFieldsLength < HANDLE_FIELDS_LENGTH_READ_BY_GROUP_TYPE) {
+            throw new IllegalStateException("no end group handle in a read by type response");
+        }
+        return readUInt16(entryOffset(index) + 2);
+    }
+
+    /**
+     * @return Length of the attribute value in each entry.
+     */
+    public int valueLength() {
+        return Math.max(mEntryLength - mHandleFieldsLength, 0);
+    }
+
+    /**
+     * Read the 16-bit attribute value of the entry, such as a 16-bit UUID.
+     *
+     * @param index index of the entry.
+     * @return attribute value (unsigned).
+     */
+    public int uint16ValueAt(int index) {
+        return readUInt16(entryOffset(index) + mHandleFieldsLength);
+    }
+
+    /**
+     * Copy the attribute value of the entry.
+     *
+     * @param index     index of the entry.
+     * @param dst       The array which the value is copied to.
+     * @param dstOffset The start position in the destination array.
+     * @return Number of bytes copied.
+     */
+    public int valueAt(int index, byte[] dst, int dstOffset) {
+        int valueLength = Math.min(valueLength(), dst.length - dstOffset);
+        System.arraycopy(mData, entryOffset(index) + mHandleFieldsLength, dst, dstOffset, valueLength);
+        return valueLength;
+    }
+
+    /**
+     * Copy the whole Attribute Data List to a new array.
+     *
+     * @return A new array holds all the entries.
+     */
+    public byte[] toByteArray() {
+        byte[] attributeDataList = new byte[mCount * mEntryLength];
+        if (attributeDataList.length > 0) {
+            System.arraycopy(mData, mOffset, attributeDataList, 0, attributeDataList.length);
+        }
+        return attributeDataList;
+    }
+
+    private int entryOffset(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", count: " + mCount);
+        }
+        return mOffset + index * mEntryLength;
+    }
+
+    private int readUInt16(int position) {
+        return (mData[position] & 0x0FF) | ((mData[position + 1] & 0x0FF) << 8);
+    }
+
+}
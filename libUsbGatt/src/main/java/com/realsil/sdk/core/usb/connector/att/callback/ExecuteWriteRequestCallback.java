@@ -0,0 +1,19 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+
+/**
+ * A callback method is used to listen the status that client sends a
+ * {@link com.realsil.sdk.core.usb.connector.att.impl.ExecuteWriteRequest} to the server.
+ *
+ * @author xp.chen
+ */
+public abstract class ExecuteWriteRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received an Execute Write Response from the server,
+     * all the prepared writes have been written or cancelled.
+     */
+    public void onExecuteWriteSuccess() {}
+
+}
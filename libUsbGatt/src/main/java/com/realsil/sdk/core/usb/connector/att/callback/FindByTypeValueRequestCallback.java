@@ -0,0 +1,22 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
+
+/**
+ * This callback is used to obtain the handles of attributes by send {@link com.realsil.sdk.core.usb.connector.att.impl.FindByTypeValueRequest}
+ *
+ * @author xp.chen
+ */
+public abstract class FindByTypeValueRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received find by type value response from server.
+     *
+     * @param handlesInformationList A view of the Found Attribute Handle and Group End Handle pairs, read them by
+     *                               {@link AttributeDataListView#handleAt(int)} and {@link AttributeDataListView#endGroupHandleAt(int)}.
+     *                               Only valid during this callback.
+     */
+    public void onFindSuccess(AttributeDataListView handlesInformationList) {}
+
+}
@@ -0,0 +1,21 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
+
+/**
+ * This callback is used to obtain the handles and types of attributes by send {@link com.realsil.sdk.core.usb.connector.att.impl.FindInformationRequest}
+ *
+ * @author xp.chen
+ */
+public abstract class FindInformationRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received find information response from server.
+     *
+     * @param informationData A view of the handle-UUID pairs, the UUID is read as the attribute value of the entry,
+     *                        whose length is 2 or 16 octets. Only valid during this callback.
+     */
+    public void onFindSuccess(AttributeDataListView informationData) {}
+
+}
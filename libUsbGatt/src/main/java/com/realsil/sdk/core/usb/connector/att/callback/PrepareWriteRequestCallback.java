@@ -0,0 +1,27 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+
+/**
+ * A callback method is used to listen the status that client sends a
+ * {@link com.realsil.sdk.core.usb.connector.att.impl.PrepareWriteRequest} to the server.
+ *
+ * @author xp.chen
+ */
+public abstract class PrepareWriteRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received a Prepare Write Response from the server,
+     * and the handle, offset and part value echoed by the server are the same as the request.
+     */
+    public void onPrepareWriteSuccess() {}
+
+    /**
+     * This callback method will be called when received a Prepare Write Response from the server,
+     * but the handle, offset or part value echoed by the server is different from the request.
+     * <p>Note: The prepared writes should be cancelled by an Execute Write Request with
+     * {@link com.realsil.sdk.core.usb.connector.att.impl.ExecuteWriteRequest#FLAG_CANCEL_ALL}.</p>
+     */
+    public void onPrepareWriteEchoMismatch() {}
+
+}
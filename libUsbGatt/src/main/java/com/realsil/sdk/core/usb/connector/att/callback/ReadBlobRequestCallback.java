@@ -0,0 +1,24 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+
+/**
+ * A callback method is used to listen the status that client sends a
+ * {@link com.realsil.sdk.core.usb.connector.att.impl.ReadBlobRequest} to the server.
+ *
+ * @author xp.chen
+ */
+public abstract class ReadBlobRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received a Read Blob Response from the server.
+     * <p>Note: The part of the attribute value is not copied out of the received message, the buffer is only
+     * valid during this callback, copy the bytes if they will be used later.</p>
+     *
+     * @param buffer The buffer which contains the part of the attribute value.
+     * @param offset The start position of the part attribute value in the buffer.
+     * @param length Length of the part attribute value, which may be 0 if the value offset is equal to the length of the attribute value.
+     */
+    public void onReadSuccess(byte[] buffer, int offset, int length) {}
+
+}
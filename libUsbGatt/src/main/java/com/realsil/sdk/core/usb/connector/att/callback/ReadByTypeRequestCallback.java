@@ -1,6 +1,7 @@
 package com.realsil.sdk.core.usb.connector.att.callback;
 
 import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
 
 /**
  * This callback is used to obtain the values of attributes by send {@link com.realsil.sdk.core.usb.connector.att.impl.ReadByTypeRequest}
@@ -17,4 +18,15 @@ public abstract class ReadByTypeRequestCallback extends BaseRequestCallback {
      */
     public void onReadSuccess(int attributeDataLength, byte[] attributeDataList) {}
 
+    /**
+     * This callback method will be called when received read response from server, the entries are read
+     * directly from the response without being copied.
+     * <p>The default implementation copies the Attribute Data List and calls {@link #onReadSuccess(int, byte[])}.</p>
+     *
+     * @param attributeDataList A view of the attribute data list, only valid during this callback.
+     */
+    public void onReadSuccess(AttributeDataListView attributeDataList) {
+        onReadSuccess(attributeDataList.entryLength(), attributeDataList.toByteArray());
+    }
+
 }
@@ -0,0 +1,22 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+
+/**
+ * A callback method is used to listen the status that client sends a
+ * {@link com.realsil.sdk.core.usb.connector.att.impl.ReadMultipleRequest} to the server.
+ *
+ * @author xp.chen
+ */
+public abstract class ReadMultipleRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received a Read Multiple Response from the server.
+     * <p>The values are concatenated without any length information, so only the value of the last
+     * attribute can have a variable length.</p>
+     *
+     * @param setOfValues The concatenated values of the requested attributes, in the order of the requested handles.
+     */
+    public void onReadSuccess(byte[] setOfValues) {}
+
+}
@@ -0,0 +1,25 @@
+package com.realsil.sdk.core.usb.connector.att.callback;
+
+import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
+
+/**
+ * A callback method is used to listen the status that client sends a
+ * {@link com.realsil.sdk.core.usb.connector.att.impl.ReadMultipleVariableRequest} to the server.
+ *
+ * @author xp.chen
+ */
+public abstract class ReadMultipleVariableRequestCallback extends BaseRequestCallback {
+
+    /**
+     * This callback method will be called when received a Read Multiple Variable Length Response from the server.
+     * <p>Note: The response is limited by the ATT MTU, the value of an attribute may be truncated, and the
+     * attributes at the end of the request may be missing. Compare the received value with its length
+     * to find out the truncated values.</p>
+     *
+     * @param attributeLengths The full length of each received attribute value.
+     * @param attributeValues  The received value of each attribute, in the order of the requested handles.
+     * @param count            Number of received attributes.
+     */
+    public void onReadSuccess(int[] attributeLengths, byte[][] attributeValues, int count) {}
+
+}
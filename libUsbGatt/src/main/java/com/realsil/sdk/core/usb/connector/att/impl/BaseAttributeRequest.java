@@ -5,6 +5,8 @@ import com.realsil.sdk.core.usb.connector.att.AttPduErrorCodeDefine;
 import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
 import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
 
+import java.nio.ByteBuffer;
+
 /**
  * An abstract class template for creating ATT PDU Request.
  *
@@ -77,6 +79,41 @@ public abstract class BaseAttributeRequest extends BaseRequest {
         this.mSendReportID = selectComfortableReportID(mSendDataLength);
     }
 
+    /**
+     * Write the protocol header and the att opcode into the transport frame, the att parameters should be written
+     * by the subclass just after it.
+     *
+     * @param frame The transport frame in little endian.
+     */
+    final void encodeHeaderTo(ByteBuffer frame) {
+        setRequestOpcode();
+        setMessageLength();
+        this.mSendDataLength = LENGTH_WRITE_REQUEST_HEAD + mSendMessageLength;
+        this.mSendReportID = selectComfortableReportID(mSendDataLength);
+
+        /// Put Protocol Header
+        // ReportID
+        frame.put(mSendReportID);
+        // message length(ATT PDU length)
+        frame.put((byte) mSendMessageLength);
+        /// Put Att PDU
+        // Att opcode
+        frame.put(request_opcode);
+    }
+
+    /**
+     * Clear the state of the last transaction, so that the request instance can be reused.
+     */
+    void resetState() {
+        mBaseRequestCallback = null;
+        mSendData = null;
+        response_opcode = 0;
+        error_request_opcode = 0;
+        error_att_handle = 0;
+        error_code = 0;
+        mParseResult = AttributeParseResult.PARSE_FAILED;
+    }
+
     /**
      * Parse the response returned by the server in this method.
      *
@@ -1,5 +1,7 @@
 package com.realsil.sdk.core.usb.connector.att.impl;
 
+import java.nio.ByteBuffer;
+
 /**
  * An abstract class template for creating Write Attribute PDUs Command
  *
@@ -45,6 +47,17 @@ abstract class BaseWriteAttributeCommand {
      */
     public abstract void createCommand();
 
+    /**
+     * Encode the command message into the transport frame, starting at the current position of the frame.
+     * <p>The default implementation creates the message by {@link #createCommand()} and copies it into the frame.</p>
+     *
+     * @param frame The transport frame in little endian, its position is advanced by the length of the message.
+     */
+    public void encodeTo(ByteBuffer frame) {
+        createCommand();
+        frame.put(mSendData, 0, mSendData.length);
+    }
+
     /**
      * Get the data to be sent to the server.
      *
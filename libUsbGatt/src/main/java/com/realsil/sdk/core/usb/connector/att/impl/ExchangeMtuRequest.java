@@ -92,7 +92,7 @@ public class ExchangeMtuRequest extends BaseAttributeRequest {
             server_mtu_size = buffer.getShort(3);
 
             if (getExchangeMtuRequestCallback() != null) {
-                getExchangeMtuRequestCallback().onReceiveServerRxMtu(server_mtu_size & 0x0FF);
+                getExchangeMtuRequestCallback().onReceiveServerRxMtu(server_mtu_size & 0x0FFFF);
             }
             mParseResult = AttributeParseResult.PARSE_SUCCESS;
         }
@@ -104,7 +104,7 @@ public class ExchangeMtuRequest extends BaseAttributeRequest {
             server_mtu_size = buffer.getShort(3);
 
             if (getExchangeMtuRequestCallback() != null) {
-                getExchangeMtuRequestCallback().onReceiveServerRxMtu(server_mtu_size & 0x0FF);
+                getExchangeMtuRequestCallback().onReceiveServerRxMtu(server_mtu_size & 0x0FFFF);
             }
             mParseResult = AttributeParseResult.PARSE_SUCCESS;
         }*/
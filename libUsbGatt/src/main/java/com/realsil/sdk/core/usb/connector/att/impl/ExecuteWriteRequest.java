@@ -0,0 +1,95 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.ExecuteWriteRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Execute Write Request is used to request the server to write or cancel the write of all
+ * the prepared values currently held in the prepare queue from this client.
+ *
+ * @author xp.chen
+ */
+public class ExecuteWriteRequest extends BaseAttributeRequest {
+
+    /**
+     * Cancel all prepared writes.
+     */
+    public static final byte FLAG_CANCEL_ALL = 0x00;
+
+    /**
+     * Immediately write all pending prepared values.
+     */
+    public static final byte FLAG_WRITE_ALL  = 0x01;
+
+    private byte mFlags;
+
+    /**
+     * Use this constructor to create an Execute Write Request.
+     *
+     * @param flags {@link #FLAG_WRITE_ALL} or {@link #FLAG_CANCEL_ALL}.
+     */
+    public ExecuteWriteRequest(byte flags) {
+        this.mFlags = flags;
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client sends a {@link ExecuteWriteRequest} to the server.
+     *
+     * @param executeWriteRequestCallback A callback is used to listen the execute write response.
+     */
+    public void addExecuteWriteRequestCallback(ExecuteWriteRequestCallback executeWriteRequestCallback) {
+        this.mBaseRequestCallback = executeWriteRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link ExecuteWriteRequest}.
+     *
+     * @return A Callback currently for listening to {@link ExecuteWriteRequest}.
+     */
+    public ExecuteWriteRequestCallback getExecuteWriteRequestCallback() {
+        return (ExecuteWriteRequestCallback) mBaseRequestCallback;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.EXECUTE_WRITE_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_EXECUTE_WRITE_FLAGS;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Flags
+        frame.put(mFlags);
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.EXECUTE_WRITE_RESPONSE) {
+            if (getExecuteWriteRequestCallback() != null) {
+                getExecuteWriteRequestCallback().onExecuteWriteSuccess();
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
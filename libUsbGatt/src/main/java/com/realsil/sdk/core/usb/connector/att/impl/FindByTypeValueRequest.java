@@ -0,0 +1,131 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.AttributeTypeIndexDefine;
+import com.realsil.sdk.core.usb.connector.att.callback.FindByTypeValueRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Find By Type Value Request is used to obtain the handles of attributes that have a 16-bit UUID
+ * attribute type and attribute value. Typically it is used to discover a primary service by its UUID.
+ *
+ * @author xp.chen
+ */
+public class FindByTypeValueRequest extends BaseAttributeRequest {
+
+    /**
+     * First requested handle number
+     */
+    private short mStartingAttHandle;
+
+    /**
+     * Last requested handle number
+     */
+    private short mEndingAttHandle;
+
+    /**
+     * 2 octet UUID to find
+     */
+    private short mAttributeType;
+
+    /**
+     * Attribute value to find
+     */
+    private byte[] mAttributeValue;
+
+    /**
+     * The view over the Handles Information List of the last response, reused by every response.
+     */
+    private final AttributeDataListView mHandlesInformationView = new AttributeDataListView();
+
+    /**
+     * Use this constructor to create a Find By Type Value Request.
+     *
+     * @param startingAttHandle First requested handle number
+     * @param endingAttHandle   Last requested handle number
+     * @param attributeType     2 octet UUID to find, such as {@link AttributeTypeIndexDefine#PRIMARY_SERVICE}
+     * @param attributeValue    Attribute value to find, such as the little-endian UUID of a service.
+     * @see AttributeTypeIndexDefine
+     */
+    public FindByTypeValueRequest(int startingAttHandle, int endingAttHandle, short attributeType, byte[] attributeValue) {
+        this.mStartingAttHandle = (short) startingAttHandle;
+        this.mEndingAttHandle = (short) endingAttHandle;
+        this.mAttributeType = attributeType;
+        this.mAttributeValue = attributeValue;
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client send a {@link FindByTypeValueRequest} to server.
+     *
+     * @param findByTypeValueRequestCallback callback instance
+     */
+    public void addFindByTypeValueRequestCallback(FindByTypeValueRequestCallback findByTypeValueRequestCallback) {
+        this.mBaseRequestCallback = findByTypeValueRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link FindByTypeValueRequest}
+     *
+     * @return A Callback currently for listening to {@link FindByTypeValueRequest}.
+     */
+    public FindByTypeValueRequestCallback getFindByTypeValueRequestCallback() {
+        return (FindByTypeValueRequestCallback) mBaseRequestCallback;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.FIND_BY_TYPE_VALUE_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_STARTING_HANDLE
+                + AttPduParamLengthDefine.LENGTH_ATT_ENDING_HANDLE + AttPduParamLengthDefine.LENGTH_ATT_ATTRIBUTE_TYPE
+                + mAttributeValue.length;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // starting handle
+        frame.putShort(mStartingAttHandle);
+        // ending handle
+        frame.putShort(mEndingAttHandle);
+        // attribute type
+        frame.putShort(mAttributeType);
+        // attribute value
+        frame.put(mAttributeValue);
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.FIND_BY_TYPE_VALUE_RESPONSE) {
+            // Attribute Opcode(1B) + Handles Information List(4 to (ATT_MTU- 1))
+            int handles_information_list_length = mReceiveMessageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE;
+            mHandlesInformationView.reset(response, 3, handles_information_list_length,
+                    AttributeDataListView.HANDLE_FIELDS_LENGTH_FIND_BY_TYPE_VALUE,
+                    AttributeDataListView.HANDLE_FIELDS_LENGTH_FIND_BY_TYPE_VALUE);
+
+            if (getFindByTypeValueRequestCallback() != null) {
+                getFindByTypeValueRequestCallback().onFindSuccess(mHandlesInformationView);
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
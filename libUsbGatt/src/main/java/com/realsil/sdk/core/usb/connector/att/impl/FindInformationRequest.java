@@ -0,0 +1,123 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.FindInformationRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Find Information Request is used to obtain the mapping of attribute handles with their associated types.
+ * This allows a client to discover the list of attributes and their types on a server.
+ *
+ * @author xp.chen
+ */
+public class FindInformationRequest extends BaseAttributeRequest {
+
+    /**
+     * Format of the Information Data: handles and 16-bit Bluetooth UUIDs.
+     */
+    public static final int FORMAT_16_BIT_UUID  = 0x01;
+
+    /**
+     * Format of the Information Data: handles and 128-bit UUIDs.
+     */
+    public static final int FORMAT_128_BIT_UUID = 0x02;
+
+    /**
+     * First requested handle number
+     */
+    private short mStartingAttHandle;
+
+    /**
+     * Last requested handle number
+     */
+    private short mEndingAttHandle;
+
+    /**
+     * The view over the Information Data of the last response, reused by every response.
+     */
+    private final AttributeDataListView mInformationDataView = new AttributeDataListView();
+
+    /**
+     * Use this constructor to create a Find Information Request.
+     *
+     * @param startingAttHandle First requested handle number
+     * @param endingAttHandle   Last requested handle number
+     */
+    public FindInformationRequest(int startingAttHandle, int endingAttHandle) {
+        this.mStartingAttHandle = (short) startingAttHandle;
+        this.mEndingAttHandle = (short) endingAttHandle;
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client send a {@link FindInformationRequest} to server.
+     *
+     * @param findInformationRequestCallback callback instance
+     */
+    public void addFindInformationRequestCallback(FindInformationRequestCallback findInformationRequestCallback) {
+        this.mBaseRequestCallback = findInformationRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link FindInformationRequest}
+     *
+     * @return A Callback currently for listening to {@link FindInformationRequest}.
+     */
+    public FindInformationRequestCallback getFindInformationRequestCallback() {
+        return (FindInformationRequestCallback) mBaseRequestCallback;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.FIND_INFORMATION_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_STARTING_HANDLE
+                + AttPduParamLengthDefine.LENGTH_ATT_ENDING_HANDLE;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // starting handle
+        frame.putShort(mStartingAttHandle);
+        // ending handle
+        frame.putShort(mEndingAttHandle);
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.FIND_INFORMATION_RESPONSE) {
+            // Attribute Opcode(1B) + Format(1B) + Information Data(4 to (ATT_MTU- 2))
+            int format = response[3] & 0x0FF;
+            int uuid_length = format == FORMAT_128_BIT_UUID ? 16 : 2;
+            int information_data_length = mReceiveMessageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE
+                    - AttPduParamLengthDefine.LENGTH_ATT_INFORMATION_FORMAT;
+            mInformationDataView.reset(response, 4, information_data_length,
+                    AttributeDataListView.HANDLE_FIELDS_LENGTH_FIND_INFORMATION + uuid_length,
+                    AttributeDataListView.HANDLE_FIELDS_LENGTH_FIND_INFORMATION);
+
+            if (getFindInformationRequestCallback() != null) {
+                getFindInformationRequestCallback().onFindSuccess(mInformationDataView);
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
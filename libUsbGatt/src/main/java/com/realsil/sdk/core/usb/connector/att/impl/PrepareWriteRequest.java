@@ -0,0 +1,146 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.PrepareWriteRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Prepare Write Request is used to request the server to prepare to write the value of an attribute.
+ * The server will respond to this request with a Prepare Write Response, so that the client can verify
+ * that the value was received correctly. The prepared values are written by an {@link ExecuteWriteRequest}.
+ *
+ * <p>Note: The part value is encoded from the buffer of the caller directly, do not modify the buffer
+ * until the request has completed.</p>
+ *
+ * @author xp.chen
+ */
+public class PrepareWriteRequest extends BaseAttributeRequest {
+
+    /**
+     * The handler of the attribute to be written.
+     */
+    private short mAttHandle;
+
+    /**
+     * The offset of the first octet to be written.
+     */
+    private short mValueOffset;
+
+    /**
+     * The buffer which contains the part value of the attribute.
+     */
+    private byte[] mBuffer;
+
+    private int mBufferOffset;
+
+    private int mPartValueLength;
+
+    /**
+     * Use this constructor to create a Prepare Write Request.
+     *
+     * @param attHandle       The handler of the attribute to be written.
+     * @param valueOffset     The offset of the first octet to be written.
+     * @param buffer          The buffer which contains the part value of the attribute.
+     * @param bufferOffset    The start position of the part value in the buffer.
+     * @param partValueLength The length of the part value.
+     */
+    public PrepareWriteRequest(int attHandle, int valueOffset, byte[] buffer, int bufferOffset, int partValueLength) {
+        this.mAttHandle = (short) attHandle;
+        this.mValueOffset = (short) valueOffset;
+        this.mBuffer = buffer;
+        this.mBufferOffset = bufferOffset;
+        this.mPartValueLength = partValueLength;
+    }
+
+    /**
+     * Get the handler of the attribute to be written.
+     *
+     * @return attribute handle.
+     */
+    public short getAttHandle() {
+        return mAttHandle;
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client sends a {@link PrepareWriteRequest} to the server.
+     *
+     * @param prepareWriteRequestCallback A callback is used to listen the prepare write response.
+     */
+    public void addPrepareWriteRequestCallback(PrepareWriteRequestCallback prepareWriteRequestCallback) {
+        this.mBaseRequestCallback = prepareWriteRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link PrepareWriteRequest}.
+     *
+     * @return A Callback currently for listening to {@link PrepareWriteRequest}.
+     */
+    public PrepareWriteRequestCallback getPrepareWriteRequestCallback() {
+        return (PrepareWriteRequestCallback) mBaseRequestCallback;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.PREPARE_WRITE_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE
+                + AttPduParamLengthDefine.LENGTH_ATT_VALUE_OFFSET + mPartValueLength;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Att handle
+        frame.putShort(mAttHandle);
+        // Value offset
+        frame.putShort(mValueOffset);
+        // Part attribute value
+        frame.put(mBuffer, mBufferOffset, mPartValueLength);
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.PREPARE_WRITE_RESPONSE) {
+            if (getPrepareWriteRequestCallback() != null) {
+                if (isEchoMatched(response)) {
+                    getPrepareWriteRequestCallback().onPrepareWriteSuccess();
+                } else {
+                    getPrepareWriteRequestCallback().onPrepareWriteEchoMismatch();
+                }
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+    /**
+     * Check whether the handle, offset and part value in the Prepare Write Response are the same as the request.
+     */
+    private boolean isEchoMatched(byte[] response) {
+        if (mReceiveMessageLength != mSendMessageLength) return false;
+        ByteBuffer buffer = ByteBuffer.wrap(response);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getShort(3) != mAttHandle || buffer.getShort(5) != mValueOffset) return false;
+        for (int i = 0; i < mPartValueLength; i++) {
+            if (response[7 + i] != mBuffer[mBufferOffset + i]) return false;
+        }
+        return true;
+    }
+
+}
@@ -22,6 +22,62 @@ public class ReadAttributeRequest extends BaseAttributeRequest {
      */
     private short mAttHandle;
 
+    private static final Object sPoolSync     = new Object();
+    private static final int    MAX_POOL_SIZE = 16;
+
+    private static ReadAttributeRequest sPool;
+    private static int                  sPoolSize = 0;
+
+    /**
+     * The next recycled instance in the pool.
+     */
+    private ReadAttributeRequest mNext;
+
+    private ReadAttributeRequest() {
+    }
+
+    /**
+     * Return a recycled Read Attributes Request from the pool, or create a new one if the pool is empty.
+     * <p>Call {@link #recycle()} when the request has completed, or let the connector recycle it by
+     * {@link #setRecycleOnCompletion(boolean)}.</p>
+     *
+     * @param attHandle The handler of the attribute to be read.
+     * @return A Read Attributes Request instance.
+     */
+    public static ReadAttributeRequest obtain(int attHandle) {
+        ReadAttributeRequest request = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                request = sPool;
+                sPool = request.mNext;
+                request.mNext = null;
+                sPoolSize--;
+            }
+        }
+        if (request == null) request = new ReadAttributeRequest();
+        request.mAttHandle = (short) attHandle;
+        return request;
+    }
+
+    /**
+     * Return this request to the pool.
+     * <p>Note: Only call this method after the final callback of the request (read success, failed or timeout)
+     * has been invoked, the request must not be used any more after it has been recycled.</p>
+     */
+    @Override
+    public void recycle() {
+        resetState();
+        resetRequestState();
+        mAttHandle = 0;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
     /**
      * Use this constructor to create a Read Attributes Request.
      *
@@ -49,6 +105,21 @@ public class ReadAttributeRequest extends BaseAttributeRequest {
         return (ReadAttributeRequestCallback) mBaseRequestCallback;
     }
 
+    @Override
+    public long getRequestKey() {
+        return getReadRequestKey(mAttHandle);
+    }
+
+    /**
+     * Get the request key of the Read Request of an attribute.
+     *
+     * @param attHandle The handler of the attribute to be read.
+     * @return the request key, see {@link #getRequestKey()}.
+     */
+    public static long getReadRequestKey(int attHandle) {
+        return REQUEST_KEY_TYPE_ATT | ((AttPduOpcodeDefine.READ_REQUEST & 0x0FFL) << 16) | (attHandle & 0x0FFFFL);
+    }
+
     @Override
     public void setRequestOpcode() {
         this.request_opcode = AttPduOpcodeDefine.READ_REQUEST;
@@ -79,6 +150,13 @@ public class ReadAttributeRequest extends BaseAttributeRequest {
         byteBuffer.putShort(3, mAttHandle);
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Att handle
+        frame.putShort(mAttHandle);
+    }
+
     @Override
     public void parseResponse(byte[] response) {
         super.parseResponse(response);
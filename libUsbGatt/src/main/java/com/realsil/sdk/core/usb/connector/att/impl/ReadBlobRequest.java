@@ -0,0 +1,103 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadBlobRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Read Blob Request is used to request the server to read part of the value of an
+ * attribute at a given offset and return a specific part of the value in a Read Blob Response.
+ *
+ * @author xp.chen
+ */
+public class ReadBlobRequest extends BaseAttributeRequest {
+
+    /**
+     * The handler of the attribute to be read.
+     */
+    private short mAttHandle;
+
+    /**
+     * The offset of the first octet to be read.
+     */
+    private short mValueOffset;
+
+    /**
+     * Use this constructor to create a Read Blob Request.
+     *
+     * @param attHandle   The handler of the attribute to be read.
+     * @param valueOffset The offset of the first octet to be read.
+     */
+    public ReadBlobRequest(int attHandle, int valueOffset) {
+        this.mAttHandle = (short) attHandle;
+        this.mValueOffset = (short) valueOffset;
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client sends a {@link ReadBlobRequest} to the server.
+     *
+     * @param readBlobRequestCallback A callback is used to listen the data sending status when the client sends a read blob request to the server.
+     */
+    public void addReadBlobRequestCallback(ReadBlobRequestCallback readBlobRequestCallback) {
+        this.mBaseRequestCallback = readBlobRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link ReadBlobRequest}.
+     *
+     * @return A Callback currently for listening to {@link ReadBlobRequest}.
+     */
+    public ReadBlobRequestCallback getReadBlobRequestCallback() {
+        return (ReadBlobRequestCallback) mBaseRequestCallback;
+    }
+
+    public int getValueOffset() {
+        return mValueOffset & 0x0FFFF;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.READ_BLOB_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE
+                + AttPduParamLengthDefine.LENGTH_ATT_VALUE_OFFSET;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Att handle
+        frame.putShort(mAttHandle);
+        // Value offset
+        frame.putShort(mValueOffset);
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.READ_BLOB_RESPONSE) {
+            int part_value_length = mReceiveMessageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE;
+            if (getReadBlobRequestCallback() != null) {
+                getReadBlobRequestCallback().onReadSuccess(response, 3, part_value_length);
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
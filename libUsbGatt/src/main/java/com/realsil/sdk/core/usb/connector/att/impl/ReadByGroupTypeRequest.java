@@ -2,6 +2,7 @@ package com.realsil.sdk.core.usb.connector.att.impl;
 
 import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
 import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeDataListView;
 import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
 import com.realsil.sdk.core.usb.connector.att.AttributeTypeIndexDefine;
 import com.realsil.sdk.core.usb.connector.att.callback.ReadByGroupTypeRequestCallback;
@@ -38,6 +39,11 @@ public class ReadByGroupTypeRequest extends BaseAttributeRequest {
      */
     private short mAttGroupTypeIn2;
 
+    /**
+     * The view over the Attribute Data List of the last response, reused by every response.
+     */
+    private final AttributeDataListView mAttributeDataListView = new AttributeDataListView();
+
     /**
      * Default starting attribute handle
      */
@@ -144,13 +150,14 @@ public class ReadByGroupTypeRequest extends BaseAttributeRequest {
     public void parseResponse(byte[] response) {
         super.parseResponse(response);
         if (response_opcode == AttPduOpcodeDefine.READ_BY_GROUP_TYPE_RESPONSE) {
-            byte attribute_data_length = response[1];
-            int attribute_data_list_length = response.length - 2; // Attribute Opcode(1B) + Length(1B) + Attribute Data List(4 to (ATT_MTU- 2))
-            byte[] attribute_data_list = new byte[attribute_data_list_length];
-            System.arraycopy(response, 2, attribute_data_list, 0, attribute_data_list_length);
+            // Attribute Opcode(1B) + Length(1B) + Attribute Data List(4 to (ATT_MTU- 2))
+            int attribute_data_length = response[3] & 0x0FF;
+            int attribute_data_list_length = mReceiveMessageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE - 1;
+            mAttributeDataListView.reset(response, 4, attribute_data_list_length, attribute_data_length,
+                    AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_GROUP_TYPE);
 
             if (getReadByGroupTypeRequestCallback() != null) {
-                getReadByGroupTypeRequestCallback().onReadSuccess(attribute_data_length & 0x0FF, attribute_data_list);
+                getReadByGroupTypeRequestCallback().onReadSuccess(mAttributeDataListView);
             }
             mParseResult = AttributeParseResult.PARSE_SUCCESS;
         }
@@ -0,0 +1,114 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadMultipleRequestCallback;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The Read Multiple Request is used to request the server to read two or more values of a set of
+ * attributes and return their values in a Read Multiple Response. Only values that have a known fixed
+ * size can be read, with the exception of the last value that can have a variable length.
+ *
+ * @author xp.chen
+ */
+public class ReadMultipleRequest extends BaseAttributeRequest {
+
+    /**
+     * Minimum number of handles in a Read Multiple Request.
+     */
+    public static final int MIN_HANDLE_COUNT = 2;
+
+    /**
+     * The handles of the attributes to be read.
+     */
+    final short[] mAttHandles;
+
+    /**
+     * Use this constructor to create a Read Multiple Request.
+     *
+     * @param attHandles The handles of the attributes to be read, two or more.
+     */
+    public ReadMultipleRequest(int... attHandles) {
+        if (attHandles == null || attHandles.length < MIN_HANDLE_COUNT) {
+            throw new IllegalArgumentException("Read Multiple Request needs two or more handles");
+        }
+        this.mAttHandles = new short[attHandles.length];
+        for (int i = 0; i < attHandles.length; i++) {
+            this.mAttHandles[i] = (short) attHandles[i];
+        }
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client sends a {@link ReadMultipleRequest} to the server.
+     *
+     * @param readMultipleRequestCallback A callback is used to listen the read multiple response.
+     */
+    public void addReadMultipleRequestCallback(ReadMultipleRequestCallback readMultipleRequestCallback) {
+        this.mBaseRequestCallback = readMultipleRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link ReadMultipleRequest}.
+     *
+     * @return A Callback currently for listening to {@link ReadMultipleRequest}.
+     */
+    public ReadMultipleRequestCallback getReadMultipleRequestCallback() {
+        return (ReadMultipleRequestCallback) mBaseRequestCallback;
+    }
+
+    /**
+     * Get the number of handles in this request.
+     *
+     * @return number of handles.
+     */
+    public int getHandleCount() {
+        return mAttHandles.length;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.READ_MULTIPLE_REQUEST;
+    }
+
+    @Override
+    public void setMessageLength() {
+        this.mSendMessageLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE * mAttHandles.length;
+    }
+
+    @Override
+    public void createRequest() {
+        super.createRequest();
+
+        ByteBuffer byteBuffer = ByteBuffer.wrap(mSendData);
+        byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        encodeTo(byteBuffer);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Set Of Handles
+        for (short attHandle : mAttHandles) {
+            frame.putShort(attHandle);
+        }
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        super.parseResponse(response);
+        if (response_opcode == AttPduOpcodeDefine.READ_MULTIPLE_RESPONSE) {
+            byte[] set_of_values = new byte[mReceiveMessageLength - AttPduParamLengthDefine.LENGTH_ATT_OPCODE];
+            System.arraycopy(response, 3, set_of_values, 0, set_of_values.length);
+
+            if (getReadMultipleRequestCallback() != null) {
+                getReadMultipleRequestCallback().onReadSuccess(set_of_values);
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.realsil.sdk.core.usb.connector.att.impl;
+
+import com.realsil.sdk.core.usb.connector.att.AttPduOpcodeDefine;
+import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
+import com.realsil.sdk.core.usb.connector.att.AttributeParseResult;
+import com.realsil.sdk.core.usb.connector.att.callback.ReadMultipleVariableRequestCallback;
+
+/**
+ * The Read Multiple Variable Length Request is used to request the server to read two or more values of a
+ * set of attributes that have a variable or unknown value length and return their values in a
+ * Read Multiple Variable Length Response. Each value in the response is prefixed with its length.
+ *
+ * @author xp.chen
+ */
+public class ReadMultipleVariableRequest extends ReadMultipleRequest {
+
+    /**
+     * Length of the Value Length field before each value in the response.
+     */
+    private static final int LENGTH_VALUE_LENGTH_FIELD = 2;
+
+    /**
+     * Use this constructor to create a Read Multiple Variable Length Request.
+     *
+     * @param attHandles The handles of the attributes to be read, two or more.
+     */
+    public ReadMultipleVariableRequest(int... attHandles) {
+        super(attHandles);
+    }
+
+    /**
+     * Add a callback interface to listen the status when the client sends a {@link ReadMultipleVariableRequest} to the server.
+     *
+     * @param readMultipleVariableRequestCallback A callback is used to listen the read multiple variable length response.
+     */
+    public void addReadMultipleVariableRequestCallback(ReadMultipleVariableRequestCallback readMultipleVariableRequestCallback) {
+        this.mBaseRequestCallback = readMultipleVariableRequestCallback;
+    }
+
+    /**
+     * Get the callback currently used to listen for {@link ReadMultipleVariableRequest}.
+     *
+     * @return A Callback currently for listening to {@link ReadMultipleVariableRequest}.
+     */
+    public ReadMultipleVariableRequestCallback getReadMultipleVariableRequestCallback() {
+        return (ReadMultipleVariableRequestCallback) mBaseRequestCallback;
+    }
+
+    @Override
+    public void setRequestOpcode() {
+        this.request_opcode = AttPduOpcodeDefine.READ_MULTIPLE_VARIABLE_REQUEST;
+    }
+
+    @Override
+    public void parseResponse(byte[] response) {
+        mReceiveReportID = response[0];
+        mReceiveMessageLength = response[1] & 0x0FF;
+        response_opcode = response[2];
+        if (response_opcode == AttPduOpcodeDefine.READ_MULTIPLE_VARIABLE_RESPONSE) {
+            int[] attribute_lengths = new int[mAttHandles.length];
+            byte[][] attribute_values = new byte[mAttHandles.length][];
+            int count = 0;
+
+            // Length Value Tuple List: Value Length(2B) + Attribute Value(0 to ATT_MTU - 4)
+            int index = 3;
+            int end = 2 + mReceiveMessageLength;
+            while (count < mAttHandles.length && index + LENGTH_VALUE_LENGTH_FIELD <= end) {
+                int value_length = (response[index] & 0x0FF) | ((response[index + 1] & 0x0FF) << 8);
+                index += LENGTH_VALUE_LENGTH_FIELD;
+                // The last value may be truncated by the ATT MTU.
+                int received_length = Math.min(value_length, end - index);
+                byte[] value = new byte[received_length];
+                System.arraycopy(response, index, value, 0, received_length);
+                index += received_length;
+
+                attribute_lengths[count] = value_length;
+                attribute_values[count] = value;
+                count++;
+            }
+
+            if (getReadMultipleVariableRequestCallback() != null) {
+                getReadMultipleVariableRequestCallback().onReadSuccess(attribute_lengths, attribute_values, count);
+            }
+            mParseResult = AttributeParseResult.PARSE_SUCCESS;
+        }
+    }
+
+}
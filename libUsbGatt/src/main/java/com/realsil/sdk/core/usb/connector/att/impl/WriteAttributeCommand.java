@@ -19,6 +19,11 @@ public class WriteAttributeCommand extends BaseWriteAttributeCommand {
 
     private WriteAttributeCommandCallback mWriteAttributeCommandCallback;
 
+    /**
+     * Whether the value can be replaced by a later write to the same attribute before it is sent.
+     */
+    private boolean mCoalescing;
+
     public WriteAttributeCommandCallback getWriteAttributeCommandCallback() {
         return mWriteAttributeCommandCallback;
     }
@@ -27,6 +32,17 @@ public class WriteAttributeCommand extends BaseWriteAttributeCommand {
         this.mWriteAttributeCommandCallback = callback;
     }
 
+    private static final Object sPoolSync     = new Object();
+    private static final int    MAX_POOL_SIZE = 16;
+
+    private static WriteAttributeCommand sPool;
+    private static int                   sPoolSize = 0;
+
+    /**
+     * The next recycled instance in the pool.
+     */
+    private WriteAttributeCommand mNext;
+
     /**
      * Use this constructor to create a Write Attributes Command.
      *
@@ -38,6 +54,86 @@ public class WriteAttributeCommand extends BaseWriteAttributeCommand {
         this.mAttValue = attValue;
     }
 
+    /**
+     * Return a recycled Write Attributes Command from the pool, or create a new one if the pool is empty.
+     * <p>Call {@link #recycle()} when the command has been sent, so that it can be reused by the next write.</p>
+     *
+     * @param attHandle The handler of the attribute to be written.
+     * @param attValue  The value to be written to the attribute.
+     * @return A Write Attributes Command instance.
+     */
+    public static WriteAttributeCommand obtain(int attHandle, byte[] attValue) {
+        WriteAttributeCommand command = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                command = sPool;
+                sPool = command.mNext;
+                command.mNext = null;
+                sPoolSize--;
+            }
+        }
+        if (command == null) return new WriteAttributeCommand(attHandle, attValue);
+        command.mAttHandle = (short) attHandle;
+        command.mAttValue = attValue;
+        return command;
+    }
+
+    /**
+     * Return this command to the pool.
+     * <p>Note: Only call this method after {@link WriteAttributeCommandCallback#onSendSuccess()} or
+     * {@link WriteAttributeCommandCallback#onSendFailed(int)} has been invoked, the command must not be
+     * used any more after it has been recycled.</p>
+     */
+    public void recycle() {
+        // The subclasses create their own messages, do not mix them into the pool.
+        if (getClass() != WriteAttributeCommand.class) return;
+        mWriteAttributeCommandCallback = null;
+        mCoalescing = false;
+        mAttHandle = 0;
+        mAttValue = null;
+        mSendData = null;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    public short getAttHandle() {
+        return mAttHandle;
+    }
+
+    /**
+     * Allow the command to be coalesced with the later writes to the same attribute.
+     * <p>If a coalescing command is written while this command has not been sent yet, this command
+     * takes over the value and the callback of the later one, and its own callback is completed by
+     * {@link WriteAttributeCommandCallback#onSendFailed(int)} with
+     * {@link com.realsil.sdk.core.usb.connector.UsbError#CODE_WRITE_COALESCED}.</p>
+     *
+     * @param coalescing true to coalesce the writes, only the latest value matters.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.mCoalescing = coalescing;
+    }
+
+    public boolean isCoalescing() {
+        return mCoalescing;
+    }
+
+    /**
+     * Take over the value and the callback of a later write to the same attribute.
+     *
+     * @param later The later write command, which will not be sent.
+     * @return The callback of this command, which has been superseded.
+     */
+    public WriteAttributeCommandCallback coalesce(WriteAttributeCommand later) {
+        WriteAttributeCommandCallback superseded = mWriteAttributeCommandCallback;
+        this.mAttValue = later.mAttValue;
+        this.mWriteAttributeCommandCallback = later.mWriteAttributeCommandCallback;
+        return superseded;
+    }
 
     @Override
     public void createCommand() {
@@ -64,5 +160,26 @@ public class WriteAttributeCommand extends BaseWriteAttributeCommand {
         System.arraycopy(mAttValue, 0, mSendData, 5, mAttValue.length);
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        this.mAttPduLength = AttPduParamLengthDefine.LENGTH_ATT_OPCODE + AttPduParamLengthDefine.LENGTH_ATT_HANDLE + mAttValue.length;
+        this.mSendDataLength = BaseRequest.LENGTH_WRITE_REQUEST_HEAD + mAttPduLength;
+        this.mReportID = BaseRequest.selectComfortableReportID(mSendDataLength);
+
+        /* Put Protocol Header */
+        // ReportID
+        frame.put(mReportID);
+        // message length(ATT PDU length)
+        frame.put((byte) mAttPduLength);
+
+        /* Put Att PDU */
+        // Att opcode
+        frame.put(AttPduOpcodeDefine.WRITE_COMMAND);
+        // Att handle
+        frame.putShort(mAttHandle);
+        // Att value
+        frame.put(mAttValue);
+    }
+
 
 }
@@ -25,5 +25,11 @@ public class WriteAttributeCommandTest1 extends WriteAttributeCommand {
         this.mSendData = new byte[]{0x04, 0x13, (byte) 0x89, (byte) 0xFC, 0x10};
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        // Send the raw message created above.
+        createCommand();
+        frame.put(mSendData);
+    }
 
 }
@@ -4,6 +4,8 @@ import com.realsil.sdk.core.usb.connector.BaseRequest;
 import com.realsil.sdk.core.usb.connector.att.AttPduParamLengthDefine;
 import com.realsil.sdk.core.usb.connector.att.callback.WriteAttributeCommandCallback;
 
+import java.nio.ByteBuffer;
+
 /**
  * The Write Command is used to request the server to write the value of an
  * attribute, typically into a control-point attribute.
@@ -22,5 +24,11 @@ public class WriteAttributeCommandTest2 extends WriteAttributeCommand {
         this.mSendData = new byte[]{0x04, 0x04, (byte) 0x90, (byte) 0xFC, 0x01, 0x01};
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        // Send the raw message created above.
+        createCommand();
+        frame.put(mSendData);
+    }
 
 }
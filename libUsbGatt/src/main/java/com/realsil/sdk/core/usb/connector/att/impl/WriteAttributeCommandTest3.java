@@ -1,5 +1,7 @@
 package com.realsil.sdk.core.usb.connector.att.impl;
 
+import java.nio.ByteBuffer;
+
 /**
  * The Write Command is used to request the server to write the value of an
  * attribute, typically into a control-point attribute.
@@ -18,4 +20,11 @@ public class WriteAttributeCommandTest3 extends WriteAttributeCommand {
         this.mSendData = new byte[]{0x04, 0x04, (byte) 0x90, (byte) 0xFC, 0x01, 0x00};
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        // Send the raw message created above.
+        createCommand();
+        frame.put(mSendData);
+    }
+
 }
@@ -1,5 +1,7 @@
 package com.realsil.sdk.core.usb.connector.att.impl;
 
+import java.nio.ByteBuffer;
+
 /**
  * This write command is to enable control endpoint support
  * @author xp.chen
@@ -15,5 +17,12 @@ public class WriteAttributeCommandTest4 extends WriteAttributeCommand {
     public void createCommand() {
         this.mSendData = new byte[]{0x04, 0x04, (byte) 0x89, (byte) 0xFC, 0x01, 0x01};
     }
-    
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        // Send the raw message created above.
+        createCommand();
+        frame.put(mSendData);
+    }
+
 }
@@ -26,6 +26,70 @@ public class WriteAttributeRequest extends BaseAttributeRequest {
      */
     private byte[] mAttValue;
 
+    /**
+     * Whether the value can be replaced by a later write to the same attribute before it is sent.
+     */
+    private boolean mCoalescing;
+
+    private static final Object sPoolSync     = new Object();
+    private static final int    MAX_POOL_SIZE = 16;
+
+    private static WriteAttributeRequest sPool;
+    private static int                   sPoolSize = 0;
+
+    /**
+     * The next recycled instance in the pool.
+     */
+    private WriteAttributeRequest mNext;
+
+    private WriteAttributeRequest() {
+    }
+
+    /**
+     * Return a recycled Write Attributes Request from the pool, or create a new one if the pool is empty.
+     * <p>Call {@link #recycle()} when the request has completed, so that it can be reused by the next write.</p>
+     *
+     * @param attHandle The handler of the attribute to be written.
+     * @param attValue  The value to be written to the attribute.
+     * @return A Write Attributes Request instance.
+     */
+    public static WriteAttributeRequest obtain(short attHandle, byte[] attValue) {
+        WriteAttributeRequest request = null;
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                request = sPool;
+                sPool = request.mNext;
+                request.mNext = null;
+                sPoolSize--;
+            }
+        }
+        if (request == null) request = new WriteAttributeRequest();
+        request.mAttHandle = attHandle;
+        request.mAttValue = attValue;
+        return request;
+    }
+
+    /**
+     * Return this request to the pool.
+     * <p>Note: Only call this method after the final callback of the request (write success, failed or timeout)
+     * has been invoked, the request must not be used any more after it has been recycled.</p>
+     */
+    @Override
+    public void recycle() {
+        resetState();
+        resetRequestState();
+        mAttHandle = 0;
+        mAttValue = null;
+        mCoalescing = false;
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                mNext = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
     /**
      * Use this constructor to create a Write Attributes Request.
      *
@@ -71,6 +135,40 @@ public class WriteAttributeRequest extends BaseAttributeRequest {
         return (WriteAttributeRequestCallback) mBaseRequestCallback;
     }
 
+    public short getAttHandle() {
+        return mAttHandle;
+    }
+
+    /**
+     * Allow the request to be coalesced with the later writes to the same attribute.
+     * <p>If a coalescing write is sent while this request is still waiting in the queue of the connector,
+     * this request takes over the value and the callback of the later one, and its own callback is
+     * completed by {@link WriteAttributeRequestCallback#onSendFailed(int)} with
+     * {@link com.realsil.sdk.core.usb.connector.UsbError#CODE_WRITE_COALESCED}.</p>
+     *
+     * @param coalescing true to coalesce the writes, only the latest value matters.
+     */
+    public void setCoalescing(boolean coalescing) {
+        this.mCoalescing = coalescing;
+    }
+
+    public boolean isCoalescing() {
+        return mCoalescing;
+    }
+
+    /**
+     * Take over the value and the callback of a later write to the same attribute.
+     *
+     * @param later The later write request, which will not be sent.
+     * @return The callback of this request, which has been superseded.
+     */
+    public WriteAttributeRequestCallback coalesce(WriteAttributeRequest later) {
+        WriteAttributeRequestCallback superseded = getWriteAttributeRequestCallback();
+        this.mAttValue = later.mAttValue;
+        this.mBaseRequestCallback = later.mBaseRequestCallback;
+        return superseded;
+    }
+
     @Override
     public void setRequestOpcode() {
         this.request_opcode = AttPduOpcodeDefine.WRITE_REQUEST;
@@ -103,6 +201,15 @@ public class WriteAttributeRequest extends BaseAttributeRequest {
         System.arraycopy(mAttValue, 0, mSendData, 5, mAttValue.length);
     }
 
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        encodeHeaderTo(frame);
+        // Att handle
+        frame.putShort(mAttHandle);
+        // Att value
+        frame.put(mAttValue);
+    }
+
     @Override
     public void parseResponse(byte[] response) {
         super.parseResponse(response);
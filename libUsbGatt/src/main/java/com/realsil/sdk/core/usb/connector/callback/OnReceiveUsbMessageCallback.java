@@ -0,0 +1,22 @@
+package com.realsil.sdk.core.usb.connector.callback;
+
+/**
+ * A handler of the messages received from the usb dongle, which can be registered to
+ * {@link com.realsil.sdk.core.usb.connector.LocalUsbConnector} by the ATT opcode, the event code or
+ * the vendor event sub code of the message.
+ *
+ * @author xp.chen
+ * @see com.realsil.sdk.core.usb.connector.LocalUsbConnector#registerAttOpcodeHandler(byte, OnReceiveUsbMessageCallback)
+ * @see com.realsil.sdk.core.usb.connector.LocalUsbConnector#registerEventCodeHandler(byte, OnReceiveUsbMessageCallback)
+ * @see com.realsil.sdk.core.usb.connector.LocalUsbConnector#registerVendorEventHandler(byte, OnReceiveUsbMessageCallback)
+ */
+public interface OnReceiveUsbMessageCallback {
+
+    /**
+     * This method will be called on the event loop of the connector when a matched message is received.
+     *
+     * @param messageData The whole received message, starting with the report id.
+     */
+    void onReceiveUsbMessage(byte[] messageData);
+
+}
@@ -37,6 +37,24 @@ public abstract class OnUsbDeviceStatusChangeCallback {
      */
     public void onReceiveHandleValueNotification(short att_handle, byte[] att_value) {}
 
+    /**
+     * This method will be called when receive a notification of an attribute's value, the value is a view of
+     * the receive buffer.
+     * <p>The buffer is reused once this method returns, copy the value if it should be kept. By default the value
+     * is copied and passed to {@link #onReceiveHandleValueNotification(short, byte[])}, override this method to
+     * handle the notifications without allocation.</p>
+     *
+     * @param att_handle handle of the attribute.
+     * @param buffer     receive buffer which holds the value.
+     * @param offset     offset of the value in the buffer.
+     * @param length     length of the value.
+     */
+    public void onReceiveHandleValueNotification(short att_handle, byte[] buffer, int offset, int length) {
+        byte[] att_value = new byte[length];
+        System.arraycopy(buffer, offset, att_value, 0, length);
+        onReceiveHandleValueNotification(att_handle, att_value);
+    }
+
     /**
      * This method will be called when the usb device's running status has changed, tt will contain a current status code and related detail info.
      *
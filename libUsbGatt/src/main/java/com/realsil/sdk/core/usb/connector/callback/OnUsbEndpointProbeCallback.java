@@ -0,0 +1,24 @@
+package com.realsil.sdk.core.usb.connector.callback;
+
+import com.realsil.sdk.core.usb.connector.UsbEndpointProbeResult;
+
+import java.util.List;
+
+/**
+ * A callback is used to listen the result of the endpoint probe started by
+ * {@link com.realsil.sdk.core.usb.connector.LocalUsbConnector#probeEndpoints(OnUsbEndpointProbeCallback)}.
+ *
+ * @author xp.chen
+ */
+public abstract class OnUsbEndpointProbeCallback {
+
+    /**
+     * This method will be called on the event loop of the connector when all the endpoint pairs have been probed.
+     *
+     * @param bestResult The endpoint pair which has been selected, null if no endpoint pair is available and
+     *                   the previous selection is restored.
+     * @param results    The measurements of all the probed endpoint pairs.
+     */
+    public void onProbeCompleted(UsbEndpointProbeResult bestResult, List<UsbEndpointProbeResult> results) {}
+
+}
@@ -66,7 +66,7 @@ public class ExchangeMtuRequest extends BaseUsbRequest {
             short serverMtuSize = buffer.getShort(8);
 
             if (getExchangeMtuRequestCallback() != null) {
-                getExchangeMtuRequestCallback().onReceiveServerRxMtu(serverMtuSize & 0xFFFFFFFF);
+                getExchangeMtuRequestCallback().onReceiveServerRxMtu(serverMtuSize & 0x0FFFF);
             }
         } else {
             if (getExchangeMtuRequestCallback() != null) {
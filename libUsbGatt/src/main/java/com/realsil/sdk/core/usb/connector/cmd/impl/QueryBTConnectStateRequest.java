@@ -39,6 +39,11 @@ public class QueryBTConnectStateRequest extends BaseUsbRequest {
     }
 
 
+    @Override
+    public long getRequestKey() {
+        return REQUEST_KEY_TYPE_USB_CMD | (UsbCmdOpcodeDefine.QUERY_BT_CONN_STATE_REQUEST & 0x0FFFFL);
+    }
+
     @Override
     public void setRequestOpcode() {
         this.request_opcode = UsbCmdOpcodeDefine.QUERY_BT_CONN_STATE_REQUEST;
@@ -1,6 +1,5 @@
 package com.realsil.sdk.core.usb.connector.cmd.impl;
 
-import android.os.ParcelUuid;
 import com.realsil.sdk.core.usb.UsbGattCharacteristic;
 import com.realsil.sdk.core.usb.connector.BaseRequestCallback;
 import com.realsil.sdk.core.usb.connector.cmd.UsbCmdOpcodeDefine;
@@ -98,22 +97,19 @@ public class ReadDongleConfigRequest extends BaseUsbRequest {
     public void parseResponse(byte[] responseData) {
         super.parseResponse(responseData);
         if (response_opcode == request_opcode && status_code == STATUS_SUCCESS) {
-            ByteBuffer buffer = ByteBuffer.wrap(responseData);
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
             int characteristic_num = responseData[22] & 0x0FF;
-            List<UsbGattCharacteristic> list = new ArrayList<UsbGattCharacteristic>();
+            List<UsbGattCharacteristic> list = new ArrayList<UsbGattCharacteristic>(characteristic_num);
 
+            // Read the uuid and handle directly from the response.
             int startIndex = 23;
             for (int i = 0; i < characteristic_num; i++) {
-                byte uuid_type = buffer.get(startIndex);
-                byte[] uuid_value = getUUIDValueLength(uuid_type);
+                int uuid_length = responseData[startIndex];
                 startIndex += LENGTH_CHARACTERISTIC_UUID_TYPE;
-                System.arraycopy(responseData, startIndex, uuid_value, 0, uuid_value.length);
-                startIndex += uuid_value.length;
-                short att_handle = buffer.getShort(startIndex);
+                UUID uuid = parseUuidFrom(responseData, startIndex, uuid_length);
+                startIndex += uuid_length;
+                short att_handle = (short) ((responseData[startIndex] & 0x0FF) | ((responseData[startIndex + 1] & 0x0FF) << 8));
                 startIndex += LENGTH_CHARACTERISTIC_ATT_HANDLE;
 
-                UUID uuid = parseUuidFrom(uuid_value).getUuid();
                 UsbGattCharacteristic usbGattCharacteristic = new UsbGattCharacteristic(uuid, att_handle, 0, 0);
                 list.add(usbGattCharacteristic);
             }
@@ -128,54 +124,42 @@ public class ReadDongleConfigRequest extends BaseUsbRequest {
         }
     }
 
-    private static final ParcelUuid BASE_UUID =
-            ParcelUuid.fromString("00000000-0000-1000-8000-00805F9B34FB");
+    private static final UUID BASE_UUID = UUID.fromString("00000000-0000-1000-8000-00805F9B34FB");
 
-    private static ParcelUuid parseUuidFrom(byte[] uuidBytes) {
-        if (uuidBytes == null) {
-            throw new IllegalArgumentException("uuidBytes cannot be null");
-        }
-        int length = uuidBytes.length;
+    /**
+     * Parse the little endian uuid in the response.
+     *
+     * @param data   The response data.
+     * @param offset Offset of the uuid in the response.
+     * @param length Length of the uuid, 2, 4 or 16.
+     * @return uuid
+     */
+    private static UUID parseUuidFrom(byte[] data, int offset, int length) {
         if (length != UUID_TYPE_VALUE_16_BIT && length != UUID_TYPE_VALUE_32_BIT &&
                 length != UUID_TYPE_VALUE_128_BIT) {
             throw new IllegalArgumentException("uuidBytes length invalid - " + length);
         }
 
         if (length == UUID_TYPE_VALUE_128_BIT) {
-            ByteBuffer buf = ByteBuffer.wrap(uuidBytes).order(ByteOrder.LITTLE_ENDIAN);
-            long msb = buf.getLong(8);
-            long lsb = buf.getLong(0);
-            return new ParcelUuid(new UUID(msb, lsb));
+            long msb = readLongLE(data, offset + 8);
+            long lsb = readLongLE(data, offset);
+            return new UUID(msb, lsb);
         }
-        long shortUuid;
-        if (length == UUID_TYPE_VALUE_16_BIT) {
-            shortUuid = uuidBytes[0] & 0xFF;
-            shortUuid += (uuidBytes[1] & 0xFF) << 8;
-        } else {
-            shortUuid = uuidBytes[0] & 0xFF;
-            shortUuid += (uuidBytes[1] & 0xFF) << 8;
-            shortUuid += (uuidBytes[2] & 0xFF) << 16;
-            shortUuid += (uuidBytes[3] & 0xFF) << 24;
+        long shortUuid = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            shortUuid = (shortUuid << 8) | (data[offset + i] & 0xFF);
         }
-        long msb = BASE_UUID.getUuid().getMostSignificantBits() + (shortUuid << 32);
-        long lsb = BASE_UUID.getUuid().getLeastSignificantBits();
-        return new ParcelUuid(new UUID(msb, lsb));
+        long msb = BASE_UUID.getMostSignificantBits() + (shortUuid << 32);
+        long lsb = BASE_UUID.getLeastSignificantBits();
+        return new UUID(msb, lsb);
     }
 
-    private static byte[] getUUIDValueLength(int uuidType) {
-        byte[] uuid_value = null;
-        switch (uuidType) {
-            case UUID_TYPE_VALUE_16_BIT:
-                uuid_value = new byte[UUID_TYPE_VALUE_16_BIT];
-                break;
-            case UUID_TYPE_VALUE_32_BIT:
-                uuid_value = new byte[UUID_TYPE_VALUE_32_BIT];
-                break;
-            case UUID_TYPE_VALUE_128_BIT:
-                uuid_value = new byte[UUID_TYPE_VALUE_128_BIT];
-                break;
+    private static long readLongLE(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
         }
-        return uuid_value;
+        return value;
     }
 
 }
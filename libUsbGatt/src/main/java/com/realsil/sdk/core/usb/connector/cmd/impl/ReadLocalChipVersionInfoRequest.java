@@ -33,6 +33,11 @@ public class ReadLocalChipVersionInfoRequest extends BaseUsbRequest {
     }
 
 
+    @Override
+    public long getRequestKey() {
+        return REQUEST_KEY_TYPE_USB_CMD | (UsbCmdOpcodeDefine.READ_LOCAL_VERSION_INFORMATION & 0x0FFFFL);
+    }
+
     @Override
     public void setRequestOpcode() {
         this.request_opcode = UsbCmdOpcodeDefine.READ_LOCAL_VERSION_INFORMATION;
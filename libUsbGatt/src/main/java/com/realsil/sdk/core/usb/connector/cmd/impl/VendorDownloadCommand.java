@@ -33,11 +33,37 @@ public class VendorDownloadCommand extends BaseUsbRequest {
      */
     private byte[] mDataBlock;
 
+    /**
+     * The range of the data block in {@link #mDataBlock}.
+     */
+    private int mDataBlockOffset;
+    private int mDataBlockLength;
+
     /**
      * The length of the packet index field.
      */
     private static final int LENGTH_PACKET_INDEX_FIELD = 1;
 
+    /**
+     * The length of a data block must be a multiple of this value, except the last one.
+     */
+    public static final int DATA_BLOCK_ALIGNMENT = 4;
+
+    /**
+     * The length of the header before the data block: Report ID(1B) + Message Length(1B) + Usb opcode(2B) +
+     * Parameter total length(1B) + Packet index(1B), see {@link #createRequest()}.
+     */
+    public static final int LENGTH_DOWNLOAD_COMMAND_HEADER = LENGTH_WRITE_REQUEST_HEAD
+            + UsbCmdParamLengthDefine.LENGTH_USB_CMD_OPCODE_FIELD
+            + UsbCmdParamLengthDefine.LENGTH_PARAMETER_TOTAL_LEN_FIELD + LENGTH_PACKET_INDEX_FIELD;
+
+    /**
+     * The largest data block which fits in a single packet of report 4, rounded down to a multiple of
+     * {@link #DATA_BLOCK_ALIGNMENT}: (255 - 6) / 4 * 4 = 248 bytes.
+     */
+    public static final int MAX_DATA_BLOCK_LENGTH = (UsbConfig.MAX_TRANSPORT_PACKET_SIZE - LENGTH_DOWNLOAD_COMMAND_HEADER)
+            / DATA_BLOCK_ALIGNMENT * DATA_BLOCK_ALIGNMENT;
+
     /**
      * The length of total parameters. In this class, mParamTotalLength = packetIndex Length + dataBlock Length
      */
@@ -68,7 +94,16 @@ public class VendorDownloadCommand extends BaseUsbRequest {
      * @return length of the sent data block.
      */
     public int getSentDataBlockLength() {
-        return mDataBlock != null ? mDataBlock.length : 0;
+        return mDataBlock != null ? mDataBlockLength : 0;
+    }
+
+    /**
+     * Get the packet index sent to the bt controller, bit[7] is set for the last packet.
+     *
+     * @return packet index.
+     */
+    public byte getPacketIndex() {
+        return mPacketIndex;
     }
 
     /**
@@ -80,17 +115,43 @@ public class VendorDownloadCommand extends BaseUsbRequest {
      * @param packetIndex  The sequence number of the current packet. Note: This sequence number can not be greater than 127
      * @param dataBlock    The real data block(4N Octet).
      *                     <p>The length is the multiple of 4 bytes. If it is not the last block, host may send
-     *                     252 byte in data field to reduce the time in download procedure.</p>
+     *                     up to {@link #MAX_DATA_BLOCK_LENGTH} bytes in data field to reduce the time in
+     *                     download procedure.</p>
      */
     public VendorDownloadCommand(boolean isLastPacket, byte packetIndex, byte[] dataBlock) {
-        this.mPacketIndex |= packetIndex;
+        setDataBlock(isLastPacket, packetIndex, dataBlock, 0, dataBlock.length);
+    }
+
+    /**
+     * Use this constructor to build a Vendor Download Command which will be filled by
+     * {@link #setDataBlock(boolean, byte, byte[], int, int)} before it is sent.
+     */
+    public VendorDownloadCommand() {
+    }
+
+    /**
+     * Set the packet to be sent, so that one command can be reused for a sequence of packets.
+     * <p>Note: Only call this method after the result of the previous packet has been reported.</p>
+     *
+     * @param isLastPacket true if current packet is the last packet.
+     * @param packetIndex  The sequence number of the current packet, it can not be greater than 127.
+     * @param data         The array which holds the data block, it is not copied.
+     * @param offset       The start offset of the data block in the array.
+     * @param length       The length of the data block.
+     */
+    public void setDataBlock(boolean isLastPacket, byte packetIndex, byte[] data, int offset, int length) {
         if (isLastPacket) {
-            this.mPacketIndex |= PACKET_INDEX_BYTE_SIGN_BIT_LAST;
+            this.mPacketIndex = (byte) (packetIndex | PACKET_INDEX_BYTE_SIGN_BIT_LAST);
         } else {
-            this.mPacketIndex &= PACKET_INDEX_BYTE_SIGN_BIT_START;
+            this.mPacketIndex = (byte) (packetIndex & PACKET_INDEX_BYTE_SIGN_BIT_START);
         }
-        this.mDataBlock = dataBlock;
-        this.mParamTotalLength = LENGTH_PACKET_INDEX_FIELD + mDataBlock.length;
+        this.mDataBlock = data;
+        this.mDataBlockOffset = offset;
+        this.mDataBlockLength = length;
+        this.mParamTotalLength = LENGTH_PACKET_INDEX_FIELD + length;
+        // Forget the result of the previous packet.
+        this.response_opcode = 0;
+        this.status_code = -1;
     }
 
     @Override
@@ -127,7 +188,24 @@ public class VendorDownloadCommand extends BaseUsbRequest {
         // Packet index
         byteBuffer.put(5, mPacketIndex);
         // Data block
-        System.arraycopy(mDataBlock, 0, mSendData, 6, mDataBlock.length);
+        System.arraycopy(mDataBlock, mDataBlockOffset, mSendData, 6, mDataBlockLength);
+    }
+
+    @Override
+    public void encodeTo(ByteBuffer frame) {
+        setRequestOpcode();
+        setMessageLength();
+        this.mSendDataLength = LENGTH_WRITE_REQUEST_HEAD + mSendMessageLength;
+        this.mSendReportID = UsbConfig.REPORT_ID_4;
+
+        /// Put Protocol Header
+        frame.put(mSendReportID);
+        frame.put((byte) mSendMessageLength);
+        /// Put USB PDU
+        frame.putShort(request_opcode);
+        frame.put((byte) mParamTotalLength);
+        frame.put(mPacketIndex);
+        frame.put(mDataBlock, mDataBlockOffset, mDataBlockLength);
     }
 
     @Override
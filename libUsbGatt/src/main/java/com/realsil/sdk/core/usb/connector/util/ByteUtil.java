@@ -9,10 +9,15 @@ import java.util.Locale;
 public final class ByteUtil {
 
     public static String convertHexString(byte[] bArr) {
-        if (bArr == null || bArr.length == 0) return null;
-        StringBuilder stringBuffer = new StringBuilder();
-        for (byte b : bArr) {
-            stringBuffer.append(String.format(Locale.getDefault(), "%02x", b).toUpperCase()).append(" ");
+        if (bArr == null) return null;
+        return convertHexString(bArr, 0, bArr.length);
+    }
+
+    public static String convertHexString(byte[] bArr, int offset, int length) {
+        if (bArr == null || length <= 0) return null;
+        StringBuilder stringBuffer = new StringBuilder(length * 3);
+        for (int i = offset; i < offset + length; i++) {
+            stringBuffer.append(String.format(Locale.getDefault(), "%02x", bArr[i]).toUpperCase()).append(" ");
         }
         return stringBuffer.toString();
     }
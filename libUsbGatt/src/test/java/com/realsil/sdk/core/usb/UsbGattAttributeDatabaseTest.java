@@ -0,0 +1,115 @@
+package com.realsil.sdk.core.usb;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link UsbGattAttributeDatabase}.
+ */
+public class UsbGattAttributeDatabaseTest {
+
+    private static final UUID UUID_BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID UUID_BATTERY_LEVEL   = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+    private static final UUID UUID_DIS_SERVICE     = UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb");
+    private static final UUID UUID_MODEL_NUMBER    = UUID.fromString("00002a24-0000-1000-8000-00805f9b34fb");
+
+    private static UsbGattCharacteristic characteristic(UUID uuid, int handle) {
+        return new UsbGattCharacteristic(uuid, handle, UsbGattCharacteristic.PROPERTY_READ, 0);
+    }
+
+    @Test
+    public void empty() {
+        assertNull(UsbGattAttributeDatabase.EMPTY.getCharacteristic(0x0003));
+        assertNull(UsbGattAttributeDatabase.EMPTY.getCharacteristic(UUID_BATTERY_LEVEL));
+        assertNull(UsbGattAttributeDatabase.EMPTY.getService(UUID_BATTERY_SERVICE));
+        assertNull(UsbGattAttributeDatabase.EMPTY.getServiceByHandle(0x0001));
+        assertTrue(UsbGattAttributeDatabase.EMPTY.getCharacteristics().isEmpty());
+    }
+
+    @Test
+    public void lookupCharacteristic_directTable() {
+        UsbGattCharacteristic batteryLevel = characteristic(UUID_BATTERY_LEVEL, 0x0003);
+        UsbGattCharacteristic modelNumber = characteristic(UUID_MODEL_NUMBER, 0x0010);
+        UsbGattAttributeDatabase database = new UsbGattAttributeDatabase(
+                Arrays.asList(batteryLevel, modelNumber), Collections.<UsbGattService>emptyList());
+
+        assertSame(batteryLevel, database.getCharacteristic(0x0003));
+        assertSame(modelNumber, database.getCharacteristic(0x0010));
+        assertNull(database.getCharacteristic(0x0004));
+        assertNull(database.getCharacteristic(0x0011));
+        assertSame(modelNumber, database.getCharacteristic(UUID_MODEL_NUMBER));
+    }
+
+    @Test
+    public void lookupCharacteristic_sparseHandles() {
+        UsbGattCharacteristic batteryLevel = characteristic(UUID_BATTERY_LEVEL, 0x0003);
+        UsbGattCharacteristic modelNumber = characteristic(UUID_MODEL_NUMBER, 0xFFF0);
+        UsbGattAttributeDatabase database = new UsbGattAttributeDatabase(
+                Arrays.asList(modelNumber, batteryLevel), Collections.<UsbGattService>emptyList());
+
+        assertSame(batteryLevel, database.getCharacteristic(0x0003));
+        assertSame(modelNumber, database.getCharacteristic(0xFFF0));
+        assertNull(database.getCharacteristic(0x0400));
+        assertNull(database.getCharacteristic(0xFFFF));
+    }
+
+    @Test
+    public void lookupCharacteristic_firstOneWins() {
+        UsbGattCharacteristic first = characteristic(UUID_BATTERY_LEVEL, 0x0003);
+        UsbGattCharacteristic sameHandle = characteristic(UUID_MODEL_NUMBER, 0x0003);
+        UsbGattCharacteristic sameUuid = characteristic(UUID_BATTERY_LEVEL, 0x0005);
+        UsbGattAttributeDatabase database = new UsbGattAttributeDatabase(
+                Arrays.asList(first, sameHandle, sameUuid), Collections.<UsbGattService>emptyList());
+
+        assertSame(first, database.getCharacteristic(0x0003));
+        assertSame(first, database.getCharacteristic(UUID_BATTERY_LEVEL));
+        assertSame(sameHandle, database.getCharacteristic(UUID_MODEL_NUMBER));
+        assertSame(sameUuid, database.getCharacteristic(0x0005));
+    }
+
+    @Test
+    public void lookupService() {
+        UsbGattService battery = new UsbGattService(UUID_BATTERY_SERVICE, 0x0001, 0x0004, UsbGattService.SERVICE_TYPE_PRIMARY);
+        UsbGattService dis = new UsbGattService(UUID_DIS_SERVICE, 0x0010, 0x0020, UsbGattService.SERVICE_TYPE_PRIMARY);
+        UsbGattAttributeDatabase database = new UsbGattAttributeDatabase(
+                Collections.<UsbGattCharacteristic>emptyList(), Arrays.asList(battery, dis));
+
+        assertSame(battery, database.getService(UUID_BATTERY_SERVICE));
+        assertSame(dis, database.getService(UUID_DIS_SERVICE));
+        assertNull(database.getServiceByHandle(0x0000));
+        assertSame(battery, database.getServiceByHandle(0x0001));
+        assertSame(battery, database.getServiceByHandle(0x0004));
+        assertNull(database.getServiceByHandle(0x0005));
+        assertSame(dis, database.getServiceByHandle(0x0010));
+        assertSame(dis, database.getServiceByHandle(0x0020));
+        assertNull(database.getServiceByHandle(0x0021));
+    }
+
+    @Test
+    public void resolvedService_indexesItsCharacteristics() {
+        UsbGattService battery = new UsbGattService(UUID_BATTERY_SERVICE, 0x0001, 0x0004, UsbGattService.SERVICE_TYPE_PRIMARY);
+        UsbGattCharacteristic batteryLevel = characteristic(UUID_BATTERY_LEVEL, 0x0003);
+        battery.addCharacteristic(batteryLevel);
+        List<UsbGattService> services = new ArrayList<>();
+        services.add(battery);
+
+        UsbGattAttributeDatabase unresolved = new UsbGattAttributeDatabase(
+                Collections.<UsbGattCharacteristic>emptyList(), services);
+        assertNull(unresolved.getCharacteristic(0x0003));
+
+        battery.setResolved(true);
+        UsbGattAttributeDatabase resolved = new UsbGattAttributeDatabase(
+                Collections.<UsbGattCharacteristic>emptyList(), services);
+        assertSame(batteryLevel, resolved.getCharacteristic(0x0003));
+        assertSame(batteryLevel, resolved.getCharacteristic(UUID_BATTERY_LEVEL));
+        // The lists only hold the configured characteristics.
+        assertTrue(resolved.getCharacteristics().isEmpty());
+    }
+}
@@ -0,0 +1,39 @@
+package com.realsil.sdk.core.usb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of splitting the set of values of a Read Multiple Response.
+ */
+public class UsbGattReadMultipleTest {
+
+    @Test
+    public void splitSetOfValues_fixedLengths() {
+        byte[][] values = UsbGatt.splitSetOfValues(new byte[]{1, 2, 3, 4, 5}, new int[]{1, 4});
+        assertNotNull(values);
+        assertArrayEquals(new byte[]{1}, values[0]);
+        assertArrayEquals(new byte[]{2, 3, 4, 5}, values[1]);
+    }
+
+    @Test
+    public void splitSetOfValues_variableLast() {
+        byte[][] values = UsbGatt.splitSetOfValues(new byte[]{1, 2, 3, 4, 5}, new int[]{2, -1});
+        assertNotNull(values);
+        assertArrayEquals(new byte[]{1, 2}, values[0]);
+        assertArrayEquals(new byte[]{3, 4, 5}, values[1]);
+
+        values = UsbGatt.splitSetOfValues(new byte[]{1, 2}, new int[]{2, -1});
+        assertNotNull(values);
+        assertEquals(0, values[1].length);
+    }
+
+    @Test
+    public void splitSetOfValues_lengthChanged() {
+        // Longer or shorter than the known lengths.
+        assertNull(UsbGatt.splitSetOfValues(new byte[]{1, 2, 3, 4, 5, 6}, new int[]{1, 4}));
+        assertNull(UsbGatt.splitSetOfValues(new byte[]{1, 2, 3, 4}, new int[]{1, 4}));
+        assertNull(UsbGatt.splitSetOfValues(new byte[]{1}, new int[]{2, -1}));
+    }
+}
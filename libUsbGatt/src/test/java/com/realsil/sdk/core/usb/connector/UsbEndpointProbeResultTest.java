@@ -0,0 +1,66 @@
+package com.realsil.sdk.core.usb.connector;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link UsbEndpointProbeResult}.
+ */
+public class UsbEndpointProbeResultTest {
+
+    private static UsbEndpointProbeResult probe(int sendEndpoint, int receiveEndpoint, long... roundTripTimes) {
+        UsbEndpointProbeResult result = new UsbEndpointProbeResult(sendEndpoint, receiveEndpoint, 3);
+        for (long roundTripTime : roundTripTimes) {
+            result.addSample(roundTripTime);
+        }
+        return result;
+    }
+
+    @Test
+    public void noSample() {
+        UsbEndpointProbeResult result = probe(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT, UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN);
+        assertFalse(result.isAvailable());
+        assertEquals(0, result.getSampleCount());
+        assertEquals(-1, result.getAverageRoundTripTime());
+        assertEquals(-1, result.getJitter());
+    }
+
+    @Test
+    public void available_onlyWhenAllSamplesReceived() {
+        UsbEndpointProbeResult result = probe(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT, UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN, 100, 200);
+        assertFalse(result.isAvailable());
+        result.addSample(300);
+        assertTrue(result.isAvailable());
+        assertEquals(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT, result.getSendEndpointType());
+        assertEquals(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN, result.getReceiveEndpointType());
+    }
+
+    @Test
+    public void averageAndJitter() {
+        UsbEndpointProbeResult result = probe(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT, UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN, 100, 300, 200);
+        assertEquals(200, result.getAverageRoundTripTime());
+        // (|300 - 100| + |200 - 300|) / 2
+        assertEquals(150, result.getJitter());
+        assertEquals(350, result.getScore());
+    }
+
+    @Test
+    public void singleSample_hasNoJitterPenalty() {
+        UsbEndpointProbeResult result = probe(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT, UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN, 500);
+        assertEquals(-1, result.getJitter());
+        assertEquals(500, result.getScore());
+    }
+
+    @Test
+    public void ranking_prefersStableLink() {
+        // Faster on average but jittery.
+        UsbEndpointProbeResult jittery = probe(UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_OUT,
+                UsbEndpointTypeDefine.USB_ENDPOINT_INTERRUPT_IN, 100, 700, 100);
+        // Slower on average but stable.
+        UsbEndpointProbeResult stable = probe(UsbEndpointTypeDefine.USB_ENDPOINT_BULK_OUT,
+                UsbEndpointTypeDefine.USB_ENDPOINT_BULK_IN, 350, 350, 350);
+        assertTrue(jittery.getAverageRoundTripTime() < stable.getAverageRoundTripTime());
+        assertTrue(stable.getScore() < jittery.getScore());
+    }
+}
@@ -0,0 +1,122 @@
+package com.realsil.sdk.core.usb.connector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link UsbPatchDownloadCheckpoint}.
+ */
+public class UsbPatchDownloadCheckpointTest {
+
+    private static final byte[] PATCH = {0x52, 0x65, 0x61, 0x6C, 0x74, 0x65, 0x63, 0x68, 0x01, 0x02, 0x03, 0x04};
+
+    private File mDir;
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("checkpoint", "");
+        assertTrue(mDir.delete());
+        // The directory is created by the first write.
+        mFile = new File(mDir, "patch.checkpoint");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void checksum_isStable() {
+        assertEquals(UsbPatchDownloadCheckpoint.checksum(PATCH), UsbPatchDownloadCheckpoint.checksum(PATCH.clone()));
+        byte[] otherPatch = PATCH.clone();
+        otherPatch[0] ^= 1;
+        assertNotEquals(UsbPatchDownloadCheckpoint.checksum(PATCH), UsbPatchDownloadCheckpoint.checksum(otherPatch));
+    }
+
+    @Test
+    public void writeThenRead() {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(130, 8).write(mFile, PATCH.length, checksum));
+        assertFalse(new File(mFile.getPath() + ".tmp").exists());
+
+        UsbPatchDownloadCheckpoint checkpoint = UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, checksum);
+        assertNotNull(checkpoint);
+        assertEquals(130, checkpoint.mPacketNumber);
+        assertEquals(8, checkpoint.mOffset);
+    }
+
+    @Test
+    public void write_replacesPreviousCheckpoint() {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(1, 4).write(mFile, PATCH.length, checksum));
+        assertTrue(new UsbPatchDownloadCheckpoint(2, 8).write(mFile, PATCH.length, checksum));
+        assertEquals(2, UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, checksum).mPacketNumber);
+    }
+
+    @Test
+    public void read_missingFile() {
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, 0));
+        assertNull(UsbPatchDownloadCheckpoint.read(null, PATCH.length, 0));
+    }
+
+    @Test
+    public void read_ignoresAnotherPatch() {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(1, 4).write(mFile, PATCH.length, checksum));
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length + 1, checksum));
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, checksum + 1));
+    }
+
+    @Test
+    public void read_ignoresOffsetBeyondPatch() {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(1, PATCH.length + 4).write(mFile, PATCH.length, checksum));
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, checksum));
+    }
+
+    @Test
+    public void read_ignoresUnknownFormat() throws IOException {
+        assertTrue(mDir.mkdirs());
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(mFile));
+        out.writeInt(0x12345678);
+        out.writeInt(1);
+        out.close();
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, UsbPatchDownloadCheckpoint.checksum(PATCH)));
+    }
+
+    @Test
+    public void read_ignoresTruncatedFile() throws IOException {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(1, 4).write(mFile, PATCH.length, checksum));
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        out.getChannel().truncate(mFile.length() - 2);
+        out.close();
+        assertNull(UsbPatchDownloadCheckpoint.read(mFile, PATCH.length, checksum));
+    }
+
+    @Test
+    public void delete() {
+        long checksum = UsbPatchDownloadCheckpoint.checksum(PATCH);
+        assertTrue(new UsbPatchDownloadCheckpoint(1, 4).write(mFile, PATCH.length, checksum));
+        UsbPatchDownloadCheckpoint.delete(mFile);
+        assertFalse(mFile.exists());
+        // Deleting a missing or null file is a no-op.
+        UsbPatchDownloadCheckpoint.delete(mFile);
+        UsbPatchDownloadCheckpoint.delete(null);
+    }
+}
@@ -0,0 +1,151 @@
+package com.realsil.sdk.core.usb.connector;
+
+import com.realsil.sdk.core.usb.connector.cmd.impl.VendorDownloadCommand;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of the packet sizing and numbering of {@link UsbPatchDownloader}.
+ */
+public class UsbPatchDownloaderTest {
+
+    /**
+     * Records the sent packets instead of sending them, the pending ones are answered by the test.
+     */
+    private static final class RecordingTransport implements UsbPatchDownloader.PacketTransport {
+        final List<Integer>                    mSentIndices = new ArrayList<>();
+        final List<Integer>                    mSentLengths = new ArrayList<>();
+        final ArrayDeque<VendorDownloadCommand> mPending    = new ArrayDeque<>();
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+
+        @Override
+        public void send(VendorDownloadCommand command) {
+            mSentIndices.add(command.getPacketIndex() & 0x7F);
+            mSentLengths.add(command.getSentDataBlockLength());
+            mPending.add(command);
+        }
+
+        @Override
+        public void remove(VendorDownloadCommand command) {
+            mPending.remove(command);
+        }
+    }
+
+    private static void runOnLoop(UsbEventLoop eventLoop, Runnable task) throws Exception {
+        eventLoop.submit(task).get();
+        // Wait for the tasks posted by it as well.
+        eventLoop.submit(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }).get();
+    }
+
+    @Test
+    public void maxDataBlock_fillsTransportPacket() {
+        // (255 - 6) / 4 * 4
+        assertEquals(248, VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH);
+        assertEquals(0, VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH % VendorDownloadCommand.DATA_BLOCK_ALIGNMENT);
+        assertTrue(VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH + VendorDownloadCommand.LENGTH_DOWNLOAD_COMMAND_HEADER
+                <= UsbConfig.MAX_TRANSPORT_PACKET_SIZE);
+        assertTrue(VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH + VendorDownloadCommand.DATA_BLOCK_ALIGNMENT
+                + VendorDownloadCommand.LENGTH_DOWNLOAD_COMMAND_HEADER > UsbConfig.MAX_TRANSPORT_PACKET_SIZE);
+    }
+
+    @Test
+    public void adaptivePacketSize_stepsDownToMinimum() {
+        int[] expected = {184, 136, 100, 72, 52, 36, 32, 32};
+        int packetSize = VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH;
+        for (int expectedSize : expected) {
+            packetSize = UsbPatchDownloader.nextAdaptivePacketSize(packetSize);
+            assertEquals(expectedSize, packetSize);
+            assertEquals(0, packetSize % VendorDownloadCommand.DATA_BLOCK_ALIGNMENT);
+        }
+    }
+
+    @Test
+    public void adaptivePacketSize_neverBelowMinimum() {
+        assertEquals(UsbPatchDownloader.MIN_ADAPTIVE_PACKET_SIZE,
+                UsbPatchDownloader.nextAdaptivePacketSize(UsbPatchDownloader.MIN_ADAPTIVE_PACKET_SIZE));
+        assertEquals(UsbPatchDownloader.MIN_ADAPTIVE_PACKET_SIZE, UsbPatchDownloader.nextAdaptivePacketSize(4));
+    }
+
+    @Test
+    public void stepDown_resendsFailedPacketUnderItsOwnIndex() throws Exception {
+        final RecordingTransport transport = new RecordingTransport();
+        final List<Integer> progress = new ArrayList<>();
+        LocalUsbConnector connector = LocalUsbConnector.getInstance();
+        byte[] patch = new byte[VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH * 4];
+        final UsbPatchDownloader downloader = new UsbPatchDownloader(connector, transport, patch,
+                new UsbPatchDownloadCallback() {
+                    @Override
+                    public void onProgress(UsbPatchDownloader downloader, int bytesAcked, int totalBytes) {
+                        progress.add(bytesAcked);
+                    }
+                });
+        downloader.setAdaptivePacketSize(true);
+        downloader.setWindowSize(2);
+        downloader.start();
+        runOnLoop(connector.getEventLoop(), new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        // Packet 0 is acknowledged, packet 1 times out while packet 2 is queued behind it.
+        runOnLoop(connector.getEventLoop(), new Runnable() {
+            @Override
+            public void run() {
+                VendorDownloadCommand command = transport.mPending.poll();
+                command.getVendorDownloadCommandCallback().onTransferSuccess(command.getPacketIndex());
+            }
+        });
+        runOnLoop(connector.getEventLoop(), new Runnable() {
+            @Override
+            public void run() {
+                transport.mPending.peek().getVendorDownloadCommandCallback().onReceiveTimeout();
+            }
+        });
+        while (!transport.mPending.isEmpty()) {
+            runOnLoop(connector.getEventLoop(), new Runnable() {
+                @Override
+                public void run() {
+                    VendorDownloadCommand command = transport.mPending.poll();
+                    command.getVendorDownloadCommandCallback().onTransferSuccess(command.getPacketIndex());
+                }
+            });
+        }
+
+        int maxSize = VendorDownloadCommand.MAX_DATA_BLOCK_LENGTH;
+        int reducedSize = UsbPatchDownloader.nextAdaptivePacketSize(maxSize);
+        // The dropped packet 2 is sent again after packet 1, no index is skipped.
+        assertEquals(asList(0, 1, 2, 1, 2, 3, 4, 5), transport.mSentIndices);
+        assertEquals(asList(maxSize, maxSize, maxSize, reducedSize, reducedSize, reducedSize, reducedSize,
+                patch.length - maxSize - reducedSize * 4), transport.mSentLengths);
+        // Only the acknowledged packets move the position forward.
+        List<Integer> expectedProgress = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            expectedProgress.add(maxSize + reducedSize * i);
+        }
+        expectedProgress.set(5, patch.length);
+        assertEquals(expectedProgress, progress);
+    }
+
+    private static List<Integer> asList(int... values) {
+        List<Integer> list = new ArrayList<>();
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
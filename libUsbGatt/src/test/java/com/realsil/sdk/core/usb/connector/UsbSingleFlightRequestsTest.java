@@ -0,0 +1,113 @@
+package com.realsil.sdk.core.usb.connector;
+
+import com.realsil.sdk.core.usb.connector.att.impl.ExecuteWriteRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.PrepareWriteRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.ReadAttributeRequest;
+import com.realsil.sdk.core.usb.connector.att.impl.WriteAttributeRequest;
+import com.realsil.sdk.core.usb.connector.cmd.impl.QueryBTConnectStateRequest;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link UsbSingleFlightRequests}.
+ */
+public class UsbSingleFlightRequestsTest {
+
+    private final UsbSingleFlightRequests mRequests = new UsbSingleFlightRequests();
+
+    /**
+     * Queue the request as {@link LocalUsbConnector#sendRequest(BaseRequest)} does.
+     *
+     * @return true if the request has been attached to a queued one.
+     */
+    private boolean send(BaseRequest request) {
+        mRequests.detachReadsWrittenBy(request);
+        return mRequests.join(request);
+    }
+
+    @Test
+    public void identicalReads_share() {
+        ReadAttributeRequest first = ReadAttributeRequest.obtain(0x0003);
+        ReadAttributeRequest second = ReadAttributeRequest.obtain(0x0003);
+        ReadAttributeRequest other = ReadAttributeRequest.obtain(0x0005);
+        assertFalse(send(first));
+        assertTrue(send(second));
+        assertFalse(send(other));
+
+        List<BaseRequest> followers = mRequests.take(first);
+        assertEquals(1, followers.size());
+        assertSame(second, followers.get(0));
+        assertNull(mRequests.take(other));
+
+        // The completed read is not shared any more.
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+    }
+
+    @Test
+    public void readWriteRead_doesNotShareAcrossTheWrite() {
+        ReadAttributeRequest before = ReadAttributeRequest.obtain(0x0003);
+        ReadAttributeRequest after = ReadAttributeRequest.obtain(0x0003);
+        ReadAttributeRequest afterAgain = ReadAttributeRequest.obtain(0x0003);
+        assertFalse(send(before));
+        assertFalse(send(new WriteAttributeRequest((short) 0x0003, new byte[]{0x01})));
+        assertFalse(send(after));
+        assertTrue(send(afterAgain));
+
+        assertNull(mRequests.take(before));
+        // Completing the read before the write does not stop sharing the read after it.
+        assertTrue(send(ReadAttributeRequest.obtain(0x0003)));
+        assertEquals(2, mRequests.take(after).size());
+    }
+
+    @Test
+    public void write_onlyDetachesItsAttribute() {
+        ReadAttributeRequest read = ReadAttributeRequest.obtain(0x0005);
+        assertFalse(send(read));
+        assertFalse(send(new WriteAttributeRequest((short) 0x0003, new byte[]{0x01})));
+        assertTrue(send(ReadAttributeRequest.obtain(0x0005)));
+    }
+
+    @Test
+    public void prepareWrite_detachesItsAttribute() {
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+        assertFalse(send(new PrepareWriteRequest(0x0003, 0, new byte[]{0x01}, 0, 1)));
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+    }
+
+    @Test
+    public void executeWrite_detachesAllReads() {
+        QueryBTConnectStateRequest query = new QueryBTConnectStateRequest();
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+        assertFalse(send(ReadAttributeRequest.obtain(0x0005)));
+        assertFalse(send(query));
+        assertFalse(send(new ExecuteWriteRequest(ExecuteWriteRequest.FLAG_WRITE_ALL)));
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+        assertFalse(send(ReadAttributeRequest.obtain(0x0005)));
+        // Other requests are still shared.
+        assertTrue(send(new QueryBTConnectStateRequest()));
+    }
+
+    @Test
+    public void notSingleFlight_isNeverShared() {
+        ReadAttributeRequest first = ReadAttributeRequest.obtain(0x0003);
+        ReadAttributeRequest second = ReadAttributeRequest.obtain(0x0003);
+        second.setSingleFlight(false);
+        assertFalse(send(first));
+        assertFalse(send(second));
+        assertNull(mRequests.take(first));
+    }
+
+    @Test
+    public void clear_keepsTheFollowers() {
+        ReadAttributeRequest first = ReadAttributeRequest.obtain(0x0003);
+        assertFalse(send(first));
+        assertTrue(send(ReadAttributeRequest.obtain(0x0003)));
+        mRequests.clear();
+        assertFalse(send(ReadAttributeRequest.obtain(0x0003)));
+        assertEquals(1, mRequests.take(first).size());
+    }
+}
@@ -0,0 +1,106 @@
+package com.realsil.sdk.core.usb.connector.att;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests of {@link AttributeDataListView}.
+ */
+public class AttributeDataListViewTest {
+
+    /**
+     * Read By Type Response: opcode, length 4, then two entries of handle + 16-bit value.
+     */
+    private static final byte[] READ_BY_TYPE_RESPONSE = {
+            0x09, 0x04,
+            0x03, 0x00, 0x0A, 0x2A,
+            0x05, 0x01, 0x00, (byte) 0xFF
+    };
+
+    /**
+     * Read By Group Type Response: opcode, length 6, then one entry of start handle + end handle + 16-bit UUID.
+     */
+    private static final byte[] READ_BY_GROUP_TYPE_RESPONSE = {
+            0x11, 0x06,
+            0x01, 0x00, 0x0B, 0x00, 0x00, 0x18
+    };
+
+    @Test
+    public void readByType_entries() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2,
+                READ_BY_TYPE_RESPONSE.length - 2, 4, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        assertEquals(2, view.count());
+        assertEquals(4, view.entryLength());
+        assertEquals(2, view.valueLength());
+        assertEquals(0x0003, view.handleAt(0));
+        assertEquals(0x2A0A, view.uint16ValueAt(0));
+        assertEquals(0x0105, view.handleAt(1));
+        assertEquals(0xFF00, view.uint16ValueAt(1));
+    }
+
+    @Test
+    public void readByGroupType_entries() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_GROUP_TYPE_RESPONSE, 2,
+                READ_BY_GROUP_TYPE_RESPONSE.length - 2, 6, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_GROUP_TYPE);
+        assertEquals(1, view.count());
+        assertEquals(0x0001, view.handleAt(0));
+        assertEquals(0x000B, view.endGroupHandleAt(0));
+        assertEquals(0x1800, view.uint16ValueAt(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void readByType_hasNoEndGroupHandle() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2,
+                READ_BY_TYPE_RESPONSE.length - 2, 4, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        view.endGroupHandleAt(0);
+    }
+
+    @Test
+    public void valueAt_copiesAndTruncates() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2,
+                READ_BY_TYPE_RESPONSE.length - 2, 4, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        byte[] value = new byte[3];
+        assertEquals(2, view.valueAt(1, value, 1));
+        assertArrayEquals(new byte[]{0x00, 0x00, (byte) 0xFF}, value);
+
+        byte[] shortValue = new byte[1];
+        assertEquals(1, view.valueAt(0, shortValue, 0));
+        assertArrayEquals(new byte[]{0x0A}, shortValue);
+    }
+
+    @Test
+    public void partialEntry_isIgnored() {
+        // One complete entry and 3 trailing bytes.
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2,
+                READ_BY_TYPE_RESPONSE.length - 3, 4, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        assertEquals(1, view.count());
+        assertArrayEquals(new byte[]{0x03, 0x00, 0x0A, 0x2A}, view.toByteArray());
+    }
+
+    @Test
+    public void invalidLength_isEmpty() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2, 8, 0,
+                AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        assertEquals(0, view.count());
+        assertEquals(0, view.toByteArray().length);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void handleAt_outOfBounds() {
+        AttributeDataListView view = new AttributeDataListView().reset(READ_BY_TYPE_RESPONSE, 2,
+                READ_BY_TYPE_RESPONSE.length - 2, 4, AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        view.handleAt(2);
+    }
+
+    @Test
+    public void reset_reusesTheView() {
+        AttributeDataListView view = new AttributeDataListView();
+        view.reset(READ_BY_TYPE_RESPONSE, 2, READ_BY_TYPE_RESPONSE.length - 2, 4,
+                AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_TYPE);
+        view.reset(READ_BY_GROUP_TYPE_RESPONSE, 2, READ_BY_GROUP_TYPE_RESPONSE.length - 2, 6,
+                AttributeDataListView.HANDLE_FIELDS_LENGTH_READ_BY_GROUP_TYPE);
+        assertEquals(1, view.count());
+        assertEquals(0x000B, view.endGroupHandleAt(0));
+    }
+}